@@ -0,0 +1,102 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the color adjustment applied when displaying an image with changed brightness, contrast, saturation or
+ * color temperature.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ColorAdjustmentBenchmark {
+	/**
+	 * The seed for the pixel data, so that all runs use the same data.
+	 */
+	private static final long SEED = 42;
+
+	// PUBLIC_FIELDS:START
+	// Parameters are set by JMH.
+
+	/**
+	 * The size of the larger side of the image. 2048 corresponds to NORMAL resolution, 4096 to FULL resolution.
+	 */
+	@Param({"1024", "2048", "4096"})
+	public int mResolution;
+
+	/**
+	 * The saturation. Saturation 1 allows the use of lookup tables.
+	 */
+	@Param({"1", "1.5"})
+	public float mSaturation;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * The original pixel data (BGRA).
+	 */
+	private byte[] mOriginal;
+
+	/**
+	 * The pixel data to be adjusted.
+	 */
+	private byte[] mBuffer;
+
+	/**
+	 * The width of the image.
+	 */
+	private int mWidth;
+
+	/**
+	 * The height of the image.
+	 */
+	private int mHeight;
+
+	/**
+	 * Create the pixel data.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		mWidth = mResolution;
+		mHeight = mResolution * 3 / 4; // MAGIC_NUMBER
+		mOriginal = new byte[4 * mWidth * mHeight]; // MAGIC_NUMBER
+		new Random(SEED).nextBytes(mOriginal);
+		mBuffer = new byte[mOriginal.length];
+	}
+
+	/**
+	 * Restore the original pixel data before each invocation.
+	 */
+	@Setup(Level.Invocation)
+	public void restore() {
+		System.arraycopy(mOriginal, 0, mBuffer, 0, mOriginal.length);
+	}
+
+	/**
+	 * Benchmark the color adjustment, including the creation of the kernel.
+	 *
+	 * @return The adjusted pixel data.
+	 */
+	@Benchmark
+	public byte[] applyColorAdjustment() {
+		new ColorAdjustment(0.1f, 1.3f, mSaturation, 0.2f).apply(mBuffer, mWidth, mHeight); // MAGIC_NUMBER
+		return mBuffer;
+	}
+}
@@ -0,0 +1,183 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the inner stages of PupilAndIrisDetector: collection of the circle brightnesses around a center,
+ * calculation of the circle quantiles, and search of the iris boundary points. The stages run on the position found
+ * by the detector in the same image, as in a real detection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class DetectorStagesBenchmark {
+	// PUBLIC_FIELDS:START
+	// Parameters are set by JMH.
+
+	/**
+	 * The source of the image. The sample photos are small icons, so pass a real photo via "-p mSource=path" for
+	 * representative figures.
+	 */
+	@Param({SampleImages.SYNTHETIC, "icon_eye_left", "icon_eye_right"})
+	public String mSource;
+
+	/**
+	 * The size of the larger side of the image.
+	 */
+	@Param({"200", "600", "1200", "2400"})
+	public int mResolution;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * The image.
+	 */
+	private ImagePyramid.Level mImage;
+
+	/**
+	 * The brightnesses of the image.
+	 */
+	private PupilAndIrisDetector.BrightnessPlane mPlane;
+
+	/**
+	 * The storage for the circle brightnesses.
+	 */
+	private PupilAndIrisDetector.RingStatistics mRings;
+
+	/**
+	 * The x coordinate of the pupil center.
+	 */
+	private int mPupilXCenter;
+
+	/**
+	 * The y coordinate of the pupil center.
+	 */
+	private int mPupilYCenter;
+
+	/**
+	 * The radius up to which circles are collected - the iris radius, limited by the image boundary.
+	 */
+	private int mMaxRadius;
+
+	/**
+	 * The x coordinate of the iris center.
+	 */
+	private int mIrisXCenter;
+
+	/**
+	 * The y coordinate of the iris center.
+	 */
+	private int mIrisYCenter;
+
+	/**
+	 * The iris radius.
+	 */
+	private int mIrisRadius;
+
+	/**
+	 * Load the image and determine pupil and iris position.
+	 *
+	 * @throws IOException
+	 *             thrown if the image cannot be read.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		ImagePyramid pyramid = SampleImages.getImage(mSource, mResolution);
+		mImage = pyramid.getBase();
+		mPlane = new PupilAndIrisDetector.BrightnessPlane(mImage);
+		int width = mImage.getWidth();
+		int height = mImage.getHeight();
+		int size = Math.max(width, height);
+
+		PupilAndIrisDetector detector = new PupilAndIrisDetector(pyramid, false);
+		mPupilXCenter = Math.round(detector.getPupilXCenter() * width);
+		mPupilYCenter = Math.round(detector.getPupilYCenter() * height);
+		mIrisXCenter = Math.round(detector.getIrisXCenter() * width);
+		mIrisYCenter = Math.round(detector.getIrisYCenter() * height);
+		mIrisRadius = Math.round(detector.getIrisRadius() * size);
+
+		int maxPossibleRadius = Math.min(Math.min(width - 1 - mPupilXCenter, mPupilXCenter),
+				Math.min(height - 1 - mPupilYCenter, mPupilYCenter));
+		mMaxRadius = Math.min(mIrisRadius, maxPossibleRadius);
+		mRings = new PupilAndIrisDetector.RingStatistics(mMaxRadius + 2);
+	}
+
+	/**
+	 * Benchmark the collection of the circle brightnesses around the pupil center.
+	 *
+	 * @return The collected circles.
+	 */
+	@Benchmark
+	public PupilAndIrisDetector.RingStatistics collectRings() {
+		mRings.collect(mPlane, mPupilXCenter, mPupilYCenter, mMaxRadius);
+		return mRings;
+	}
+
+	/**
+	 * Benchmark the calculation of the quantiles of the circles around the pupil center.
+	 *
+	 * @param collectedRings
+	 *            The circles, freshly collected.
+	 * @return A quantile, so that the calculation is not eliminated.
+	 */
+	@Benchmark
+	public float calculateQuantiles(final CollectedRings collectedRings) {
+		collectedRings.mRings.calculateStatistics();
+		return collectedRings.mRings.getQuantile(mMaxRadius, 0);
+	}
+
+	/**
+	 * Benchmark the search for iris boundary points.
+	 *
+	 * @return The boundary points found.
+	 */
+	@Benchmark
+	public PupilAndIrisDetector.IrisBoundary determineBoundaryPoints() {
+		PupilAndIrisDetector.IrisBoundary irisBoundary = new PupilAndIrisDetector.IrisBoundary(mImage, mIrisXCenter, mIrisYCenter, mIrisRadius);
+		irisBoundary.determineBoundaryPoints();
+		return irisBoundary;
+	}
+
+	/**
+	 * Circles around the pupil center, collected again before each invocation, as quantiles are calculated only once
+	 * per collection.
+	 */
+	@State(Scope.Thread)
+	public static class CollectedRings {
+		/**
+		 * The collected circles.
+		 */
+		private PupilAndIrisDetector.RingStatistics mRings;
+
+		/**
+		 * Collect the circles around the pupil center.
+		 *
+		 * @param benchmark
+		 *            The benchmark state with image and pupil position.
+		 */
+		@Setup(Level.Invocation)
+		public void collect(final DetectorStagesBenchmark benchmark) {
+			if (mRings == null) {
+				mRings = new PupilAndIrisDetector.RingStatistics(benchmark.mMaxRadius + 2);
+			}
+			mRings.collect(benchmark.mPlane, benchmark.mPupilXCenter, benchmark.mPupilYCenter, benchmark.mMaxRadius);
+		}
+	}
+}
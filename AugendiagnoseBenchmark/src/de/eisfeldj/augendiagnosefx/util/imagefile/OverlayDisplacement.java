@@ -0,0 +1,127 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+/**
+ * Calculation of the displacement which warps an overlay according to pupil size and position. Pure Java, so that it
+ * can be used and measured without FX toolkit.
+ *
+ * <p>
+ * This displacement is not part of the application. It has been superseded by OverlayMesh, which calculates the
+ * deformation only at the mesh vertices. It is only kept as baseline for the benchmarks.
+ */
+public final class OverlayDisplacement {
+	/**
+	 * Do not allow instantiation.
+	 */
+	private OverlayDisplacement() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Calculate the displacement of an overlay. For each target pixel, the result contains the offset of the source
+	 * pixel, relative to the overlay size, as used by FloatMap. The x offset of pixel (x,y) is stored at index
+	 * 2 * (y * size + x), the y offset at the following index.
+	 *
+	 * @param size
+	 *            The size of the overlay (in pixels).
+	 * @param circleRatio
+	 *            The relative radius of the iris on the overlay.
+	 * @param origPupilSize
+	 *            The pupil size in the original overlay image.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @return The displacement samples.
+	 */
+	public static float[] calculate(final int size, final float circleRatio, final float origPupilSize,
+			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
+		float[] samples = new float[2 * size * size];
+		calculateRows(samples, size, circleRatio, origPupilSize, pupilXOffset, pupilYOffset, pupilSize, 0, size);
+		return samples;
+	}
+
+	/**
+	 * Calculate the displacement of an overlay for a range of rows, storing it in the given samples array. Rows are
+	 * independent of each other, so that ranges may be calculated in parallel.
+	 *
+	 * @param samples
+	 *            The displacement samples, of length 2 * size * size.
+	 * @param size
+	 *            The size of the overlay (in pixels).
+	 * @param circleRatio
+	 *            The relative radius of the iris on the overlay.
+	 * @param origPupilSize
+	 *            The pupil size in the original overlay image.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 * @param startRow
+	 *            The first row to be calculated.
+	 * @param endRow
+	 *            The end row (exclusive).
+	 */
+	protected static void calculateRows(final float[] samples, // SUPPRESS_CHECKSTYLE Too many parameters
+			final int size, final float circleRatio, final float origPupilSize, final float pupilXOffset,
+			final float pupilYOffset, final float pupilSize, final int startRow, final int endRow) {
+		int overlayHalfSize = size / 2;
+		int irisRadius = (int) (circleRatio * overlayHalfSize);
+		long irisRadiusSquare = irisRadius * irisRadius;
+		float pupilXCenter = size * circleRatio * pupilXOffset / (1 - pupilSize);
+		float pupilYCenter = size * circleRatio * pupilYOffset / (1 - pupilSize);
+		float linTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
+		float linTransB = 1 - linTransM;
+
+		for (int y = startRow; y < endRow; y++) {
+			int yPos = y - overlayHalfSize;
+			float yPosP = yPos - pupilYCenter;
+
+			for (int x = 0; x < size; x++) {
+				int xPos = x - overlayHalfSize;
+				float xPosP = xPos - pupilXCenter;
+				int index = 2 * (y * size + x);
+
+				long centerDistSquare = xPos * xPos + yPos * yPos;
+				float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
+
+				if (centerDistSquare >= irisRadiusSquare) {
+					samples[index] = 0;
+					samples[index + 1] = 0;
+				}
+				else if (pupilCenterDistSquare == 0) {
+					samples[index] = -xPos / size;
+					samples[index + 1] = -yPos / size;
+				}
+				else {
+					// Determine corresponding iris boundary point via quadratic equation
+					float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * pupilXCenter * pupilYCenter
+							+ irisRadius * irisRadius * pupilCenterDistSquare
+							- (pupilXCenter * pupilXCenter * yPosP * yPosP)
+							- (pupilYCenter * pupilYCenter * xPosP * xPosP));
+
+					float xBound = (yPosP * yPosP * pupilXCenter - yPosP * xPosP * pupilYCenter + xPosP * plusMinusTerm) / pupilCenterDistSquare;
+					float yBound = (xPosP * xPosP * pupilYCenter - xPosP * yPosP * pupilXCenter + yPosP * plusMinusTerm) / pupilCenterDistSquare;
+
+					// distance of the current point from the center - 1 corresponds to iris boundary
+					float relativeDistance = (float) Math.sqrt(pupilCenterDistSquare
+							/ ((xBound - pupilXCenter) * (xBound - pupilXCenter) + (yBound - pupilYCenter) * (yBound - pupilYCenter)));
+
+					float sourceRelativeDistance = linTransM * relativeDistance + linTransB;
+					if (relativeDistance < pupilSize) {
+						sourceRelativeDistance -= linTransB * Math.pow(1 - relativeDistance / pupilSize, 1.1f); // MAGIC_NUMBER
+					}
+
+					float sourceX = xBound * sourceRelativeDistance;
+					float sourceY = yBound * sourceRelativeDistance;
+
+					samples[index] = (sourceX - xPos) / size;
+					samples[index + 1] = (sourceY - yPos) / size;
+				}
+			}
+		}
+	}
+}
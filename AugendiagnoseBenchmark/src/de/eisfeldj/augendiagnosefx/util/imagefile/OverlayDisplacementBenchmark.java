@@ -0,0 +1,123 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the deformation of the overlay according to pupil size and position, via dense displacement or
+ * via mesh.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class OverlayDisplacementBenchmark {
+	/**
+	 * The relative radius of the iris on the overlay, as in ImageUtil.
+	 */
+	private static final float OVERLAY_CIRCLE_RATIO = 0.75f;
+
+	/**
+	 * The pupil size in the original overlay image, as for the default overlay in ImageUtil.
+	 */
+	private static final float ORIG_PUPIL_SIZE = 0.25f;
+
+	/**
+	 * The mesh size, as default in the application.
+	 */
+	private static final int MESH_SIZE = 128;
+
+	// PUBLIC_FIELDS:START
+	// Parameters are set by JMH.
+
+	/**
+	 * The size of the overlay (in pixels). 1024 is the size used by the application.
+	 */
+	@Param({"512", "1024", "2048"})
+	public int mOverlaySize;
+
+	/**
+	 * The pupil position: "centered" or "offset".
+	 */
+	@Param({"centered", "offset"})
+	public String mPupilPosition;
+
+	/**
+	 * The relative size of the pupil.
+	 */
+	@Param({"0.2", "0.4"})
+	public float mPupilSize;
+
+	// PUBLIC_FIELDS:END
+
+	/**
+	 * Overlay pixels used as source of the warp.
+	 */
+	private int[] mOverlayPixels;
+
+	/**
+	 * Create overlay pixels with varying alpha, as premultiplied ARGB.
+	 */
+	@Setup(Level.Trial)
+	public void setUp() {
+		mOverlayPixels = new int[mOverlaySize * mOverlaySize];
+		Random random = new Random(mOverlaySize);
+		for (int i = 0; i < mOverlayPixels.length; i++) {
+			int alpha = random.nextInt(256); // MAGIC_NUMBER
+			int value = random.nextInt(alpha + 1);
+			mOverlayPixels[i] = alpha << 24 | value << 16 | value << 8 | value; // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * Benchmark the calculation of the displacement.
+	 *
+	 * @return The displacement samples.
+	 */
+	@Benchmark
+	public float[] calculateDisplacement() {
+		float offset = "offset".equals(mPupilPosition) ? 0.05f : 0; // MAGIC_NUMBER
+		return OverlayDisplacement.calculate(mOverlaySize, OVERLAY_CIRCLE_RATIO, ORIG_PUPIL_SIZE, offset, -offset, mPupilSize);
+	}
+
+	/**
+	 * Benchmark the complete warp: calculation of the mapping and bilinear resampling.
+	 *
+	 * @return The warped overlay pixels.
+	 */
+	@Benchmark
+	public int[] warpOverlay() {
+		float offset = "offset".equals(mPupilPosition) ? 0.05f : 0; // MAGIC_NUMBER
+		return new OverlayWarp(mOverlaySize, OVERLAY_CIRCLE_RATIO, ORIG_PUPIL_SIZE, offset, -offset, mPupilSize)
+				.apply(mOverlayPixels);
+	}
+
+	/**
+	 * Benchmark the mesh based deformation as used by the application: calculation of the mesh and rasterization
+	 * with bilinear sampling.
+	 *
+	 * @return The deformed overlay pixels.
+	 */
+	@Benchmark
+	public int[] deformOverlayByMesh() {
+		float offset = "offset".equals(mPupilPosition) ? 0.05f : 0; // MAGIC_NUMBER
+		OverlayMesh mesh = new OverlayMesh(mOverlaySize, MESH_SIZE, OVERLAY_CIRCLE_RATIO, ORIG_PUPIL_SIZE, mPupilSize,
+				offset, -offset);
+		return new OverlayMeshRenderer(mesh, mOverlaySize).apply(mOverlayPixels, OverlayMeshRenderer.Quality.HIGH);
+	}
+}
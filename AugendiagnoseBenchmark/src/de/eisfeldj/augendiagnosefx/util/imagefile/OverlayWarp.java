@@ -0,0 +1,236 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Warp of an overlay according to pupil size and position, as replacement of the FX DisplacementMap effect. Pure
+ * Java, so that it may be used outside the FX application thread and without FX toolkit.
+ *
+ * <p>
+ * The inverse mapping (the source position of each target pixel) is calculated once on creation via
+ * OverlayDisplacement. It can then be applied to any overlay image of the same size, e.g. in different colors. The
+ * source is sampled with bilinear interpolation of premultiplied ARGB values, and is transparent outside its bounds.
+ * Both steps are processed in parallel strips of rows.
+ *
+ * <p>
+ * This warp is not part of the application. It has been superseded by OverlayMesh, rendered via
+ * OverlayMeshRenderer, which deforms overlays in pure Java outside the FX application thread and without FX toolkit,
+ * and is shared with the Android app. This warp is only kept as baseline for the benchmarks.
+ */
+public final class OverlayWarp {
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+	/**
+	 * The number of rows processed by one thread without further splitting.
+	 */
+	private static final int STRIP_ROWS = 64;
+
+	/**
+	 * The size of the overlay (in pixels).
+	 */
+	private final int mSize;
+
+	/**
+	 * The displacement samples, as calculated by OverlayDisplacement.
+	 */
+	private final float[] mSamples;
+
+	/**
+	 * The parameters of the displacement.
+	 */
+	// JAVADOC:OFF
+	private final float mCircleRatio;
+	private final float mOrigPupilSize;
+	private final float mPupilXOffset;
+	private final float mPupilYOffset;
+	private final float mPupilSize;
+
+	// JAVADOC:ON
+
+	/**
+	 * Create the warp, calculating the inverse mapping.
+	 *
+	 * @param size
+	 *            The size of the overlay (in pixels).
+	 * @param circleRatio
+	 *            The relative radius of the iris on the overlay.
+	 * @param origPupilSize
+	 *            The pupil size in the original overlay image.
+	 * @param pupilXOffset
+	 *            The horizontal offset of the pupil.
+	 * @param pupilYOffset
+	 *            The vertical offset of the pupil.
+	 * @param pupilSize
+	 *            The relative size of the pupil.
+	 */
+	public OverlayWarp(final int size, final float circleRatio, final float origPupilSize, final float pupilXOffset,
+			final float pupilYOffset, final float pupilSize) {
+		mSize = size;
+		mCircleRatio = circleRatio;
+		mOrigPupilSize = origPupilSize;
+		mPupilXOffset = pupilXOffset;
+		mPupilYOffset = pupilYOffset;
+		mPupilSize = pupilSize;
+		mSamples = new float[2 * size * size];
+
+		ForkJoinPool.commonPool().invoke(new StripTask(null, null, 0, size));
+	}
+
+	/**
+	 * Apply the warp to an overlay image.
+	 *
+	 * @param source
+	 *            The pixels of the overlay as premultiplied ARGB values, size * size pixels without gaps between rows.
+	 * @return The pixels of the warped overlay as premultiplied ARGB values.
+	 */
+	public int[] apply(final int[] source) {
+		if (source.length != mSize * mSize) {
+			throw new IllegalArgumentException("Overlay must have size " + mSize + "x" + mSize);
+		}
+		int[] target = new int[mSize * mSize];
+		ForkJoinPool.commonPool().invoke(new StripTask(source, target, 0, mSize));
+		return target;
+	}
+
+	/**
+	 * Apply the warp to a range of rows.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param target
+	 *            The target pixels.
+	 * @param startRow
+	 *            The first row.
+	 * @param endRow
+	 *            The end row (exclusive).
+	 */
+	private void applyToRows(final int[] source, final int[] target, final int startRow, final int endRow) {
+		for (int y = startRow; y < endRow; y++) {
+			for (int x = 0; x < mSize; x++) {
+				int index = y * mSize + x;
+				float sourceX = x + mSamples[2 * index] * mSize;
+				float sourceY = y + mSamples[2 * index + 1] * mSize;
+
+				int x0 = (int) Math.floor(sourceX);
+				int y0 = (int) Math.floor(sourceY);
+				float fx = sourceX - x0;
+				float fy = sourceY - y0;
+
+				if (fx == 0 && fy == 0) {
+					target[index] = getPixel(source, x0, y0);
+				}
+				else {
+					target[index] = interpolate(getPixel(source, x0, y0), getPixel(source, x0 + 1, y0),
+							getPixel(source, x0, y0 + 1), getPixel(source, x0 + 1, y0 + 1), fx, fy);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Get a source pixel, transparent outside the source.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param x
+	 *            The x coordinate.
+	 * @param y
+	 *            The y coordinate.
+	 * @return The pixel value.
+	 */
+	private int getPixel(final int[] source, final int x, final int y) {
+		if (x < 0 || y < 0 || x >= mSize || y >= mSize) {
+			return 0;
+		}
+		return source[y * mSize + x];
+	}
+
+	/**
+	 * Interpolate bilinearly between four premultiplied ARGB pixels.
+	 *
+	 * @param topLeft
+	 *            The top left pixel.
+	 * @param topRight
+	 *            The top right pixel.
+	 * @param bottomLeft
+	 *            The bottom left pixel.
+	 * @param bottomRight
+	 *            The bottom right pixel.
+	 * @param fx
+	 *            The horizontal weight of the right pixels.
+	 * @param fy
+	 *            The vertical weight of the bottom pixels.
+	 * @return The interpolated pixel.
+	 */
+	private static int interpolate(final int topLeft, final int topRight, final int bottomLeft, // SUPPRESS_CHECKSTYLE
+			final int bottomRight, final float fx, final float fy) {
+		if ((topLeft | topRight | bottomLeft | bottomRight) == 0) {
+			return 0;
+		}
+		int result = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+			float top = (topLeft >>> shift & BYTE) * (1 - fx) + (topRight >>> shift & BYTE) * fx;
+			float bottom = (bottomLeft >>> shift & BYTE) * (1 - fx) + (bottomRight >>> shift & BYTE) * fx;
+			int value = Math.min(BYTE, Math.round(top * (1 - fy) + bottom * fy));
+			result |= value << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * Task processing a strip of rows - either calculating the mapping (if no source is given) or applying it. Strips
+	 * above STRIP_ROWS are split in two halves.
+	 */
+	private final class StripTask extends RecursiveAction {
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		// JAVADOC:OFF
+		private final int[] mSource;
+		private final int[] mTarget;
+		private final int mStartRow;
+		private final int mEndRow;
+
+		// JAVADOC:ON
+
+		/**
+		 * Constructor for the task.
+		 *
+		 * @param source
+		 *            The source pixels, or null for calculating the mapping.
+		 * @param target
+		 *            The target pixels, or null for calculating the mapping.
+		 * @param startRow
+		 *            The first row of the strip.
+		 * @param endRow
+		 *            The end row of the strip (exclusive).
+		 */
+		private StripTask(final int[] source, final int[] target, final int startRow, final int endRow) {
+			mSource = source;
+			mTarget = target;
+			mStartRow = startRow;
+			mEndRow = endRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (mEndRow - mStartRow > STRIP_ROWS) {
+				int middleRow = (mStartRow + mEndRow) >>> 1;
+				invokeAll(new StripTask(mSource, mTarget, mStartRow, middleRow),
+						new StripTask(mSource, mTarget, middleRow, mEndRow));
+			}
+			else if (mSource == null) {
+				OverlayDisplacement.calculateRows(mSamples, mSize, mCircleRatio, mOrigPupilSize, mPupilXOffset,
+						mPupilYOffset, mPupilSize, mStartRow, mEndRow);
+			}
+			else {
+				applyToRows(mSource, mTarget, mStartRow, mEndRow);
+			}
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Provider of eye images for the benchmarks, scaled to a given resolution.
+ *
+ * <p>
+ * Supported sources are "synthetic" (a generated eye with noise), "icon_eye_left" and "icon_eye_right" (the sample
+ * eye photos of the app), or the path of any image file.
+ *
+ * <p>
+ * The sample eye photos are only 144x144 pixel icons. Scaled up to the benchmark resolution, they are smooth and
+ * lack the detail and noise of real photos, so figures obtained with them are only a relative baseline.
+ */
+public final class SampleImages {
+	/**
+	 * The name of the synthetic source.
+	 */
+	public static final String SYNTHETIC = "synthetic";
+
+	/**
+	 * The classpath folder of the sample photos.
+	 */
+	private static final String SAMPLE_FOLDER = "/samples/";
+
+	/**
+	 * The seed for the noise of the synthetic image, so that all runs use the same image.
+	 */
+	private static final long SEED = 42;
+
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * Do not allow instantiation.
+	 */
+	private SampleImages() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get an image as image pyramid. The larger side has the given resolution, the aspect ratio is 4:3 for synthetic
+	 * images and the original one otherwise.
+	 *
+	 * @param source
+	 *            The source of the image.
+	 * @param resolution
+	 *            The size of the larger side.
+	 * @return The image.
+	 * @throws IOException
+	 *             thrown if the image cannot be read.
+	 */
+	public static ImagePyramid getImage(final String source, final int resolution) throws IOException {
+		if (SYNTHETIC.equals(source)) {
+			return createSyntheticImage(resolution, resolution * 3 / 4); // MAGIC_NUMBER
+		}
+
+		BufferedImage image;
+		InputStream stream = SampleImages.class.getResourceAsStream(SAMPLE_FOLDER + source + ".jpg");
+		if (stream != null) {
+			try {
+				image = ImageIO.read(stream);
+			}
+			finally {
+				stream.close();
+			}
+		}
+		else {
+			image = ImageIO.read(new File(source));
+		}
+		if (image == null) {
+			throw new IOException("Cannot read image " + source);
+		}
+
+		int width;
+		int height;
+		if (image.getWidth() >= image.getHeight()) {
+			width = resolution;
+			height = resolution * image.getHeight() / image.getWidth();
+		}
+		else {
+			width = resolution * image.getWidth() / image.getHeight();
+			height = resolution;
+		}
+
+		BufferedImage scaledImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D graphics = scaledImage.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		graphics.drawImage(image, 0, 0, width, height, null);
+		graphics.dispose();
+
+		return new ImagePyramid(scaledImage.getRGB(0, 0, width, height, null, 0, width), width, height);
+	}
+
+	/**
+	 * Create a synthetic eye image: a dark pupil within a blue iris on light background, with noise.
+	 *
+	 * @param width
+	 *            The width.
+	 * @param height
+	 *            The height.
+	 * @return The image.
+	 */
+	private static ImagePyramid createSyntheticImage(final int width, final int height) {
+		Random random = new Random(SEED);
+		double irisXCenter = width * 0.48; // MAGIC_NUMBER
+		double irisYCenter = height * 0.52; // MAGIC_NUMBER
+		double irisRadius = Math.min(width, height) * 0.3; // MAGIC_NUMBER
+		double pupilXCenter = irisXCenter + irisRadius * 0.05; // MAGIC_NUMBER
+		double pupilYCenter = irisYCenter - irisRadius * 0.03; // MAGIC_NUMBER
+		double pupilRadius = irisRadius * 0.35; // MAGIC_NUMBER
+
+		int[] argb = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				int[] rgb;
+				if (Math.hypot(x - pupilXCenter, y - pupilYCenter) < pupilRadius) {
+					rgb = new int[] {20, 20, 20}; // MAGIC_NUMBER
+				}
+				else if (Math.hypot(x - irisXCenter, y - irisYCenter) < irisRadius) {
+					rgb = new int[] {90, 110, 150}; // MAGIC_NUMBER
+				}
+				else {
+					rgb = new int[] {220, 200, 200}; // MAGIC_NUMBER
+				}
+				int color = 0xFF000000; // MAGIC_NUMBER
+				for (int c = 0; c < rgb.length; c++) {
+					int value = Math.max(0, Math.min(BYTE, rgb[c] + random.nextInt(60) - 30)); // MAGIC_NUMBER
+					color |= value << (16 - 8 * c); // MAGIC_NUMBER
+				}
+				argb[y * width + x] = color;
+			}
+		}
+		return new ImagePyramid(argb, width, height);
+	}
+}
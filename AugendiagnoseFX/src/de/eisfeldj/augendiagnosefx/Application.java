@@ -12,6 +12,7 @@ import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.VersioningUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataIndex;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegSynchronizationUtil;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -73,6 +74,7 @@ public class Application extends javafx.application.Application {
 			justification = "Intentionally write the stage statically")
 	public final void start(final Stage primaryStage) throws IOException, IllegalAccessException {
 		Application.mStage = primaryStage;
+		JpegMetadataIndex.loadInBackground();
 		primaryStage.setTitle(ResourceUtil.getString("app_name"));
 
 		MainController mainController = (MainController) FxmlUtil.getRootFromFxml(FxmlConstants.FXML_MAIN);
@@ -107,6 +109,12 @@ public class Application extends javafx.application.Application {
 		VersioningUtil.checkForNewerVersion(false);
 	}
 
+	@Override
+	public final void stop() {
+		// The save threads are daemon threads - wait for pending saves before the JVM terminates them.
+		JpegSynchronizationUtil.flush();
+	}
+
 	/**
 	 * Exit the application after asking for confirmation if there are unsaved data.
 	 */
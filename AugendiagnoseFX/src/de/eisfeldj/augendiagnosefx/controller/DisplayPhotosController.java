@@ -11,9 +11,11 @@ import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.TreeMap;
 
 import de.eisfeldj.augendiagnosefx.fxelements.EyePhotoPairNode;
@@ -26,10 +28,10 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataIndex;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataSearchIndex;
 
 import javafx.application.Platform;
-import javafx.beans.value.ChangeListener;
-import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -38,14 +40,15 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.Parent;
 import javafx.scene.control.ContextMenu;
+import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
+import javafx.util.Callback;
 
 import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_FOLDER_PHOTOS;
 import static de.eisfeldj.augendiagnosefx.util.PreferenceUtil.KEY_LAST_NAME;
@@ -72,10 +75,10 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	private ListView<String> mListNames;
 
 	/**
-	 * The list of names.
+	 * The list of eye photo pairs.
 	 */
 	@FXML
-	private ListView<GridPane> mListPhotos;
+	private ListView<EyePhotoPair> mListPhotos;
 
 	/**
 	 * The field for searching names.
@@ -85,7 +88,45 @@ public class DisplayPhotosController extends BaseController implements Initializ
 
 	@Override
 	public final void initialize(final URL location, final ResourceBundle resources) {
+		mListPhotos.setCellFactory(new Callback<ListView<EyePhotoPair>, ListCell<EyePhotoPair>>() {
+			@Override
+			public ListCell<EyePhotoPair> call(final ListView<EyePhotoPair> listView) {
+				return new EyePhotoPairCell();
+			}
+		});
 		initializeNames("", true);
+
+		// Bring the metadata index up to date, parsing only photos which are new or changed since the last run.
+		JpegMetadataIndex.refreshInBackground(new File(PreferenceUtil.getPreferenceString(KEY_FOLDER_PHOTOS)));
+
+		// Searches do not wait for the metadata index - repeat the current search once it is loaded.
+		JpegMetadataIndex.runAfterLoading(new Runnable() {
+			@Override
+			public void run() {
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						repeatSearch();
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Repeat the search for the current search text, also refreshing the displayed eye photo pairs.
+	 */
+	private void repeatSearch() {
+		String searchString = mSearchField.getText();
+		if (searchString == null || searchString.length() == 0) {
+			return;
+		}
+		String previousName = mPreviousName;
+		mPreviousName = null;
+		initializeNames(searchString, false);
+		if (previousName != null && mListNames.getItems().contains(previousName)) {
+			showPicturesForName(previousName);
+		}
 	}
 
 	/**
@@ -141,7 +182,8 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	}
 
 	/**
-	 * Handler for change of search text. Filters displayed eye photo pairs.
+	 * Handler for change of search text. Filters the names by the name itself or by the comment, description or
+	 * subject of their photos. The eye photo pairs of the next selected name are filtered accordingly.
 	 *
 	 * @param event
 	 *            The action event.
@@ -152,6 +194,7 @@ public class DisplayPhotosController extends BaseController implements Initializ
 		Platform.runLater(new Runnable() {
 			@Override
 			public void run() {
+				mPreviousName = null;
 				initializeNames(mSearchField.getText(), false);
 			}
 		});
@@ -217,50 +260,88 @@ public class DisplayPhotosController extends BaseController implements Initializ
 				DialogUtil.displayProgressDialog(ResourceConstants.MESSAGE_PROGRESS_LOADING_PHOTOS, name);
 
 		EyePhotoPair[] eyePhotos = createEyePhotoList(nameFolder);
-
-		ObservableList<GridPane> valuesPhotos = FXCollections.observableList(new ArrayList<GridPane>());
-
-		for (int i = 0; i < eyePhotos.length; i++) {
-			EyePhotoPairNode eyePhotoPairNode = new EyePhotoPairNode(eyePhotos[i], this);
-			valuesPhotos.add(eyePhotoPairNode);
-
-			// Workaround to ensure that the scrollbar is correctly resized after the images are loaded.
-			eyePhotoPairNode.getImagesLoadedProperty().addListener(new ChangeListener<Boolean>() {
-				@Override
-				public void changed(final ObservableValue<? extends Boolean> observable,
-						final Boolean oldValue,
-						final Boolean newValue) {
-					Platform.runLater(new Runnable() {
-						@Override
-						public void run() {
-							GridPane dummy = new GridPane();
-							valuesPhotos.add(dummy);
-							mListPhotos.layout();
-							valuesPhotos.remove(dummy);
-						}
-					});
-				}
-			});
+		String searchString = mSearchField.getText();
+		if (searchString != null && !nameStartsWith(name, searchString)) {
+			// The name was found via the metadata - display only the matching photos.
+			eyePhotos = filterBySearchString(eyePhotos, searchString);
 		}
 
+		// The list is virtualized: nodes are created only for the visible rows, and thumbnails are loaded on demand.
+		ObservableList<EyePhotoPair> valuesPhotos = FXCollections.observableList(new ArrayList<EyePhotoPair>());
+		valuesPhotos.addAll(Arrays.asList(eyePhotos));
+
 		mPreviousName = name;
 
 		Platform.runLater(new Runnable() {
 			@Override
 			public void run() {
 				mListPhotos.setItems(valuesPhotos);
+				mListPhotos.scrollTo(0);
 				dialog.close();
 			}
 		});
 	}
 
+	/**
+	 * Filter eye photo pairs to those having a photo whose comment, description or subject match a search string.
+	 *
+	 * @param eyePhotos
+	 *            The eye photo pairs.
+	 * @param searchString
+	 *            The search string.
+	 * @return The matching eye photo pairs.
+	 */
+	private static EyePhotoPair[] filterBySearchString(final EyePhotoPair[] eyePhotos, final String searchString) {
+		Set<String> matchingPaths = new HashSet<>(JpegMetadataSearchIndex.search(searchString));
+		List<EyePhotoPair> result = new ArrayList<>();
+		for (EyePhotoPair eyePhotoPair : eyePhotos) {
+			EyePhoto rightEye = eyePhotoPair.getRightEye();
+			EyePhoto leftEye = eyePhotoPair.getLeftEye();
+			if (rightEye != null && matchingPaths.contains(rightEye.getAbsolutePath())
+					|| leftEye != null && matchingPaths.contains(leftEye.getAbsolutePath())) {
+				result.add(eyePhotoPair);
+			}
+		}
+		return result.toArray(new EyePhotoPair[result.size()]);
+	}
+
 	/**
 	 * Remove the item for one date from the list.
 	 *
-	 * @param node The row to be removed.
+	 * @param pair The eye photo pair to be removed.
 	 */
-	public void removeItem(final EyePhotoPairNode node) {
-		mListPhotos.getItems().remove(node);
+	public void removeItem(final EyePhotoPair pair) {
+		mListPhotos.getItems().remove(pair);
+	}
+
+	/**
+	 * List cell displaying an eye photo pair. The node is reused when the cell is reused for another row, cancelling
+	 * the loading of thumbnails for the previous row.
+	 */
+	private final class EyePhotoPairCell extends ListCell<EyePhotoPair> {
+		/**
+		 * The node displaying the eye photo pair.
+		 */
+		private EyePhotoPairNode mNode;
+
+		@Override
+		protected void updateItem(final EyePhotoPair item, final boolean empty) {
+			super.updateItem(item, empty);
+
+			if (empty || item == null) {
+				if (mNode != null) {
+					mNode.setEyePhotoPair(null);
+				}
+				setGraphic(null);
+			}
+			else {
+				if (mNode == null) {
+					mNode = new EyePhotoPairNode(DisplayPhotosController.this);
+				}
+				mNode.setEyePhotoPair(item);
+				setGraphic(mNode);
+			}
+		}
 	}
 
 	// METHODS CLONED FROM ANDROID
@@ -271,14 +352,20 @@ public class DisplayPhotosController extends BaseController implements Initializ
 	 * @param parentFolder
 	 *            The parent folder.
 	 * @param searchString
-	 *            A search String for the name.
+	 *            A search String for the name, or for the comment, description or subject of the photos.
 	 * @return The list of subfolders.
 	 */
 	public static final List<String> getFolderNames(final File parentFolder, final String searchString) {
+		final Set<File> foldersWithMatchingPhotos = new HashSet<>();
+		for (String path : JpegMetadataSearchIndex.search(searchString)) {
+			foldersWithMatchingPhotos.add(new File(path).getParentFile());
+		}
+
 		File[] folders = parentFolder.listFiles(new FileFilter() {
 			@Override
 			public boolean accept(final File pathname) {
-				return pathname.isDirectory() && nameStartsWith(pathname.getName(), searchString);
+				return pathname.isDirectory() && (nameStartsWith(pathname.getName(), searchString)
+						|| foldersWithMatchingPhotos.contains(pathname.getAbsoluteFile()));
 			}
 		});
 
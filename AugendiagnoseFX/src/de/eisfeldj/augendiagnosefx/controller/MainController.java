@@ -11,6 +11,7 @@ import de.eisfeldj.augendiagnosefx.util.FxmlUtil;
 import de.eisfeldj.augendiagnosefx.util.Logger;
 import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
+import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -24,6 +25,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.SplitPane;
 import javafx.scene.control.ToggleButton;
+import javafx.scene.control.Tooltip;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.StackPane;
@@ -84,6 +86,11 @@ public class MainController extends BaseController implements Initializable {
 	@FXML
 	private ImageView mImageSave;
 
+	/**
+	 * The tooltip of the save icon.
+	 */
+	private Tooltip mSaveTooltip = null;
+
 	/**
 	 * The panes (one or two) containing the body.
 	 */
@@ -445,12 +452,22 @@ public class MainController extends BaseController implements Initializable {
 	}
 
 	/**
-	 * Set the save icon visibility.
+	 * Update the save icon to the number of photos waiting to be saved. The icon is visible while this number is
+	 * positive, and its tooltip shows the number.
 	 *
-	 * @param visible the target visibility
-	 */
-	public static void setSaveIconVisibility(final boolean visible) {
-		getInstance().mImageSave.setVisible(visible);
+	 * @param depth the number of photos with running or pending save requests.
+	 */
+	public static void setSaveQueueDepth(final int depth) {
+		MainController instance = getInstance();
+		instance.mImageSave.setVisible(depth > 0);
+		if (depth > 0) {
+			if (instance.mSaveTooltip == null) {
+				instance.mSaveTooltip = new Tooltip();
+				Tooltip.install(instance.mImageSave, instance.mSaveTooltip);
+			}
+			instance.mSaveTooltip.setText(
+					String.format(ResourceUtil.getString(ResourceConstants.MESSAGE_INFO_SAVING_PHOTOS), depth));
+		}
 	}
 
 	/**
@@ -14,13 +14,13 @@ import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhotoPair;
-import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader.Request;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ThumbnailLoader.ThumbnailListener;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javafx.application.Platform;
-import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -77,44 +77,34 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	@FXML
 	private ImageViewPane mImageViewLeft;
 
-	@Override
-	public final Parent getRoot() {
-		return this;
-	}
+	/**
+	 * The request for loading the thumbnail of the right eye.
+	 */
+	private Request mRequestRight;
 
 	/**
-	 * A boolean property indicating if images are loaded.
+	 * The request for loading the thumbnail of the left eye.
 	 */
-	private BooleanProperty mImagesLoadedProperty = new SimpleBooleanProperty(false);
+	private Request mRequestLeft;
 
-	public final BooleanProperty getImagesLoadedProperty() {
-		return mImagesLoadedProperty;
+	@Override
+	public final Parent getRoot() {
+		return this;
 	}
 
 	/**
-	 * Constructor given a pair of eye photos.
+	 * Constructor of an empty node. The eye photos are set via setEyePhotoPair, so that the node may be reused for
+	 * different rows of a list.
 	 *
-	 * @param pair
-	 *            The eye photo pair.
 	 * @param initialParentController
 	 *            The parent controller.
 	 */
 	@SuppressFBWarnings(value = "UR_UNINIT_READ", justification = "Is initialized via fxml")
-	public EyePhotoPairNode(final EyePhotoPair pair, final DisplayPhotosController initialParentController) {
+	public EyePhotoPairNode(final DisplayPhotosController initialParentController) {
 		mParentController = initialParentController;
-		mPair = pair;
 
 		FxmlUtil.loadFromFxml(this, FxmlConstants.FXML_EYE_PHOTO_PAIR_NODE);
 
-		mLabelDate.setText(pair.getDateDisplayString());
-
-		if (pair.getRightEye() != null) {
-			mImageViewRight.setImageView(getImageView(pair.getRightEye()));
-		}
-		if (pair.getLeftEye() != null) {
-			mImageViewLeft.setImageView(getImageView(pair.getLeftEye()));
-		}
-
 		mLabelDate.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
 			public void handle(final MouseEvent event) {
@@ -125,10 +115,10 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 					return;
 				}
 
-				if (pair.isComplete()) {
+				if (mPair != null && mPair.isComplete()) {
 					DisplayImagePairController controller =
 							(DisplayImagePairController) FxmlUtil.displaySubpage(FxmlConstants.FXML_DISPLAY_IMAGE_PAIR, -1, true);
-					controller.setEyePhotos(pair);
+					controller.setEyePhotos(mPair);
 				}
 			}
 		});
@@ -136,6 +126,92 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		mLabelDate.setContextMenu(createDateContextMenu());
 	}
 
+	/**
+	 * Set the pair of eye photos to be displayed. Thumbnails are displayed as placeholders until they are loaded in
+	 * the background. Loading of the thumbnails of the previous pair is cancelled.
+	 *
+	 * @param pair
+	 *            The eye photo pair, or null to clear the node.
+	 */
+	public final void setEyePhotoPair(final EyePhotoPair pair) {
+		if (pair == mPair) {
+			return;
+		}
+		cancelThumbnailRequests();
+		mPair = pair;
+		mHeightRight = 0;
+		mHeightLeft = 0;
+
+		if (pair == null) {
+			mLabelDate.setText(null);
+			mImageViewRight.setImageView(null);
+			mImageViewLeft.setImageView(null);
+			return;
+		}
+
+		mLabelDate.setText(pair.getDateDisplayString());
+		if (pair.getRightEye() != null) {
+			ImageView imageView = getImageView(pair.getRightEye());
+			mImageViewRight.setImageView(imageView);
+			mRequestRight = loadThumbnail(pair.getRightEye(), imageView);
+		}
+		else {
+			mImageViewRight.setImageView(null);
+		}
+		if (pair.getLeftEye() != null) {
+			ImageView imageView = getImageView(pair.getLeftEye());
+			mImageViewLeft.setImageView(imageView);
+			mRequestLeft = loadThumbnail(pair.getLeftEye(), imageView);
+		}
+		else {
+			mImageViewLeft.setImageView(null);
+		}
+	}
+
+	/**
+	 * Get the displayed eye photo pair.
+	 *
+	 * @return The eye photo pair.
+	 */
+	public final EyePhotoPair getEyePhotoPair() {
+		return mPair;
+	}
+
+	/**
+	 * Cancel loading of the thumbnails, e.g. because the row is no longer displayed.
+	 */
+	private void cancelThumbnailRequests() {
+		if (mRequestRight != null) {
+			mRequestRight.cancel();
+			mRequestRight = null;
+		}
+		if (mRequestLeft != null) {
+			mRequestLeft.cancel();
+			mRequestLeft = null;
+		}
+	}
+
+	/**
+	 * Load the thumbnail of an eye photo into an image view, if not yet displayed.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param imageView
+	 *            The image view.
+	 * @return The request for loading the thumbnail, or null if already loaded.
+	 */
+	private Request loadThumbnail(final EyePhoto eyePhoto, final ImageView imageView) {
+		if (ThumbnailLoader.getCachedThumbnail(eyePhoto) == imageView.getImage()) {
+			return null;
+		}
+		return ThumbnailLoader.load(eyePhoto, new ThumbnailListener() {
+			@Override
+			public void onThumbnailLoaded(final Image thumbnail) {
+				imageView.setImage(thumbnail);
+			}
+		});
+	}
+
 	/**
 	 * Create the context menu for the date.
 	 *
@@ -154,8 +230,9 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 
 					@Override
 					public void onDialogPositiveClick() {
-						mParentController.removeItem(EyePhotoPairNode.this);
-						mPair.delete();
+						EyePhotoPair pair = mPair;
+						mParentController.removeItem(pair);
+						pair.delete();
 					}
 
 					@Override
@@ -179,18 +256,8 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 	 * @return The image view.
 	 */
 	private ImageView getImageView(final EyePhoto eyePhoto) {
-		Image image = eyePhoto.getImage(Resolution.THUMB);
-		image.progressProperty().addListener(new ChangeListener<Number>() {
-			@Override
-			public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
-					final Number newValue) {
-				if (newValue.doubleValue() == 1) {
-					checkIfImagesLoaded();
-				}
-			}
-		});
-
-		ImageView imageView = new ImageView(image);
+		Image image = ThumbnailLoader.getCachedThumbnail(eyePhoto);
+		ImageView imageView = new ImageView(image == null ? ThumbnailLoader.getPlaceholder(eyePhoto) : image);
 		imageView.setPreserveRatio(true);
 		imageView.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			@Override
@@ -232,24 +299,4 @@ public class EyePhotoPairNode extends GridPane implements Controller {
 		return imageView;
 	}
 
-	/**
-	 * Check if the images are loaded.
-	 *
-	 * @return true if the images are loaded.
-	 */
-	private boolean checkIfImagesLoaded() {
-		if (mImagesLoadedProperty.get()) {
-			return true;
-		}
-
-		Image imageRight = mImageViewRight.getImageView().getImage();
-		Image imageLeft = mImageViewRight.getImageView().getImage();
-
-		boolean loaded = imageRight.getProgress() == 1 && imageLeft.getProgress() == 1;
-		if (loaded) {
-			mImagesLoadedProperty.set(true);
-		}
-		return loaded;
-	}
-
 }
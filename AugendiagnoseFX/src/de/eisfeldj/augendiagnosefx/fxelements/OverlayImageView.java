@@ -1,9 +1,19 @@
 package de.eisfeldj.augendiagnosefx.fxelements;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.OverlayPosition;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
+import javafx.application.Platform;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 
@@ -16,6 +26,29 @@ public class OverlayImageView extends SizableImageView {
 	 */
 	private static final float CONTRAST_LIMIT = 0.98f;
 
+	/**
+	 * The executor rendering the images in the background. One thread is sufficient, as requests of each view are
+	 * coalesced.
+	 */
+	private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "OverlayImageView-Render");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * The latest render request which has not yet been taken by the render thread.
+	 */
+	private final AtomicReference<RenderRequest> mPendingRequest = new AtomicReference<>();
+
+	/**
+	 * The number of the latest render request. Results of older requests are dropped.
+	 */
+	private final AtomicLong mLatestRequestNumber = new AtomicLong();
+
 	/**
 	 * The current overlay displayed.
 	 */
@@ -128,16 +161,79 @@ public class OverlayImageView extends SizableImageView {
 	/**
 	 * Redisplay. (Can be used to switch between non-thumbnail and thumbnail view.
 	 *
+	 * <p>
+	 * The image is rendered asynchronously. If further requests come in while rendering (e.g. when dragging a
+	 * slider), then only the latest one is rendered, and results of older requests are dropped. In full resolution,
+	 * also the overlay is drawn in the background.
+	 *
 	 * @param resolution
 	 *            Indicator of the resolution of the image.
 	 */
 	public final void redisplay(final Resolution resolution) {
-		Image newImage = ImageUtil.getImageForDisplay(getEyePhoto(), mOverlayType, mOverlayColor,
-				mBrightness, mContrast, mSaturation, mColorTemperature, resolution);
-		if (resolution != mCurrentResolution) {
+		RenderRequest request = new RenderRequest(mLatestRequestNumber.incrementAndGet(), getEyePhoto(),
+				mOverlayType, mOverlayColor, mBrightness, mContrast, mSaturation, mColorTemperature, resolution);
+		if (mPendingRequest.getAndSet(request) == null) {
+			RENDER_EXECUTOR.execute(new Runnable() {
+				@Override
+				public void run() {
+					renderPendingRequest();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Render the latest pending request in the background, and publish the result in the FX application thread.
+	 */
+	private void renderPendingRequest() {
+		final RenderRequest request = mPendingRequest.getAndSet(null);
+		if (request == null || request.mNumber != mLatestRequestNumber.get()) {
+			return;
+		}
+
+		final Image coloredImage;
+		try {
+			if (request.mResolution == Resolution.FULL) {
+				OverlayPosition overlayPosition =
+						ImageUtil.getOverlayPosition(request.mEyePhoto, request.mOverlayType, request.mOverlayColor);
+				coloredImage = ImageUtil.getFullResolutionImageForDisplay(request.mEyePhoto, overlayPosition,
+						request.mBrightness, request.mContrast, request.mSaturation, request.mColorTemperature);
+			}
+			else {
+				coloredImage = ImageUtil.getColoredImageForDisplay(request.mEyePhoto, request.mBrightness,
+						request.mContrast, request.mSaturation, request.mColorTemperature, request.mResolution);
+			}
+		}
+		catch (RuntimeException e) {
+			Logger.error("Failed to render image " + request.mEyePhoto.getFilename(), e);
+			return;
+		}
+
+		Platform.runLater(new Runnable() {
+			@Override
+			public void run() {
+				if (request.mNumber == mLatestRequestNumber.get()) {
+					displayRenderedImage(request, coloredImage);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Display the result of a render request. Must be called in the FX application thread.
+	 *
+	 * @param request
+	 *            The render request.
+	 * @param coloredImage
+	 *            The image with changed colors, rendered in the background.
+	 */
+	private void displayRenderedImage(final RenderRequest request, final Image coloredImage) {
+		Image newImage = ImageUtil.getOverlayedImageForDisplay(request.mEyePhoto, coloredImage, request.mOverlayType,
+				request.mOverlayColor, request.mResolution);
+		if (request.mResolution != mCurrentResolution) {
 			multiplyZoomProperty(mCurrentImageWidth / newImage.getWidth());
 			mCurrentImageWidth = newImage.getWidth();
-			mCurrentResolution = resolution;
+			mCurrentResolution = request.mResolution;
 		}
 
 		getImageView().setImage(newImage);
@@ -153,6 +249,8 @@ public class OverlayImageView extends SizableImageView {
 	 */
 	@Override
 	protected final void displayImage(final Image image) {
+		// Drop results of running render requests.
+		mLatestRequestNumber.incrementAndGet();
 		Image enhancedImage = ImageUtil.getImageForDisplay(getEyePhoto(), mOverlayType, mOverlayColor,
 				mBrightness, mContrast, mSaturation, mColorTemperature, Resolution.NORMAL);
 		mCurrentResolution = Resolution.NORMAL;
@@ -163,6 +261,8 @@ public class OverlayImageView extends SizableImageView {
 
 	@Override
 	public final void setImage(final JpegMetadata metadata, final Image image) {
+		// Drop results of running render requests.
+		mLatestRequestNumber.incrementAndGet();
 		super.setImage(metadata, image);
 		mCurrentResolution = Resolution.NORMAL;
 		mCurrentImageWidth = image.getWidth();
@@ -230,4 +330,58 @@ public class OverlayImageView extends SizableImageView {
 		mColorTemperature = view.mColorTemperature;
 	}
 
+	/**
+	 * A request to render the image, holding the display parameters at the time of the request.
+	 */
+	private static final class RenderRequest {
+		// JAVADOC:OFF
+		private final long mNumber;
+		private final EyePhoto mEyePhoto;
+		private final Integer mOverlayType;
+		private final Color mOverlayColor;
+		private final float mBrightness;
+		private final float mContrast;
+		private final float mSaturation;
+		private final float mColorTemperature;
+		private final Resolution mResolution;
+
+		// JAVADOC:ON
+
+		/**
+		 * Constructor for the render request.
+		 *
+		 * @param number
+		 *            The number of the request.
+		 * @param eyePhoto
+		 *            The eye photo.
+		 * @param overlayType
+		 *            The overlay type.
+		 * @param overlayColor
+		 *            The overlay color.
+		 * @param brightness
+		 *            The brightness.
+		 * @param contrast
+		 *            The contrast.
+		 * @param saturation
+		 *            The saturation.
+		 * @param colorTemperature
+		 *            The color temperature.
+		 * @param resolution
+		 *            Indicator of the resolution of the image.
+		 */
+		private RenderRequest(final long number, final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+				final Integer overlayType, final Color overlayColor, final float brightness, final float contrast,
+				final float saturation, final float colorTemperature, final Resolution resolution) {
+			mNumber = number;
+			mEyePhoto = eyePhoto;
+			mOverlayType = overlayType;
+			mOverlayColor = overlayColor;
+			mBrightness = brightness;
+			mContrast = contrast;
+			mSaturation = saturation;
+			mColorTemperature = colorTemperature;
+			mResolution = resolution;
+		}
+	}
+
 }
@@ -8,10 +8,9 @@ import de.eisfeldj.augendiagnosefx.util.DialogUtil;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil.ProgressDialog;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto;
-import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.ImageLoadListener;
 import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
 
-import javafx.application.Platform;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.value.ChangeListener;
@@ -103,6 +102,11 @@ public class SizableImageView extends ScrollPane {
 		return mEyePhoto;
 	}
 
+	/**
+	 * The dialog displaying the progress of loading the eye photo.
+	 */
+	private ProgressDialog mProgressDialog;
+
 	/**
 	 * X Location of the view center on the image.
 	 */
@@ -278,37 +282,41 @@ public class SizableImageView extends ScrollPane {
 		mIsInitialized = false;
 		this.mEyePhoto = eyePhoto;
 
-		Image image = eyePhoto.getImage(Resolution.NORMAL);
+		closeProgressDialog();
+
+		Image image = eyePhoto.loadImageInBackground(new ImageLoadListener() {
+			@Override
+			public void onImageLoaded(final Image loadedImage) {
+				if (mEyePhoto == eyePhoto) {
+					closeProgressDialog();
+					displayImage(loadedImage);
+				}
+			}
+
+			@Override
+			public void onImageLoadFailed(final Exception e) {
+				if (mEyePhoto == eyePhoto) {
+					closeProgressDialog();
+					DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_LOAD_PHOTO,
+							eyePhoto.getFilename());
+				}
+			}
+		});
 		if (image.getProgress() == 1) {
 			// image is already loaded from the start.
-			Platform.runLater(new Runnable() {
-				@Override
-				public void run() {
-					displayImage(image);
-				}
-			});
 			return;
 		}
 		else {
-			ProgressDialog dialog = DialogUtil
+			final ProgressDialog dialog = DialogUtil
 					.displayProgressDialog(ResourceConstants.MESSAGE_PROGRESS_LOADING_PHOTO,
 							eyePhoto.getFilename());
+			mProgressDialog = dialog;
 
 			image.progressProperty().addListener(new ChangeListener<Number>() {
 				@Override
 				public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
 						final Number newValue) {
 					dialog.setProgress(newValue.doubleValue());
-
-					if (newValue.doubleValue() == 1) {
-						Platform.runLater(new Runnable() {
-							@Override
-							public void run() {
-								displayImage(image);
-								dialog.close();
-							}
-						});
-					}
 				}
 			});
 		}
@@ -329,6 +337,16 @@ public class SizableImageView extends ScrollPane {
 		});
 	}
 
+	/**
+	 * Close the dialog displaying the progress of loading the eye photo, if it is displayed.
+	 */
+	private void closeProgressDialog() {
+		if (mProgressDialog != null) {
+			mProgressDialog.close();
+			mProgressDialog = null;
+		}
+	}
+
 	/**
 	 * Display the image after it is loaded.
 	 *
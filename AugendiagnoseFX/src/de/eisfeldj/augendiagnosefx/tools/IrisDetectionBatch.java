@@ -0,0 +1,401 @@
+package de.eisfeldj.augendiagnosefx.tools;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.SystemUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImagePyramid;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadata;
+import de.eisfeldj.augendiagnosefx.util.imagefile.JpegMetadataUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.PupilAndIrisDetector;
+
+/**
+ * Tool to determine iris and pupil position for all photos in the photo folder which do not have an overlay position
+ * yet. Runs without user interface.
+ *
+ * <p>
+ * Usage: IrisDetectionBatch [folder [threads [checkpointFile]]]. The folder defaults to the photo folder from the
+ * preferences, the number of threads to the number of processors. Finished files are recorded in the checkpoint file,
+ * and are skipped when the tool is started again.
+ */
+public final class IrisDetectionBatch {
+	/**
+	 * The default name of the checkpoint file.
+	 */
+	private static final String CHECKPOINT_FILE_NAME = "iris_detection.checkpoint";
+
+	/**
+	 * The checkpoint file entry prefix for files where the position has been stored.
+	 */
+	private static final String STATUS_DETECTED = "DETECTED\t";
+
+	/**
+	 * The checkpoint file entry prefix for files which did not require detection.
+	 */
+	private static final String STATUS_SKIPPED = "SKIPPED\t";
+
+	/**
+	 * The number of processed files after which progress is reported.
+	 */
+	private static final int PROGRESS_INTERVAL = 100;
+
+	/**
+	 * The number of queued files per thread. Limits the memory used while walking the folder tree.
+	 */
+	private static final int QUEUED_FILES_PER_THREAD = 4;
+
+	/**
+	 * Milliseconds per second.
+	 */
+	private static final double MILLIS_PER_SECOND = 1000.0;
+
+	/**
+	 * The charset of the checkpoint file.
+	 */
+	private static final Charset CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 * The folder to be processed.
+	 */
+	private File mFolder;
+
+	/**
+	 * The number of worker threads.
+	 */
+	private int mThreadCount;
+
+	/**
+	 * The checkpoint file.
+	 */
+	private File mCheckpointFile;
+
+	/**
+	 * The writer for the checkpoint file.
+	 */
+	private Writer mCheckpointWriter;
+
+	/**
+	 * The files finished in previous runs.
+	 */
+	private Set<String> mFinishedFiles = new HashSet<>();
+
+	/**
+	 * The number of files for which the position has been stored.
+	 */
+	private AtomicInteger mDetectedCount = new AtomicInteger();
+
+	/**
+	 * The number of files which did not require detection.
+	 */
+	private AtomicInteger mSkippedCount = new AtomicInteger();
+
+	/**
+	 * The number of processed files, including failures.
+	 */
+	private AtomicInteger mProcessedCount = new AtomicInteger();
+
+	/**
+	 * The files where detection failed, with error message.
+	 */
+	private List<String> mFailures = Collections.synchronizedList(new ArrayList<String>());
+
+	/**
+	 * The start time of the run.
+	 */
+	private long mStartTime;
+
+	/**
+	 * Private constructor.
+	 *
+	 * @param folder
+	 *            The folder to be processed.
+	 * @param threadCount
+	 *            The number of worker threads.
+	 * @param checkpointFile
+	 *            The checkpoint file.
+	 */
+	private IrisDetectionBatch(final File folder, final int threadCount, final File checkpointFile) {
+		mFolder = folder;
+		mThreadCount = threadCount;
+		mCheckpointFile = checkpointFile;
+	}
+
+	/**
+	 * Main method.
+	 *
+	 * @param args
+	 *            The command line arguments: folder, number of threads, checkpoint file.
+	 */
+	public static void main(final String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		File folder = new File(args.length > 0 ? args[0] : PreferenceUtil.getPreferenceString(PreferenceUtil.KEY_FOLDER_PHOTOS));
+		int threadCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		File checkpointFile = args.length > 2 ? new File(args[2]) : new File(SystemUtil.getTempDir(), CHECKPOINT_FILE_NAME);
+
+		if (!folder.isDirectory()) {
+			System.err.println("Folder " + folder.getAbsolutePath() + " does not exist"); // SYSTEMOUT
+			return;
+		}
+		if (!JpegMetadataUtil.changeJpegAllowed()) {
+			System.err.println("Storing metadata in JPEG files is disabled in the preferences"); // SYSTEMOUT
+			return;
+		}
+
+		try {
+			new IrisDetectionBatch(folder, Math.max(threadCount, 1), checkpointFile).process();
+		}
+		catch (IOException e) {
+			Logger.error("Iris detection batch failed", e);
+		}
+	}
+
+	/**
+	 * Process all photos in the folder.
+	 *
+	 * @throws IOException
+	 *             thrown if the folder cannot be walked or the checkpoint file cannot be written.
+	 */
+	private void process() throws IOException {
+		readCheckpointFile();
+		System.out.println("Processing " + mFolder.getAbsolutePath() + " with " + mThreadCount + " threads. " // SYSTEMOUT
+				+ mFinishedFiles.size() + " files finished in previous runs.");
+
+		mCheckpointFile.getAbsoluteFile().getParentFile().mkdirs();
+		mCheckpointWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mCheckpointFile, true), CHARSET));
+
+		// Bounded queue - if full, the walking thread processes the file itself.
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(mThreadCount, mThreadCount, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(QUEUED_FILES_PER_THREAD * mThreadCount), new ThreadPoolExecutor.CallerRunsPolicy());
+		mStartTime = System.currentTimeMillis();
+
+		try {
+			Files.walkFileTree(mFolder.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(final Path path, final BasicFileAttributes attrs) {
+					final File file = path.toFile();
+					if (file.getName().toUpperCase().endsWith(".JPG") && !mFinishedFiles.contains(file.getAbsolutePath())) {
+						executor.execute(new Runnable() {
+							@Override
+							public void run() {
+								processFile(file);
+							}
+						});
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(final Path path, final IOException e) {
+					mFailures.add(path + ": " + e);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			mCheckpointWriter.close();
+		}
+
+		reportProgress();
+		for (String failure : mFailures) {
+			System.out.println("Failed: " + failure); // SYSTEMOUT
+		}
+	}
+
+	/**
+	 * Determine and store the iris position of one photo.
+	 *
+	 * @param file
+	 *            The photo.
+	 */
+	private void processFile(final File file) {
+		String path = file.getAbsolutePath();
+		try {
+			JpegMetadata metadata = JpegMetadataUtil.getMetadata(path);
+			if (metadata.hasOverlayPosition() && !metadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY)) {
+				// Do not overwrite manually set overlay position.
+				mSkippedCount.incrementAndGet();
+				writeCheckpoint(STATUS_SKIPPED, path);
+			}
+			else {
+				PupilAndIrisDetector detector = new PupilAndIrisDetector(readImage(file), false);
+				if (metadata.setIrisPosition(detector.getIrisXCenter(), detector.getIrisYCenter(), detector.getIrisRadius(),
+						detector.getPupilXCenter(), detector.getPupilYCenter(), detector.getPupilRadius())) {
+					JpegMetadataUtil.changeMetadata(path, metadata);
+					mDetectedCount.incrementAndGet();
+					writeCheckpoint(STATUS_DETECTED, path);
+				}
+				else {
+					// Leave the file untouched and retry it in the next run.
+					mFailures.add(path + ": no plausible iris position found");
+				}
+			}
+		}
+		catch (Exception | OutOfMemoryError e) {
+			mFailures.add(path + ": " + e);
+		}
+
+		if (mProcessedCount.incrementAndGet() % PROGRESS_INTERVAL == 0) {
+			reportProgress();
+		}
+	}
+
+	/**
+	 * Read a photo as image pyramid, rotated according to its EXIF orientation. The photo is decoded with the largest
+	 * power of two subsampling which keeps it at least as large as the highest search resolution of the detector, so
+	 * that the full resolution image is never held in memory.
+	 *
+	 * @param file
+	 *            The photo.
+	 * @return The image pyramid.
+	 * @throws IOException
+	 *             thrown if the image cannot be read.
+	 */
+	private static ImagePyramid readImage(final File file) throws IOException {
+		BufferedImage image;
+		try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+			Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+			if (readers == null || !readers.hasNext()) {
+				throw new IOException("Unsupported image format");
+			}
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				int size = Math.max(reader.getWidth(0), reader.getHeight(0));
+				int sampleSize = 1;
+				while (size / (2 * sampleSize) >= PupilAndIrisDetector.getMaxSearchResolution()) {
+					sampleSize *= 2;
+				}
+				ImageReadParam param = reader.getDefaultReadParam();
+				param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+				image = reader.read(0, param);
+			}
+			finally {
+				reader.dispose();
+			}
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		if (rotation == 0) {
+			return new ImagePyramid(image.getRGB(0, 0, width, height, null, 0, width), width, height);
+		}
+
+		// Rotate row by row, so that only the rotated pixels are kept.
+		int[] rotatedPixels = new int[width * height];
+		int[] row = new int[width];
+		boolean isSwapped = rotation == 90 || rotation == 270; // MAGIC_NUMBER
+		int rotatedWidth = isSwapped ? height : width;
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				int targetIndex;
+				switch (rotation) {
+				case 90: // MAGIC_NUMBER
+					targetIndex = x * rotatedWidth + height - 1 - y;
+					break;
+				case 180: // MAGIC_NUMBER
+					targetIndex = (height - 1 - y) * rotatedWidth + width - 1 - x;
+					break;
+				case 270: // MAGIC_NUMBER
+					targetIndex = (width - 1 - x) * rotatedWidth + y;
+					break;
+				default:
+					targetIndex = y * rotatedWidth + x;
+				}
+				rotatedPixels[targetIndex] = row[x];
+			}
+		}
+		return new ImagePyramid(rotatedPixels, rotatedWidth, isSwapped ? width : height);
+	}
+
+	/**
+	 * Read the files finished in previous runs from the checkpoint file.
+	 *
+	 * @throws IOException
+	 *             thrown if the checkpoint file cannot be read.
+	 */
+	private void readCheckpointFile() throws IOException {
+		if (!mCheckpointFile.exists()) {
+			return;
+		}
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(mCheckpointFile), CHARSET))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int index = line.indexOf('\t');
+				if (index >= 0) {
+					mFinishedFiles.add(line.substring(index + 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record a finished file in the checkpoint file. The entry is flushed immediately, so that it survives an
+	 * interruption of the run.
+	 *
+	 * @param status
+	 *            The status prefix.
+	 * @param path
+	 *            The path of the file.
+	 * @throws IOException
+	 *             thrown if the checkpoint file cannot be written.
+	 */
+	private void writeCheckpoint(final String status, final String path) throws IOException {
+		synchronized (mCheckpointWriter) {
+			mCheckpointWriter.write(status + path + "\n");
+			mCheckpointWriter.flush();
+		}
+	}
+
+	/**
+	 * Print the current counts and throughput.
+	 */
+	private void reportProgress() {
+		int detected = mDetectedCount.get();
+		int skipped = mSkippedCount.get();
+		int failed = mFailures.size();
+		double seconds = Math.max(System.currentTimeMillis() - mStartTime, 1) / MILLIS_PER_SECOND;
+		System.out.println(String.format("Detected: %d, skipped: %d, failed: %d, elapsed: %.1f s, throughput: %.2f photos/s", // SYSTEMOUT
+				detected, skipped, failed, seconds, (detected + skipped + failed) / seconds));
+	}
+}
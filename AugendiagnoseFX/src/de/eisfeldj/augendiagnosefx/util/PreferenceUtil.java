@@ -98,6 +98,16 @@ public final class PreferenceUtil {
 	 */
 	public static final String KEY_INDEXED_OVERLAY_TYPE = "key_overlay_type";
 
+	/**
+	 * Preference key for the number of mesh cells per row and column used to deform overlays.
+	 */
+	public static final String KEY_OVERLAY_MESH_SIZE = "key_overlay_mesh_size";
+
+	/**
+	 * Preference key for the flag if deformed overlays should be rendered in high quality (bilinear sampling).
+	 */
+	public static final String KEY_OVERLAY_HIGH_QUALITY = "key_overlay_high_quality";
+
 	/**
 	 * A map of default values for preferences.
 	 */
@@ -125,6 +135,8 @@ public final class PreferenceUtil {
 		DEFAULT_MAP.put(KEY_UPDATE_AUTOMATICALLY, false);
 		DEFAULT_MAP.put(KEY_LANGUAGE, 0);
 		DEFAULT_MAP.put(KEY_LAST_KNOWN_VERSION, VersioningUtil.CURRENT_VERSION.getVersionNumber());
+		DEFAULT_MAP.put(KEY_OVERLAY_MESH_SIZE, 128); // MAGIC_NUMBER
+		DEFAULT_MAP.put(KEY_OVERLAY_HIGH_QUALITY, true);
 
 		setDefaultOverlayTypes();
 	}
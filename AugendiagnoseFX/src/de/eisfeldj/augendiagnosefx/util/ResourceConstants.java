@@ -64,11 +64,13 @@ public final class ResourceConstants {
 	public static final String MESSAGE_DIALOG_CONFIRM_DELETE_DATE = "message_dialog_confirm_delete_date";
 	public static final String MESSAGE_DIALOG_CONFIRM_DELETE_FOLDER = "message_dialog_confirm_delete_folder";
 	public static final String MESSAGE_ERROR_COULD_NOT_OPEN_LOG_FILE = "message_error_could_not_open_log_file";
+	public static final String MESSAGE_ERROR_FAILED_TO_LOAD_PHOTO = "message_error_failed_to_load_photo";
 	public static final String MESSAGE_ERROR_FAILED_TO_STORE_METADATA = "message_error_failed_to_store_metadata";
 	public static final String MESSAGE_ERROR_UNKNOWN_ERROR = "message_error_unknown_error";
 	public static final String MESSAGE_INFO_APP_ABOUT = "message_info_app_about";
 	public static final String MESSAGE_INFO_NO_NEW_VERSION = "message_info_no_new_version";
 	public static final String MESSAGE_INFO_SAVING_PHOTO = "message_info_saving_photo";
+	public static final String MESSAGE_INFO_SAVING_PHOTOS = "message_info_saving_photos";
 	public static final String MESSAGE_PROGRESS_LOADING_PHOTO = "message_progress_loading_photo";
 	public static final String MESSAGE_PROGRESS_LOADING_PHOTOS = "message_progress_loading_photos";
 	public static final String MESSAGE_PROGRESS_LOADING_UPDATE = "message_progress_loading_update";
@@ -60,6 +60,21 @@ public final class SystemUtil {
 		return new File(new File(System.getProperty("java.io.tmpdir")), Application.APPLICATION_NAME);
 	}
 
+	/**
+	 * Get the application data directory, where persistent local data of the application is stored.
+	 *
+	 * @return The application data directory.
+	 */
+	public static File getAppDataDir() {
+		String appData = System.getenv("APPDATA");
+		if (appData != null && appData.length() > 0) {
+			return new File(new File(appData), Application.APPLICATION_NAME);
+		}
+		else {
+			return new File(new File(System.getProperty("user.home")), "." + Application.APPLICATION_NAME);
+		}
+	}
+
 	/**
 	 * Get the path of the JVM.
 	 *
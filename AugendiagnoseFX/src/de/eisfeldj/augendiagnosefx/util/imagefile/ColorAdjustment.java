@@ -0,0 +1,253 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Kernel applying brightness, contrast, saturation and color temperature to BGRA pixel data.
+ *
+ * <p>
+ * The transformation is an affine color matrix (3x4, as in Android's ColorMatrix): each output channel is a weighted
+ * sum of the temperature-corrected input channels plus an offset. The products of matrix coefficients and input
+ * values are precomputed per channel for all 256 byte values, so that the result is identical to the calculation per
+ * pixel. If saturation is 1, then the channels are independent, and the transformation reduces to a lookup table per
+ * channel. Large images are processed in parallel strips of rows.
+ */
+public final class ColorAdjustment {
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int FOUR = 4;
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+	/**
+	 * The number of possible byte values.
+	 */
+	private static final int VALUES = 256;
+	/**
+	 * The number of color channels.
+	 */
+	private static final int CHANNELS = 3;
+	/**
+	 * The minimum number of pixels for parallel processing.
+	 */
+	private static final int PARALLEL_THRESHOLD = 1 << 18;
+	/**
+	 * The minimum number of pixels in a strip processed by one thread.
+	 */
+	private static final int STRIP_SIZE = 1 << 16;
+
+	/**
+	 * The products of matrix coefficients and input values. Index [CHANNELS * out + in][value], channels in BGR order.
+	 */
+	private final float[][] mProducts = new float[CHANNELS * CHANNELS][VALUES];
+
+	/**
+	 * The offset (4th column of the matrix).
+	 */
+	private final float mOffset;
+
+	/**
+	 * The lookup tables per channel (in BGR order), if the channels are independent. Otherwise null.
+	 */
+	private final byte[][] mLookupTables;
+
+	/**
+	 * Create the color adjustment.
+	 *
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 */
+	public ColorAdjustment(final float brightness, final float contrast, final float saturation,
+			final float colorTemperature) {
+		// logic of brightness and contrast does not work very well. Therefore, simulating logic from android
+		// OverlayPinghImageView.changeBitmapContrastBrightness
+		int[] temperatureColor = convertTemperatureToColor(colorTemperature);
+		float factorBlue = 1 / (float) (temperatureColor[2] / (double) BYTE);
+		float factorGreen = 1 / (float) (temperatureColor[1] / (double) BYTE);
+		float factorRed = 1 / (float) (temperatureColor[0] / (double) BYTE);
+		float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
+		factorBlue *= correctionFactor * contrast;
+		factorGreen *= correctionFactor * contrast;
+		factorRed *= correctionFactor * contrast;
+		mOffset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
+		float oppositeSaturation = (1 - saturation) / 2;
+
+		float[] factors = {factorBlue, factorGreen, factorRed};
+		for (int out = 0; out < CHANNELS; out++) {
+			for (int in = 0; in < CHANNELS; in++) {
+				float coefficient = out == in ? saturation : oppositeSaturation;
+				float[] products = mProducts[CHANNELS * out + in];
+				for (int value = 0; value < VALUES; value++) {
+					products[value] = coefficient * (value * factors[in]);
+				}
+			}
+		}
+
+		if (saturation == 1) {
+			// The cross products are zero, so that each output channel depends only on its input channel.
+			mLookupTables = new byte[CHANNELS][VALUES];
+			for (int channel = 0; channel < CHANNELS; channel++) {
+				for (int value = 0; value < VALUES; value++) {
+					mLookupTables[channel][value] = toColorByte(
+							mProducts[CHANNELS * channel + channel][value] + mOffset);
+				}
+			}
+		}
+		else {
+			mLookupTables = null;
+		}
+	}
+
+	/**
+	 * Apply the color adjustment to BGRA pixel data. The alpha channel remains unchanged.
+	 *
+	 * @param buffer
+	 *            The pixel data, 4 bytes per pixel in BGRA order, without gaps between rows. It is changed in place.
+	 * @param width
+	 *            The width of the image.
+	 * @param height
+	 *            The height of the image.
+	 */
+	public void apply(final byte[] buffer, final int width, final int height) {
+		if ((long) width * height >= PARALLEL_THRESHOLD) {
+			int stripRows = Math.max(1, STRIP_SIZE / Math.max(1, width));
+			ForkJoinPool.commonPool().invoke(new StripTask(buffer, width, 0, height, stripRows));
+		}
+		else {
+			applyToRange(buffer, 0, FOUR * width * height);
+		}
+	}
+
+	/**
+	 * Apply the color adjustment to a range of BGRA pixel data.
+	 *
+	 * @param buffer
+	 *            The pixel data.
+	 * @param start
+	 *            The start index (start of a pixel).
+	 * @param end
+	 *            The end index (exclusive).
+	 */
+	private void applyToRange(final byte[] buffer, final int start, final int end) {
+		if (mLookupTables != null) {
+			byte[] blueTable = mLookupTables[0];
+			byte[] greenTable = mLookupTables[1];
+			byte[] redTable = mLookupTables[2];
+			for (int i = start; i < end; i += FOUR) {
+				buffer[i] = blueTable[buffer[i] & BYTE];
+				buffer[i + 1] = greenTable[buffer[i + 1] & BYTE];
+				buffer[i + 2] = redTable[buffer[i + 2] & BYTE];
+			}
+			return;
+		}
+
+		float[] blueFromBlue = mProducts[0];
+		float[] blueFromGreen = mProducts[1];
+		float[] blueFromRed = mProducts[2];
+		float[] greenFromBlue = mProducts[3]; // MAGIC_NUMBER
+		float[] greenFromGreen = mProducts[4]; // MAGIC_NUMBER
+		float[] greenFromRed = mProducts[5]; // MAGIC_NUMBER
+		float[] redFromBlue = mProducts[6]; // MAGIC_NUMBER
+		float[] redFromGreen = mProducts[7]; // MAGIC_NUMBER
+		float[] redFromRed = mProducts[8]; // MAGIC_NUMBER
+		float offset = mOffset;
+
+		for (int i = start; i < end; i += FOUR) {
+			int blueIn = buffer[i] & BYTE;
+			int greenIn = buffer[i + 1] & BYTE;
+			int redIn = buffer[i + 2] & BYTE;
+
+			buffer[i] = toColorByte(blueFromBlue[blueIn] + blueFromGreen[greenIn] + blueFromRed[redIn] + offset);
+			buffer[i + 1] = toColorByte(greenFromBlue[blueIn] + greenFromGreen[greenIn] + greenFromRed[redIn] + offset);
+			buffer[i + 2] = toColorByte(redFromBlue[blueIn] + redFromGreen[greenIn] + redFromRed[redIn] + offset);
+		}
+	}
+
+	/**
+	 * Convert a number into a byte (ensuring the appropriate range).
+	 *
+	 * @param number The number.
+	 * @return The resulting byte.
+	 */
+	private static byte toColorByte(final float number) {
+		return (byte) Math.min(BYTE, Math.max(0, number));
+	}
+
+	/**
+	 * Convert a temperature into a color value representing the color of this temperature.
+	 *
+	 * @param temperature The temperature value (in the range -1..1).
+	 * @return The color value as red, green, blue in the range 0..255.
+	 */
+	private static int[] convertTemperatureToColor(final double temperature) {
+		if (temperature >= 0) {
+			return new int[] {(int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE}; // MAGIC_NUMBER
+		}
+		else {
+			return new int[] {BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)}; // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * Task applying the color adjustment to a strip of rows. Strips above the strip size are split in two halves.
+	 */
+	private final class StripTask extends RecursiveAction {
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		// JAVADOC:OFF
+		private final byte[] mBuffer;
+		private final int mWidth;
+		private final int mStartRow;
+		private final int mEndRow;
+		private final int mStripRows;
+
+		// JAVADOC:ON
+
+		/**
+		 * Constructor for the task.
+		 *
+		 * @param buffer
+		 *            The pixel data.
+		 * @param width
+		 *            The width of the image.
+		 * @param startRow
+		 *            The first row of the strip.
+		 * @param endRow
+		 *            The end row of the strip (exclusive).
+		 * @param stripRows
+		 *            The number of rows up to which the strip is processed without splitting.
+		 */
+		private StripTask(final byte[] buffer, final int width, final int startRow, final int endRow,
+				final int stripRows) {
+			mBuffer = buffer;
+			mWidth = width;
+			mStartRow = startRow;
+			mEndRow = endRow;
+			mStripRows = stripRows;
+		}
+
+		@Override
+		protected void compute() {
+			if (mEndRow - mStartRow <= mStripRows) {
+				applyToRange(mBuffer, FOUR * mWidth * mStartRow, FOUR * mWidth * mEndRow);
+			}
+			else {
+				int middleRow = (mStartRow + mEndRow) >>> 1;
+				invokeAll(new StripTask(mBuffer, mWidth, mStartRow, middleRow, mStripRows),
+						new StripTask(mBuffer, mWidth, middleRow, mEndRow, mStripRows));
+			}
+		}
+	}
+}
@@ -12,8 +12,10 @@ import de.eisfeldj.augendiagnosefx.util.DateUtil;
 import de.eisfeldj.augendiagnosefx.util.Logger;
 import de.eisfeldj.augendiagnosefx.util.ResourceConstants;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.ImageLoadListener;
 import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
 
+import javafx.application.Platform;
 import javafx.scene.image.Image;
 
 /**
@@ -98,6 +100,7 @@ public class EyePhoto {
 
 		// Auto-correct file name if safely possible
 		if (mFilename != null && !mFilename.equals(getFilename()) && !getFile().exists()) {
+			JpegSynchronizationUtil.invalidateCachedMetadata(file.getAbsolutePath());
 			boolean success = new File(getPath(), mFilename).renameTo(new File(getPath(), getFilename()));
 			if (!success) {
 				Logger.warning("Failed to rename file" + mFilename + " to " + getFilename());
@@ -316,6 +319,7 @@ public class EyePhoto {
 	 * @return true if the deletion was successful.
 	 */
 	public final boolean delete() {
+		JpegSynchronizationUtil.invalidateCachedMetadata(getAbsolutePath());
 		return getFile().delete();
 	}
 
@@ -332,6 +336,8 @@ public class EyePhoto {
 			return false;
 		}
 
+		JpegSynchronizationUtil.invalidateCachedMetadata(getAbsolutePath());
+		JpegSynchronizationUtil.invalidateCachedMetadata(target.getAbsolutePath());
 		return getFile().renameTo(target.getFile());
 	}
 
@@ -355,6 +361,8 @@ public class EyePhoto {
 			return false;
 		}
 
+		JpegSynchronizationUtil.invalidateCachedMetadata(getAbsolutePath());
+		JpegSynchronizationUtil.invalidateCachedMetadata(targetFile.getAbsolutePath());
 		return getFile().renameTo(targetFile);
 	}
 
@@ -392,33 +400,10 @@ public class EyePhoto {
 			Image result = mCachedImage;
 			if (result == null) {
 				result = ImageUtil.getImage(getFile(), Resolution.NORMAL);
-				synchronized (CACHED_EYE_PHOTOS) {
-					mCachedImage = result;
-					CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
-					// Ensure that not too many images are cached
-					if (CACHED_EYE_PHOTOS.size() > MAX_IMAGE_CACHE) {
-						EyePhoto firstInList = CACHED_EYE_PHOTOS.get(0).get();
-						if (firstInList != null) {
-							firstInList.mCachedImage = null;
-						}
-						CACHED_EYE_PHOTOS.remove(0);
-					}
-				}
+				cacheImage(result);
 			}
 			else {
-				synchronized (CACHED_EYE_PHOTOS) {
-					int index = -1;
-					for (int i = 0; i < CACHED_EYE_PHOTOS.size(); i++) {
-						if (CACHED_EYE_PHOTOS.get(i).get() == this) {
-							index = i;
-							break;
-						}
-					}
-					if (index >= 0) {
-						CACHED_EYE_PHOTOS.remove(index);
-						CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
-					}
-				}
+				markImageAsUsed();
 			}
 			return result;
 		case FULL:
@@ -429,6 +414,86 @@ public class EyePhoto {
 		}
 	}
 
+	/**
+	 * Load the Image of this photo in normal resolution in the background. Must be called in the FX application
+	 * thread.
+	 *
+	 * @param listener
+	 *            The listener notified in the FX application thread when the image is available or loading has failed.
+	 * @return the Image reporting the loading progress.
+	 */
+	public final Image loadImageInBackground(final ImageLoadListener listener) {
+		final Image cachedImage = mCachedImage;
+		if (cachedImage != null && cachedImage.getProgress() == 1 && !cachedImage.isError()) {
+			markImageAsUsed();
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					listener.onImageLoaded(cachedImage);
+				}
+			});
+			return cachedImage;
+		}
+
+		return ImageUtil.getImageInBackground(getFile(), Resolution.NORMAL, new ImageLoadListener() {
+			@Override
+			public void onImageLoaded(final Image image) {
+				cacheImage(image);
+				listener.onImageLoaded(image);
+			}
+
+			@Override
+			public void onImageLoadFailed(final Exception e) {
+				listener.onImageLoadFailed(e);
+			}
+		});
+	}
+
+	/**
+	 * Cache the Image of this photo in normal resolution.
+	 *
+	 * @param image
+	 *            The image.
+	 */
+	private void cacheImage(final Image image) {
+		synchronized (CACHED_EYE_PHOTOS) {
+			if (mCachedImage != null) {
+				mCachedImage = image;
+				markImageAsUsed();
+				return;
+			}
+			mCachedImage = image;
+			CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
+			// Ensure that not too many images are cached
+			if (CACHED_EYE_PHOTOS.size() > MAX_IMAGE_CACHE) {
+				EyePhoto firstInList = CACHED_EYE_PHOTOS.get(0).get();
+				if (firstInList != null) {
+					firstInList.mCachedImage = null;
+				}
+				CACHED_EYE_PHOTOS.remove(0);
+			}
+		}
+	}
+
+	/**
+	 * Mark the cached Image of this photo as most recently used.
+	 */
+	private void markImageAsUsed() {
+		synchronized (CACHED_EYE_PHOTOS) {
+			int index = -1;
+			for (int i = 0; i < CACHED_EYE_PHOTOS.size(); i++) {
+				if (CACHED_EYE_PHOTOS.get(i).get() == this) {
+					index = i;
+					break;
+				}
+			}
+			if (index >= 0) {
+				CACHED_EYE_PHOTOS.remove(index);
+				CACHED_EYE_PHOTOS.add(new WeakReference<>(this));
+			}
+		}
+	}
+
 	/**
 	 * Change the personName renaming the file (keeping the path).
 	 *
@@ -0,0 +1,262 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+/**
+ * A set of downscaled versions of an image, computed in pure Java by area averaging. As no Canvas is involved, the
+ * pyramid can be built and used on any thread, also without a running FX toolkit.
+ */
+public final class ImagePyramid {
+	/**
+	 * The number of bits per color channel.
+	 */
+	private static final int BITS_PER_CHANNEL = 8;
+	/**
+	 * The number of color channels (ARGB).
+	 */
+	private static final int CHANNELS = 4;
+	/**
+	 * The maximum value of a color channel.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The image in its original size.
+	 */
+	private Level mBase;
+
+	/**
+	 * All levels computed so far, including the base, ordered by descending size.
+	 */
+	private List<Level> mLevels = new ArrayList<>();
+
+	/**
+	 * Create a pyramid from ARGB pixels.
+	 *
+	 * @param argb The pixels, row by row.
+	 * @param width The width of the image.
+	 * @param height The height of the image.
+	 */
+	public ImagePyramid(final int[] argb, final int width, final int height) {
+		if (argb.length < width * height) {
+			throw new IllegalArgumentException("Pixel array too small for image of size " + width + "x" + height);
+		}
+		mBase = new Level(width, height, argb);
+		mLevels.add(mBase);
+	}
+
+	/**
+	 * Create a pyramid from an FX image.
+	 *
+	 * @param image The image.
+	 * @return The pyramid.
+	 */
+	public static ImagePyramid fromImage(final Image image) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		int[] argb = new int[width * height];
+		image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+		return new ImagePyramid(argb, width, height);
+	}
+
+	public Level getBase() {
+		return mBase;
+	}
+
+	/**
+	 * Compute the levels for a list of target sizes in advance. Larger levels are computed first, so that smaller
+	 * levels can be derived from them.
+	 *
+	 * @param targetSizes The target sizes.
+	 */
+	public void build(final int... targetSizes) {
+		int[] sortedSizes = Arrays.copyOf(targetSizes, targetSizes.length);
+		Arrays.sort(sortedSizes);
+		for (int i = sortedSizes.length - 1; i >= 0; i--) {
+			getLevel(sortedSizes[i]);
+		}
+	}
+
+	/**
+	 * Get the image scaled down such that the larger side has the target size. The dimensions are the same as in
+	 * ImageUtil.resizeImage without growing. If the image is not larger than the target size, the base is returned.
+	 *
+	 * @param targetSize The target size of the larger side.
+	 * @return The scaled image.
+	 */
+	public synchronized Level getLevel(final int targetSize) {
+		int width = mBase.mWidth;
+		int height = mBase.mHeight;
+		if (width <= targetSize && height <= targetSize || width == 0 || height == 0) {
+			return mBase;
+		}
+		int targetWidth;
+		int targetHeight;
+		if (width > height) {
+			targetWidth = targetSize;
+			targetHeight = (int) (targetSize * (double) height / width);
+		}
+		else {
+			targetWidth = (int) (targetSize * (double) width / height);
+			targetHeight = targetSize;
+		}
+
+		// Derive from the smallest existing level which is at least as large.
+		Level source = mBase;
+		int index = 0;
+		for (int i = 0; i < mLevels.size(); i++) {
+			Level level = mLevels.get(i);
+			if (level.mWidth == targetWidth && level.mHeight == targetHeight) {
+				return level;
+			}
+			if (level.mWidth >= targetWidth && level.mHeight >= targetHeight) {
+				source = level;
+				index = i + 1;
+			}
+		}
+
+		Level level = downsample(source, Math.max(targetWidth, 1), Math.max(targetHeight, 1));
+		mLevels.add(index, level);
+		return level;
+	}
+
+	/**
+	 * Scale down an image by area averaging.
+	 *
+	 * @param source The source image.
+	 * @param targetWidth The target width.
+	 * @param targetHeight The target height.
+	 * @return The scaled image.
+	 */
+	private static Level downsample(final Level source, final int targetWidth, final int targetHeight) {
+		AxisWeights xWeights = new AxisWeights(source.mWidth, targetWidth);
+		AxisWeights yWeights = new AxisWeights(source.mHeight, targetHeight);
+		int[] sourcePixels = source.mPixels;
+		int[] targetPixels = new int[targetWidth * targetHeight];
+		float[] sums = new float[CHANNELS * targetWidth];
+
+		for (int targetY = 0; targetY < targetHeight; targetY++) {
+			Arrays.fill(sums, 0);
+			int sourceY = yWeights.mFirst[targetY];
+			for (int k = yWeights.mWeightOffsets[targetY]; k < yWeights.mWeightOffsets[targetY + 1]; k++) {
+				float yWeight = yWeights.mWeights[k];
+				int rowOffset = sourceY++ * source.mWidth;
+
+				for (int targetX = 0; targetX < targetWidth; targetX++) {
+					int sourceIndex = rowOffset + xWeights.mFirst[targetX];
+					int sumIndex = CHANNELS * targetX;
+					for (int m = xWeights.mWeightOffsets[targetX]; m < xWeights.mWeightOffsets[targetX + 1]; m++) {
+						float weight = yWeight * xWeights.mWeights[m];
+						int argb = sourcePixels[sourceIndex++];
+						for (int c = 0; c < CHANNELS; c++) {
+							sums[sumIndex + c] += weight * ((argb >> (BITS_PER_CHANNEL * c)) & BYTE);
+						}
+					}
+				}
+			}
+
+			int targetIndex = targetY * targetWidth;
+			for (int targetX = 0; targetX < targetWidth; targetX++) {
+				int argb = 0;
+				for (int c = 0; c < CHANNELS; c++) {
+					int value = Math.min((int) (sums[CHANNELS * targetX + c] + 0.5f), BYTE); // MAGIC_NUMBER
+					argb |= value << (BITS_PER_CHANNEL * c);
+				}
+				targetPixels[targetIndex + targetX] = argb;
+			}
+		}
+		return new Level(targetWidth, targetHeight, targetPixels);
+	}
+
+	/**
+	 * One level of the pyramid.
+	 */
+	public static final class Level {
+		/**
+		 * The width.
+		 */
+		private int mWidth;
+		/**
+		 * The height.
+		 */
+		private int mHeight;
+		/**
+		 * The ARGB pixels, row by row.
+		 */
+		private int[] mPixels;
+
+		/**
+		 * Create a level.
+		 *
+		 * @param width The width.
+		 * @param height The height.
+		 * @param pixels The ARGB pixels, row by row.
+		 */
+		private Level(final int width, final int height, final int[] pixels) {
+			mWidth = width;
+			mHeight = height;
+			mPixels = pixels;
+		}
+
+		public int getWidth() {
+			return mWidth;
+		}
+
+		public int getHeight() {
+			return mHeight;
+		}
+
+		public int[] getPixels() {
+			return mPixels;
+		}
+	}
+
+	/**
+	 * The weights with which source pixels contribute to target pixels along one axis.
+	 */
+	private static final class AxisWeights {
+		/**
+		 * The first source index contributing to each target index.
+		 */
+		private int[] mFirst;
+		/**
+		 * The start of the weights of each target index in mWeights.
+		 */
+		private int[] mWeightOffsets;
+		/**
+		 * The weights of the contributing source indices, normalized to sum up to 1 for each target index.
+		 */
+		private float[] mWeights;
+
+		/**
+		 * Calculate the weights for an axis.
+		 *
+		 * @param sourceSize The source size.
+		 * @param targetSize The target size.
+		 */
+		private AxisWeights(final int sourceSize, final int targetSize) {
+			double ratio = sourceSize / (double) targetSize;
+			mFirst = new int[targetSize];
+			mWeightOffsets = new int[targetSize + 1];
+			// Each target index covers its own source indices plus at most one shared with the previous index.
+			mWeights = new float[sourceSize + targetSize];
+
+			int offset = 0;
+			for (int i = 0; i < targetSize; i++) {
+				double start = i * ratio;
+				double end = Math.min((i + 1) * ratio, sourceSize);
+				mFirst[i] = (int) start;
+				mWeightOffsets[i] = offset;
+				for (int j = (int) start; j < end; j++) {
+					mWeights[offset++] = (float) ((Math.min(j + 1, end) - Math.max(j, start)) / ratio);
+				}
+			}
+			mWeightOffsets[targetSize] = offset;
+		}
+	}
+}
@@ -2,24 +2,29 @@ package de.eisfeldj.augendiagnosefx.util.imagefile;
 
 import java.io.File;
 import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import de.eisfeldj.augendiagnosefx.util.Logger;
 import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
 import de.eisfeldj.augendiagnosefx.util.ResourceUtil;
 import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.eisfeldj.augendiagnosefx.util.imagefile.OverlayMeshRenderer.Quality;
 
-import javafx.scene.SnapshotParameters;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
-import javafx.scene.effect.Blend;
 import javafx.scene.effect.BlendMode;
-import javafx.scene.effect.ColorInput;
-import javafx.scene.effect.DisplacementMap;
-import javafx.scene.effect.FloatMap;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.image.WritablePixelFormat;
 import javafx.scene.paint.Color;
 
@@ -60,20 +65,22 @@ public final class ImageUtil {
 	 * The size of a byte.
 	 */
 	private static final int BYTE = 0xFF;
-
 	/**
-	 * A cache of one overlay - to prevent frequent recalculation while sliding brightness and contrast.
+	 * The maximum size of the pixel buffer of a strip (in bytes) when rendering images in full resolution.
 	 */
-	// JAVADOC:OFF
-	private static Image mCachedOverlay;
-	private static Integer mCachedOverlayType = null;
-	private static RightLeft mCachedOverlaySide;
-	private static Color mCachedOverlayColor;
-	private static float mCachedPupilSize;
-	private static float mCachedPupilXOffset;
-	private static float mCachedPupilYOffset;
+	private static final int STRIP_BUFFER_SIZE = 1 << 22;
 
-	// JAVADOC:ON
+	/**
+	 * The executor rotating images loaded in the background.
+	 */
+	private static final ExecutorService ROTATION_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "ImageUtil-Rotation");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	/**
 	 * Do not allow instantiation.
@@ -83,7 +90,9 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Get an image from a file.
+	 * Get an image from a file. Images are rotated according to their EXIF orientation, without use of Canvas.
+	 * Except for full resolution, images without rotation are loaded in the background. Rotated images are loaded
+	 * synchronously - use getImageInBackground to load them in the background.
 	 *
 	 * @param file
 	 *            The image file.
@@ -92,69 +101,286 @@ public final class ImageUtil {
 	 * @return the image.
 	 */
 	public static Image getImage(final File file, final Resolution resolution) {
-		URL url = null;
-		try {
-			url = file.toURI().toURL();
-		}
-		catch (MalformedURLException e) {
-			Logger.error("Could not convert to URL", e);
-			throw new RuntimeException(e);
-		}
-
-		int maxSize = resolution == Resolution.THUMB
-				? PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE)
-				: PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+		return getImage(file, resolution, true);
+	}
 
+	/**
+	 * Get an image from a file. Images are rotated according to their EXIF orientation, without use of Canvas.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @param inBackground
+	 *            Flag indicating if an image without rotation should be loaded in the background (except for full
+	 *            resolution). If false, the image is fully loaded when returned, which is appropriate for calls outside
+	 *            the FX application thread.
+	 * @return the image.
+	 */
+	public static Image getImage(final File file, final Resolution resolution, final boolean inBackground) {
+		String url = getUrl(file);
+		int maxSize = getMaxSize(resolution);
 		int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
 
 		if (rotation == 0) {
 			if (resolution == Resolution.FULL) {
-				return new Image(url.toExternalForm());
+				return new Image(url);
 			}
 			else {
-				return new Image(url.toExternalForm(), maxSize, maxSize, true, true, true);
+				return new Image(url, maxSize, maxSize, true, true, inBackground);
 			}
 		}
+		else if (resolution == Resolution.FULL) {
+			// Full resolution is loaded in the foreground anyway.
+			return getRotatedImage(new Image(url), rotation);
+		}
 		else {
-			// need to load in foreground and apply rotation.
-			Image image;
-			if (resolution == Resolution.FULL) {
-				image = new Image(url.toExternalForm());
-			}
-			else {
-				image = new Image(url.toExternalForm(), maxSize, maxSize, true, true);
+			return getRotatedImage(new Image(url, maxSize, maxSize, true, true), rotation);
+		}
+	}
+
+	/**
+	 * Load an image from a file in the background, rotated according to its EXIF orientation. Must be called in the
+	 * FX application thread.
+	 *
+	 * <p>
+	 * The returned image is the image decoded in the background, and reports progress and errors as any image loaded
+	 * in the background. Once it is loaded, a rotated copy is created in a separate thread, where no other thread can
+	 * see it. The final image is passed to the listener in the FX application thread. Without rotation, this is the
+	 * returned image itself.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param resolution
+	 *            Indicator of the resolution in which the image should be returned.
+	 * @param listener
+	 *            The listener notified in the FX application thread when the final image is available or loading has
+	 *            failed.
+	 * @return the image reporting the progress of decoding.
+	 */
+	public static Image getImageInBackground(final File file, final Resolution resolution,
+			final ImageLoadListener listener) {
+		String url = getUrl(file);
+		final int rotation = JpegMetadataUtil.getExifOrientationAngle(file);
+		final Image source = resolution == Resolution.FULL
+				? new Image(url, true)
+				: new Image(url, getMaxSize(resolution), getMaxSize(resolution), true, true, true);
+
+		if (source.isError() || source.getProgress() == 1) {
+			// Notify only after the image has been returned.
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					if (source.isError()) {
+						notifyLoadFailed(file, source.getException(), listener);
+					}
+					else {
+						publishImage(file, source, rotation, listener);
+					}
+				}
+			});
+		}
+		else {
+			source.progressProperty().addListener(new ChangeListener<Number>() {
+				@Override
+				public void changed(final ObservableValue<? extends Number> observable, final Number oldValue,
+						final Number newValue) {
+					if (newValue.doubleValue() == 1 && !source.isError()) {
+						source.progressProperty().removeListener(this);
+						publishImage(file, source, rotation, listener);
+					}
+				}
+			});
+			source.errorProperty().addListener(new ChangeListener<Boolean>() {
+				@Override
+				public void changed(final ObservableValue<? extends Boolean> observable, final Boolean oldValue,
+						final Boolean newValue) {
+					if (newValue) {
+						source.errorProperty().removeListener(this);
+						notifyLoadFailed(file, source.getException(), listener);
+					}
+				}
+			});
+		}
+		return source;
+	}
+
+	/**
+	 * Pass a loaded image to the listener, after rotating it in the rotation thread if required.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param source
+	 *            The loaded image, without rotation.
+	 * @param rotation
+	 *            The rotation angle.
+	 * @param listener
+	 *            The listener.
+	 */
+	private static void publishImage(final File file, final Image source, final int rotation,
+			final ImageLoadListener listener) {
+		if (rotation == 0) {
+			listener.onImageLoaded(source);
+			return;
+		}
+
+		ROTATION_EXECUTOR.execute(new Runnable() {
+			@Override
+			public void run() {
+				final Image rotatedImage;
+				try {
+					rotatedImage = getRotatedImage(source, rotation);
+				}
+				catch (RuntimeException e) {
+					Platform.runLater(new Runnable() {
+						@Override
+						public void run() {
+							notifyLoadFailed(file, e, listener);
+						}
+					});
+					return;
+				}
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						listener.onImageLoaded(rotatedImage);
+					}
+				});
 			}
+		});
+	}
+
+	/**
+	 * Log a failure of loading an image and notify the listener.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @param e
+	 *            The exception.
+	 * @param listener
+	 *            The listener.
+	 */
+	private static void notifyLoadFailed(final File file, final Exception e, final ImageLoadListener listener) {
+		Logger.error("Failed to load image " + file.getName(), e);
+		listener.onImageLoadFailed(e);
+	}
+
+	/**
+	 * Get the URL of an image file.
+	 *
+	 * @param file
+	 *            The image file.
+	 * @return The URL in external form.
+	 */
+	private static String getUrl(final File file) {
+		try {
+			return file.toURI().toURL().toExternalForm();
+		}
+		catch (MalformedURLException e) {
+			Logger.error("Could not convert to URL", e);
+			throw new RuntimeException(e);
+		}
+	}
 
-			double width = image.getWidth();
-			double height = image.getHeight();
+	/**
+	 * Get the maximum size of an image in a given resolution.
+	 *
+	 * @param resolution
+	 *            Indicator of the resolution.
+	 * @return The maximum width and height.
+	 */
+	private static int getMaxSize(final Resolution resolution) {
+		return resolution == Resolution.THUMB
+				? PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE)
+				: PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_MAX_BITMAP_SIZE);
+	}
+
+	/**
+	 * Get a rotated copy of an image.
+	 *
+	 * @param image
+	 *            The image (fully loaded).
+	 * @param rotation
+	 *            The rotation angle (90, 180 or 270 degrees clockwise).
+	 * @return The rotated image.
+	 */
+	private static Image getRotatedImage(final Image image, final int rotation) {
+		int width = (int) image.getWidth();
+		int height = (int) image.getHeight();
+		WritableImage result = isTransposingRotation(rotation)
+				? new WritableImage(height, width) : new WritableImage(width, height);
+		writeRotatedPixels(image, result, rotation);
+		return result;
+	}
+
+	/**
+	 * Check if a rotation angle swaps width and height.
+	 *
+	 * @param rotation
+	 *            The rotation angle.
+	 * @return true if width and height are swapped.
+	 */
+	protected static boolean isTransposingRotation(final int rotation) {
+		return rotation == 90 || rotation == 270; // MAGIC_NUMBER
+	}
+
+	/**
+	 * Write the pixels of an image rotated into a target image. The image is processed in strips of rows, so that
+	 * apart from source and target only the memory of one strip is required.
+	 *
+	 * @param source
+	 *            The source image (fully loaded).
+	 * @param target
+	 *            The target image, having the rotated size.
+	 * @param rotation
+	 *            The rotation angle (90, 180 or 270 degrees clockwise).
+	 */
+	private static void writeRotatedPixels(final Image source, final WritableImage target, final int rotation) {
+		int width = (int) source.getWidth();
+		int height = (int) source.getHeight();
+		WritablePixelFormat<IntBuffer> pixelFormat = PixelFormat.getIntArgbInstance();
+		PixelReader pixelReader = source.getPixelReader();
+		PixelWriter pixelWriter = target.getPixelWriter();
 
-			Canvas canvas;
-			GraphicsContext gc;
+		int stripRows = Math.max(1, Math.min(height, STRIP_BUFFER_SIZE / (FOUR * width)));
+		int[] sourceBuffer = new int[width * stripRows];
+		int[] targetBuffer = new int[width * stripRows];
+
+		for (int top = 0; top < height; top += stripRows) {
+			int rows = Math.min(stripRows, height - top);
+			pixelReader.getPixels(0, top, width, rows, pixelFormat, sourceBuffer, 0, width);
 
 			switch (rotation) {
 			case 90: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, 1, -1, 0, height, 0);
+				// (x, y) moves to (height - 1 - y, x), so that the strip becomes a block of columns.
+				for (int y = 0; y < rows; y++) {
+					for (int x = 0; x < width; x++) {
+						targetBuffer[x * rows + rows - 1 - y] = sourceBuffer[y * width + x];
+					}
+				}
+				pixelWriter.setPixels(height - top - rows, 0, rows, width, pixelFormat, targetBuffer, 0, rows);
 				break;
 			case 180: // MAGIC_NUMBER
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(-1, 0, 0, -1, width, height);
+				// (x, y) moves to (width - 1 - x, height - 1 - y).
+				for (int y = 0; y < rows; y++) {
+					for (int x = 0; x < width; x++) {
+						targetBuffer[(rows - 1 - y) * width + width - 1 - x] = sourceBuffer[y * width + x];
+					}
+				}
+				pixelWriter.setPixels(0, height - top - rows, width, rows, pixelFormat, targetBuffer, 0, width);
 				break;
 			case 270: // MAGIC_NUMBER
-				canvas = new Canvas(height, width);
-				gc = canvas.getGraphicsContext2D();
-				gc.setTransform(0, -1, 1, 0, 0, width);
+				// (x, y) moves to (y, width - 1 - x), so that the strip becomes a block of columns.
+				for (int y = 0; y < rows; y++) {
+					for (int x = 0; x < width; x++) {
+						targetBuffer[(width - 1 - x) * rows + y] = sourceBuffer[y * width + x];
+					}
+				}
+				pixelWriter.setPixels(top, 0, rows, width, pixelFormat, targetBuffer, 0, rows);
 				break;
 			default:
-				canvas = new Canvas(width, height);
-				gc = canvas.getGraphicsContext2D();
+				pixelWriter.setPixels(0, top, width, rows, pixelFormat, sourceBuffer, 0, width);
 			}
-
-			gc.drawImage(image, 0, 0);
-
-			return canvas.snapshot(null, null);
 		}
 	}
 
@@ -222,7 +448,7 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Retrieve an overlay image.
+	 * Retrieve the pixels of an overlay image in the given color.
 	 *
 	 * @param overlayType
 	 *            The overlay type.
@@ -231,40 +457,19 @@ public final class ImageUtil {
 	 * @param color
 	 *            The overlay color.
 	 *
-	 * @return The overlay image.
+	 * @return The premultiplied ARGB pixels of the overlay (not to be modified).
 	 */
-	private static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color) {
-		URL imageUrl = ClassLoader.getSystemResource("overlay/" + getOverlayFileName(overlayType, side));
-
-		Image image = new Image(imageUrl.toExternalForm());
-
-		Canvas canvas = new Canvas(OVERLAY_SIZE, OVERLAY_SIZE);
-		Color colorNoAlpha = new Color(color.getRed(), color.getGreen(), color.getBlue(), 1);
-
-		Blend effect = new Blend(
-				BlendMode.SRC_ATOP,
-				null,
-				new ColorInput(
-						0,
-						0,
-						OVERLAY_SIZE,
-						OVERLAY_SIZE,
-						colorNoAlpha));
-
+	private static int[] getOverlayPixels(final int overlayType, final RightLeft side, final Color color) {
 		// Type 2 is not changed in color.
-		if (overlayType != 2) {
-			canvas.getGraphicsContext2D().setEffect(effect);
-		}
-		canvas.getGraphicsContext2D().setGlobalAlpha(color.getOpacity());
-		canvas.getGraphicsContext2D().drawImage(image, 0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
-		SnapshotParameters parameters = new SnapshotParameters();
-		parameters.setFill(Color.TRANSPARENT);
-
-		return canvas.snapshot(parameters, null);
+		return OverlayAssets.getOverlayPixels(getOverlayFileName(overlayType, side), overlayType != 2, color,
+				OVERLAY_SIZE);
 	}
 
 	/**
-	 * Retrieve an overlay image, warped due to pupil size and position.
+	 * Retrieve an overlay image, warped due to pupil size and position via OverlayMesh, in the same way as in the
+	 * Android app. Mesh size and sampling quality are configured via preferences. Results are kept in the
+	 * OverlayCache, to prevent recalculation while sliding brightness and contrast or switching between overlays and
+	 * photos. As no Canvas is used, this may be called outside the FX application thread.
 	 *
 	 * @param overlayType
 	 *            The overlay type.
@@ -282,181 +487,85 @@ public final class ImageUtil {
 	 */
 	private static Image getOverlayImage(final int overlayType, final RightLeft side, final Color color,
 			final float pupilXOffset, final float pupilYOffset, final float pupilSize) {
-		if (mCachedOverlayType != null && overlayType == mCachedOverlayType // BOOLEAN_EXPRESSION_COMPLEXITY
-				&& side == mCachedOverlaySide && color.equals(mCachedOverlayColor)
-				&& pupilXOffset == mCachedPupilXOffset && pupilYOffset == mCachedPupilYOffset && pupilSize == mCachedPupilSize) {
-			return mCachedOverlay;
-		}
-
-		Image originalImage = getOverlayImage(overlayType, side, color);
-		Canvas canvas = new Canvas(OVERLAY_SIZE, OVERLAY_SIZE);
-
-		int overlayHalfSize = OVERLAY_SIZE / 2;
-		int irisRadius = (int) (OVERLAY_CIRCLE_RATIO * overlayHalfSize);
-		long irisRadiusSquare = irisRadius * irisRadius;
-		float pupilXCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilXOffset / (1 - pupilSize);
-		float pupilYCenter = OVERLAY_SIZE * OVERLAY_CIRCLE_RATIO * pupilYOffset / (1 - pupilSize);
-		float origPupilSize = ORIG_PUPIL_SIZES[overlayType];
-		float linTransM = pupilSize == 1 ? 0 : (1 - origPupilSize) / (1 - pupilSize);
-		float linTransB = 1 - linTransM;
-
-		FloatMap floatMap = new FloatMap(OVERLAY_SIZE, OVERLAY_SIZE);
-		for (int x = 0; x < OVERLAY_SIZE; x++) {
-			int xPos = x - overlayHalfSize;
-			float xPosP = xPos - pupilXCenter;
-
-			for (int y = 0; y < OVERLAY_SIZE; y++) {
-				int yPos = y - overlayHalfSize;
-				float yPosP = yPos - pupilYCenter;
-
-				long centerDistSquare = xPos * xPos + yPos * yPos;
-				float pupilCenterDistSquare = xPosP * xPosP + yPosP * yPosP;
-
-				if (centerDistSquare >= irisRadiusSquare) {
-					floatMap.setSamples(x, y, 0, 0);
-				}
-				else if (pupilCenterDistSquare == 0) {
-					floatMap.setSamples(x, y, -xPos / OVERLAY_SIZE, -yPos / OVERLAY_SIZE);
-				}
-				else {
-					// Determine corresponding iris boundary point via quadratic equation
-					float plusMinusTerm = (float) Math.sqrt(2 * xPosP * yPosP * pupilXCenter * pupilYCenter
-							+ irisRadius * irisRadius * pupilCenterDistSquare
-							- (pupilXCenter * pupilXCenter * yPosP * yPosP)
-							- (pupilYCenter * pupilYCenter * xPosP * xPosP));
-
-					float xBound = (yPosP * yPosP * pupilXCenter - yPosP * xPosP * pupilYCenter + xPosP * plusMinusTerm) / pupilCenterDistSquare;
-					float yBound = (xPosP * xPosP * pupilYCenter - xPosP * yPosP * pupilXCenter + yPosP * plusMinusTerm) / pupilCenterDistSquare;
-
-					// distance of the current point from the center - 1 corresponds to iris boundary
-					float relativeDistance = (float) Math.sqrt(pupilCenterDistSquare
-							/ ((xBound - pupilXCenter) * (xBound - pupilXCenter) + (yBound - pupilYCenter) * (yBound - pupilYCenter)));
-
-					float sourceRelativeDistance = linTransM * relativeDistance + linTransB;
-					if (relativeDistance < pupilSize) {
-						sourceRelativeDistance -= linTransB * Math.pow(1 - relativeDistance / pupilSize, 1.1f); // MAGIC_NUMBER
-					}
-
-					float sourceX = xBound * sourceRelativeDistance;
-					float sourceY = yBound * sourceRelativeDistance;
+		int meshSize = Math.max(1, PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_OVERLAY_MESH_SIZE));
+		Quality quality =
+				PreferenceUtil.getPreferenceBoolean(PreferenceUtil.KEY_OVERLAY_HIGH_QUALITY) ? Quality.HIGH : Quality.FAST;
+		OverlayCache.Key key =
+				new OverlayCache.Key(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize, meshSize, quality);
+		Image cachedOverlay = OverlayCache.get(key);
+		if (cachedOverlay != null) {
+			return cachedOverlay;
+		}
 
-					floatMap.setSamples(x, y, (sourceX - xPos) / OVERLAY_SIZE, (sourceY - yPos) / OVERLAY_SIZE);
-				}
+		int[] originalPixels = getOverlayPixels(overlayType, side, color);
 
-			}
-		}
-		DisplacementMap displacementMap = new DisplacementMap(floatMap);
-		canvas.getGraphicsContext2D().setEffect(displacementMap);
-		canvas.getGraphicsContext2D().drawImage(originalImage, 0, 0, OVERLAY_SIZE, OVERLAY_SIZE);
-
-		SnapshotParameters parameters = new SnapshotParameters();
-		parameters.setFill(Color.TRANSPARENT);
-
-		mCachedOverlay = canvas.snapshot(parameters, null);
-		mCachedOverlayType = overlayType;
-		mCachedOverlaySide = side;
-		mCachedOverlayColor = color;
-		mCachedPupilSize = pupilSize;
-		mCachedPupilXOffset = pupilXOffset;
-		mCachedPupilYOffset = pupilYOffset;
-		return mCachedOverlay;
+		OverlayMesh mesh = new OverlayMesh(OVERLAY_SIZE, meshSize, OVERLAY_CIRCLE_RATIO, ORIG_PUPIL_SIZES[overlayType],
+				pupilSize, pupilXOffset, pupilYOffset);
+		WritableImage overlay = new WritableImage(OVERLAY_SIZE, OVERLAY_SIZE);
+		overlay.getPixelWriter().setPixels(0, 0, OVERLAY_SIZE, OVERLAY_SIZE, PixelFormat.getIntArgbPreInstance(),
+				new OverlayMeshRenderer(mesh, OVERLAY_SIZE).apply(originalPixels, quality), 0, OVERLAY_SIZE);
+		OverlayCache.put(key, overlay);
+		return overlay;
 	}
 
 	/**
-	 * Get an image with a displayed overlay.
+	 * Get an image with changed color settings. As no Canvas is used, this may be called outside the FX application
+	 * thread.
 	 *
 	 * @param baseImage
-	 *            the base image.
-	 * @param overlayType
-	 *            The overlay type.
-	 * @param side
-	 *            The side of the eye.
-	 * @param color
-	 *            The overlay color.
-	 * @param xPosition
-	 *            The x position of the overlay.
-	 * @param yPosition
-	 *            The y position of the overlay.
-	 * @param scaleFactor
-	 *            The scale factor of the overlay.
-	 * @param pupilXOffset
-	 *            The horizontal offset of the pupil.
-	 * @param pupilYOffset
-	 *            The vertical offset of the pupil.
-	 * @param pupilSize
-	 *            The relative size of the pupil.
+	 *            the base image (fully loaded).
 	 * @param brightness
 	 *            The brightness of the image.
 	 * @param contrast
-	 *            The contrast of the imabe.
+	 *            The contrast of the image.
 	 * @param saturation
 	 *            The saturation of the image.
 	 * @param colorTemperature
-	 *            The color temperature of the imabe.
-	 * @param resolution
-	 *            Indicator of the resolution of the image.
-	 * @return The image with overlay.
+	 *            The color temperature of the image.
+	 * @return The image with changed colors, or the base image if the colors are unchanged.
 	 */
-	private static Image getImageWithOverlay( // SUPPRESS_CHECKSTYLE Too many parameters
-			final Image baseImage, final Integer overlayType, final RightLeft side,
-			final Color color, final float xPosition, final float yPosition, final float scaleFactor,
-			final float pupilXOffset, final float pupilYOffset, final float pupilSize,
-			final float brightness, final float contrast,
-			final float saturation, final float colorTemperature, final Resolution resolution) {
-		boolean hasOriginalColors = brightness == 0 && contrast == 1 && saturation == 1 && colorTemperature == 0;
-		if (hasOriginalColors && overlayType == null) {
+	public static Image getImageWithColorSettings(final Image baseImage, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature) {
+		if (brightness == 0 && contrast == 1 && saturation == 1 && colorTemperature == 0) {
 			return baseImage;
 		}
 
 		int width = (int) baseImage.getWidth();
 		int height = (int) baseImage.getHeight();
-		double overlaySize = Math.max(width, height) * scaleFactor;
 
-		// logic of brightness and contrast does not work very well. Therefore, simulating logic from android
-		// OverlayPinghImageView.changeBitmapContrastBrightness
-		Canvas canvas = new Canvas(width, height);
-		GraphicsContext gc = canvas.getGraphicsContext2D();
+		WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
+		byte[] buffer = new byte[FOUR * width * height];
 
-		if (hasOriginalColors) {
-			gc.drawImage(baseImage, 0, 0, width, height);
-		}
-		else {
-			Color temperatureColor = convertTemperatureToColor(colorTemperature);
-			float factorBlue = 1 / (float) temperatureColor.getBlue();
-			float factorGreen = 1 / (float) temperatureColor.getGreen();
-			float factorRed = 1 / (float) temperatureColor.getRed();
-			float correctionFactor = (float) Math.pow(factorRed * factorGreen * factorBlue, -1f / 3); // MAGIC_NUMBER
-			factorBlue *= correctionFactor * contrast;
-			factorGreen *= correctionFactor * contrast;
-			factorRed *= correctionFactor * contrast;
-			float offset = BYTE / 2f * (1 - contrast + brightness * contrast + brightness);
-			float oppositeSaturation = (1 - saturation) / 2;
-
-			WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
-			byte[] buffer = new byte[FOUR * width * height];
-
-			baseImage.getPixelReader().getPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
-
-			for (int i = 0; i < buffer.length; i += FOUR) {
-				float blueIn = (buffer[i] & BYTE) * factorBlue;
-				float greenIn = (buffer[i + 1] & BYTE) * factorGreen;
-				float redIn = (buffer[i + 2] & BYTE) * factorRed;
-
-				buffer[i] = toColorByte(saturation * blueIn + oppositeSaturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 1] = toColorByte(oppositeSaturation * blueIn + saturation * greenIn + oppositeSaturation * redIn + offset);
-				buffer[i + 2] = toColorByte(oppositeSaturation * blueIn + oppositeSaturation * greenIn + saturation * redIn + offset);
-			}
+		baseImage.getPixelReader().getPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
+		new ColorAdjustment(brightness, contrast, saturation, colorTemperature).apply(buffer, width, height);
 
-			gc.getPixelWriter().setPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
-		}
+		WritableImage result = new WritableImage(width, height);
+		result.getPixelWriter().setPixels(0, 0, width, height, pixelFormat, buffer, 0, FOUR * width);
+		return result;
+	}
 
-		if (overlayType != null) {
-			Image overlayImage = getOverlayImage(overlayType, side, color, pupilXOffset, pupilYOffset, pupilSize);
-			gc.setEffect(null);
-			gc.setGlobalBlendMode(BlendMode.SRC_OVER);
-			gc.drawImage(overlayImage, xPosition * width - overlaySize / 2,
-					yPosition * height - overlaySize / 2, overlaySize, overlaySize);
-		}
+	/**
+	 * Get an image with a displayed overlay. Must be called in the FX application thread.
+	 *
+	 * @param baseImage
+	 *            the base image.
+	 * @param overlayPosition
+	 *            The overlay and its position.
+	 * @return The image with overlay.
+	 */
+	private static Image getImageWithOverlay(final Image baseImage, final OverlayPosition overlayPosition) {
+		int width = (int) baseImage.getWidth();
+		int height = (int) baseImage.getHeight();
+		double overlaySize = Math.max(width, height) * overlayPosition.mScaleFactor;
+
+		Canvas canvas = new Canvas(width, height);
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.drawImage(baseImage, 0, 0, width, height);
+
+		gc.setEffect(null);
+		gc.setGlobalBlendMode(BlendMode.SRC_OVER);
+		gc.drawImage(overlayPosition.mOverlayImage, overlayPosition.mXPosition * width - overlaySize / 2,
+				overlayPosition.mYPosition * height - overlaySize / 2, overlaySize, overlaySize);
 
 //		PupilAndIrisDetector detector = new PupilAndIrisDetector(baseImage);
 //		gc.setStroke(Color.RED);
@@ -474,39 +583,139 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Convert a number into a byte (ensuring the appropriate range).
+	 * Get an eye photo image with a displayed overlay, positioned via the metadata. Must be called in the FX
+	 * application thread.
 	 *
-	 * @param number The number.
-	 * @return The resulting byte.
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with overlay.
+	 */
+	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
+			final Integer overlayType, final Color color, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature, final Resolution resolution) {
+		if (resolution == Resolution.FULL) {
+			return getFullResolutionImageForDisplay(eyePhoto, getOverlayPosition(eyePhoto, overlayType, color),
+					brightness, contrast, saturation, colorTemperature);
+		}
+		Image image = getColoredImageForDisplay(eyePhoto, brightness, contrast, saturation, colorTemperature, resolution);
+		return getOverlayedImageForDisplay(eyePhoto, image, overlayType, color, resolution);
+	}
+
+	/**
+	 * Get an eye photo image with the given color settings, as first step of the display. May be called outside the
+	 * FX application thread.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo image.
+	 * @param brightness
+	 *            The brightness of the image.
+	 * @param contrast
+	 *            The contrast of the image.
+	 * @param saturation
+	 *            The saturation of the image.
+	 * @param colorTemperature
+	 *            The color temperature of the image.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with changed colors.
 	 */
-	private static byte toColorByte(final float number) {
-		return (byte) Math.min(BYTE, Math.max(0, number));
+	public static Image getColoredImageForDisplay(final EyePhoto eyePhoto, final float brightness,
+			final float contrast, final float saturation, final float colorTemperature, final Resolution resolution) {
+		if (resolution == Resolution.FULL) {
+			return getFullResolutionImageForDisplay(eyePhoto, null, brightness, contrast, saturation, colorTemperature);
+		}
+		Image image = eyePhoto.getImage(resolution);
+		return getImageWithColorSettings(image, brightness, contrast, saturation, colorTemperature);
 	}
 
 	/**
-	 * Convert a temperature into a color value representing the color of this temperature.
+	 * Add the overlay to an eye photo image, positioned via the metadata, as second step of the display. Must be
+	 * called in the FX application thread. In full resolution, the image is returned unchanged, as the overlay is
+	 * drawn already by getFullResolutionImageForDisplay.
 	 *
-	 * @param temperature The temperature value (in the range -1..1).
-	 * @return The color value.
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param coloredImage
+	 *            The image of the eye photo, with changed colors.
+	 * @param overlayType
+	 *            The overlay type.
+	 * @param color
+	 *            The overlay color.
+	 * @param resolution
+	 *            Indicator of the resolution of the image.
+	 * @return The image with overlay.
 	 */
-	private static Color convertTemperatureToColor(final double temperature) {
-		if (temperature >= 0) {
-			return Color.rgb((int) (BYTE - 150 * temperature), (int) (BYTE - 105 * temperature), BYTE); // MAGIC_NUMBER
+	public static Image getOverlayedImageForDisplay(final EyePhoto eyePhoto, final Image coloredImage,
+			final Integer overlayType, final Color color, final Resolution resolution) {
+		if (resolution == Resolution.FULL) {
+			return coloredImage;
+		}
+		OverlayPosition overlayPosition = getOverlayPosition(eyePhoto, overlayType, color);
+		if (overlayPosition == null) {
+			return coloredImage;
 		}
 		else {
-			return Color.rgb(BYTE, (int) (BYTE + 80 * temperature), (int) (BYTE + 145 * temperature)); // MAGIC_NUMBER
+			return getImageWithOverlay(coloredImage, overlayPosition);
 		}
 	}
 
 	/**
-	 * Get an eye photo image with a displayed overlay, positioned via the metadata.
+	 * Get the overlay to be displayed on an eye photo, positioned via the metadata. As no Canvas is used, this may be
+	 * called outside the FX application thread.
 	 *
 	 * @param eyePhoto
-	 *            The eye photo image.
+	 *            The eye photo.
 	 * @param overlayType
 	 *            The overlay type.
 	 * @param color
 	 *            The overlay color.
+	 * @return The overlay and its position, or null if no overlay is to be displayed.
+	 */
+	public static OverlayPosition getOverlayPosition(final EyePhoto eyePhoto, final Integer overlayType,
+			final Color color) {
+		if (overlayType == null) {
+			return null;
+		}
+		JpegMetadata metadata = eyePhoto.getImageMetadata();
+		if (metadata == null || !metadata.hasOverlayPosition()) {
+			return null;
+		}
+
+		Image overlayImage;
+		if (metadata.getPupilSize() == null) {
+			overlayImage = getOverlayImage(overlayType, eyePhoto.getRightLeft(), color, 0, 0, 0.25f); // MAGIC_NUMBER
+		}
+		else {
+			overlayImage = getOverlayImage(overlayType, eyePhoto.getRightLeft(), color,
+					metadata.getPupilXOffset(), metadata.getPupilYOffset(), metadata.getPupilSize());
+		}
+		return new OverlayPosition(overlayImage, metadata.getXCenter(), metadata.getYCenter(),
+				metadata.getOverlayScaleFactor());
+	}
+
+	/**
+	 * Get an eye photo image in full resolution with the given color settings and overlay. As full resolution does
+	 * not allow the use of Canvas, the image is processed in strips of rows, so that apart from source and target
+	 * image only the memory of one strip is required. May be called outside the FX application thread.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param overlayPosition
+	 *            The overlay and its position, or null if no overlay is to be displayed.
 	 * @param brightness
 	 *            The brightness of the image.
 	 * @param contrast
@@ -515,36 +724,43 @@ public final class ImageUtil {
 	 *            The saturation of the image.
 	 * @param colorTemperature
 	 *            The color temperature of the image.
-	 * @param resolution
-	 *            Indicator of the resolution of the image.
-	 * @return The image with overlay.
+	 * @return The image with changed colors and overlay.
 	 */
-	public static Image getImageForDisplay(final EyePhoto eyePhoto, // SUPPRESS_CHECKSTYLE Too many parameters
-			final Integer overlayType, final Color color, final float brightness, final float contrast,
-			final float saturation, final float colorTemperature, final Resolution resolution) {
-		Image image = eyePhoto.getImage(resolution);
-		JpegMetadata metadata = eyePhoto.getImageMetadata();
-		if (resolution == Resolution.FULL) {
-			// Full resolution does not allow use of Canvas to set brightness, contrast and overlay.
-			return image;
-		}
-		else if (metadata != null && metadata.hasOverlayPosition() && overlayType != null) {
-			if (metadata.getPupilSize() == null) {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
-						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
-						0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
+	public static Image getFullResolutionImageForDisplay(final EyePhoto eyePhoto,
+			final OverlayPosition overlayPosition, final float brightness, final float contrast,
+			final float saturation, final float colorTemperature) {
+		Image baseImage = eyePhoto.getImage(Resolution.FULL);
+		boolean hasOriginalColors = brightness == 0 && contrast == 1 && saturation == 1 && colorTemperature == 0;
+		if (hasOriginalColors && overlayPosition == null) {
+			return baseImage;
+		}
+		ColorAdjustment colorAdjustment =
+				hasOriginalColors ? null : new ColorAdjustment(brightness, contrast, saturation, colorTemperature);
+
+		int width = (int) baseImage.getWidth();
+		int height = (int) baseImage.getHeight();
+		WritablePixelFormat<ByteBuffer> pixelFormat = PixelFormat.getByteBgraInstance();
+		PixelReader pixelReader = baseImage.getPixelReader();
+		WritableImage result = new WritableImage(width, height);
+		PixelWriter pixelWriter = result.getPixelWriter();
+		OverlayPixels overlayPixels = overlayPosition == null ? null : new OverlayPixels(overlayPosition, width, height);
+
+		int stripRows = Math.max(1, Math.min(height, STRIP_BUFFER_SIZE / (FOUR * width)));
+		byte[] buffer = new byte[FOUR * width * stripRows];
+
+		for (int top = 0; top < height; top += stripRows) {
+			int rows = Math.min(stripRows, height - top);
+			pixelReader.getPixels(0, top, width, rows, pixelFormat, buffer, 0, FOUR * width);
+			if (colorAdjustment != null) {
+				colorAdjustment.apply(buffer, width, rows);
 			}
-			else {
-				return ImageUtil.getImageWithOverlay(image, overlayType, eyePhoto.getRightLeft(), color,
-						metadata.getXCenter(), metadata.getYCenter(), metadata.getOverlayScaleFactor(),
-						metadata.getPupilXOffset(), metadata.getPupilYOffset(), metadata.getPupilSize(),
-						brightness, contrast, saturation, colorTemperature, resolution);
+			if (overlayPixels != null) {
+				overlayPixels.drawOnStrip(buffer, top, rows);
 			}
+			pixelWriter.setPixels(0, top, width, rows, pixelFormat, buffer, 0, FOUR * width);
 		}
-		else {
-			return ImageUtil.getImageWithOverlay(image, null, eyePhoto.getRightLeft(), color,
-					0, 0, 1, 0, 0, 0.25f, brightness, contrast, saturation, colorTemperature, resolution); // MAGIC_NUMBER
-		}
+
+		return result;
 	}
 
 	/**
@@ -578,6 +794,230 @@ public final class ImageUtil {
 		return canvas.snapshot(null, null);
 	}
 
+	/**
+	 * An overlay prepared for display on an eye photo, together with its position.
+	 */
+	public static final class OverlayPosition {
+		/**
+		 * The overlay image, with color and pupil deformation applied.
+		 */
+		private final Image mOverlayImage;
+		/**
+		 * The relative x position of the overlay center.
+		 */
+		private final float mXPosition;
+		/**
+		 * The relative y position of the overlay center.
+		 */
+		private final float mYPosition;
+		/**
+		 * The size of the overlay relative to the larger side of the image.
+		 */
+		private final float mScaleFactor;
+
+		/**
+		 * Constructor for the overlay position.
+		 *
+		 * @param overlayImage
+		 *            The overlay image.
+		 * @param xPosition
+		 *            The relative x position of the overlay center.
+		 * @param yPosition
+		 *            The relative y position of the overlay center.
+		 * @param scaleFactor
+		 *            The size of the overlay relative to the larger side of the image.
+		 */
+		private OverlayPosition(final Image overlayImage, final float xPosition, final float yPosition,
+				final float scaleFactor) {
+			mOverlayImage = overlayImage;
+			mXPosition = xPosition;
+			mYPosition = yPosition;
+			mScaleFactor = scaleFactor;
+		}
+	}
+
+	/**
+	 * The pixels of an overlay, to be drawn without Canvas on strips of a full resolution image. The overlay is scaled
+	 * with bilinear interpolation and drawn in mode SRC_OVER, as by Canvas.
+	 */
+	private static final class OverlayPixels {
+		/**
+		 * The premultiplied ARGB pixels of the overlay.
+		 */
+		private final int[] mPixels;
+		/**
+		 * The width of the overlay image.
+		 */
+		private final int mOverlayWidth;
+		/**
+		 * The height of the overlay image.
+		 */
+		private final int mOverlayHeight;
+		/**
+		 * The width of the target image.
+		 */
+		private final int mWidth;
+		/**
+		 * The left boundary of the overlay in target image coordinates.
+		 */
+		private final double mLeft;
+		/**
+		 * The upper boundary of the overlay in target image coordinates.
+		 */
+		private final double mTop;
+		/**
+		 * The size of the overlay in target image coordinates.
+		 */
+		private final double mSize;
+
+		/**
+		 * Prepare the overlay for drawing.
+		 *
+		 * @param overlayPosition
+		 *            The overlay and its position.
+		 * @param width
+		 *            The width of the target image.
+		 * @param height
+		 *            The height of the target image.
+		 */
+		private OverlayPixels(final OverlayPosition overlayPosition, final int width, final int height) {
+			Image overlayImage = overlayPosition.mOverlayImage;
+			mOverlayWidth = (int) overlayImage.getWidth();
+			mOverlayHeight = (int) overlayImage.getHeight();
+			mPixels = new int[mOverlayWidth * mOverlayHeight];
+			overlayImage.getPixelReader().getPixels(0, 0, mOverlayWidth, mOverlayHeight,
+					PixelFormat.getIntArgbPreInstance(), mPixels, 0, mOverlayWidth);
+
+			mWidth = width;
+			mSize = Math.max(width, height) * overlayPosition.mScaleFactor;
+			mLeft = overlayPosition.mXPosition * width - mSize / 2;
+			mTop = overlayPosition.mYPosition * height - mSize / 2;
+		}
+
+		/**
+		 * Draw the overlay on a strip of rows of the target image.
+		 *
+		 * @param buffer
+		 *            The BGRA pixels of the strip.
+		 * @param stripTop
+		 *            The first row of the strip in the target image.
+		 * @param rows
+		 *            The number of rows of the strip.
+		 */
+		private void drawOnStrip(final byte[] buffer, final int stripTop, final int rows) {
+			int minX = Math.max(0, (int) Math.floor(mLeft));
+			int maxX = Math.min(mWidth, (int) Math.ceil(mLeft + mSize));
+			int minY = Math.max(stripTop, (int) Math.floor(mTop));
+			int maxY = Math.min(stripTop + rows, (int) Math.ceil(mTop + mSize));
+			double scaleX = mOverlayWidth / mSize;
+			double scaleY = mOverlayHeight / mSize;
+
+			for (int y = minY; y < maxY; y++) {
+				double v = (y + 0.5 - mTop) * scaleY - 0.5; // MAGIC_NUMBER
+				int y0 = (int) Math.floor(v);
+				float fy = (float) (v - y0);
+				int index = FOUR * ((y - stripTop) * mWidth + minX);
+
+				for (int x = minX; x < maxX; x++, index += FOUR) {
+					double u = (x + 0.5 - mLeft) * scaleX - 0.5; // MAGIC_NUMBER
+					int x0 = (int) Math.floor(u);
+					float fx = (float) (u - x0);
+
+					int topLeft = getPixel(x0, y0);
+					int topRight = getPixel(x0 + 1, y0);
+					int bottomLeft = getPixel(x0, y0 + 1);
+					int bottomRight = getPixel(x0 + 1, y0 + 1);
+					if ((topLeft | topRight | bottomLeft | bottomRight) == 0) {
+						continue;
+					}
+
+					float alpha = interpolate(topLeft, topRight, bottomLeft, bottomRight, 24, fx, fy); // MAGIC_NUMBER
+					float remaining = 1 - alpha / BYTE;
+					buffer[index] = toByte(interpolate(topLeft, topRight, bottomLeft, bottomRight, 0, fx, fy)
+							+ (buffer[index] & BYTE) * remaining);
+					buffer[index + 1] = toByte(interpolate(topLeft, topRight, bottomLeft, bottomRight, 8, fx, fy) // MAGIC_NUMBER
+							+ (buffer[index + 1] & BYTE) * remaining);
+					buffer[index + 2] = toByte(interpolate(topLeft, topRight, bottomLeft, bottomRight, 16, fx, fy) // MAGIC_NUMBER
+							+ (buffer[index + 2] & BYTE) * remaining);
+				}
+			}
+		}
+
+		/**
+		 * Get a pixel of the overlay, transparent outside the overlay.
+		 *
+		 * @param x
+		 *            The x coordinate.
+		 * @param y
+		 *            The y coordinate.
+		 * @return The premultiplied ARGB value.
+		 */
+		private int getPixel(final int x, final int y) {
+			if (x < 0 || y < 0 || x >= mOverlayWidth || y >= mOverlayHeight) {
+				return 0;
+			}
+			return mPixels[y * mOverlayWidth + x];
+		}
+
+		/**
+		 * Interpolate one channel bilinearly between four pixels.
+		 *
+		 * @param topLeft
+		 *            The top left pixel.
+		 * @param topRight
+		 *            The top right pixel.
+		 * @param bottomLeft
+		 *            The bottom left pixel.
+		 * @param bottomRight
+		 *            The bottom right pixel.
+		 * @param shift
+		 *            The bit shift of the channel.
+		 * @param fx
+		 *            The horizontal weight of the right pixels.
+		 * @param fy
+		 *            The vertical weight of the bottom pixels.
+		 * @return The interpolated channel value.
+		 */
+		private static float interpolate(final int topLeft, final int topRight, final int bottomLeft, // SUPPRESS_CHECKSTYLE
+				final int bottomRight, final int shift, final float fx, final float fy) {
+			float top = (topLeft >>> shift & BYTE) * (1 - fx) + (topRight >>> shift & BYTE) * fx;
+			float bottom = (bottomLeft >>> shift & BYTE) * (1 - fx) + (bottomRight >>> shift & BYTE) * fx;
+			return top * (1 - fy) + bottom * fy;
+		}
+
+		/**
+		 * Convert a number into a byte, with rounding and ensuring the appropriate range.
+		 *
+		 * @param number
+		 *            The number.
+		 * @return The resulting byte.
+		 */
+		private static byte toByte(final float number) {
+			return (byte) Math.min(BYTE, Math.max(0, Math.round(number)));
+		}
+	}
+
+	/**
+	 * Listener notified when an image loaded via getImageInBackground is available.
+	 */
+	public interface ImageLoadListener {
+		/**
+		 * Callback called in the FX application thread when the image is loaded and rotated.
+		 *
+		 * @param image
+		 *            The loaded image.
+		 */
+		void onImageLoaded(Image image);
+
+		/**
+		 * Callback called in the FX application thread when the image could not be loaded.
+		 *
+		 * @param e
+		 *            The exception.
+		 */
+		void onImageLoadFailed(Exception e);
+	}
+
 	/**
 	 * Enumeration indicating the resolution with which the image should be displayed.
 	 */
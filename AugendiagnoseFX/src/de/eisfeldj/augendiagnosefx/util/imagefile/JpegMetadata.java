@@ -244,6 +244,42 @@ public final class JpegMetadata {
 		return mBrightness != null && mContrast != null;
 	}
 
+	/**
+	 * Store an iris and pupil position as overlay position. The position is stored only if it is plausible, i.e. if the
+	 * pupil radius is positive and smaller than the iris radius - so failed detections do not overwrite the stored
+	 * position.
+	 *
+	 * @param irisXCenter
+	 *            The horizontal center of the iris (in the interval [0,1]).
+	 * @param irisYCenter
+	 *            The vertical center of the iris (in the interval [0,1]).
+	 * @param irisRadius
+	 *            The radius of the iris (relative to the minimum of width and height).
+	 * @param pupilXCenter
+	 *            The horizontal center of the pupil (in the interval [0,1]).
+	 * @param pupilYCenter
+	 *            The vertical center of the pupil (in the interval [0,1]).
+	 * @param pupilRadius
+	 *            The radius of the pupil (relative to the minimum of width and height).
+	 * @return true if the position has been stored.
+	 */
+	public boolean setIrisPosition(final float irisXCenter, final float irisYCenter, final float irisRadius,
+			final float pupilXCenter, final float pupilYCenter, final float pupilRadius) {
+		if (!(pupilRadius > 0 && irisRadius > pupilRadius)) {
+			return false;
+		}
+		mXCenter = irisXCenter;
+		mYCenter = irisYCenter;
+		mOverlayScaleFactor = irisRadius * 8 / 3; // MAGIC_NUMBER
+
+		mPupilXOffset = (pupilXCenter - irisXCenter) / (2 * irisRadius);
+		mPupilYOffset = (pupilYCenter - irisYCenter) / (2 * irisRadius);
+		mPupilSize = pupilRadius / irisRadius;
+
+		removeFlag(FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY);
+		return true;
+	}
+
 	// JAVADOC:OFF
 
 	// Getters and setters with type conversion.
@@ -0,0 +1,293 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over the text fields (comment, description, subject) of the metadata of jpg files, allowing
+ * to find photos by words in these fields without parsing the files.
+ *
+ * <p>
+ * The fields are split into lower case words. Each word maps to the sorted ids of the files containing it. A query
+ * matches the files containing, for each query word, some word starting with it. Prefix lookup is a range of the
+ * sorted word map, and the matches of the query words are combined as bit sets.
+ *
+ * <p>
+ * The index is filled from the persistent JpegMetadataIndex when that is loaded, and is kept up to date with it. In
+ * addition, it is updated when metadata is stored, so that searches reflect the changes before they are saved.
+ */
+public final class JpegMetadataSearchIndex {
+	/**
+	 * The initial capacity of posting lists.
+	 */
+	private static final int INITIAL_POSTING_CAPACITY = 4;
+
+	/**
+	 * The posting lists, by word.
+	 */
+	private static final TreeMap<String, Posting> POSTINGS = new TreeMap<>();
+
+	/**
+	 * The file ids, by absolute path.
+	 */
+	private static final Map<String, Integer> FILE_IDS = new HashMap<>();
+
+	/**
+	 * The absolute paths of the files, by id. Null for unused ids.
+	 */
+	private static final List<String> FILE_PATHS = new ArrayList<>();
+
+	/**
+	 * The indexed words of the files, by id. Null for unused ids.
+	 */
+	private static final List<String[]> FILE_WORDS = new ArrayList<>();
+
+	/**
+	 * The unused ids, to be assigned to new files before extending the lists.
+	 */
+	private static final List<Integer> FREE_IDS = new ArrayList<>();
+
+	/**
+	 * Hide default constructor.
+	 */
+	private JpegMetadataSearchIndex() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Search for files whose comment, description or subject contain words starting with all words of the query (case
+	 * insensitive). The search does not wait for the JpegMetadataIndex to be loaded - until then, only files indexed
+	 * since the start of the application are found.
+	 *
+	 * @param query
+	 *            the query.
+	 * @return the absolute paths of the matching files, sorted. Empty if the query contains no words.
+	 */
+	public static List<String> search(final String query) {
+		String[] queryWords = getWords(query);
+		if (queryWords.length == 0) {
+			return new ArrayList<>();
+		}
+
+		synchronized (POSTINGS) {
+			BitSet result = null;
+			for (String queryWord : queryWords) {
+				BitSet matches = new BitSet(FILE_PATHS.size());
+				for (Posting posting : POSTINGS.subMap(queryWord, queryWord + Character.MAX_VALUE).values()) {
+					for (int i = 0; i < posting.mSize; i++) {
+						matches.set(posting.mIds[i]);
+					}
+				}
+				if (result == null) {
+					result = matches;
+				}
+				else {
+					result.and(matches);
+				}
+				if (result.isEmpty()) {
+					break;
+				}
+			}
+
+			List<String> paths = new ArrayList<>(result.cardinality());
+			for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+				paths.add(FILE_PATHS.get(id));
+			}
+			Collections.sort(paths);
+			return paths;
+		}
+	}
+
+	/**
+	 * Update the indexed words of a file.
+	 *
+	 * @param pathname
+	 *            the path of the file.
+	 * @param metadata
+	 *            the metadata of the file.
+	 */
+	protected static void update(final String pathname, final JpegMetadata metadata) {
+		if (metadata == null) {
+			remove(pathname);
+			return;
+		}
+		String key = new File(pathname).getAbsolutePath();
+		String[] words = getWords(metadata.getComment(), metadata.getDescription(), metadata.getSubject());
+
+		synchronized (POSTINGS) {
+			Integer id = FILE_IDS.get(key);
+			if (words.length == 0) {
+				// Files without words are not indexed.
+				removeFile(key);
+				return;
+			}
+			else if (id == null) {
+				if (FREE_IDS.isEmpty()) {
+					id = FILE_PATHS.size();
+					FILE_PATHS.add(key);
+					FILE_WORDS.add(null);
+				}
+				else {
+					id = FREE_IDS.remove(FREE_IDS.size() - 1);
+					FILE_PATHS.set(id, key);
+				}
+				FILE_IDS.put(key, id);
+			}
+			else if (Arrays.equals(words, FILE_WORDS.get(id))) {
+				return;
+			}
+			else {
+				removeWords(id);
+			}
+
+			for (String word : words) {
+				Posting posting = POSTINGS.get(word);
+				if (posting == null) {
+					posting = new Posting();
+					POSTINGS.put(word, posting);
+				}
+				posting.add(id);
+			}
+			FILE_WORDS.set(id, words);
+		}
+	}
+
+	/**
+	 * Remove a file from the index.
+	 *
+	 * @param pathname
+	 *            the path of the file.
+	 */
+	protected static void remove(final String pathname) {
+		String key = new File(pathname).getAbsolutePath();
+		synchronized (POSTINGS) {
+			removeFile(key);
+		}
+	}
+
+	/**
+	 * Remove a file from the index and release its id. Must be called within synchronization on POSTINGS.
+	 *
+	 * @param key
+	 *            the absolute path of the file.
+	 */
+	private static void removeFile(final String key) {
+		Integer id = FILE_IDS.remove(key);
+		if (id != null) {
+			removeWords(id);
+			FILE_PATHS.set(id, null);
+			FREE_IDS.add(id);
+		}
+	}
+
+	/**
+	 * Remove the postings of a file. Must be called within synchronization on POSTINGS.
+	 *
+	 * @param id
+	 *            the id of the file.
+	 */
+	private static void removeWords(final int id) {
+		String[] words = FILE_WORDS.get(id);
+		if (words == null) {
+			return;
+		}
+		for (String word : words) {
+			Posting posting = POSTINGS.get(word);
+			if (posting != null) {
+				posting.remove(id);
+				if (posting.mSize == 0) {
+					POSTINGS.remove(word);
+				}
+			}
+		}
+		FILE_WORDS.set(id, null);
+	}
+
+	/**
+	 * Split texts into distinct lower case words, consisting of letters and digits.
+	 *
+	 * @param texts
+	 *            the texts (may be null).
+	 * @return the words, in order of first occurrence.
+	 */
+	private static String[] getWords(final String... texts) {
+		Set<String> words = new LinkedHashSet<>();
+		for (String text : texts) {
+			if (text == null) {
+				continue;
+			}
+			String lowerCaseText = text.toLowerCase(Locale.ENGLISH);
+			int start = -1;
+			for (int i = 0; i <= lowerCaseText.length(); i++) {
+				boolean isWordChar = i < lowerCaseText.length() && Character.isLetterOrDigit(lowerCaseText.charAt(i));
+				if (isWordChar && start < 0) {
+					start = i;
+				}
+				else if (!isWordChar && start >= 0) {
+					words.add(lowerCaseText.substring(start, i));
+					start = -1;
+				}
+			}
+		}
+		return words.toArray(new String[words.size()]);
+	}
+
+	/**
+	 * The sorted ids of the files containing a word.
+	 */
+	private static final class Posting {
+		/**
+		 * The ids. Only the first mSize values are used.
+		 */
+		private int[] mIds = new int[INITIAL_POSTING_CAPACITY];
+		/**
+		 * The number of ids.
+		 */
+		private int mSize = 0;
+
+		/**
+		 * Add an id, if not yet contained.
+		 *
+		 * @param id
+		 *            the id.
+		 */
+		private void add(final int id) {
+			int index = Arrays.binarySearch(mIds, 0, mSize, id);
+			if (index >= 0) {
+				return;
+			}
+			index = -index - 1;
+			if (mSize == mIds.length) {
+				mIds = Arrays.copyOf(mIds, 2 * mSize);
+			}
+			System.arraycopy(mIds, index, mIds, index + 1, mSize - index);
+			mIds[index] = id;
+			mSize++;
+		}
+
+		/**
+		 * Remove an id, if contained.
+		 *
+		 * @param id
+		 *            the id.
+		 */
+		private void remove(final int id) {
+			int index = Arrays.binarySearch(mIds, 0, mSize, id);
+			if (index < 0) {
+				return;
+			}
+			System.arraycopy(mIds, index + 1, mIds, index, mSize - index - 1);
+			mSize--;
+		}
+	}
+}
@@ -1,10 +1,8 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 
 import com.adobe.xmp.XMPException;
@@ -23,13 +21,9 @@ import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
 import org.apache.commons.imaging.formats.tiff.constants.MicrosoftTagConstants;
-import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.util.IoUtils;
 
 /**
  * Helper clase to retrieve and save metadata in a JPEG file.
@@ -77,7 +71,7 @@ public final class JpegMetadataUtil {
 	}
 
 	/**
-	 * Retrieve the orientation of a file from the EXIF data.
+	 * Retrieve the orientation of a file from the EXIF data. Only the file header is read.
 	 *
 	 * @param imageFile
 	 *            the image file.
@@ -85,33 +79,8 @@ public final class JpegMetadataUtil {
 	 */
 	protected static int getExifOrientation(final File imageFile) {
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-			TiffImageMetadata tiffImageMetadata = null;
-
-			if (metadata instanceof JpegImageMetadata) {
-				tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-			}
-			else if (metadata instanceof TiffImageMetadata) {
-				tiffImageMetadata = (TiffImageMetadata) metadata;
-			}
-			else {
-				return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-			}
-
-			TiffField field = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-			if (field != null) {
-				return field.getIntValue();
-			}
-			else {
-				TagInfo tagInfo = new TagInfoShort("Orientation", 274, 1, TiffDirectoryType.TIFF_DIRECTORY_IFD0); // MAGIC_NUMBER
-				field = tiffImageMetadata.findField(tagInfo);
-				if (field != null) {
-					return field.getIntValue();
-				}
-				else {
-					return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
-				}
-			}
+			int orientation = new JpegHeader(imageFile).getExifOrientation();
+			return orientation == 0 ? TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL : orientation;
 		}
 		catch (Exception e) {
 			return TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL;
@@ -126,8 +95,17 @@ public final class JpegMetadataUtil {
 	 * @return the orientation angle.
 	 */
 	public static int getExifOrientationAngle(final File imageFile) {
-		final int exifValue = getExifOrientation(imageFile);
+		return getOrientationAngle(getExifOrientation(imageFile));
+	}
 
+	/**
+	 * Convert an EXIF orientation value into the orientation angle.
+	 *
+	 * @param exifValue
+	 *            the EXIF orientation value.
+	 * @return the orientation angle.
+	 */
+	protected static int getOrientationAngle(final int exifValue) {
 		switch (exifValue) {
 		case TiffTagConstants.ORIENTATION_VALUE_HORIZONTAL_NORMAL:
 			return 0;
@@ -190,12 +168,22 @@ public final class JpegMetadataUtil {
 	 *             thrown in case of other errors while reading metadata.
 	 */
 	public static JpegMetadata getMetadata(final String jpegImageFileName) throws ImageReadException, IOException {
-		checkJpeg(jpegImageFileName);
+		// Read the file header only once - this also validates that the file is a JPEG file.
+		return getMetadata(new JpegHeader(new File(jpegImageFileName)));
+	}
+
+	/**
+	 * Retrieve the relevant metadata of an image file from its already read header.
+	 *
+	 * @param header
+	 *            the header of the file for which metadata should be retrieved.
+	 * @return the metadata of the file.
+	 */
+	protected static JpegMetadata getMetadata(final JpegHeader header) {
 		JpegMetadata result = new JpegMetadata();
-		final File imageFile = new File(jpegImageFileName);
 
 		// Retrieve XMP data
-		String xmpString = Imaging.getXmpXml(imageFile);
+		String xmpString = header.getXmpXml();
 		XmpHandler parser = new XmpHandler(xmpString);
 
 		// Standard fields are pre-filled with custom data
@@ -242,7 +230,7 @@ public final class JpegMetadataUtil {
 
 		// Retrieve EXIF data
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
+			final IImageMetadata metadata = Imaging.getMetadata(header.getBytes());
 
 			TiffImageMetadata tiffImageMetadata = null;
 			if (metadata instanceof JpegImageMetadata) {
@@ -303,7 +291,8 @@ public final class JpegMetadataUtil {
 	}
 
 	/**
-	 * Change metadata of the image (EXIF and XMP as far as applicable).
+	 * Change metadata of the image (EXIF and XMP as far as applicable). Only the header of the file is processed in
+	 * memory, and the file is rewritten in a single pass.
 	 *
 	 * @param jpegImageFileName
 	 *            the file for which metadata should be changed.
@@ -322,10 +311,23 @@ public final class JpegMetadataUtil {
 			ImageReadException, ImageWriteException, XMPException {
 		if (changeJpegAllowed()) {
 			checkJpeg(jpegImageFileName);
-			changeXmpMetadata(jpegImageFileName, metadata);
+			File jpegImageFile = new File(jpegImageFileName);
+			JpegHeader header = new JpegHeader(jpegImageFile);
+
+			byte[] headerBytes = changeXmpMetadata(header.getBytes(), metadata);
 
 			if (changeExifAllowed()) {
-				changeExifMetadata(jpegImageFileName, metadata);
+				headerBytes = changeExifMetadata(headerBytes, metadata);
+			}
+
+			String tempFileName = jpegImageFileName + ".temp";
+			File tempFile = new File(tempFileName);
+			verifyTempFile(tempFile);
+
+			header.write(tempFile, headerBytes);
+
+			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
+				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
 			}
 		}
 	}
@@ -333,10 +335,11 @@ public final class JpegMetadataUtil {
 	/**
 	 * Change the EXIF metadata.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param headerBytes
+	 *            the JPEG header.
 	 * @param metadata
 	 *            the new metadata
+	 * @return the changed JPEG header.
 	 * @throws ImageReadException
 	 *             thrown if the metadata cannot be read.
 	 * @throws ImageWriteException
@@ -344,89 +347,69 @@ public final class JpegMetadataUtil {
 	 * @throws IOException
 	 *             thrown in case of other errors while reading metadata.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeExifMetadata(final String jpegImageFileName, final JpegMetadata metadata)
+	private static byte[] changeExifMetadata(final byte[] headerBytes, final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
+		TiffOutputSet outputSet = null;
 
-		verifyTempFile(tempFile);
+		// note that metadata might be null if no metadata is found.
+		final IImageMetadata imageMetadata = Imaging.getMetadata(headerBytes);
+		final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
+		if (jpegMetadata != null) {
+			// note that exif might be null if no Exif metadata is found.
+			final TiffImageMetadata exif = jpegMetadata.getExif();
 
-		OutputStream os = null;
-		try {
-			TiffOutputSet outputSet = null;
-
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
-
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
-				}
-			}
-
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
 			}
+		}
 
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
 
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
 
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
-			}
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
 
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
-			}
-
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
-			}
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+		}
 
-			try {
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossless(jpegImageFile, os, outputSet);
-			}
-			catch (Exception e) {
-				Logger.warning("Error storing EXIF data lossless - try lossy approach");
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-				new ExifRewriter().updateExifMetadataLossy(jpegImageFile, os, outputSet);
-			}
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		}
 
-			IoUtils.closeQuietly(true, os);
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
-			}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			new ExifRewriter().updateExifMetadataLossless(headerBytes, os, outputSet);
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		catch (Exception e) {
+			Logger.warning("Error storing EXIF data lossless - try lossy approach");
+			os = new ByteArrayOutputStream();
+			new ExifRewriter().updateExifMetadataLossy(headerBytes, os, outputSet);
 		}
-
+		return os.toByteArray();
 	}
 
 	/**
 	 * Change the XMP metadata.
 	 *
-	 * @param jpegImageFileName
-	 *            the file for which metadata should be changed.
+	 * @param headerBytes
+	 *            the JPEG header.
 	 * @param metadata
 	 *            the new metadata.
+	 * @return the changed JPEG header.
 	 *
 	 * @throws ImageReadException
 	 *             thrown if the metadata cannot be read.
@@ -437,68 +420,48 @@ public final class JpegMetadataUtil {
 	 * @throws XMPException
 	 *             thrown in case of issues with XML handling.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeXmpMetadata(final String jpegImageFileName, final JpegMetadata metadata)
+	private static byte[] changeXmpMetadata(final byte[] headerBytes, final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException, XMPException {
-		File jpegImageFile = new File(jpegImageFileName);
-		String tempFileName = jpegImageFileName + ".temp";
-		File tempFile = new File(tempFileName);
-
-		verifyTempFile(tempFile);
+		final String xmpString = Imaging.getXmpXml(headerBytes);
 
-		OutputStream os = null;
-		try {
-			final String xmpString = Imaging.getXmpXml(jpegImageFile);
-
-			XmpHandler parser = new XmpHandler(xmpString);
-
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
-
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
-
-			os = new FileOutputStream(tempFile);
-			os = new BufferedOutputStream(os);
-
-			new JpegXmpRewriter().updateXmpXml(jpegImageFile, os, parser.getXmpString());
-
-			IoUtils.closeQuietly(true, os);
+		XmpHandler parser = new XmpHandler(xmpString);
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFileName + " to " + jpegImageFileName);
-			}
-		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		if (changeExifAllowed()) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
 		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new JpegXmpRewriter().updateXmpXml(headerBytes, os, parser.getXmpString());
+		return os.toByteArray();
 	}
 
 	/**
@@ -1,6 +1,13 @@
 package de.eisfeldj.augendiagnosefx.util.imagefile;
 
-import java.util.HashMap;
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.eisfeldj.augendiagnosefx.controller.MainController;
 import de.eisfeldj.augendiagnosefx.util.DialogUtil;
@@ -12,36 +19,84 @@ import javafx.application.Platform;
 /**
  * Utility class to help storing metadata in jpg files in a synchronized way, preventing to store the same file twice in
  * parallel.
+ *
+ * <p>
+ * Save requests are executed by a small pool of I/O threads. Each file has at most one save slot, which holds the
+ * metadata currently being saved and the metadata to be saved next. A new request on a file replaces the pending
+ * metadata of its slot, so that bulk changes on the same file result in at most one additional save.
  */
 public final class JpegSynchronizationUtil {
+	/**
+	 * The number of threads saving files in parallel.
+	 */
+	private static final int SAVE_THREAD_COUNT = 2;
 
 	/**
-	 * Hide default constructor.
+	 * The time in seconds after which idle save threads are terminated.
 	 */
-	private JpegSynchronizationUtil() {
-		throw new UnsupportedOperationException();
+	private static final int SAVE_THREAD_KEEP_ALIVE = 30;
+
+	/**
+	 * The executor saving the files.
+	 */
+	private static final ThreadPoolExecutor SAVE_EXECUTOR = new ThreadPoolExecutor(SAVE_THREAD_COUNT,
+			SAVE_THREAD_COUNT, SAVE_THREAD_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+			new SaveThreadFactory());
+
+	static {
+		SAVE_EXECUTOR.allowCoreThreadTimeOut(true);
 	}
 
 	/**
-	 * Storage for currently running save tasks.
+	 * The save slots of the files with running or pending save requests, by path.
+	 */
+	private static final ConcurrentHashMap<String, SaveSlot> SAVE_SLOTS = new ConcurrentHashMap<>();
+
+	/**
+	 * Lock notified whenever a save slot is released.
 	 */
-	private static HashMap<String, JpegMetadata> mRunningSaveRequests = new HashMap<>();
+	private static final Object QUIESCENCE_LOCK = new Object();
+
+	/**
+	 * Flag indicating if an update of the save indicator is already posted to the FX thread.
+	 */
+	private static final AtomicBoolean SAVE_INDICATOR_UPDATE_PENDING = new AtomicBoolean(false);
+
 	/**
-	 * Storage for queued save tasks.
+	 * Hide default constructor.
 	 */
-	private static HashMap<String, JpegMetadata> mQueuedSaveRequests = new HashMap<>();
+	private JpegSynchronizationUtil() {
+		throw new UnsupportedOperationException();
+	}
 
 	/**
 	 * This method handles a request to retrieve metadata for a file. If there is no running async task to update
-	 * metadata for this file, then the data is taken directly from the file. Otherwise, it is taken from the last
-	 * metadata to be stored for this file.
+	 * metadata for this file, then the data is taken from the metadata cache or the persistent metadata index, or
+	 * directly from the file if the file has changed since caching. Otherwise, it is taken from the last metadata to be
+	 * stored for this file.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
 	 * @return null for non-JPEG files. The metadata from the file if readable. Otherwise empty metadata.
 	 */
 	public static JpegMetadata getJpegMetadata(final String pathname) {
-		JpegMetadata cachedMetadata = null;
+		JpegMetadata cachedMetadata = getUnsavedMetadata(pathname);
+		if (cachedMetadata != null) {
+			Logger.info("Retrieve cached metadata for file " + pathname);
+			return cachedMetadata;
+		}
+
+		cachedMetadata = JpegMetadataCache.get(pathname);
+		if (cachedMetadata == null) {
+			JpegMetadataIndex.Entry indexEntry = JpegMetadataIndex.get(pathname);
+			if (indexEntry != null) {
+				cachedMetadata = indexEntry.getMetadata();
+				JpegMetadataCache.put(pathname, cachedMetadata, indexEntry.getLastModified(), indexEntry.getLength());
+			}
+		}
+		if (cachedMetadata != null) {
+			return cachedMetadata;
+		}
 
 		try {
 			JpegMetadataUtil.checkJpeg(pathname);
@@ -51,33 +106,25 @@ public final class JpegSynchronizationUtil {
 			return null;
 		}
 
-		synchronized (JpegSynchronizationUtil.class) {
-			if (mQueuedSaveRequests.containsKey(pathname)) {
-				cachedMetadata = mQueuedSaveRequests.get(pathname);
-			}
-			else if (mRunningSaveRequests.containsKey(pathname)) {
-				cachedMetadata = mRunningSaveRequests.get(pathname);
+		try {
+			JpegMetadataIndex.Entry indexEntry = JpegMetadataIndex.update(new File(pathname));
+			JpegMetadata metadata = indexEntry.getMetadata();
+			if (!SAVE_SLOTS.containsKey(pathname)) {
+				// if a save has started meanwhile, then its write-through replaces this entry.
+				JpegMetadataCache.put(pathname, metadata, indexEntry.getLastModified(), indexEntry.getLength());
 			}
+			return metadata;
 		}
-
-		if (cachedMetadata != null) {
-			Logger.info("Retrieve cached metadata for file " + pathname);
-			return cachedMetadata;
-		}
-		else {
-			try {
-				return JpegMetadataUtil.getMetadata(pathname);
-			}
-			catch (Exception e) {
-				Logger.error("Failed to retrieve metadata for file " + pathname, e);
-				return new JpegMetadata();
-			}
+		catch (Exception e) {
+			Logger.error("Failed to retrieve metadata for file " + pathname, e);
+			return new JpegMetadata();
 		}
 	}
 
 	/**
 	 * This method handles a request to update metadata on a file. If no such request on the file is in process, then an
-	 * async task is started to update the metadata. Otherwise, it is put on the queue.
+	 * async task is scheduled to update the metadata. Otherwise, the metadata replaces any metadata still waiting to be
+	 * saved on this file. The search index is updated immediately.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
@@ -93,16 +140,43 @@ public final class JpegSynchronizationUtil {
 			return;
 		}
 
-		synchronized (JpegSynchronizationUtil.class) {
-			MainController.setSaveIconVisibility(true);
+		JpegMetadataSearchIndex.update(pathname, metadata);
 
-			if (mRunningSaveRequests.containsKey(pathname)) {
-				mQueuedSaveRequests.put(pathname, metadata);
+		boolean stored = false;
+		while (!stored) {
+			SaveSlot slot = SAVE_SLOTS.get(pathname);
+			if (slot == null) {
+				SaveSlot newSlot = new SaveSlot();
+				newSlot.mPendingMetadata = metadata;
+				slot = SAVE_SLOTS.putIfAbsent(pathname, newSlot);
+				if (slot == null) {
+					SAVE_EXECUTOR.execute(new JpegSaverTask(pathname, newSlot));
+					stored = true;
+					continue;
+				}
 			}
-			else {
-				triggerJpegSaverTask(pathname, metadata);
+			synchronized (slot) {
+				// A released slot is no longer in the map - then retry with a new slot.
+				if (!slot.mReleased) {
+					Logger.info("Queueing store request for file " + pathname);
+					slot.mPendingMetadata = metadata;
+					stored = true;
+				}
 			}
 		}
+
+		updateSaveIndicator();
+	}
+
+	/**
+	 * Remove the cached metadata of a file. To be called if the file is moved, renamed or deleted.
+	 *
+	 * @param pathname
+	 *            the path of the file.
+	 */
+	public static void invalidateCachedMetadata(final String pathname) {
+		JpegMetadataCache.invalidate(pathname);
+		JpegMetadataIndex.invalidate(pathname);
 	}
 
 	/**
@@ -111,88 +185,204 @@ public final class JpegSynchronizationUtil {
 	 * @return true if there is a running or pending save request.
 	 */
 	public static boolean hasRunningSaveRequests() {
-		return mRunningSaveRequests.size() > 0 || mQueuedSaveRequests.size() > 0;
+		return !SAVE_SLOTS.isEmpty();
 	}
 
 	/**
-	 * Do cleanup from the last JpegSaverThread and trigger the next task on the same file, if existing.
+	 * Get the number of files with running or pending save requests.
 	 *
-	 * @param pathname
-	 *            The path of the jpg file.
-	 */
-	private static void triggerNextFromQueue(final String pathname) {
-		synchronized (JpegSynchronizationUtil.class) {
-			mRunningSaveRequests.remove(pathname);
-			if (mQueuedSaveRequests.containsKey(pathname)) {
-				Logger.info("Executing queued store request for file " + pathname);
-				JpegMetadata newMetadata = mQueuedSaveRequests.get(pathname);
-				mQueuedSaveRequests.remove(pathname);
-				triggerJpegSaverTask(pathname, newMetadata);
+	 * @return the number of files waiting to be saved.
+	 */
+	public static int getSaveQueueDepth() {
+		return SAVE_SLOTS.size();
+	}
+
+	/**
+	 * Wait until all running and pending save requests are completed, or until the timeout elapses.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait.
+	 * @param unit
+	 *            the unit of the timeout.
+	 * @return true if all save requests are completed, false if the timeout elapsed before.
+	 * @throws InterruptedException
+	 *             if interrupted while waiting.
+	 */
+	public static boolean awaitQuiescence(final long timeout, final TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (QUIESCENCE_LOCK) {
+			while (!SAVE_SLOTS.isEmpty()) {
+				long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+				if (remainingMillis <= 0) {
+					return false;
+				}
+				QUIESCENCE_LOCK.wait(remainingMillis);
 			}
-			if (!hasRunningSaveRequests()) {
-				Platform.runLater(new Runnable() {
-					@Override
-					public void run() {
-						MainController.setSaveIconVisibility(false);
-					}
-				});
+			return true;
+		}
+	}
+
+	/**
+	 * Wait until all running and pending save requests, including those issued while waiting, are completed. An
+	 * interruption while waiting is deferred until the save requests are completed.
+	 */
+	public static void flush() {
+		boolean interrupted = false;
+		synchronized (QUIESCENCE_LOCK) {
+			while (!SAVE_SLOTS.isEmpty()) {
+				try {
+					QUIESCENCE_LOCK.wait();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
 			}
 		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	/**
-	 * Utility method to start the JpegSaverThread so save a jpg file with metadata.
+	 * Get the metadata of a file which is not yet saved to the file.
 	 *
 	 * @param pathname
 	 *            the path of the jpg file.
-	 * @param metadata
-	 *            the metadata.
+	 * @return the pending metadata, or else the metadata currently being saved. Null if there is no such metadata.
+	 */
+	private static JpegMetadata getUnsavedMetadata(final String pathname) {
+		SaveSlot slot = SAVE_SLOTS.get(pathname);
+		if (slot == null) {
+			return null;
+		}
+		synchronized (slot) {
+			return slot.mPendingMetadata == null ? slot.mRunningMetadata : slot.mPendingMetadata;
+		}
+	}
+
+	/**
+	 * Update the save indicator to the current queue depth. Multiple requests are coalesced into one update on the FX
+	 * thread.
 	 */
-	private static void triggerJpegSaverTask(final String pathname, final JpegMetadata metadata) {
-		mRunningSaveRequests.put(pathname, metadata);
-		JpegSaverThread thread = new JpegSaverThread(pathname, metadata);
-		thread.start();
+	private static void updateSaveIndicator() {
+		if (SAVE_INDICATOR_UPDATE_PENDING.compareAndSet(false, true)) {
+			Platform.runLater(new Runnable() {
+				@Override
+				public void run() {
+					SAVE_INDICATOR_UPDATE_PENDING.set(false);
+					MainController.setSaveQueueDepth(getSaveQueueDepth());
+				}
+			});
+		}
 	}
 
 	/**
-	 * Thread to save a JPEG file asynchronously with changed metadata.
+	 * The save state of a file. All fields are guarded by the slot itself.
 	 */
-	private static final class JpegSaverThread extends Thread {
+	private static final class SaveSlot {
+		/**
+		 * The metadata waiting to be saved. Only the latest request is kept.
+		 */
+		private JpegMetadata mPendingMetadata = null;
+		/**
+		 * The metadata currently being saved.
+		 */
+		private JpegMetadata mRunningMetadata = null;
+		/**
+		 * Flag indicating that the slot is removed from the map and does not accept requests any more.
+		 */
+		private boolean mReleased = false;
+	}
+
+	/**
+	 * Task to save a JPEG file asynchronously with changed metadata, until no more metadata is pending for this file.
+	 */
+	private static final class JpegSaverTask implements Runnable {
 		/**
 		 * The path of the jpg file.
 		 */
 		private String mPathname;
 		/**
-		 * The changed metadata.
+		 * The save slot of the file.
 		 */
-		private JpegMetadata mMetadata;
+		private SaveSlot mSlot;
 
 		/**
 		 * Constructor for the task.
 		 *
 		 * @param pathname
 		 *            the path of the jpg file.
-		 * @param metadata
-		 *            the metadata.
+		 * @param slot
+		 *            the save slot of the file.
 		 */
-		private JpegSaverThread(final String pathname, final JpegMetadata metadata) {
+		private JpegSaverTask(final String pathname, final SaveSlot slot) {
 			this.mPathname = pathname;
-			this.mMetadata = metadata;
+			this.mSlot = slot;
 		}
 
 		@Override
 		public void run() {
-			Logger.info("Starting thread to save file " + mPathname);
+			while (true) {
+				JpegMetadata metadata;
+				synchronized (mSlot) {
+					metadata = mSlot.mPendingMetadata;
+					if (metadata == null) {
+						mSlot.mReleased = true;
+						SAVE_SLOTS.remove(mPathname, mSlot);
+						break;
+					}
+					mSlot.mPendingMetadata = null;
+					mSlot.mRunningMetadata = metadata;
+				}
+
+				Logger.info("Starting to save file " + mPathname);
+				boolean success = false;
+				try {
+					JpegMetadataUtil.changeMetadata(mPathname, metadata);
+					Logger.info("Successfully saved file " + mPathname);
+					success = true;
+				}
+				catch (Exception e) {
+					Logger.error("Failed to save file " + mPathname, e);
+					DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_STORE_METADATA, mPathname);
+				}
 
-			try {
-				JpegMetadataUtil.changeMetadata(mPathname, mMetadata);
-				Logger.info("Successfully saved file " + mPathname);
+				synchronized (mSlot) {
+					if (success) {
+						// write-through: the file now contains the saved metadata.
+						JpegMetadataCache.put(mPathname, metadata);
+						JpegMetadataIndex.putMetadata(mPathname, metadata);
+					}
+					else {
+						// the file may contain anything now - ensure that it is read again.
+						JpegMetadataCache.invalidate(mPathname);
+						JpegMetadataIndex.invalidate(mPathname);
+					}
+					mSlot.mRunningMetadata = null;
+				}
 			}
-			catch (Exception e) {
-				Logger.error("Failed to save file " + mPathname, e);
-				DialogUtil.displayError(ResourceConstants.MESSAGE_ERROR_FAILED_TO_STORE_METADATA, mPathname);
+
+			synchronized (QUIESCENCE_LOCK) {
+				QUIESCENCE_LOCK.notifyAll();
 			}
-			triggerNextFromQueue(mPathname);
+			updateSaveIndicator();
+		}
+	}
+
+	/**
+	 * Factory for the daemon threads saving the files.
+	 */
+	private static final class SaveThreadFactory implements ThreadFactory {
+		/**
+		 * The number of created threads.
+		 */
+		private final AtomicInteger mThreadCount = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "JpegSaver-" + mThreadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 	}
 
@@ -0,0 +1,225 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.paint.Color;
+
+/**
+ * Manager of the overlay images from the resources.
+ *
+ * <p>
+ * Each overlay file is decoded only once. For overlays to be tinted, only the alpha channel is kept as mask, and
+ * tinting is a lookup of the premultiplied color per alpha value. Tinted overlays are cached per file and color, so
+ * that repeated color changes do not require decoding or tinting again. Pixels are premultiplied ARGB values of size
+ * x size pixels. The returned arrays are shared and must not be modified.
+ */
+final class OverlayAssets {
+	/**
+	 * The maximum number of cached tinted overlays.
+	 */
+	private static final int MAX_TINTED_ENTRIES = 8;
+
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The number of possible alpha values.
+	 */
+	private static final int ALPHA_VALUES = 256;
+
+	/**
+	 * The alpha masks of overlays to be tinted, by file name.
+	 */
+	private static final Map<String, byte[]> ALPHA_MASKS = new HashMap<String, byte[]>();
+
+	/**
+	 * The decoded pixels of overlays not to be tinted, by file name.
+	 */
+	private static final Map<String, int[]> ORIGINAL_PIXELS = new HashMap<String, int[]>();
+
+	/**
+	 * The tinted overlays, in order of last access.
+	 */
+	private static final Map<String, int[]> TINTED_PIXELS = new LinkedHashMap<String, int[]>(16, 0.75f, true) { // MAGIC_NUMBER
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, int[]> eldest) {
+			return size() > MAX_TINTED_ENTRIES;
+		}
+	};
+
+	/**
+	 * Hide default constructor.
+	 */
+	private OverlayAssets() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the pixels of an overlay in the given color.
+	 *
+	 * @param fileName
+	 *            the file name of the overlay (in the resource folder "overlay").
+	 * @param tint
+	 *            flag indicating if the overlay should be tinted in the color. Otherwise, only the opacity of the color
+	 *            is applied.
+	 * @param color
+	 *            the overlay color.
+	 * @param size
+	 *            the size (width and height) of the overlay in pixels.
+	 * @return the premultiplied ARGB pixels.
+	 */
+	protected static synchronized int[] getOverlayPixels(final String fileName, final boolean tint, final Color color,
+			final int size) {
+		String key = fileName + "|" + tint + "|" + color + "|" + size;
+		int[] pixels = TINTED_PIXELS.get(key);
+		if (pixels != null) {
+			return pixels;
+		}
+
+		if (tint) {
+			pixels = tintAlphaMask(getAlphaMask(fileName, size), color);
+		}
+		else {
+			pixels = applyOpacity(getOriginalPixels(fileName, size), color.getOpacity());
+		}
+		TINTED_PIXELS.put(key, pixels);
+		return pixels;
+	}
+
+	/**
+	 * Get the alpha mask of an overlay, decoding it if required.
+	 *
+	 * @param fileName
+	 *            the file name of the overlay.
+	 * @param size
+	 *            the size of the overlay.
+	 * @return the alpha values.
+	 */
+	private static byte[] getAlphaMask(final String fileName, final int size) {
+		String key = fileName + "|" + size;
+		byte[] mask = ALPHA_MASKS.get(key);
+		if (mask == null) {
+			int[] pixels = decode(fileName, size);
+			mask = new byte[pixels.length];
+			for (int i = 0; i < pixels.length; i++) {
+				mask[i] = (byte) (pixels[i] >>> 24); // MAGIC_NUMBER
+			}
+			ALPHA_MASKS.put(key, mask);
+		}
+		return mask;
+	}
+
+	/**
+	 * Get the original pixels of an overlay, decoding it if required.
+	 *
+	 * @param fileName
+	 *            the file name of the overlay.
+	 * @param size
+	 *            the size of the overlay.
+	 * @return the premultiplied ARGB pixels.
+	 */
+	private static int[] getOriginalPixels(final String fileName, final int size) {
+		String key = fileName + "|" + size;
+		int[] pixels = ORIGINAL_PIXELS.get(key);
+		if (pixels == null) {
+			pixels = decode(fileName, size);
+			ORIGINAL_PIXELS.put(key, pixels);
+		}
+		return pixels;
+	}
+
+	/**
+	 * Decode an overlay file, scaled to the given size.
+	 *
+	 * @param fileName
+	 *            the file name of the overlay.
+	 * @param size
+	 *            the size of the overlay.
+	 * @return the premultiplied ARGB pixels.
+	 */
+	private static int[] decode(final String fileName, final int size) {
+		URL imageUrl = ClassLoader.getSystemResource("overlay/" + fileName);
+		Image image = new Image(imageUrl.toExternalForm(), size, size, false, true);
+
+		int[] pixels = new int[size * size];
+		image.getPixelReader().getPixels(0, 0, size, size, PixelFormat.getIntArgbPreInstance(), pixels, 0, size);
+		return pixels;
+	}
+
+	/**
+	 * Tint an alpha mask, i.e. fill it with the color, keeping the alpha values multiplied with the opacity of the
+	 * color.
+	 *
+	 * @param mask
+	 *            the alpha mask.
+	 * @param color
+	 *            the color.
+	 * @return the premultiplied ARGB pixels.
+	 */
+	private static int[] tintAlphaMask(final byte[] mask, final Color color) {
+		int[] colorTable = new int[ALPHA_VALUES];
+		for (int alpha = 0; alpha < ALPHA_VALUES; alpha++) {
+			double resultAlpha = alpha * color.getOpacity() / BYTE;
+			colorTable[alpha] = toPixel(resultAlpha, color.getRed() * resultAlpha, color.getGreen() * resultAlpha,
+					color.getBlue() * resultAlpha);
+		}
+
+		int[] pixels = new int[mask.length];
+		for (int i = 0; i < mask.length; i++) {
+			pixels[i] = colorTable[mask[i] & BYTE];
+		}
+		return pixels;
+	}
+
+	/**
+	 * Apply an opacity to premultiplied ARGB pixels.
+	 *
+	 * @param originalPixels
+	 *            the pixels.
+	 * @param opacity
+	 *            the opacity.
+	 * @return the pixels with applied opacity.
+	 */
+	private static int[] applyOpacity(final int[] originalPixels, final double opacity) {
+		if (opacity == 1) {
+			return originalPixels;
+		}
+		int[] pixels = new int[originalPixels.length];
+		for (int i = 0; i < pixels.length; i++) {
+			int pixel = originalPixels[i];
+			pixels[i] = toPixel((pixel >>> 24) * opacity / BYTE, (pixel >> 16 & BYTE) * opacity / BYTE, // MAGIC_NUMBER
+					(pixel >> 8 & BYTE) * opacity / BYTE, (pixel & BYTE) * opacity / BYTE); // MAGIC_NUMBER
+		}
+		return pixels;
+	}
+
+	/**
+	 * Create a pixel from channel values in the range 0..1.
+	 *
+	 * @param alpha
+	 *            the alpha value.
+	 * @param red
+	 *            the (premultiplied) red value.
+	 * @param green
+	 *            the (premultiplied) green value.
+	 * @param blue
+	 *            the (premultiplied) blue value.
+	 * @return the ARGB pixel.
+	 */
+	private static int toPixel(final double alpha, final double red, final double green, final double blue) {
+		return (int) Math.round(alpha * BYTE) << 24 | (int) Math.round(red * BYTE) << 16 // MAGIC_NUMBER
+				| (int) Math.round(green * BYTE) << 8 | (int) Math.round(blue * BYTE); // MAGIC_NUMBER
+	}
+}
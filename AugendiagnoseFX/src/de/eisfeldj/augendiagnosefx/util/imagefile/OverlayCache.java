@@ -0,0 +1,178 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.eisfeldj.augendiagnosefx.util.imagefile.EyePhoto.RightLeft;
+import de.eisfeldj.augendiagnosefx.util.imagefile.OverlayMeshRenderer.Quality;
+
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+
+/**
+ * Bounded in-memory cache of overlay images warped due to pupil size and position, so that switching between
+ * overlays, colors or eye photos does not require recalculation of the displacement.
+ *
+ * <p>
+ * Entries are keyed by all parameters of the deformation, including mesh size and sampling quality. The least
+ * recently used entries are removed as soon as the total size of the cached images exceeds the memory budget.
+ */
+final class OverlayCache {
+	/**
+	 * The maximum total size of the cached images in bytes.
+	 */
+	private static final long MAX_BYTES = 96L << 20; // MAGIC_NUMBER
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The cached overlays, in order of last access.
+	 */
+	private static final Map<Key, Image> CACHE = new LinkedHashMap<Key, Image>(16, 0.75f, true); // MAGIC_NUMBER
+
+	/**
+	 * The total size of the cached images in bytes.
+	 */
+	private static long mCachedBytes = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private OverlayCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get a cached overlay.
+	 *
+	 * @param key
+	 *            the deformation parameters of the overlay.
+	 * @return the cached overlay image, or null if not cached.
+	 */
+	protected static Image get(final Key key) {
+		synchronized (CACHE) {
+			return CACHE.get(key);
+		}
+	}
+
+	/**
+	 * Store an overlay in the cache, removing the least recently used overlays if the memory budget is exceeded.
+	 *
+	 * @param key
+	 *            the deformation parameters of the overlay.
+	 * @param image
+	 *            the overlay image.
+	 */
+	protected static void put(final Key key, final Image image) {
+		synchronized (CACHE) {
+			Image previousImage = CACHE.put(key, image);
+			if (previousImage != null) {
+				mCachedBytes -= getSize(previousImage);
+			}
+			mCachedBytes += getSize(image);
+
+			Iterator<Map.Entry<Key, Image>> iterator = CACHE.entrySet().iterator();
+			while (mCachedBytes > MAX_BYTES && iterator.hasNext()) {
+				Map.Entry<Key, Image> eldest = iterator.next();
+				if (eldest.getKey().equals(key)) {
+					// Keep the overlay just stored, even if exceeding the budget on its own.
+					continue;
+				}
+				mCachedBytes -= getSize(eldest.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Get the memory size of an image.
+	 *
+	 * @param image
+	 *            the image.
+	 * @return the size in bytes.
+	 */
+	private static long getSize(final Image image) {
+		return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * The key of a cached overlay, consisting of all parameters of the deformation and rendering.
+	 */
+	protected static final class Key {
+		// JAVADOC:OFF
+		private final int mOverlayType;
+		private final RightLeft mSide;
+		private final Color mColor;
+		private final float mPupilXOffset;
+		private final float mPupilYOffset;
+		private final float mPupilSize;
+		private final int mMeshSize;
+		private final Quality mQuality;
+
+		// JAVADOC:ON
+
+		/**
+		 * Constructor for the key.
+		 *
+		 * @param overlayType
+		 *            The overlay type.
+		 * @param side
+		 *            The side of the eye.
+		 * @param color
+		 *            The overlay color.
+		 * @param pupilXOffset
+		 *            The horizontal offset of the pupil.
+		 * @param pupilYOffset
+		 *            The vertical offset of the pupil.
+		 * @param pupilSize
+		 *            The relative size of the pupil.
+		 * @param meshSize
+		 *            The number of mesh cells per row and column.
+		 * @param quality
+		 *            The sampling quality.
+		 */
+		protected Key(final int overlayType, final RightLeft side, // SUPPRESS_CHECKSTYLE Too many parameters
+				final Color color, final float pupilXOffset, final float pupilYOffset, final float pupilSize,
+				final int meshSize, final Quality quality) {
+			mOverlayType = overlayType;
+			mSide = side;
+			mColor = color;
+			mPupilXOffset = pupilXOffset;
+			mPupilYOffset = pupilYOffset;
+			mPupilSize = pupilSize;
+			mMeshSize = meshSize;
+			mQuality = quality;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return mOverlayType == other.mOverlayType && mSide == other.mSide // BOOLEAN_EXPRESSION_COMPLEXITY
+					&& (mColor == null ? other.mColor == null : mColor.equals(other.mColor))
+					&& Float.compare(mPupilXOffset, other.mPupilXOffset) == 0
+					&& Float.compare(mPupilYOffset, other.mPupilYOffset) == 0
+					&& Float.compare(mPupilSize, other.mPupilSize) == 0
+					&& mMeshSize == other.mMeshSize && mQuality == other.mQuality;
+		}
+
+		@Override
+		public int hashCode() {
+			int result = mOverlayType;
+			result = 31 * result + (mSide == null ? 0 : mSide.hashCode()); // MAGIC_NUMBER
+			result = 31 * result + (mColor == null ? 0 : mColor.hashCode()); // MAGIC_NUMBER
+			result = 31 * result + Float.floatToIntBits(mPupilXOffset); // MAGIC_NUMBER
+			result = 31 * result + Float.floatToIntBits(mPupilYOffset); // MAGIC_NUMBER
+			result = 31 * result + Float.floatToIntBits(mPupilSize); // MAGIC_NUMBER
+			result = 31 * result + mMeshSize; // MAGIC_NUMBER
+			result = 31 * result + (mQuality == null ? 0 : mQuality.hashCode()); // MAGIC_NUMBER
+			return result;
+		}
+	}
+}
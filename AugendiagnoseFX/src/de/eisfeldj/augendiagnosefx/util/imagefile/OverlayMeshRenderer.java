@@ -0,0 +1,270 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+/**
+ * Renderer of an overlay deformed by an OverlayMesh, in pure Java, so that it may be used outside the FX application
+ * thread and without FX toolkit. The triangles of the mesh are rasterized, with a choice between speed and quality of
+ * the sampling.
+ */
+public final class OverlayMeshRenderer {
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+
+	/**
+	 * The size of the overlay (in pixels).
+	 */
+	private final int mOverlaySize;
+
+	/**
+	 * The number of mesh cells per row and column.
+	 */
+	private final int mMeshSize;
+
+	/**
+	 * The positions of the mesh vertices in the deformed overlay, as x, y pairs, row by row.
+	 */
+	private final float[] mVertices;
+
+	/**
+	 * Create the renderer.
+	 *
+	 * @param mesh
+	 *            The mesh.
+	 * @param overlaySize
+	 *            The size of the overlay (in pixels), as used for creating the mesh.
+	 */
+	public OverlayMeshRenderer(final OverlayMesh mesh, final int overlaySize) {
+		mOverlaySize = overlaySize;
+		mMeshSize = mesh.getMeshSize();
+		mVertices = mesh.getVertices();
+	}
+
+	/**
+	 * Render the deformed overlay.
+	 *
+	 * @param source
+	 *            The pixels of the original overlay as premultiplied ARGB values, overlaySize * overlaySize pixels
+	 *            without gaps between rows.
+	 * @param quality
+	 *            The quality of the sampling.
+	 * @return The pixels of the deformed overlay as premultiplied ARGB values.
+	 */
+	public int[] apply(final int[] source, final Quality quality) {
+		if (source.length != mOverlaySize * mOverlaySize) {
+			throw new IllegalArgumentException("Overlay must have size " + mOverlaySize + "x" + mOverlaySize);
+		}
+		int[] target = new int[mOverlaySize * mOverlaySize];
+		float cellSize = (float) mOverlaySize / mMeshSize;
+
+		for (int y = 0; y < mMeshSize; y++) {
+			for (int x = 0; x < mMeshSize; x++) {
+				int topLeft = 2 * (y * (mMeshSize + 1) + x);
+				int topRight = topLeft + 2;
+				int bottomLeft = topLeft + 2 * (mMeshSize + 1);
+				int bottomRight = bottomLeft + 2;
+				float left = x * cellSize;
+				float top = y * cellSize;
+				float right = (x + 1) * cellSize;
+				float bottom = (y + 1) * cellSize;
+
+				if (isUndeformed(topLeft, left, top) && isUndeformed(bottomRight, right, bottom) // BOOLEAN_EXPRESSION_COMPLEXITY
+						&& isUndeformed(topRight, right, top) && isUndeformed(bottomLeft, left, bottom)) {
+					copyCell(source, target, left, top, right, bottom);
+					continue;
+				}
+				drawTriangle(source, target, quality, topLeft, left, top, topRight, right, top, bottomRight, right, bottom);
+				drawTriangle(source, target, quality, topLeft, left, top, bottomRight, right, bottom, bottomLeft, left,
+						bottom);
+			}
+		}
+		return target;
+	}
+
+	/**
+	 * Check if a vertex is at its original position.
+	 *
+	 * @param index
+	 *            The vertex index.
+	 * @param sourceX
+	 *            The original x position.
+	 * @param sourceY
+	 *            The original y position.
+	 * @return true if the vertex is not moved by the deformation.
+	 */
+	private boolean isUndeformed(final int index, final float sourceX, final float sourceY) {
+		return mVertices[index] == sourceX && mVertices[index + 1] == sourceY;
+	}
+
+	/**
+	 * Copy the pixels of an undeformed mesh cell (i.e. outside the iris) from source to target.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param target
+	 *            The target pixels.
+	 * @param left
+	 *            The left boundary of the cell.
+	 * @param top
+	 *            The upper boundary of the cell.
+	 * @param right
+	 *            The right boundary of the cell.
+	 * @param bottom
+	 *            The lower boundary of the cell.
+	 */
+	private void copyCell(final int[] source, final int[] target, final float left, final float top,
+			final float right, final float bottom) {
+		// pixels whose center lies within the cell
+		int minX = Math.max(0, (int) Math.ceil(left - 0.5f)); // MAGIC_NUMBER
+		int maxX = Math.min(mOverlaySize, (int) Math.ceil(right - 0.5f)); // MAGIC_NUMBER
+		int minY = Math.max(0, (int) Math.ceil(top - 0.5f)); // MAGIC_NUMBER
+		int maxY = Math.min(mOverlaySize, (int) Math.ceil(bottom - 0.5f)); // MAGIC_NUMBER
+		for (int py = minY; py < maxY; py++) {
+			System.arraycopy(source, py * mOverlaySize + minX, target, py * mOverlaySize + minX, maxX - minX);
+		}
+	}
+
+	/**
+	 * Rasterize one triangle of the mesh, mapping each covered target pixel to its source position via barycentric
+	 * coordinates.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param target
+	 *            The target pixels.
+	 * @param quality
+	 *            The quality of the sampling.
+	 * @param index0
+	 *            The vertex index of the first corner.
+	 * @param sourceX0
+	 *            The source x position of the first corner.
+	 * @param sourceY0
+	 *            The source y position of the first corner.
+	 * @param index1
+	 *            The vertex index of the second corner.
+	 * @param sourceX1
+	 *            The source x position of the second corner.
+	 * @param sourceY1
+	 *            The source y position of the second corner.
+	 * @param index2
+	 *            The vertex index of the third corner.
+	 * @param sourceX2
+	 *            The source x position of the third corner.
+	 * @param sourceY2
+	 *            The source y position of the third corner.
+	 */
+	private void drawTriangle(final int[] source, final int[] target, // SUPPRESS_CHECKSTYLE Too many parameters
+			final Quality quality, final int index0, final float sourceX0, final float sourceY0,
+			final int index1, final float sourceX1, final float sourceY1,
+			final int index2, final float sourceX2, final float sourceY2) {
+		float x0 = mVertices[index0];
+		float y0 = mVertices[index0 + 1];
+		float x1 = mVertices[index1];
+		float y1 = mVertices[index1 + 1];
+		float x2 = mVertices[index2];
+		float y2 = mVertices[index2 + 1];
+
+		float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+		if (area == 0) {
+			return;
+		}
+
+		int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+		int maxX = Math.min(mOverlaySize - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+		int minY = Math.max(0, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+		int maxY = Math.min(mOverlaySize - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+		float tolerance = -1e-4f * Math.abs(area); // MAGIC_NUMBER
+
+		for (int py = minY; py <= maxY; py++) {
+			float centerY = py + 0.5f; // MAGIC_NUMBER
+			for (int px = minX; px <= maxX; px++) {
+				float centerX = px + 0.5f; // MAGIC_NUMBER
+
+				// barycentric coordinates, scaled by the area
+				float weight0 = (x1 - centerX) * (y2 - centerY) - (x2 - centerX) * (y1 - centerY);
+				float weight1 = (x2 - centerX) * (y0 - centerY) - (x0 - centerX) * (y2 - centerY);
+				float weight2 = area - weight0 - weight1;
+				if (area < 0) {
+					weight0 = -weight0;
+					weight1 = -weight1;
+					weight2 = -weight2;
+				}
+				if (weight0 < tolerance || weight1 < tolerance || weight2 < tolerance) {
+					continue;
+				}
+
+				float sourceX = (weight0 * sourceX0 + weight1 * sourceX1 + weight2 * sourceX2) / Math.abs(area);
+				float sourceY = (weight0 * sourceY0 + weight1 * sourceY1 + weight2 * sourceY2) / Math.abs(area);
+				target[py * mOverlaySize + px] = quality == Quality.FAST
+						? getPixel(source, (int) Math.floor(sourceX), (int) Math.floor(sourceY))
+						: getInterpolatedPixel(source, sourceX - 0.5f, sourceY - 0.5f); // MAGIC_NUMBER
+			}
+		}
+	}
+
+	/**
+	 * Get a source pixel, transparent outside the source.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param x
+	 *            The x coordinate.
+	 * @param y
+	 *            The y coordinate.
+	 * @return The pixel value.
+	 */
+	private int getPixel(final int[] source, final int x, final int y) {
+		if (x < 0 || y < 0 || x >= mOverlaySize || y >= mOverlaySize) {
+			return 0;
+		}
+		return source[y * mOverlaySize + x];
+	}
+
+	/**
+	 * Get a source pixel at a fractional position via bilinear interpolation of premultiplied ARGB values.
+	 *
+	 * @param source
+	 *            The source pixels.
+	 * @param x
+	 *            The x coordinate (pixel centers at integer values).
+	 * @param y
+	 *            The y coordinate (pixel centers at integer values).
+	 * @return The interpolated pixel value.
+	 */
+	private int getInterpolatedPixel(final int[] source, final float x, final float y) {
+		int left = (int) Math.floor(x);
+		int top = (int) Math.floor(y);
+		float fx = x - left;
+		float fy = y - top;
+
+		int topLeft = getPixel(source, left, top);
+		int topRight = getPixel(source, left + 1, top);
+		int bottomLeft = getPixel(source, left, top + 1);
+		int bottomRight = getPixel(source, left + 1, top + 1);
+		if ((topLeft | topRight | bottomLeft | bottomRight) == 0) {
+			return 0;
+		}
+
+		int result = 0;
+		for (int shift = 0; shift < Integer.SIZE; shift += Byte.SIZE) {
+			float upper = (topLeft >>> shift & BYTE) * (1 - fx) + (topRight >>> shift & BYTE) * fx;
+			float lower = (bottomLeft >>> shift & BYTE) * (1 - fx) + (bottomRight >>> shift & BYTE) * fx;
+			result |= Math.min(BYTE, Math.round(upper * (1 - fy) + lower * fy)) << shift;
+		}
+		return result;
+	}
+
+	/**
+	 * The quality of the sampling when rendering the deformed overlay.
+	 */
+	public enum Quality {
+		/**
+		 * Nearest neighbour sampling - fast, but with visible steps at lines of the overlay.
+		 */
+		FAST,
+		/**
+		 * Bilinear sampling - smooth lines.
+		 */
+		HIGH
+	}
+}
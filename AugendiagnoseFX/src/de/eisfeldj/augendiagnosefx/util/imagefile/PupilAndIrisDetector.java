@@ -7,10 +7,10 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.paint.Color;
 
 /**
  * Class that serves to detect the pupil and iris within an eye photo.
@@ -89,6 +89,44 @@ public class PupilAndIrisDetector {
 	 */
 	private static final float IRIS_BOUNDARY_MIN_BOUNDARY_POINTS = 10;
 
+	/**
+	 * The size of a byte.
+	 */
+	private static final int BYTE = 0xFF;
+	/**
+	 * The number of possible brightness values of a pixel.
+	 */
+	private static final int BRIGHTNESS_LEVELS = 3 * BYTE + 1;
+
+	/**
+	 * The quantile parameters for which circle statistics are calculated.
+	 */
+	private static final float[] QUANTILE_PARAMETERS = {MAX_BLACK_QUOTA, MIN_BLACK_QUOTA, 1 - MIN_WHITE_QUOTA, 1 - MIN_WHITE_QUOTA2};
+	/**
+	 * Index of the quantile MAX_BLACK_QUOTA.
+	 */
+	private static final int QUANTILE_MAX_BLACK = 0;
+	/**
+	 * Index of the quantile MIN_BLACK_QUOTA.
+	 */
+	private static final int QUANTILE_MIN_BLACK = 1;
+	/**
+	 * Index of the quantile 1 - MIN_WHITE_QUOTA.
+	 */
+	private static final int QUANTILE_MIN_WHITE = 2;
+	/**
+	 * Index of the quantile 1 - MIN_WHITE_QUOTA2.
+	 */
+	private static final int QUANTILE_MIN_WHITE2 = 3;
+	/**
+	 * The quantile indices, sorted by ascending quantile parameter.
+	 */
+	private static final int[] QUANTILE_ORDER = {QUANTILE_MAX_BLACK, QUANTILE_MIN_WHITE2, QUANTILE_MIN_BLACK, QUANTILE_MIN_WHITE};
+	/**
+	 * The minimum number of points in a circle for which quantiles are determined by counting rather than by sorting.
+	 */
+	private static final int MIN_POINTS_FOR_COUNTING = 64;
+
 	/**
 	 * The number of points on the boundaries of circles of sizes 0 - 2000.
 	 */
@@ -196,9 +234,20 @@ public class PupilAndIrisDetector {
 			12492, 12640};
 
 	/**
-	 * The image to be analyzed.
+	 * The start indices of the circles of sizes 0 - 2001 when storing all circle points in one array.
+	 */
+	private static final int[] RING_OFFSETS = new int[CIRCLE_SIZES.length + 1];
+
+	static {
+		for (int i = 0; i < CIRCLE_SIZES.length; i++) {
+			RING_OFFSETS[i + 1] = RING_OFFSETS[i] + CIRCLE_SIZES[i];
+		}
+	}
+
+	/**
+	 * The image to be analyzed, in the sizes used by the detection phases.
 	 */
-	private Image mImage;
+	private ImagePyramid mPyramid;
 
 	/**
 	 * The horizontal center of the pupil (in the interval [0,1]).
@@ -254,71 +303,82 @@ public class PupilAndIrisDetector {
 		return mIrisRadius;
 	}
 
+	/**
+	 * Get the highest resolution used for the search. Images need not be provided in higher resolution.
+	 *
+	 * @return The size of the larger side of the image at the highest search resolution.
+	 */
+	public static int getMaxSearchResolution() {
+		return PUPIL_SEARCH_RESOLUTIONS[PUPIL_SEARCH_RESOLUTIONS.length - 1];
+	}
+
+	/**
+	 * Flag indicating if the initial search for the pupil center should be distributed over all processors.
+	 */
+	private boolean mIsParallel;
+
 	/**
 	 * Create a detector for a certain image.
 	 *
 	 * @param image The image to be analyzed.
 	 */
 	public PupilAndIrisDetector(final Image image) {
-		mImage = image;
+		this(image, false);
+	}
+
+	/**
+	 * Create a detector for a certain image.
+	 *
+	 * @param image The image to be analyzed.
+	 * @param parallel Flag indicating if the initial search should be done in parallel. The result is the same as for the
+	 *            serial search.
+	 */
+	public PupilAndIrisDetector(final Image image, final boolean parallel) {
+		this(ImagePyramid.fromImage(image), parallel);
+	}
+
+	/**
+	 * Create a detector for an image given as pyramid. This does not require the FX thread.
+	 *
+	 * @param pyramid The image to be analyzed.
+	 * @param parallel Flag indicating if the initial search should be done in parallel. The result is the same as for the
+	 *            serial search.
+	 */
+	public PupilAndIrisDetector(final ImagePyramid pyramid, final boolean parallel) {
+		mPyramid = pyramid;
+		mIsParallel = parallel;
+		pyramid.build(PUPIL_SEARCH_RESOLUTIONS);
 		determineInitialParameterValues();
 
+		ImagePyramid.Level base = pyramid.getBase();
 		for (int i = 1; i < PUPIL_SEARCH_RESOLUTIONS.length; i++) {
 			int resolution = PUPIL_SEARCH_RESOLUTIONS[i];
 			refinePupilPosition(resolution);
-			if (resolution >= image.getWidth() && resolution >= image.getHeight()) {
+			if (resolution >= base.getWidth() && resolution >= base.getHeight()) {
 				break;
 			}
 		}
 		refineIrisPosition();
 	}
 
-	/**
-	 * Update the stored metadata with the iris and pupil position from the detector.
-	 *
-	 * @param metadata The metadata to be updated.
-	 */
-	public final void updateMetadata(final JpegMetadata metadata) {
-		metadata.setXCenter(mIrisXCenter);
-		metadata.setYCenter(mIrisYCenter);
-		metadata.setOverlayScaleFactor(mIrisRadius * 8 / 3); // MAGIC_NUMBER
-
-		metadata.setPupilXOffset((mPupilXCenter - mIrisXCenter) / (2 * mIrisRadius));
-		metadata.setPupilYOffset((mPupilYCenter - mIrisYCenter) / (2 * mIrisRadius));
-		metadata.setPupilSize(mPupilRadius / mIrisRadius);
-	}
-
 	/**
 	 * Find initial values of pupil center and pupil and iris radius.
 	 */
 	private void determineInitialParameterValues() {
-		Image image = ImageUtil.resizeImage(mImage, PUPIL_SEARCH_RESOLUTIONS[0], false);
-		List<PupilCenterInfo> pupilCenterInfoList = new ArrayList<>();
+		BrightnessPlane plane = new BrightnessPlane(mPyramid.getLevel(PUPIL_SEARCH_RESOLUTIONS[0]));
 
-		for (int x = (int) image.getWidth() / 4; x < image.getWidth() * 3 / 4; x++) { // MAGIC_NUMBER
-			for (int y = (int) image.getHeight() / 4; y < image.getHeight() * 3 / 4; y++) { // MAGIC_NUMBER
-				PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, x, y, PupilCenterInfo.Phase.INITIAL);
-				pupilCenterInfo.collectCircleInfo(Integer.MAX_VALUE);
-				pupilCenterInfoList.add(pupilCenterInfo);
-			}
-		}
+		InitialSearchTask searchTask = new InitialSearchTask(plane,
+				plane.mWidth / 4, (int) Math.ceil(plane.mWidth * 3 / 4.0), // MAGIC_NUMBER
+				plane.mHeight / 4, (int) Math.ceil(plane.mHeight * 3 / 4.0)); // MAGIC_NUMBER
+		CandidateCenter bestPupilCenter = mIsParallel ? ForkJoinPool.commonPool().invoke(searchTask) : searchTask.searchSerially();
 
-		float maxLeapValue = Float.MIN_VALUE;
-		PupilCenterInfo bestPupilCenter = null;
-		for (PupilCenterInfo pupilCenterInfo : pupilCenterInfoList) {
-			pupilCenterInfo.calculateStatistics(0);
-			if (pupilCenterInfo.mLeapValue > maxLeapValue) {
-				maxLeapValue = pupilCenterInfo.mLeapValue;
-				bestPupilCenter = pupilCenterInfo;
-			}
-		}
-		if (bestPupilCenter != null) {
-			mPupilXCenter = bestPupilCenter.mXCenter / (float) image.getWidth();
-			mPupilYCenter = bestPupilCenter.mYCenter / (float) image.getHeight();
-			mPupilRadius = bestPupilCenter.mPupilRadius / (float) Math.max(image.getWidth(), image.getHeight());
+		if (bestPupilCenter.mIsFound) {
+			mPupilXCenter = bestPupilCenter.mXCenter / (float) plane.mWidth;
+			mPupilYCenter = bestPupilCenter.mYCenter / (float) plane.mHeight;
+			mPupilRadius = bestPupilCenter.mPupilRadius / (float) Math.max(plane.mWidth, plane.mHeight);
 			mIrisXCenter = mPupilXCenter;
 			mIrisYCenter = mPupilYCenter;
-			mIrisRadius = bestPupilCenter.mIrisRadius / (float) Math.max(image.getWidth(), image.getHeight());
+			mIrisRadius = bestPupilCenter.mIrisRadius / (float) Math.max(plane.mWidth, plane.mHeight);
 		}
 	}
 
@@ -328,19 +388,20 @@ public class PupilAndIrisDetector {
 	 * @param resolution The resolution.
 	 */
 	private void refinePupilPosition(final int resolution) {
-		Image image = ImageUtil.resizeImage(mImage, resolution, false);
+		BrightnessPlane plane = new BrightnessPlane(mPyramid.getLevel(resolution));
 		List<PupilCenterInfo> pupilCenterInfoList = new ArrayList<>();
 
-		int pupilXCenter = (int) Math.round(mPupilXCenter * image.getWidth());
-		int pupilYCenter = (int) Math.round(mPupilYCenter * image.getHeight());
-		int pupilRadius = (int) Math.round(mPupilRadius * Math.max(image.getWidth(), image.getHeight()));
+		int pupilXCenter = Math.round(mPupilXCenter * plane.mWidth);
+		int pupilYCenter = Math.round(mPupilYCenter * plane.mHeight);
+		int pupilRadius = Math.round(mPupilRadius * Math.max(plane.mWidth, plane.mHeight));
 
 		boolean isStable = false;
 
 		for (int step = 0; step < MAX_REFINEMENT_STEPS && !isStable; step++) {
 			for (int x = pupilXCenter - 1; x <= pupilXCenter + 1; x++) {
 				for (int y = pupilYCenter - 1; y <= pupilYCenter + 1; y++) {
-					PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, x, y, PupilCenterInfo.Phase.PUPIL_REFINEMENT);
+					PupilCenterInfo pupilCenterInfo =
+							new PupilCenterInfo(plane, new RingStatistics(0), x, y, PupilCenterInfo.Phase.PUPIL_REFINEMENT);
 					pupilCenterInfo.collectCircleInfo((int) (pupilRadius + MAX_REFINEMENT_STEPS + MAX_LEAP_WIDTH * resolution));
 					pupilCenterInfoList.add(pupilCenterInfo);
 				}
@@ -366,25 +427,26 @@ public class PupilAndIrisDetector {
 			}
 		}
 
-		mPupilXCenter = pupilXCenter / (float) image.getWidth();
-		mPupilYCenter = pupilYCenter / (float) image.getHeight();
-		mPupilRadius = pupilRadius / (float) Math.max(image.getWidth(), image.getHeight());
+		mPupilXCenter = pupilXCenter / (float) plane.mWidth;
+		mPupilYCenter = pupilYCenter / (float) plane.mHeight;
+		mPupilRadius = pupilRadius / (float) Math.max(plane.mWidth, plane.mHeight);
 	}
 
 	/**
 	 * Refine the iris position based on the previously found position.
 	 */
 	private void refineIrisPosition() {
-		IrisBoundary irisBoundary = new IrisBoundary(mImage,
-				(int) (mImage.getWidth() * mIrisXCenter),
-				(int) (mImage.getHeight() * mIrisYCenter),
-				(int) (Math.max(mImage.getWidth(), mImage.getHeight()) * mIrisRadius));
+		ImagePyramid.Level image = mPyramid.getBase();
+		IrisBoundary irisBoundary = new IrisBoundary(image,
+				(int) (image.getWidth() * mIrisXCenter),
+				(int) (image.getHeight() * mIrisYCenter),
+				(int) (Math.max(image.getWidth(), image.getHeight()) * mIrisRadius));
 
 		irisBoundary.analyzeBoundary();
 
-		mIrisXCenter = irisBoundary.mXCenter / (float) mImage.getWidth();
-		mIrisYCenter = irisBoundary.mYCenter / (float) mImage.getHeight();
-		mIrisRadius = irisBoundary.mRadius / (float) Math.max(mImage.getWidth(), mImage.getHeight());
+		mIrisXCenter = irisBoundary.mXCenter / (float) image.getWidth();
+		mIrisYCenter = irisBoundary.mYCenter / (float) image.getHeight();
+		mIrisRadius = irisBoundary.mRadius / (float) Math.max(image.getWidth(), image.getHeight());
 	}
 
 	/**
@@ -408,9 +470,9 @@ public class PupilAndIrisDetector {
 		 */
 		private int mIrisRadius = 0;
 		/**
-		 * The image.
+		 * The brightness plane of the image.
 		 */
-		private Image mImage;
+		private BrightnessPlane mPlane;
 		/**
 		 * The phase in which the info is used.
 		 */
@@ -419,7 +481,7 @@ public class PupilAndIrisDetector {
 		/**
 		 * The information about the circles around this point.
 		 */
-		private Map<Integer, CircleInfo> mCircleInfos = new HashMap<>();
+		private RingStatistics mRings;
 
 		/**
 		 * The brightness leap value for this center.
@@ -429,70 +491,45 @@ public class PupilAndIrisDetector {
 		/**
 		 * Create a PupilCenterInfo with certain coordinates.
 		 *
-		 * @param image the image.
+		 * @param plane the brightness plane of the image.
+		 * @param rings the storage for the circle information.
 		 * @param xCoord The x coordinate.
 		 * @param yCoord The y coordinate.
 		 * @param phase The phase in which the info is used.
 		 */
-		private PupilCenterInfo(final Image image, final int xCoord, final int yCoord, final Phase phase) {
+		private PupilCenterInfo(final BrightnessPlane plane, final RingStatistics rings, final int xCoord, final int yCoord,
+				final Phase phase) {
 			mXCenter = xCoord;
 			mYCenter = yCoord;
-			mImage = image;
+			mPlane = plane;
+			mRings = rings;
 			mPhase = phase;
 		}
 
 		/**
-		 * Collect the information of all circles around the center.
+		 * Move this info to another center, so that its storage can be reused.
 		 *
-		 * @param maxRelevantRadius The maximal circle radius considered
-		 */
-		private void collectCircleInfo(final int maxRelevantRadius) {
-			PixelReader pixelReader = mImage.getPixelReader();
-			int maxPossibleRadius = (int) Math.min(
-					Math.min(mImage.getWidth() - 1 - mXCenter, mXCenter),
-					Math.min(mImage.getHeight() - 1 - mYCenter, mYCenter));
-			int maxRadius = Math.min(maxRelevantRadius, maxPossibleRadius);
-			// For iris refinement, ignore points on top and bottom
-			long maxRadius2 = (maxRadius + 1) * (maxRadius + 1);
-			for (int x = mXCenter - maxRadius; x <= mXCenter + maxRadius; x++) {
-				for (int y = mYCenter - maxRadius; y <= mYCenter + maxRadius; y++) {
-					long d2 = (x - mXCenter) * (x - mXCenter) + (y - mYCenter) * (y - mYCenter);
-					if (d2 <= maxRadius2) {
-						int d = (int) Math.round(Math.sqrt(d2));
-						float brightness = getBrightness(pixelReader.getColor(x, y));
-						addInfo(d, brightness);
-					}
-				}
-			}
-
-		}
-
-		/**
-		 * Get a brightness value from a color.
-		 *
-		 * @param color The color
-		 * @return The brightness value.
+		 * @param xCoord The x coordinate.
+		 * @param yCoord The y coordinate.
 		 */
-		private static float getBrightness(final Color color) {
-			float min = (float) Math.min(Math.min(color.getRed(), color.getGreen()), color.getBlue());
-			float sum = (float) (color.getRed() + color.getGreen() + color.getBlue());
-			// Ensure that colors count more than dark grey, but white counts more then colors.
-			return sum - min;
+		private void reset(final int xCoord, final int yCoord) {
+			mXCenter = xCoord;
+			mYCenter = yCoord;
+			mPupilRadius = 0;
+			mIrisRadius = 0;
+			mLeapValue = Float.MIN_VALUE;
 		}
 
 		/**
-		 * Add pixel info for another pixel.
+		 * Collect the information of all circles around the center.
 		 *
-		 * @param distance The distance of the pixel.
-		 * @param brightness The brightness of the pixel.
+		 * @param maxRelevantRadius The maximal circle radius considered
 		 */
-		private void addInfo(final int distance, final float brightness) {
-			CircleInfo circleInfo = mCircleInfos.get(distance);
-			if (circleInfo == null) {
-				circleInfo = new CircleInfo(distance);
-				mCircleInfos.put(distance, circleInfo);
-			}
-			circleInfo.addBrightness(brightness);
+		private void collectCircleInfo(final int maxRelevantRadius) {
+			int maxPossibleRadius = Math.min(
+					Math.min(mPlane.mWidth - 1 - mXCenter, mXCenter),
+					Math.min(mPlane.mHeight - 1 - mYCenter, mYCenter));
+			mRings.collect(mPlane, mXCenter, mYCenter, Math.min(maxRelevantRadius, maxPossibleRadius));
 		}
 
 		/**
@@ -502,32 +539,32 @@ public class PupilAndIrisDetector {
 		 */
 		private void calculateStatistics(final int baseRadius) {
 			// Base calculations for each circle.
-			for (CircleInfo circleInfo : mCircleInfos.values()) {
-				circleInfo.calculateStatistics();
-			}
+			mRings.calculateStatistics();
 
-			int resolution = (int) Math.max(mImage.getWidth(), mImage.getHeight());
+			int circleCount = mRings.mCircleCount;
+			int resolution = Math.max(mPlane.mWidth, mPlane.mHeight);
 			int maxRadius = mPhase == Phase.INITIAL
-					? mCircleInfos.size() - 1
-					: Math.min(mCircleInfos.size() - 1, baseRadius + MAX_REFINEMENT_STEPS + (int) (MAX_LEAP_WIDTH * resolution));
+					? circleCount - 1
+					: Math.min(circleCount - 1, baseRadius + MAX_REFINEMENT_STEPS + (int) (MAX_LEAP_WIDTH * resolution));
 			int minRadius = mPhase == Phase.INITIAL ? 0
 					: Math.max(0, baseRadius - MAX_REFINEMENT_STEPS - (int) (MAX_LEAP_WIDTH * resolution));
 
 			// Calculate the minimum of medians outside each circle.
 			float innerQuantileSum = 0;
-			float[] innerDarkness = new float[mCircleInfos.size()];
+			float[] innerDarkness = mRings.mInnerDarkness;
 
 			for (int i = minRadius; i <= maxRadius; i++) {
-				float currentQuantile = mCircleInfos.get(Integer.valueOf(i)).getQuantile(MIN_BLACK_QUOTA);
+				float currentQuantile = mRings.getQuantile(i, QUANTILE_MIN_BLACK);
 				innerQuantileSum += currentQuantile * i;
 				innerDarkness[i] = i == 0 ? 0 : 2 * innerQuantileSum / (i * (i + 1));
 			}
 
-			List<CircleInfo> relevantPupilCircles = new ArrayList<>();
-			List<CircleInfo> relevantIrisCircles = new ArrayList<>();
+			// Leap values are strictly positive for relevant circles, so 0 marks the irrelevant ones.
+			float[] pupilLeapValues = mRings.mPupilLeapValues;
+			float[] irisLeapValues = mRings.mIrisLeapValues;
 			maxRadius = mPhase == Phase.INITIAL
-					? mCircleInfos.size() - 2
-					: Math.min(mCircleInfos.size() - 2, baseRadius + MAX_REFINEMENT_STEPS);
+					? circleCount - 2
+					: Math.min(circleCount - 2, baseRadius + MAX_REFINEMENT_STEPS);
 			minRadius = mPhase == Phase.INITIAL ? (int) (resolution * MIN_PUPIL_RADIUS)
 					: Math.max(1, baseRadius - MAX_REFINEMENT_STEPS);
 
@@ -536,16 +573,16 @@ public class PupilAndIrisDetector {
 				for (int i = minRadius; i <= maxRadius; i++) {
 					float pupilLeapValue = 0;
 					int maxLeapDistance = Math.min(Math.round(MAX_LEAP_WIDTH * resolution),
-							Math.min(i / 2, (mCircleInfos.size() - 1 - i) / 2));
+							Math.min(i / 2, (circleCount - 1 - i) / 2));
 					for (int j = 1; j <= maxLeapDistance; j++) {
 						float diff = mPhase == Phase.INITIAL
-								? (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(MAX_BLACK_QUOTA, i + j, i + j + maxLeapDistance, false))
+								? (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(QUANTILE_MAX_BLACK, i + j, i + j + maxLeapDistance, false))
 										/ (ASSUMED_PUPIL_BRIGHTNESS
-												+ getMinMaxQuantile(MIN_BLACK_QUOTA, i - j - Math.min(maxLeapDistance, Math.max(j, 2)), i - j, true))
+												+ getMinMaxQuantile(QUANTILE_MIN_BLACK, i - j - Math.min(maxLeapDistance, Math.max(j, 2)), i - j, true))
 										- 1
-								: (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(MAX_BLACK_QUOTA, i + j, i + j + maxLeapDistance, false))
+								: (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(QUANTILE_MAX_BLACK, i + j, i + j + maxLeapDistance, false))
 										/ (ASSUMED_PUPIL_BRIGHTNESS
-												+ getMinMaxQuantile(MIN_BLACK_QUOTA, i - Math.min(maxLeapDistance, Math.max(j, 2)), i, true))
+												+ getMinMaxQuantile(QUANTILE_MIN_BLACK, i - Math.min(maxLeapDistance, Math.max(j, 2)), i, true))
 										- 1;
 						if (diff > MIN_LEAP_DIFF) {
 							// prefer big jumps in small radius difference.
@@ -555,12 +592,8 @@ public class PupilAndIrisDetector {
 							}
 						}
 					}
-					if (pupilLeapValue > 0) {
-						CircleInfo circleInfo = mCircleInfos.get(Integer.valueOf(i));
-						// prefer big, dark circles
-						circleInfo.mPupilLeapValue = (float) (Math.sqrt(i) * pupilLeapValue / innerDarkness[i]);
-						relevantPupilCircles.add(circleInfo);
-					}
+					// prefer big, dark circles
+					pupilLeapValues[i] = pupilLeapValue > 0 ? (float) (Math.sqrt(i) * pupilLeapValue / innerDarkness[i]) : 0;
 				}
 			}
 
@@ -570,13 +603,13 @@ public class PupilAndIrisDetector {
 					float irisLeapValue = 0;
 					float irisQuantileSum = 0;
 					int maxLeapDistance = Math.min(Math.round(MAX_LEAP_WIDTH * resolution),
-							Math.min(i, mCircleInfos.size() - 1 - i));
+							Math.min(i, circleCount - 1 - i));
 					for (int j = 1; j <= maxLeapDistance; j++) {
 						irisQuantileSum +=
-								(mCircleInfos.get(Integer.valueOf(i + j)).getQuantile(1 - MIN_WHITE_QUOTA)
-										- mCircleInfos.get(Integer.valueOf(i - j)).getQuantile(1 - MIN_WHITE_QUOTA)
-										+ mCircleInfos.get(Integer.valueOf(i + j)).getQuantile(1 - MIN_WHITE_QUOTA2)
-										- mCircleInfos.get(Integer.valueOf(i - j)).getQuantile(1 - MIN_WHITE_QUOTA2))
+								(mRings.getQuantile(i + j, QUANTILE_MIN_WHITE)
+										- mRings.getQuantile(i - j, QUANTILE_MIN_WHITE)
+										+ mRings.getQuantile(i + j, QUANTILE_MIN_WHITE2)
+										- mRings.getQuantile(i - j, QUANTILE_MIN_WHITE2))
 										/ (2 * Math.sqrt(j));
 						if (irisQuantileSum > 0) {
 							// prefer big jumps in small radius difference.
@@ -586,48 +619,43 @@ public class PupilAndIrisDetector {
 							}
 						}
 					}
-					if (irisLeapValue > 0) {
-						CircleInfo circleInfo = mCircleInfos.get(Integer.valueOf(i));
-						// prefer big radius in order to prevent selection of small spots.
-						// prefer dark inner area
-						circleInfo.mIrisLeapValue = irisLeapValue;
-						relevantIrisCircles.add(circleInfo);
-					}
+					irisLeapValues[i] = irisLeapValue;
 				}
 			}
 
 			switch (mPhase) {
 			case INITIAL:
-				for (CircleInfo pupilCircleInfo : relevantPupilCircles) {
-					for (CircleInfo irisCircleInfo : relevantIrisCircles) {
-						if (irisCircleInfo.mRadius - pupilCircleInfo.mRadius >= resolution
-								* MIN_IRIS_PUPIL_DISTANCE) {
-							float newLeapValue = pupilCircleInfo.mPupilLeapValue * (1 + irisCircleInfo.mIrisLeapValue);
-							if (newLeapValue > mLeapValue) {
-								mLeapValue = newLeapValue;
-								mPupilRadius = pupilCircleInfo.mRadius;
-								mIrisRadius = irisCircleInfo.mRadius;
+				for (int pupilRadius = minRadius; pupilRadius <= maxRadius; pupilRadius++) {
+					if (pupilLeapValues[pupilRadius] > 0) {
+						for (int irisRadius = minRadius; irisRadius <= maxRadius; irisRadius++) {
+							if (irisLeapValues[irisRadius] > 0 && irisRadius - pupilRadius >= resolution * MIN_IRIS_PUPIL_DISTANCE) {
+								float newLeapValue = pupilLeapValues[pupilRadius] * (1 + irisLeapValues[irisRadius]);
+								if (newLeapValue > mLeapValue) {
+									mLeapValue = newLeapValue;
+									mPupilRadius = pupilRadius;
+									mIrisRadius = irisRadius;
+								}
 							}
 						}
 					}
 				}
 				break;
 			case PUPIL_REFINEMENT:
-				for (CircleInfo pupilCircleInfo : relevantPupilCircles) {
-					float newLeapValue = pupilCircleInfo.mPupilLeapValue;
+				for (int pupilRadius = minRadius; pupilRadius <= maxRadius; pupilRadius++) {
+					float newLeapValue = pupilLeapValues[pupilRadius];
 					if (newLeapValue > mLeapValue) {
 						mLeapValue = newLeapValue;
-						mPupilRadius = pupilCircleInfo.mRadius;
+						mPupilRadius = pupilRadius;
 					}
 				}
 				break;
 			case IRIS_REFINEMENT:
 			default:
-				for (CircleInfo irisCircleInfo : relevantIrisCircles) {
-					float newLeapValue = irisCircleInfo.mIrisLeapValue;
+				for (int irisRadius = minRadius; irisRadius <= maxRadius; irisRadius++) {
+					float newLeapValue = irisLeapValues[irisRadius];
 					if (newLeapValue > mLeapValue) {
 						mLeapValue = newLeapValue;
-						mIrisRadius = irisCircleInfo.mRadius;
+						mIrisRadius = irisRadius;
 					}
 				}
 				break;
@@ -637,16 +665,16 @@ public class PupilAndIrisDetector {
 		/**
 		 * Get the minimum p-quantile for a certain set of radii.
 		 *
-		 * @param p The quantile parameter.
+		 * @param quantileIndex The index of the quantile parameter.
 		 * @param fromRadius The start radius.
 		 * @param toRadius The end radius.
 		 * @param max if true, the maximum is returned, otherwise the minimum.
 		 * @return The minimum quantile.
 		 */
-		private float getMinMaxQuantile(final float p, final int fromRadius, final int toRadius, final boolean max) {
+		private float getMinMaxQuantile(final int quantileIndex, final int fromRadius, final int toRadius, final boolean max) {
 			float result = max ? Float.MIN_VALUE : Float.MAX_VALUE;
 			for (int radius = fromRadius; radius <= toRadius; radius++) {
-				float newValue = mCircleInfos.get(Integer.valueOf(radius)).getQuantile(p);
+				float newValue = mRings.getQuantile(radius, quantileIndex);
 				if ((!max && newValue < result) || (max && newValue > result)) {
 					result = newValue;
 				}
@@ -674,77 +702,499 @@ public class PupilAndIrisDetector {
 	}
 
 	/**
-	 * Class for storing information about a circle of points.
+	 * The best pupil center found in some part of the initial search.
 	 */
-	private static final class CircleInfo {
+	private static final class CandidateCenter {
+		/**
+		 * Flag indicating if a candidate has been found.
+		 */
+		private boolean mIsFound = false;
+		/**
+		 * The x coordinate of the center.
+		 */
+		private int mXCenter;
+		/**
+		 * The y coordinate of the center.
+		 */
+		private int mYCenter;
+		/**
+		 * The calculated pupil radius for this center.
+		 */
+		private int mPupilRadius;
+		/**
+		 * The calculated iris radius for this center.
+		 */
+		private int mIrisRadius;
 		/**
-		 * Create a pixelInfo with certain coordinates.
+		 * The brightness leap value for this center.
+		 */
+		private float mLeapValue = Float.MIN_VALUE;
+
+		/**
+		 * Take over the values of a PupilCenterInfo.
 		 *
-		 * @param radius The radius.
+		 * @param pupilCenterInfo The PupilCenterInfo.
 		 */
-		private CircleInfo(final int radius) {
-			mRadius = radius;
-			mBrightnesses = new float[CIRCLE_SIZES[radius]];
-			mCurrentIndex = 0;
+		private void update(final PupilCenterInfo pupilCenterInfo) {
+			mIsFound = true;
+			mXCenter = pupilCenterInfo.mXCenter;
+			mYCenter = pupilCenterInfo.mYCenter;
+			mPupilRadius = pupilCenterInfo.mPupilRadius;
+			mIrisRadius = pupilCenterInfo.mIrisRadius;
+			mLeapValue = pupilCenterInfo.mLeapValue;
 		}
+	}
+
+	/**
+	 * Task searching the best pupil center within a rectangle of candidates. In parallel mode, the rectangle is split into
+	 * column ranges.
+	 */
+	private static final class InitialSearchTask extends RecursiveTask<CandidateCenter> {
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
 
 		/**
-		 * The radius.
+		 * The number of columns below which the task is not split any more.
+		 */
+		private static final int MIN_COLUMNS_PER_TASK = 4;
+
+		/**
+		 * The brightness plane of the image.
+		 */
+		private final transient BrightnessPlane mPlane;
+		/**
+		 * The minimum x coordinate.
+		 */
+		private final int mMinX;
+		/**
+		 * The maximum x coordinate (exclusive).
 		 */
-		private int mRadius;
+		private final int mMaxX;
 		/**
-		 * The brightnesses.
+		 * The minimum y coordinate.
 		 */
-		private float[] mBrightnesses;
+		private final int mMinY;
 		/**
-		 * The current index on the brightness array.
+		 * The maximum y coordinate (exclusive).
 		 */
-		private int mCurrentIndex;
+		private final int mMaxY;
 
 		/**
-		 * The brightness leap at this radius used for pupil identification.
+		 * Create a search task.
+		 *
+		 * @param plane The brightness plane of the image.
+		 * @param minX The minimum x coordinate.
+		 * @param maxX The maximum x coordinate (exclusive).
+		 * @param minY The minimum y coordinate.
+		 * @param maxY The maximum y coordinate (exclusive).
 		 */
-		private float mPupilLeapValue;
+		private InitialSearchTask(final BrightnessPlane plane, final int minX, final int maxX, final int minY, final int maxY) {
+			mPlane = plane;
+			mMinX = minX;
+			mMaxX = maxX;
+			mMinY = minY;
+			mMaxY = maxY;
+		}
+
+		@Override
+		protected CandidateCenter compute() {
+			if (mMaxX - mMinX <= MIN_COLUMNS_PER_TASK) {
+				return searchSerially();
+			}
+			int midX = (mMinX + mMaxX) / 2;
+			InitialSearchTask leftTask = new InitialSearchTask(mPlane, mMinX, midX, mMinY, mMaxY);
+			InitialSearchTask rightTask = new InitialSearchTask(mPlane, midX, mMaxX, mMinY, mMaxY);
+			rightTask.fork();
+			CandidateCenter leftResult = leftTask.compute();
+			CandidateCenter rightResult = rightTask.join();
+
+			// In case of equal leap values, the left result wins, as the serial search would find it first.
+			return rightResult.mLeapValue > leftResult.mLeapValue ? rightResult : leftResult;
+		}
+
 		/**
-		 * The brightness leap at this radius used for iris identification.
+		 * Search the best pupil center in the current thread.
+		 *
+		 * @return The best pupil center.
 		 */
-		private float mIrisLeapValue;
+		private CandidateCenter searchSerially() {
+			// One set of ring statistics is reused for all candidate centers.
+			PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(mPlane,
+					new RingStatistics(Math.min(mPlane.mWidth, mPlane.mHeight) / 2 + 2), 0, 0, PupilCenterInfo.Phase.INITIAL);
+			CandidateCenter bestPupilCenter = new CandidateCenter();
+
+			for (int x = mMinX; x < mMaxX; x++) {
+				for (int y = mMinY; y < mMaxY; y++) {
+					pupilCenterInfo.reset(x, y);
+					pupilCenterInfo.collectCircleInfo(Integer.MAX_VALUE);
+					pupilCenterInfo.calculateStatistics(0);
+					if (pupilCenterInfo.mLeapValue > bestPupilCenter.mLeapValue) {
+						bestPupilCenter.update(pupilCenterInfo);
+					}
+				}
+			}
+			return bestPupilCenter;
+		}
+	}
+
+	/**
+	 * The brightness values of an image, read once into a flat array. Package visible for benchmarks.
+	 */
+	static final class BrightnessPlane {
+		/**
+		 * The width of the image.
+		 */
+		private int mWidth;
+		/**
+		 * The height of the image.
+		 */
+		private int mHeight;
+		/**
+		 * The brightnesses of the pixels, row by row, in units of 1/255.
+		 */
+		private int[] mBrightnesses;
+
+		/**
+		 * Read the brightness plane of an image.
+		 *
+		 * @param image The image.
+		 */
+		BrightnessPlane(final ImagePyramid.Level image) {
+			mWidth = image.getWidth();
+			mHeight = image.getHeight();
+			int[] pixels = image.getPixels();
+			mBrightnesses = new int[mWidth * mHeight];
+			for (int i = 0; i < mBrightnesses.length; i++) {
+				mBrightnesses[i] = getBrightness(pixels[i]);
+			}
+		}
+
+		/**
+		 * Get a brightness value from a color.
+		 *
+		 * @param argb The color
+		 * @return The brightness value.
+		 */
+		private static int getBrightness(final int argb) {
+			int red = (argb >> 16) & BYTE; // MAGIC_NUMBER
+			int green = (argb >> 8) & BYTE; // MAGIC_NUMBER
+			int blue = argb & BYTE;
+			int min = Math.min(Math.min(red, green), blue);
+			// Ensure that colors count more than dark grey, but white counts more then colors.
+			return red + green + blue - min;
+		}
+	}
+
+	/**
+	 * Class for storing information about the circles of points around a center, indexed by radius. Package visible for
+	 * benchmarks.
+	 */
+	static final class RingStatistics {
+		/**
+		 * The brightnesses of all circles. The brightnesses of the circle with radius r start at RING_OFFSETS[r].
+		 */
+		private int[] mBrightnesses;
+		/**
+		 * The number of brightnesses stored per circle.
+		 */
+		private int[] mCounts = new int[0];
+		/**
+		 * The number of circles containing points.
+		 */
+		private int mCircleCount;
+		/**
+		 * Flag indicating if the statistics have already been calculated.
+		 */
+		private boolean mIsCalculated;
+
+		/**
+		 * The quantiles of each circle, QUANTILE_PARAMETERS.length values per circle.
+		 */
+		private float[] mQuantiles;
+		/**
+		 * Histogram used for counting the brightnesses of one circle. Kept empty between calculations.
+		 */
+		private int[] mHistogram = new int[BRIGHTNESS_LEVELS];
+
+		/**
+		 * The average darkness inside each circle.
+		 */
+		private float[] mInnerDarkness;
+		/**
+		 * The brightness leap at each radius used for pupil identification.
+		 */
+		private float[] mPupilLeapValues;
+		/**
+		 * The brightness leap at each radius used for iris identification.
+		 */
+		private float[] mIrisLeapValues;
+
+		/**
+		 * Create storage for circle information.
+		 *
+		 * @param capacity The number of circles for which storage is reserved initially.
+		 */
+		RingStatistics(final int capacity) {
+			reset(capacity);
+		}
+
+		/**
+		 * Prepare the storage for collecting new information.
+		 *
+		 * @param maxCircleCount The maximum number of circles that will be collected.
+		 */
+		private void reset(final int maxCircleCount) {
+			int circleCount = Math.max(maxCircleCount, 0);
+			if (mCounts.length < circleCount) {
+				mBrightnesses = new int[RING_OFFSETS[circleCount]];
+				mCounts = new int[circleCount];
+				mQuantiles = new float[circleCount * QUANTILE_PARAMETERS.length];
+				mInnerDarkness = new float[circleCount];
+				mPupilLeapValues = new float[circleCount];
+				mIrisLeapValues = new float[circleCount];
+			}
+			mCircleCount = 0;
+			mIsCalculated = false;
+		}
+
+		/**
+		 * Collect the brightnesses of all points within a certain radius around a center. The circle of radius
+		 * maxRadius + 1 is collected partially, as far as its points lie within the square of half width maxRadius.
+		 *
+		 * @param plane the brightnesses of the image.
+		 * @param xCenter the x coordinate of the center.
+		 * @param yCenter the y coordinate of the center.
+		 * @param maxRadius the maximum radius.
+		 */
+		void collect(final BrightnessPlane plane, final int xCenter, final int yCenter, final int maxRadius) {
+			reset(maxRadius + 2);
+			if (maxRadius < 0) {
+				return;
+			}
+
+			CircleOffsetTable table = CircleOffsetTable.getTable(maxRadius);
+			int[] xOffsets = table.mXOffsets;
+			int[] yOffsets = table.mYOffsets;
+			int[] brightnesses = plane.mBrightnesses;
+			int width = plane.mWidth;
+			int centerIndex = yCenter * width + xCenter;
+			int pointCount = table.getPointCount(maxRadius);
+
+			// The table is ordered by circle, so the brightnesses end up at RING_OFFSETS[radius].
+			for (int i = 0; i < pointCount; i++) {
+				mBrightnesses[i] = brightnesses[centerIndex + yOffsets[i] * width + xOffsets[i]];
+			}
+
+			System.arraycopy(CIRCLE_SIZES, 0, mCounts, 0, maxRadius + 1);
+			mCounts[maxRadius + 1] = table.mPartialCircleSizes[maxRadius + 1];
+			mCircleCount = mCounts[maxRadius + 1] > 0 ? maxRadius + 2 : maxRadius + 1;
+		}
 
 		/**
-		 * Add a brightness to the information of this circle.
+		 * Do statistical calculations after all brightnesses are available. Here, the quantiles of each circle are
+		 * determined.
+		 */
+		void calculateStatistics() {
+			if (mIsCalculated) {
+				return;
+			}
+			for (int radius = 0; radius < mCircleCount; radius++) {
+				if (CIRCLE_SIZES[radius] < MIN_POINTS_FOR_COUNTING) {
+					calculateQuantilesBySorting(radius);
+				}
+				else {
+					calculateQuantilesByCounting(radius);
+				}
+			}
+			mIsCalculated = true;
+		}
+
+		/**
+		 * Determine the quantiles of a circle by sorting its brightnesses.
 		 *
-		 * @param brightness the brightness.
+		 * @param radius the radius of the circle.
 		 */
-		private void addBrightness(final float brightness) {
-			mBrightnesses[mCurrentIndex++] = brightness;
+		private void calculateQuantilesBySorting(final int radius) {
+			int from = RING_OFFSETS[radius];
+			// The outermost circle is incomplete - missing points count as black.
+			Arrays.fill(mBrightnesses, from + mCounts[radius], RING_OFFSETS[radius + 1], 0);
+			Arrays.sort(mBrightnesses, from, RING_OFFSETS[radius + 1]);
+			for (int q = 0; q < QUANTILE_PARAMETERS.length; q++) {
+				mQuantiles[radius * QUANTILE_PARAMETERS.length + q] =
+						mBrightnesses[from + (int) (CIRCLE_SIZES[radius] * QUANTILE_PARAMETERS[q])] / (float) BYTE;
+			}
 		}
 
 		/**
-		 * Do statistical calculations after all brightnesses are available. Here, only sorting is required.
+		 * Determine the quantiles of a circle via a histogram of its brightnesses, in time linear in the number of points.
+		 *
+		 * @param radius the radius of the circle.
 		 */
-		private void calculateStatistics() {
-			Arrays.sort(mBrightnesses);
+		private void calculateQuantilesByCounting(final int radius) {
+			int from = RING_OFFSETS[radius];
+			int to = from + mCounts[radius];
+			// The outermost circle is incomplete - missing points count as black.
+			int missingCount = CIRCLE_SIZES[radius] - mCounts[radius];
+			int minBrightness = missingCount > 0 ? 0 : BRIGHTNESS_LEVELS - 1;
+			int maxBrightness = 0;
+
+			mHistogram[0] += missingCount;
+			for (int i = from; i < to; i++) {
+				int brightness = mBrightnesses[i];
+				mHistogram[brightness]++;
+				if (brightness < minBrightness) {
+					minBrightness = brightness;
+				}
+				if (brightness > maxBrightness) {
+					maxBrightness = brightness;
+				}
+			}
+
+			// The p-quantile is the smallest brightness for which more than (int) (size * p) points are not brighter.
+			int brightness = minBrightness;
+			int cumulatedCount = mHistogram[minBrightness];
+			for (int quantileIndex : QUANTILE_ORDER) {
+				int rank = (int) (CIRCLE_SIZES[radius] * QUANTILE_PARAMETERS[quantileIndex]);
+				while (cumulatedCount <= rank) {
+					cumulatedCount += mHistogram[++brightness];
+				}
+				mQuantiles[radius * QUANTILE_PARAMETERS.length + quantileIndex] = brightness / (float) BYTE;
+			}
+
+			Arrays.fill(mHistogram, minBrightness, Math.max(minBrightness, maxBrightness) + 1, 0);
 		}
 
 		/**
-		 * Get the p-quantile of the brightnesses. Prerequisite: calculateStatistics must have been run before.
+		 * Get a quantile of the brightnesses of a circle. Prerequisite: calculateStatistics must have been run before.
 		 *
-		 * @param p the quantile parameter.
-		 * @return the p-quantile of the brightnesses (not considering equality).
+		 * @param radius the radius of the circle.
+		 * @param quantileIndex the index of the quantile parameter.
+		 * @return the quantile of the brightnesses (not considering equality).
 		 */
-		private float getQuantile(final float p) {
-			return mBrightnesses[(int) (mBrightnesses.length * p)];
+		float getQuantile(final int radius, final int quantileIndex) {
+			return mQuantiles[radius * QUANTILE_PARAMETERS.length + quantileIndex];
 		}
 	}
 
 	/**
-	 * Class for collecting information about the iris boundary.
+	 * The offsets of the points around a center, ordered by the circle (rounded distance) they belong to. Within a
+	 * circle, points are ordered by distance, and points on the axes come last among points of equal distance. Hence the
+	 * points within the square of half width r and within distance r + 1 are a prefix of the table.
 	 */
-	private static final class IrisBoundary {
+	private static final class CircleOffsetTable {
+		/**
+		 * The cached table, shared by all detectors.
+		 */
+		private static volatile CircleOffsetTable mCachedTable;
+
+		/**
+		 * The maximum radius supported by this table.
+		 */
+		private int mMaxRadius;
 		/**
-		 * The image.
+		 * The x offsets of the points.
 		 */
-		private Image mImage;
+		private int[] mXOffsets;
+		/**
+		 * The y offsets of the points.
+		 */
+		private int[] mYOffsets;
+		/**
+		 * The number of points of circle r which lie within the square of half width r - 1 and within distance r.
+		 */
+		private int[] mPartialCircleSizes;
+
+		/**
+		 * Create a table containing all points of the circles up to radius maxRadius + 1.
+		 *
+		 * @param maxRadius The maximum radius supported by the table.
+		 */
+		private CircleOffsetTable(final int maxRadius) {
+			mMaxRadius = maxRadius;
+			int outerRadius = maxRadius + 1;
+			int pointCount = RING_OFFSETS[outerRadius + 1];
+
+			// Sort keys: distance, then axis flag, then the coordinates.
+			long[] keys = new long[pointCount];
+			int index = 0;
+			for (int x = -outerRadius; x <= outerRadius; x++) {
+				for (int y = -outerRadius; y <= outerRadius; y++) {
+					long d2 = x * x + y * y;
+					if (Math.round(Math.sqrt(d2)) <= outerRadius) {
+						long distanceKey = 2 * d2 + (x == 0 || y == 0 ? 1 : 0);
+						keys[index++] = distanceKey << 32 | (x + outerRadius) << 16 | (y + outerRadius); // MAGIC_NUMBER
+					}
+				}
+			}
+			Arrays.sort(keys);
+
+			mXOffsets = new int[pointCount];
+			mYOffsets = new int[pointCount];
+			mPartialCircleSizes = new int[outerRadius + 1];
+			int radius = 0;
+			for (int i = 0; i < pointCount; i++) {
+				while (i >= RING_OFFSETS[radius + 1]) {
+					radius++;
+				}
+				int x = (int) (keys[i] >> 16 & 0xFFFF) - outerRadius; // MAGIC_NUMBER
+				int y = (int) (keys[i] & 0xFFFF) - outerRadius; // MAGIC_NUMBER
+				mXOffsets[i] = x;
+				mYOffsets[i] = y;
+				if (x * x + y * y <= radius * radius && Math.abs(x) < radius && Math.abs(y) < radius) {
+					mPartialCircleSizes[radius]++;
+				}
+			}
+		}
+
+		/**
+		 * Get a table supporting a certain radius.
+		 *
+		 * @param maxRadius The maximum radius needed.
+		 * @return The table.
+		 */
+		private static CircleOffsetTable getTable(final int maxRadius) {
+			CircleOffsetTable table = mCachedTable;
+			if (table == null || table.mMaxRadius < maxRadius) {
+				synchronized (CircleOffsetTable.class) {
+					table = mCachedTable;
+					if (table == null || table.mMaxRadius < maxRadius) {
+						table = new CircleOffsetTable(maxRadius);
+						mCachedTable = table;
+					}
+				}
+			}
+			return table;
+		}
+
+		/**
+		 * Get the number of points within the square of half width maxRadius and within distance maxRadius + 1.
+		 *
+		 * @param maxRadius The radius.
+		 * @return The number of points.
+		 */
+		private int getPointCount(final int maxRadius) {
+			return RING_OFFSETS[maxRadius + 1] + mPartialCircleSizes[maxRadius + 1];
+		}
+	}
+
+	/**
+	 * Class for collecting information about the iris boundary. Package visible for benchmarks.
+	 */
+	static final class IrisBoundary {
+		/**
+		 * The width of the image.
+		 */
+		private int mWidth;
+		/**
+		 * The height of the image.
+		 */
+		private int mHeight;
+		/**
+		 * The ARGB pixels of the image.
+		 */
+		private int[] mPixels;
 
 		/**
 		 * The x coordinate of the center.
@@ -776,8 +1226,10 @@ public class PupilAndIrisDetector {
 		 * @param yCenter the initial y coordinate of the center.
 		 * @param radius the initial iris radius.
 		 */
-		private IrisBoundary(final Image image, final int xCenter, final int yCenter, final int radius) {
-			mImage = image;
+		IrisBoundary(final ImagePyramid.Level image, final int xCenter, final int yCenter, final int radius) {
+			mWidth = image.getWidth();
+			mHeight = image.getHeight();
+			mPixels = image.getPixels();
 			mXCenter = xCenter;
 			mYCenter = yCenter;
 			mRadius = radius;
@@ -786,32 +1238,29 @@ public class PupilAndIrisDetector {
 		/**
 		 * Search points on the iris boundary.
 		 */
-		private void determineBoundaryPoints() {
-			PixelReader pixelReader = mImage.getPixelReader();
-
-			for (int yCoord = mYCenter; yCoord <= mYCenter + mRadius * IRIS_BOUNDARY_SEARCH_RANGE && yCoord < mImage.getHeight(); yCoord++) {
-				determineBoundaryPoints(pixelReader, yCoord);
+		void determineBoundaryPoints() {
+			for (int yCoord = mYCenter; yCoord <= mYCenter + mRadius * IRIS_BOUNDARY_SEARCH_RANGE && yCoord < mHeight; yCoord++) {
+				determineBoundaryPoints(yCoord);
 			}
 
 			for (int yCoord = mYCenter - 1; yCoord >= mYCenter - mRadius * IRIS_BOUNDARY_SEARCH_RANGE && yCoord >= 0; yCoord--) {
-				determineBoundaryPoints(pixelReader, yCoord);
+				determineBoundaryPoints(yCoord);
 			}
 		}
 
 		/**
 		 * Determine the boundary points for a certain y coordinate.
 		 *
-		 * @param pixelReader The pixel reader.
 		 * @param yCoord The y coordinate for which to find the boundary points.
 		 * @return true if a boundary point has been found.
 		 */
-		private boolean determineBoundaryPoints(final PixelReader pixelReader, final int yCoord) {
+		private boolean determineBoundaryPoints(final int yCoord) {
 			int xDistanceRange = Math.round(IRIS_BOUNDARY_UNCERTAINTY_FACTOR * mRadius);
 			int xDistanceMinRange = Math.round(IRIS_BOUNDARY_MIN_RANGE * mRadius);
 			boolean found = false;
 
 			while (!found && xDistanceRange >= xDistanceMinRange) {
-				found = determineBoundaryPoints(pixelReader, yCoord, xDistanceRange);
+				found = determineBoundaryPoints(yCoord, xDistanceRange);
 				xDistanceRange *= IRIS_BOUNDARY_RETRY_FACTOR;
 			}
 			return found;
@@ -820,25 +1269,25 @@ public class PupilAndIrisDetector {
 		/**
 		 * Determine the boundary points for a certain y coordinate.
 		 *
-		 * @param pixelReader The pixel reader.
 		 * @param yCoord The y coordinate for which to find the boundary points.
 		 * @param xDistanceRange the horizontal range which is considered.
 		 * @return true if a boundary point has been found.
 		 */
-		private boolean determineBoundaryPoints(final PixelReader pixelReader, final int yCoord, final int xDistanceRange) {
+		private boolean determineBoundaryPoints(final int yCoord, final int xDistanceRange) {
 			int yDiff = yCoord - mYCenter;
 			if (Math.abs(yDiff) > IRIS_BOUNDARY_SEARCH_RANGE * mRadius) {
 				return false;
 			}
+			int rowOffset = yCoord * mWidth;
 
 			int expectedXDistance = (int) Math.round(Math.sqrt(mRadius * mRadius - yDiff * yDiff));
 
 			// Left side - calculate average brightness
 			float brightnessSum = 0;
 			int leftBoundary = Math.max(mXCenter - expectedXDistance - xDistanceRange, 0);
-			int rightBoundary = Math.min(mXCenter - expectedXDistance + xDistanceRange, (int) mImage.getWidth() - 1);
+			int rightBoundary = Math.min(mXCenter - expectedXDistance + xDistanceRange, mWidth - 1);
 			for (int x = leftBoundary; x <= rightBoundary; x++) {
-				brightnessSum += getBrightness(pixelReader.getColor(x, yCoord));
+				brightnessSum += getBrightness(mPixels[rowOffset + x]);
 			}
 			float avgBrightness = brightnessSum / (2 * xDistanceRange + 1);
 
@@ -847,12 +1296,12 @@ public class PupilAndIrisDetector {
 			int rightCounter = 0;
 			while (leftBoundary < rightBoundary) {
 				if (rightCounter > leftCounter) {
-					if (getBrightness(pixelReader.getColor(leftBoundary++, yCoord)) < avgBrightness) {
+					if (getBrightness(mPixels[rowOffset + leftBoundary++]) < avgBrightness) {
 						leftCounter++;
 					}
 				}
 				else {
-					if (getBrightness(pixelReader.getColor(rightBoundary--, yCoord)) > avgBrightness) {
+					if (getBrightness(mPixels[rowOffset + rightBoundary--]) > avgBrightness) {
 						rightCounter++;
 					}
 				}
@@ -864,9 +1313,9 @@ public class PupilAndIrisDetector {
 			// Right side - calculate average brightness
 			float brightnessSum2 = 0;
 			int leftBoundary2 = Math.max(mXCenter + expectedXDistance - xDistanceRange, 0);
-			int rightBoundary2 = Math.min(mXCenter + expectedXDistance + xDistanceRange, (int) mImage.getWidth() - 1);
+			int rightBoundary2 = Math.min(mXCenter + expectedXDistance + xDistanceRange, mWidth - 1);
 			for (int x = leftBoundary2; x <= rightBoundary2; x++) {
-				brightnessSum2 += getBrightness(pixelReader.getColor(x, yCoord));
+				brightnessSum2 += getBrightness(mPixels[rowOffset + x]);
 			}
 			float avgBrightness2 = brightnessSum2 / (2 * xDistanceRange + 1);
 
@@ -875,12 +1324,12 @@ public class PupilAndIrisDetector {
 			int rightCounter2 = 0;
 			while (leftBoundary2 < rightBoundary2) {
 				if (leftCounter2 > rightCounter2) {
-					if (getBrightness(pixelReader.getColor(rightBoundary2--, yCoord)) < avgBrightness2) {
+					if (getBrightness(mPixels[rowOffset + rightBoundary2--]) < avgBrightness2) {
 						rightCounter2++;
 					}
 				}
 				else {
-					if (getBrightness(pixelReader.getColor(leftBoundary2++, yCoord)) > avgBrightness2) {
+					if (getBrightness(mPixels[rowOffset + leftBoundary2++]) > avgBrightness2) {
 						leftCounter2++;
 					}
 				}
@@ -984,12 +1433,13 @@ public class PupilAndIrisDetector {
 		/**
 		 * Get a brightness value from a color.
 		 *
-		 * @param color The color
-		 * @return The brightness value.
+		 * @param argb The color
+		 * @return The brightness value (in units of 1/255).
 		 */
-		private static float getBrightness(final Color color) {
+		private static int getBrightness(final int argb) {
+			int blue = argb & BYTE;
 			// Blue seems to be particulary helpful in the separation.
-			return (float) (Math.min(Math.min(color.getRed(), color.getGreen()), color.getBlue()) + color.getBlue());
+			return Math.min(Math.min((argb >> 16) & BYTE, (argb >> 8) & BYTE), blue) + blue; // MAGIC_NUMBER
 		}
 
 	}
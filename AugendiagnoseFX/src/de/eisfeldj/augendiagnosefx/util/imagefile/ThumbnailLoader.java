@@ -0,0 +1,369 @@
+package de.eisfeldj.augendiagnosefx.util.imagefile;
+
+import java.awt.Dimension;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.eisfeldj.augendiagnosefx.util.Logger;
+import de.eisfeldj.augendiagnosefx.util.PreferenceUtil;
+import de.eisfeldj.augendiagnosefx.util.imagefile.ImageUtil.Resolution;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+
+/**
+ * Loader of thumbnails for lists of eye photos.
+ *
+ * <p>
+ * Thumbnails are decoded on a small pool of background threads, in the order in which they are requested - i.e. in
+ * the order in which the list displays them. Requests for rows which are no longer displayed can be cancelled, so that
+ * fast scrolling does not queue up decoding of invisible photos. Until the thumbnail is available, a small placeholder
+ * is displayed. If the metadata index knows the image size, the placeholder has the final aspect ratio, so that the
+ * list layout does not change when the thumbnail arrives. Loaded thumbnails are kept in a cache with bounded memory.
+ */
+public final class ThumbnailLoader {
+	/**
+	 * The number of threads decoding thumbnails.
+	 */
+	private static final int THREAD_COUNT = 2;
+
+	/**
+	 * The size of the longer side of placeholders (in pixels).
+	 */
+	private static final int PLACEHOLDER_SIZE = 32;
+
+	/**
+	 * The color of placeholders.
+	 */
+	private static final Color PLACEHOLDER_COLOR = Color.LIGHTGRAY;
+
+	/**
+	 * The maximum total size of the cached thumbnails in bytes.
+	 */
+	private static final long MAX_BYTES = 128L << 20; // MAGIC_NUMBER
+
+	/**
+	 * The maximum number of stored thumbnail dimensions.
+	 */
+	private static final int MAX_THUMBNAIL_SIZES = 10000;
+
+	/**
+	 * The number of bytes per pixel.
+	 */
+	private static final int BYTES_PER_PIXEL = 4;
+
+	/**
+	 * The executor decoding thumbnails.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 0L,
+			TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				/**
+				 * The number of created threads.
+				 */
+				private final AtomicInteger mThreadCount = new AtomicInteger();
+
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					Thread thread = new Thread(runnable, "ThumbnailLoader-" + mThreadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/**
+	 * The cached thumbnails, in order of last access.
+	 */
+	private static final Map<String, Image> CACHE = new LinkedHashMap<String, Image>(16, 0.75f, true); // MAGIC_NUMBER
+
+	/**
+	 * The total size of the cached thumbnails in bytes.
+	 */
+	private static long mCachedBytes = 0;
+
+	/**
+	 * The placeholders, by their size.
+	 */
+	private static final Map<String, Image> PLACEHOLDERS = new HashMap<>();
+
+	/**
+	 * The dimensions of the thumbnails (after rotation), by file, in order of last access.
+	 */
+	private static final Map<String, Dimension> THUMBNAIL_SIZES = new LinkedHashMap<String, Dimension>(16, 0.75f, true) { // MAGIC_NUMBER
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Dimension> eldest) {
+			return size() > MAX_THUMBNAIL_SIZES;
+		}
+	};
+
+	/**
+	 * Hide default constructor.
+	 */
+	private ThumbnailLoader() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the thumbnail of an eye photo if it is already loaded.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @return The thumbnail, or null if not loaded.
+	 */
+	public static Image getCachedThumbnail(final EyePhoto eyePhoto) {
+		synchronized (CACHE) {
+			return CACHE.get(getKey(eyePhoto));
+		}
+	}
+
+	/**
+	 * Get a placeholder for the thumbnail of an eye photo. It is a small uniform image having the aspect ratio of the
+	 * thumbnail, if this is known from the metadata index or from an earlier load of the thumbnail. Otherwise, it is
+	 * square. The file is not read for this purpose, so that this can be called in the FX application thread.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @return The placeholder.
+	 */
+	public static Image getPlaceholder(final EyePhoto eyePhoto) {
+		Dimension thumbnailSize = getThumbnailSize(eyePhoto);
+		double scaleFactor = (double) PLACEHOLDER_SIZE / Math.max(thumbnailSize.width, thumbnailSize.height);
+		int width = Math.max(1, (int) Math.round(thumbnailSize.width * scaleFactor));
+		int height = Math.max(1, (int) Math.round(thumbnailSize.height * scaleFactor));
+
+		String key = width + "x" + height;
+		synchronized (PLACEHOLDERS) {
+			Image placeholder = PLACEHOLDERS.get(key);
+			if (placeholder == null) {
+				WritableImage writableImage = new WritableImage(width, height);
+				PixelWriter pixelWriter = writableImage.getPixelWriter();
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						pixelWriter.setColor(x, y, PLACEHOLDER_COLOR);
+					}
+				}
+				placeholder = writableImage;
+				PLACEHOLDERS.put(key, placeholder);
+			}
+			return placeholder;
+		}
+	}
+
+	/**
+	 * Load the thumbnail of an eye photo in the background. The listener is called in the FX application thread,
+	 * unless the request has been cancelled before.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @param listener
+	 *            The listener called when the thumbnail is loaded.
+	 * @return The request, which may be used for cancellation.
+	 */
+	public static Request load(final EyePhoto eyePhoto, final ThumbnailListener listener) {
+		final Request request = new Request();
+		request.mFuture = EXECUTOR.submit(new Runnable() {
+			@Override
+			public void run() {
+				if (request.mCancelled) {
+					return;
+				}
+				final Image thumbnail;
+				try {
+					thumbnail = loadThumbnail(eyePhoto);
+				}
+				catch (RuntimeException e) {
+					Logger.error("Failed to load thumbnail of " + eyePhoto.getFilename(), e);
+					return;
+				}
+				if (thumbnail == null) {
+					return;
+				}
+
+				Platform.runLater(new Runnable() {
+					@Override
+					public void run() {
+						if (!request.mCancelled) {
+							listener.onThumbnailLoaded(thumbnail);
+						}
+					}
+				});
+			}
+		});
+		return request;
+	}
+
+	/**
+	 * Load the thumbnail of an eye photo synchronously, using the cache.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @return The thumbnail, or null if it could not be loaded.
+	 */
+	private static Image loadThumbnail(final EyePhoto eyePhoto) {
+		String key = getKey(eyePhoto);
+		synchronized (CACHE) {
+			Image thumbnail = CACHE.get(key);
+			if (thumbnail != null) {
+				return thumbnail;
+			}
+		}
+
+		Image thumbnail = ImageUtil.getImage(eyePhoto.getFile(), Resolution.THUMB, false);
+		if (thumbnail.isError()) {
+			Logger.error("Failed to load thumbnail of " + eyePhoto.getFilename(), thumbnail.getException());
+			return null;
+		}
+		synchronized (THUMBNAIL_SIZES) {
+			THUMBNAIL_SIZES.put(key, new Dimension((int) thumbnail.getWidth(), (int) thumbnail.getHeight()));
+		}
+
+		synchronized (CACHE) {
+			Image previousThumbnail = CACHE.put(key, thumbnail);
+			if (previousThumbnail != null) {
+				mCachedBytes -= getSize(previousThumbnail);
+			}
+			mCachedBytes += getSize(thumbnail);
+
+			Iterator<Map.Entry<String, Image>> iterator = CACHE.entrySet().iterator();
+			while (mCachedBytes > MAX_BYTES && iterator.hasNext()) {
+				Map.Entry<String, Image> eldest = iterator.next();
+				if (eldest.getKey().equals(key)) {
+					continue;
+				}
+				mCachedBytes -= getSize(eldest.getValue());
+				iterator.remove();
+			}
+		}
+		return thumbnail;
+	}
+
+	/**
+	 * Get the dimensions of the thumbnail of an eye photo, as far as known without reading the file.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @return The dimensions, or 1x1 if not known.
+	 */
+	private static Dimension getThumbnailSize(final EyePhoto eyePhoto) {
+		String key = getKey(eyePhoto);
+		synchronized (THUMBNAIL_SIZES) {
+			Dimension thumbnailSize = THUMBNAIL_SIZES.get(key);
+			if (thumbnailSize != null) {
+				return thumbnailSize;
+			}
+		}
+
+		JpegMetadataIndex.Entry indexEntry = JpegMetadataIndex.get(eyePhoto.getAbsolutePath());
+		if (indexEntry == null || indexEntry.getWidth() <= 0 || indexEntry.getHeight() <= 0) {
+			// Not stored, so that the size is taken from the index or the thumbnail as soon as these are available.
+			return new Dimension(1, 1);
+		}
+
+		Dimension thumbnailSize = getRotatedSize(new Dimension(indexEntry.getWidth(), indexEntry.getHeight()),
+				indexEntry.getOrientation());
+		synchronized (THUMBNAIL_SIZES) {
+			THUMBNAIL_SIZES.put(key, thumbnailSize);
+		}
+		return thumbnailSize;
+	}
+
+	/**
+	 * Get the dimensions of an image after rotation by EXIF orientation.
+	 *
+	 * @param imageSize
+	 *            The dimensions of the image.
+	 * @param exifOrientation
+	 *            The EXIF orientation value.
+	 * @return The dimensions after rotation.
+	 */
+	private static Dimension getRotatedSize(final Dimension imageSize, final int exifOrientation) {
+		int rotation = JpegMetadataUtil.getOrientationAngle(exifOrientation);
+		return ImageUtil.isTransposingRotation(rotation) ? new Dimension(imageSize.height, imageSize.width) : imageSize;
+	}
+
+	/**
+	 * Get the cache key of the thumbnail of an eye photo. It contains the modification date of the file and the
+	 * thumbnail size, so that changed files or settings are not served from the cache.
+	 *
+	 * @param eyePhoto
+	 *            The eye photo.
+	 * @return The cache key.
+	 */
+	private static String getKey(final EyePhoto eyePhoto) {
+		File file = eyePhoto.getFile();
+		return file.getAbsolutePath() + "|" + file.lastModified() + "|"
+				+ PreferenceUtil.getPreferenceInt(PreferenceUtil.KEY_THUMBNAIL_SIZE);
+	}
+
+	/**
+	 * Get the memory size of an image.
+	 *
+	 * @param image
+	 *            the image.
+	 * @return the size in bytes.
+	 */
+	private static long getSize(final Image image) {
+		return (long) image.getWidth() * (long) image.getHeight() * BYTES_PER_PIXEL;
+	}
+
+	/**
+	 * A request for loading a thumbnail.
+	 */
+	public static final class Request {
+		/**
+		 * Flag indicating if the request has been cancelled.
+		 */
+		private volatile boolean mCancelled = false;
+
+		/**
+		 * The future of the decoding task.
+		 */
+		private Future<?> mFuture;
+
+		/**
+		 * Create a request.
+		 */
+		private Request() {
+		}
+
+		/**
+		 * Cancel the request. If the thumbnail is not yet decoded, then decoding is skipped. The listener is not
+		 * called any more. Must be called in the FX application thread.
+		 */
+		public void cancel() {
+			mCancelled = true;
+			if (mFuture != null && mFuture.cancel(false)) {
+				EXECUTOR.remove((Runnable) mFuture);
+			}
+		}
+	}
+
+	/**
+	 * Listener called when a thumbnail is loaded.
+	 */
+	public interface ThumbnailListener {
+		/**
+		 * Callback method called in the FX application thread when the thumbnail is loaded.
+		 *
+		 * @param thumbnail
+		 *            The thumbnail.
+		 */
+		void onThumbnailLoaded(Image thumbnail);
+	}
+}
@@ -18,6 +18,7 @@ import java.util.Locale;
 
 import de.jeisfeld.augendiagnoselib.activities.SettingsActivity;
 import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadataIndex;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
@@ -86,6 +87,8 @@ public class Application extends android.app.Application {
 
 		PreferenceUtil.incrementCounter(R.string.key_statistics_countstarts);
 		PreferenceUtil.sendStatistics();
+
+		JpegMetadataIndex.loadInBackground();
 	}
 
 	/**
@@ -32,6 +32,7 @@ import de.jeisfeld.augendiagnoselib.util.TrackingUtil.Category;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto.RightLeft;
 import de.jeisfeld.augendiagnoselib.util.imagefile.ImageUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.IrisDetectionScheduler;
 import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadata;
 import de.jeisfeld.augendiagnoselib.util.imagefile.MediaStoreUtil;
 
@@ -311,6 +312,7 @@ public class OverlayPinchImageView extends PinchImageView {
 	@Override
 	public final void setImage(@NonNull final String pathName, @NonNull final Activity activity, final int cacheIndex) {
 		mEyePhoto = new EyePhoto(pathName);
+		IrisDetectionScheduler.prioritize(mEyePhoto.getAbsolutePath());
 
 		final RetainFragment retainFragment = RetainFragment.findOrCreateRetainFragment(activity.getFragmentManager(),
 				cacheIndex);
@@ -38,6 +38,7 @@ import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
 import de.jeisfeld.augendiagnoselib.util.SystemUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.EyePhoto;
 import de.jeisfeld.augendiagnoselib.util.imagefile.FileUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.JpegMetadataIndex;
 
 /**
  * Base listFoldersFragment to display the list of subfolders of a folder Abstract class - child classes determine the
@@ -165,6 +166,9 @@ public abstract class ListFoldersBaseFragment extends Fragment {
 		}
 
 		getActivity().findViewById(R.id.textViewNoImages).setVisibility(folderNames.size() == 0 ? View.VISIBLE : View.GONE);
+
+		// Bring the metadata index up to date, parsing only photos which are new or changed since the last run.
+		JpegMetadataIndex.refreshInBackground(mParentFolder);
 	}
 
 	/**
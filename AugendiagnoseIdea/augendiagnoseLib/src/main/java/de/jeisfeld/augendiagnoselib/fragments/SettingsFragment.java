@@ -32,6 +32,7 @@ import com.android.vending.billing.SkuDetails;
 import com.immersion.hapticmediasdk.utils.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import de.jeisfeld.augendiagnoselib.Application;
@@ -49,6 +50,7 @@ import de.jeisfeld.augendiagnoselib.util.GoogleBillingHelper.OnPurchaseSuccessLi
 import de.jeisfeld.augendiagnoselib.util.PreferenceUtil;
 import de.jeisfeld.augendiagnoselib.util.SystemUtil;
 import de.jeisfeld.augendiagnoselib.util.imagefile.FileUtil;
+import de.jeisfeld.augendiagnoselib.util.imagefile.IrisDetectionMetrics;
 import de.jeisfeld.augendiagnoselib.util.imagefile.JpegSynchronizationUtil;
 
 /**
@@ -180,6 +182,8 @@ public class SettingsFragment extends PreferenceFragment {
 			bindPreferenceSummaryToValue(R.string.key_max_bitmap_size);
 			bindPreferenceSummaryToValue(R.string.key_store_option);
 			bindPreferenceSummaryToValue(R.string.key_full_resolution);
+
+			addIrisDetectionStatisticsListeners();
 		}
 		else if (mType.equals(getActivity().getString(R.string.key_dummy_screen_camera_settings))) {
 			addPreferencesFromResource(R.xml.prefs_camera);
@@ -267,6 +271,49 @@ public class SettingsFragment extends PreferenceFragment {
 		});
 	}
 
+	/**
+	 * Add the listeners for display and export of the iris detection statistics.
+	 */
+	private void addIrisDetectionStatisticsListeners() {
+		Preference showPreference = findPreference(getString(R.string.key_dummy_iris_detection_statistics));
+		showPreference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(final Preference preference) {
+				int count = IrisDetectionMetrics.getDetectionCount();
+				if (count == 0) {
+					DialogUtil.displayInfo(getActivity(), null, R.string.message_dialog_no_iris_detection_statistics);
+				}
+				else {
+					DialogUtil.displayInfo(getActivity(), null, R.string.message_dialog_iris_detection_statistics,
+							count, IrisDetectionMetrics.getSummary());
+				}
+				return true;
+			}
+		});
+
+		Preference exportPreference = findPreference(getString(R.string.key_dummy_export_iris_detection_statistics));
+		exportPreference.setOnPreferenceClickListener(new OnPreferenceClickListener() {
+			@Override
+			public boolean onPreferenceClick(final Preference preference) {
+				int count = IrisDetectionMetrics.getDetectionCount();
+				if (count == 0) {
+					DialogUtil.displayInfo(getActivity(), null, R.string.message_dialog_no_iris_detection_statistics);
+					return true;
+				}
+				try {
+					File file = IrisDetectionMetrics.exportCsv();
+					DialogUtil.displayInfo(getActivity(), null, R.string.message_dialog_exported_iris_detection_statistics,
+							count, file.getAbsolutePath());
+				}
+				catch (IOException e) {
+					android.util.Log.e(Application.TAG, "Failed to export iris detection statistics", e);
+					DialogUtil.displayError(getActivity(), R.string.message_dialog_failed_to_export_iris_detection_statistics, false);
+				}
+				return true;
+			}
+		});
+	}
+
 	/**
 	 * Add the listener for unlocker app.
 	 */
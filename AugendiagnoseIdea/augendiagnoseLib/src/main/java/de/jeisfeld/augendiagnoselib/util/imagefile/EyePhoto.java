@@ -330,7 +330,11 @@ public class EyePhoto {
 	 * @return true if the deletion was successful.
 	 */
 	public final boolean delete() {
-		return FileUtil.deleteFile(getFile());
+		boolean success = FileUtil.deleteFile(getFile());
+		if (success) {
+			IrisDetectionScheduler.cancel(getAbsolutePath());
+		}
+		return success;
 	}
 
 	/**
@@ -193,6 +193,8 @@ public final class FileUtil {
 	 * @return True if successfully deleted.
 	 */
 	public static boolean deleteFile(@NonNull final File file) {
+		JpegSynchronizationUtil.invalidateCachedMetadata(file.getAbsolutePath());
+
 		// First try the normal deletion.
 		if (file.delete()) {
 			return true;
@@ -232,6 +234,9 @@ public final class FileUtil {
 	 * @return true if the copying was successful.
 	 */
 	public static boolean moveFile(@NonNull final File source, @NonNull final File target) {
+		JpegSynchronizationUtil.invalidateCachedMetadata(source.getAbsolutePath());
+		JpegSynchronizationUtil.invalidateCachedMetadata(target.getAbsolutePath());
+
 		// First try the normal rename.
 		boolean success = source.renameTo(target);
 
@@ -256,7 +261,7 @@ public final class FileUtil {
 		}
 
 		if (success) {
-			PupilAndIrisDetector.notifyFileRename(source.getAbsolutePath(), target.getAbsolutePath());
+			IrisDetectionScheduler.notifyFileRename(source.getAbsolutePath(), target.getAbsolutePath());
 		}
 
 		return success;
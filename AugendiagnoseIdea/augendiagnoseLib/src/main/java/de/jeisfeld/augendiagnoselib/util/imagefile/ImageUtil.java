@@ -272,6 +272,37 @@ public final class ImageUtil {
 		return bitmap;
 	}
 
+	/**
+	 * Return a bitmap of this photo, decoded with the largest power of two sample size which keeps the bitmap at least as
+	 * large as the given minimum size. No further scaling is done, so that the bitmap keeps the quality of the decoder's
+	 * subsampling.
+	 *
+	 * @param path    The file path of the image.
+	 * @param minSize The minimum size of the larger side of the bitmap.
+	 * @return the bitmap, or null if it cannot be decoded.
+	 */
+	@Nullable
+	public static Bitmap getSampledImageBitmap(@NonNull final String path, final int minSize) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeFile(path, options);
+		int size = Math.max(options.outWidth, options.outHeight);
+
+		int sampleSize = 1;
+		while (size / (2 * sampleSize) >= minSize) {
+			sampleSize *= 2;
+		}
+
+		options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+		if (bitmap == null) {
+			return null;
+		}
+
+		return rotateBitmap(bitmap, (short) getExifOrientation(path));
+	}
+
 	/**
 	 * Return a bitmap of a photo directly from byte array data.
 	 *
@@ -553,7 +584,7 @@ public final class ImageUtil {
 	}
 
 	/**
-	 * Deform the overlay bitmap according to a different pupil size.
+	 * Deform the overlay bitmap according to a different pupil size, using the mesh shared with the desktop app.
 	 *
 	 * @param sourceBitmap  The original overlay bitmap.
 	 * @param origPupilSize The pupil size (relative to iris) in the original overlay bitmap.
@@ -570,68 +601,15 @@ public final class ImageUtil {
 		}
 
 		int overlaySize = sourceBitmap.getWidth();
-		int overlayHalfSize = overlaySize / 2;
-		float irisRadius = overlayHalfSize * OverlayPinchImageView.OVERLAY_CIRCLE_RATIO;
-
-		// the center of enlargement
-		float targetCenterX = overlayHalfSize;
-		float targetCenterY = overlayHalfSize;
-		if (pupilOffsetX != null) {
-			targetCenterX += 2 * irisRadius * pupilOffsetX / (1 - destPupilSize);
-		}
-		if (pupilOffsetY != null) {
-			targetCenterY += 2 * irisRadius * pupilOffsetY / (1 - destPupilSize);
-		}
-
-		// Constants used for linear transformation of the iris part of the overlay.
-		float linTransB = (destPupilSize - origPupilSize) / (1 - origPupilSize);
-		float linTransM = (1 - destPupilSize) / (irisRadius * (1 - origPupilSize));
-		float absOrigPupilSize = origPupilSize * irisRadius;
+		OverlayMesh mesh = new OverlayMesh(overlaySize, OVERLAY_MESH_SIZE, OverlayPinchImageView.OVERLAY_CIRCLE_RATIO,
+				origPupilSize, destPupilSize, pupilOffsetX, pupilOffsetY);
 
 		Bitmap ret = Bitmap.createBitmap(overlaySize, overlaySize, sourceBitmap.getConfig());
 		Canvas canvas = new Canvas(ret);
 
-		float[] verts = new float[2 * (OVERLAY_MESH_SIZE + 1) * (OVERLAY_MESH_SIZE + 1)];
-		int vertsIndex = 0;
-		for (int y = 0; y <= OVERLAY_MESH_SIZE; y++) {
-			for (int x = 0; x <= OVERLAY_MESH_SIZE; x++) {
-				// The positions of the original mesh vertices in pixels relative to the center
-				float xPos = (float) x * overlaySize / OVERLAY_MESH_SIZE - overlayHalfSize;
-				float yPos = (float) y * overlaySize / OVERLAY_MESH_SIZE - overlayHalfSize;
-				float centerDist = (float) Math.sqrt(xPos * xPos + yPos * yPos);
-
-				if (centerDist >= irisRadius) {
-					// outside the iris, take original position
-					verts[vertsIndex++] = overlayHalfSize + xPos;
-					verts[vertsIndex++] = overlayHalfSize + yPos;
-				}
-				else if (centerDist == 0) {
-					verts[vertsIndex++] = targetCenterX;
-					verts[vertsIndex++] = targetCenterY;
-				}
-				else {
-					// original direction
-					float xDirection = xPos / centerDist;
-					float yDirection = yPos / centerDist;
-
-					// corresponding iris boundary point
-					float xBound = overlayHalfSize + xDirection * irisRadius;
-					float yBound = overlayHalfSize + yDirection * irisRadius;
-
-					float radialPosition = linTransM * centerDist + linTransB;
-					if (centerDist < absOrigPupilSize) {
-						radialPosition -= linTransB * Math.pow(1 - centerDist / absOrigPupilSize, 1.5f); // MAGIC_NUMBER
-					}
-
-					verts[vertsIndex++] = targetCenterX + (xBound - targetCenterX) * radialPosition;
-					verts[vertsIndex++] = targetCenterY + (yBound - targetCenterY) * radialPosition;
-				}
-			}
-		}
-
 		Paint paint = new Paint();
 		paint.setFilterBitmap(true);
-		canvas.drawBitmapMesh(sourceBitmap, OVERLAY_MESH_SIZE, OVERLAY_MESH_SIZE, verts, 0, null, 0, paint);
+		canvas.drawBitmapMesh(sourceBitmap, OVERLAY_MESH_SIZE, OVERLAY_MESH_SIZE, mesh.getVertices(), 0, null, 0, paint);
 
 		return ret;
 	}
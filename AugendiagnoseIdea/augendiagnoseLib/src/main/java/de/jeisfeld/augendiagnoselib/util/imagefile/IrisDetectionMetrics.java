@@ -0,0 +1,407 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+import android.support.annotation.NonNull;
+
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * Registry of timing and quality figures of the latest iris detections. Serves to spot regressions and to tune the
+ * parameters of the detection from real data. The figures are kept in memory only, and can be exported as CSV file.
+ */
+public final class IrisDetectionMetrics {
+	/**
+	 * The maximum number of detections kept.
+	 */
+	private static final int MAX_DETECTIONS = 500;
+	/**
+	 * The folder below the app folder where the CSV export is stored.
+	 */
+	private static final String EXPORT_FOLDER = "statistics";
+	/**
+	 * The file name of the CSV export.
+	 */
+	private static final String EXPORT_FILE_NAME = "iris_detection_metrics.csv";
+	/**
+	 * The separator of CSV columns.
+	 */
+	private static final String SEPARATOR = ";";
+	/**
+	 * Nanoseconds per millisecond.
+	 */
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	/**
+	 * The latest detections, the oldest first.
+	 */
+	private static final Deque<Detection> DETECTIONS = new ArrayDeque<>();
+
+	/**
+	 * Hide default constructor.
+	 */
+	private IrisDetectionMetrics() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Add the figures of a finished detection. If the registry is full, the oldest detection is removed.
+	 *
+	 * @param detection The figures of the detection.
+	 */
+	protected static void add(@NonNull final Detection detection) {
+		synchronized (DETECTIONS) {
+			if (DETECTIONS.size() >= MAX_DETECTIONS) {
+				DETECTIONS.removeFirst();
+			}
+			DETECTIONS.addLast(detection);
+		}
+	}
+
+	/**
+	 * Get the figures of the latest detections.
+	 *
+	 * @return The detections, the oldest first.
+	 */
+	@NonNull
+	public static List<Detection> getDetections() {
+		synchronized (DETECTIONS) {
+			return new ArrayList<>(DETECTIONS);
+		}
+	}
+
+	/**
+	 * Get the number of detections in the registry.
+	 *
+	 * @return The number of detections.
+	 */
+	public static int getDetectionCount() {
+		synchronized (DETECTIONS) {
+			return DETECTIONS.size();
+		}
+	}
+
+	/**
+	 * Remove all detections from the registry.
+	 */
+	public static void clear() {
+		synchronized (DETECTIONS) {
+			DETECTIONS.clear();
+		}
+	}
+
+	/**
+	 * Get a summary of the latest detections, containing average times per phase, average candidate counts, and the
+	 * number of refinements which did not become stable within the maximum number of steps.
+	 *
+	 * @return The summary as multi-line text.
+	 */
+	@NonNull
+	public static String getSummary() {
+		List<Detection> detections = getDetections();
+		if (detections.isEmpty()) {
+			return "";
+		}
+		int count = detections.size();
+		int[] resolutions = detections.get(0).mResolutions;
+
+		long loadNanos = 0;
+		long initialNanos = 0;
+		long initialCandidates = 0;
+		long[] refinementNanos = new long[resolutions.length];
+		long[] refinementCandidates = new long[resolutions.length];
+		long[] refinementSteps = new long[resolutions.length];
+		int[] refinementCount = new int[resolutions.length];
+		int[] unstableCount = new int[resolutions.length];
+		long boundaryNanos = 0;
+		long boundaryPoints = 0;
+		long totalNanos = 0;
+
+		for (Detection detection : detections) {
+			loadNanos += detection.mLoadNanos;
+			initialNanos += detection.mInitialScanNanos;
+			initialCandidates += detection.mInitialScanCandidates;
+			for (int i = 0; i < resolutions.length && i < detection.mResolutions.length; i++) {
+				if (detection.mRefinementSteps[i] > 0) {
+					refinementNanos[i] += detection.mRefinementNanos[i];
+					refinementCandidates[i] += detection.mRefinementCandidates[i];
+					refinementSteps[i] += detection.mRefinementSteps[i];
+					refinementCount[i]++;
+					if (!detection.mIsRefinementStable[i]) {
+						unstableCount[i]++;
+					}
+				}
+			}
+			boundaryNanos += detection.mIrisBoundaryNanos;
+			boundaryPoints += detection.mIrisBoundaryPoints;
+			totalNanos += detection.mTotalNanos;
+		}
+
+		StringBuilder summary = new StringBuilder();
+		summary.append(String.format(Locale.ENGLISH, "Total: %.1f ms\n", totalNanos / NANOS_PER_MILLI / count));
+		summary.append(String.format(Locale.ENGLISH, "Loading: %.1f ms\n", loadNanos / NANOS_PER_MILLI / count));
+		summary.append(String.format(Locale.ENGLISH, "Initial scan: %.1f ms, %d candidates\n",
+				initialNanos / NANOS_PER_MILLI / count, initialCandidates / count));
+		for (int i = 0; i < resolutions.length; i++) {
+			if (refinementCount[i] > 0) {
+				summary.append(String.format(Locale.ENGLISH, "Refinement %d: %.1f ms, %d candidates, %.2f steps, %d unstable\n",
+						resolutions[i], refinementNanos[i] / NANOS_PER_MILLI / refinementCount[i],
+						refinementCandidates[i] / refinementCount[i], (double) refinementSteps[i] / refinementCount[i],
+						unstableCount[i]));
+			}
+		}
+		summary.append(String.format(Locale.ENGLISH, "Iris boundary: %.1f ms, %d points",
+				boundaryNanos / NANOS_PER_MILLI / count, boundaryPoints / count));
+		return summary.toString();
+	}
+
+	/**
+	 * Export the latest detections as CSV file into the app folder.
+	 *
+	 * @return The exported file.
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	@NonNull
+	public static File exportCsv() throws IOException {
+		File folder = Application.getAppContext().getExternalFilesDir(EXPORT_FOLDER);
+		if (folder == null) {
+			throw new IOException("External storage is not available");
+		}
+		File file = new File(folder, EXPORT_FILE_NAME);
+		exportCsv(file);
+		return file;
+	}
+
+	/**
+	 * Export the latest detections as CSV file.
+	 *
+	 * @param file The target file.
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	public static void exportCsv(@NonNull final File file) throws IOException {
+		List<Detection> detections = getDetections();
+		int[] resolutions = detections.isEmpty() ? new int[0] : detections.get(0).mResolutions;
+
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			StringBuilder header = new StringBuilder();
+			header.append("time").append(SEPARATOR).append("file").append(SEPARATOR).append("width").append(SEPARATOR)
+					.append("height").append(SEPARATOR).append("parallel").append(SEPARATOR).append("load_ms").append(SEPARATOR)
+					.append("initial_scan_ms").append(SEPARATOR).append("initial_scan_candidates");
+			for (int resolution : resolutions) {
+				String prefix = SEPARATOR + "refinement_" + resolution;
+				header.append(prefix).append("_ms").append(prefix).append("_candidates").append(prefix).append("_steps")
+						.append(prefix).append("_stable");
+			}
+			header.append(SEPARATOR).append("iris_boundary_ms").append(SEPARATOR).append("iris_boundary_points")
+					.append(SEPARATOR).append("total_ms").append("\n");
+			writer.write(header.toString());
+
+			for (Detection detection : detections) {
+				writer.write(detection.toCsvLine());
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * The figures of one iris detection.
+	 */
+	public static final class Detection {
+		/**
+		 * The resolutions used for refinement of the pupil position.
+		 */
+		private final int[] mResolutions;
+		/**
+		 * The start time of the detection.
+		 */
+		private final long mStartTime = System.currentTimeMillis();
+		/**
+		 * The name of the image file.
+		 */
+		private String mFileName;
+		/**
+		 * The width of the analyzed image.
+		 */
+		private int mWidth;
+		/**
+		 * The height of the analyzed image.
+		 */
+		private int mHeight;
+		/**
+		 * Flag indicating if the initial scan was done in parallel.
+		 */
+		private boolean mIsParallel;
+		/**
+		 * The time for decoding the image.
+		 */
+		private long mLoadNanos;
+		/**
+		 * The time of the initial scan for the pupil center.
+		 */
+		private long mInitialScanNanos;
+		/**
+		 * The number of candidate centers evaluated in the initial scan.
+		 */
+		private int mInitialScanCandidates;
+		/**
+		 * The time of the refinement per resolution.
+		 */
+		private final long[] mRefinementNanos;
+		/**
+		 * The number of candidate evaluations in the refinement per resolution.
+		 */
+		private final int[] mRefinementCandidates;
+		/**
+		 * The number of refinement steps per resolution. 0 if the resolution was skipped.
+		 */
+		private final int[] mRefinementSteps;
+		/**
+		 * Flag indicating if the refinement became stable within the maximum number of steps, per resolution.
+		 */
+		private final boolean[] mIsRefinementStable;
+		/**
+		 * The time for determining the iris boundary.
+		 */
+		private long mIrisBoundaryNanos;
+		/**
+		 * The number of iris boundary points found.
+		 */
+		private int mIrisBoundaryPoints;
+		/**
+		 * The total time of the detection, including loading of the image.
+		 */
+		private long mTotalNanos;
+
+		/**
+		 * Create the figures for a detection.
+		 *
+		 * @param resolutions The resolutions used for refinement of the pupil position.
+		 */
+		protected Detection(@NonNull final int[] resolutions) {
+			mResolutions = resolutions;
+			mRefinementNanos = new long[resolutions.length];
+			mRefinementCandidates = new int[resolutions.length];
+			mRefinementSteps = new int[resolutions.length];
+			mIsRefinementStable = new boolean[resolutions.length];
+		}
+
+		/**
+		 * Set the analyzed image.
+		 *
+		 * @param fileName  The name of the image file.
+		 * @param width     The width of the analyzed image.
+		 * @param height    The height of the analyzed image.
+		 * @param loadNanos The time for decoding the image.
+		 */
+		protected void setImage(final String fileName, final int width, final int height, final long loadNanos) {
+			mFileName = fileName;
+			mWidth = width;
+			mHeight = height;
+			mLoadNanos = loadNanos;
+		}
+
+		/**
+		 * Set the figures of the initial scan.
+		 *
+		 * @param nanos      The time of the scan.
+		 * @param candidates The number of candidate centers.
+		 * @param parallel   Flag indicating if the scan was done in parallel.
+		 */
+		protected void setInitialScan(final long nanos, final int candidates, final boolean parallel) {
+			mInitialScanNanos = nanos;
+			mInitialScanCandidates = candidates;
+			mIsParallel = parallel;
+		}
+
+		/**
+		 * Set the figures of the refinement at one resolution.
+		 *
+		 * @param resolution The resolution.
+		 * @param nanos      The time of the refinement.
+		 * @param candidates The number of candidate evaluations.
+		 * @param steps      The number of refinement steps.
+		 * @param stable     Flag indicating if the refinement became stable.
+		 */
+		protected void setRefinement(final int resolution, final long nanos, final int candidates, final int steps,
+									 final boolean stable) {
+			for (int i = 0; i < mResolutions.length; i++) {
+				if (mResolutions[i] == resolution) {
+					mRefinementNanos[i] = nanos;
+					mRefinementCandidates[i] = candidates;
+					mRefinementSteps[i] = steps;
+					mIsRefinementStable[i] = stable;
+				}
+			}
+		}
+
+		/**
+		 * Set the figures of the iris boundary determination.
+		 *
+		 * @param nanos  The time of the boundary determination.
+		 * @param points The number of boundary points found.
+		 */
+		protected void setIrisBoundary(final long nanos, final int points) {
+			mIrisBoundaryNanos = nanos;
+			mIrisBoundaryPoints = points;
+		}
+
+		/**
+		 * Set the total time of the detection.
+		 *
+		 * @param nanos The total time.
+		 */
+		protected void setTotal(final long nanos) {
+			mTotalNanos = nanos;
+		}
+
+		/**
+		 * Get the figures as CSV line.
+		 *
+		 * @return The CSV line, including line break.
+		 */
+		private String toCsvLine() {
+			StringBuilder line = new StringBuilder();
+			line.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ENGLISH).format(new Date(mStartTime)));
+			line.append(SEPARATOR).append(mFileName == null ? "" : mFileName.replace(SEPARATOR, "_"));
+			line.append(SEPARATOR).append(mWidth).append(SEPARATOR).append(mHeight).append(SEPARATOR).append(mIsParallel);
+			line.append(SEPARATOR).append(toMillis(mLoadNanos));
+			line.append(SEPARATOR).append(toMillis(mInitialScanNanos)).append(SEPARATOR).append(mInitialScanCandidates);
+			for (int i = 0; i < mResolutions.length; i++) {
+				if (mRefinementSteps[i] > 0) {
+					line.append(SEPARATOR).append(toMillis(mRefinementNanos[i])).append(SEPARATOR).append(mRefinementCandidates[i])
+							.append(SEPARATOR).append(mRefinementSteps[i]).append(SEPARATOR).append(mIsRefinementStable[i]);
+				}
+				else {
+					line.append(SEPARATOR).append(SEPARATOR).append(SEPARATOR).append(SEPARATOR);
+				}
+			}
+			line.append(SEPARATOR).append(toMillis(mIrisBoundaryNanos)).append(SEPARATOR).append(mIrisBoundaryPoints);
+			line.append(SEPARATOR).append(toMillis(mTotalNanos)).append("\n");
+			return line.toString();
+		}
+
+		/**
+		 * Format a time in nanoseconds as milliseconds.
+		 *
+		 * @param nanos The time in nanoseconds.
+		 * @return The time in milliseconds, with one decimal.
+		 */
+		private static String toMillis(final long nanos) {
+			return String.format(Locale.ENGLISH, "%.1f", nanos / NANOS_PER_MILLI);
+		}
+	}
+}
@@ -0,0 +1,189 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Scheduler for background iris detection. Detections run on a bounded thread pool. Requests for a file already queued
+ * are ignored, the photo currently displayed can be moved to the front of the queue, and requests for deleted files are
+ * cancelled. Renamed files are tracked, so that the result is stored in the new file.
+ */
+public final class IrisDetectionScheduler {
+	/**
+	 * The number of threads used for iris detection.
+	 */
+	private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The time after which idle threads are stopped.
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 10;
+	/**
+	 * The executor running the detections.
+	 */
+	private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT,
+			KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>());
+	/**
+	 * The queued or running detections, by current file path.
+	 */
+	private static final Map<String, DetectionTask> TASKS = new HashMap<>();
+	/**
+	 * Counter used to order the detections.
+	 */
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	static {
+		EXECUTOR.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Hide default constructor.
+	 */
+	private IrisDetectionScheduler() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Schedule the iris detection for a file. Ignored if the file is already queued or in process.
+	 *
+	 * @param imagePath The path of the image.
+	 */
+	public static void schedule(@NonNull final String imagePath) {
+		synchronized (TASKS) {
+			if (TASKS.containsKey(imagePath)) {
+				return;
+			}
+			DetectionTask task = new DetectionTask(imagePath);
+			TASKS.put(imagePath, task);
+			EXECUTOR.execute(task);
+		}
+	}
+
+	/**
+	 * Move the iris detection of a file to the front of the queue, e.g. because the file is displayed.
+	 *
+	 * @param imagePath The path of the image.
+	 */
+	public static void prioritize(@NonNull final String imagePath) {
+		synchronized (TASKS) {
+			DetectionTask task = TASKS.get(imagePath);
+			// The order may only be changed while the task is not in the queue.
+			if (task != null && EXECUTOR.remove(task)) {
+				task.mOrder = -SEQUENCE.incrementAndGet();
+				EXECUTOR.execute(task);
+			}
+		}
+	}
+
+	/**
+	 * Cancel the iris detection of a file, e.g. because the file has been deleted.
+	 *
+	 * @param imagePath The path of the image.
+	 */
+	public static void cancel(@NonNull final String imagePath) {
+		synchronized (TASKS) {
+			DetectionTask task = TASKS.remove(imagePath);
+			if (task != null) {
+				task.mIsCancelled = true;
+				EXECUTOR.remove(task);
+			}
+		}
+	}
+
+	/**
+	 * Inform about the move of a file, so that the result of the iris detection may be applied to the moved file.
+	 *
+	 * @param oldFileName The old file name.
+	 * @param newFileName the new file name.
+	 */
+	public static void notifyFileRename(@NonNull final String oldFileName, @NonNull final String newFileName) {
+		synchronized (TASKS) {
+			DetectionTask task = TASKS.remove(oldFileName);
+			if (task != null) {
+				task.mImagePath = newFileName;
+				TASKS.put(newFileName, task);
+			}
+		}
+	}
+
+	/**
+	 * Check if other detections are running or waiting.
+	 *
+	 * @return true if the detection currently running is the only one.
+	 */
+	protected static boolean isSingleDetection() {
+		return EXECUTOR.getActiveCount() <= 1 && EXECUTOR.getQueue().isEmpty();
+	}
+
+	/**
+	 * A scheduled iris detection. Tasks are ordered first by priority, then by time of scheduling.
+	 */
+	protected static final class DetectionTask implements Runnable, Comparable<DetectionTask> {
+		/**
+		 * The current path of the file.
+		 */
+		private volatile String mImagePath;
+		/**
+		 * Flag indicating if the detection has been cancelled.
+		 */
+		private volatile boolean mIsCancelled = false;
+		/**
+		 * The position in the queue. Prioritized tasks have negative values, the latest prioritized task coming first.
+		 */
+		private long mOrder;
+
+		/**
+		 * Create a detection task.
+		 *
+		 * @param imagePath The path of the image.
+		 */
+		private DetectionTask(final String imagePath) {
+			mImagePath = imagePath;
+			mOrder = SEQUENCE.incrementAndGet();
+		}
+
+		/**
+		 * Get the current path of the file, taking into account renamings.
+		 *
+		 * @return The current path.
+		 */
+		protected String getImagePath() {
+			return mImagePath;
+		}
+
+		/**
+		 * Check if the detection has been cancelled.
+		 *
+		 * @return true if cancelled.
+		 */
+		protected boolean isCancelled() {
+			return mIsCancelled;
+		}
+
+		@Override
+		public void run() {
+			try {
+				if (!mIsCancelled) {
+					PupilAndIrisDetector.determineAndStoreIrisPosition(this);
+				}
+			}
+			finally {
+				synchronized (TASKS) {
+					if (TASKS.get(mImagePath) == this) {
+						TASKS.remove(mImagePath);
+					}
+				}
+			}
+		}
+
+		@Override
+		public int compareTo(@NonNull final DetectionTask other) {
+			return mOrder < other.mOrder ? -1 : mOrder == other.mOrder ? 0 : 1;
+		}
+	}
+}
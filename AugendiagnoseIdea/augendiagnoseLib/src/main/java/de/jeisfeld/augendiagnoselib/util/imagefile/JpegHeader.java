@@ -0,0 +1,535 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.apache.commons.imaging.util.IoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * The header of a JPEG file, i.e. all segments before the start of the entropy-coded scan data.
+ *
+ * <p>
+ * Metadata (EXIF, XMP) is contained in the header. Therefore metadata can be read and changed on the header alone,
+ * which is small compared to the scan data. The header is provided as a JPEG byte array consisting of the header
+ * segments followed by EOI, so that it can be processed by Commons Imaging like a complete JPEG file. After changing
+ * it, the file is rewritten in one pass, copying the scan data untouched from the original file.
+ *
+ * <p>
+ * The most frequently required data (XMP packet, EXIF orientation and date, image size) are extracted directly from
+ * the header segments while reading them, without Commons Imaging opening the file again.
+ */
+public final class JpegHeader {
+	/**
+	 * The marker prefix.
+	 */
+	private static final int MARKER_PREFIX = 0xFF;
+	/**
+	 * The SOI (start of image) marker.
+	 */
+	private static final int SOI_MARKER = 0xD8;
+	/**
+	 * The EOI (end of image) marker.
+	 */
+	private static final int EOI_MARKER = 0xD9;
+	/**
+	 * The SOS (start of scan) marker.
+	 */
+	private static final int SOS_MARKER = 0xDA;
+	/**
+	 * The first RST (restart) marker.
+	 */
+	private static final int RST0_MARKER = 0xD0;
+	/**
+	 * The last RST (restart) marker.
+	 */
+	private static final int RST7_MARKER = 0xD7;
+	/**
+	 * The TEM marker.
+	 */
+	private static final int TEM_MARKER = 0x01;
+	/**
+	 * The APP1 marker, used for EXIF and XMP.
+	 */
+	private static final int APP1_MARKER = 0xE1;
+	/**
+	 * The first SOF (start of frame) marker.
+	 */
+	private static final int SOF0_MARKER = 0xC0;
+	/**
+	 * The last SOF (start of frame) marker.
+	 */
+	private static final int SOF15_MARKER = 0xCF;
+	/**
+	 * The DHT marker, which is in the range of SOF markers.
+	 */
+	private static final int DHT_MARKER = 0xC4;
+	/**
+	 * The JPG marker, which is in the range of SOF markers.
+	 */
+	private static final int JPG_MARKER = 0xC8;
+	/**
+	 * The DAC marker, which is in the range of SOF markers.
+	 */
+	private static final int DAC_MARKER = 0xCC;
+
+	/**
+	 * The identifier at the start of an EXIF segment.
+	 */
+	private static final byte[] EXIF_IDENTIFIER = {'E', 'x', 'i', 'f', 0, 0};
+	/**
+	 * The identifier at the start of an XMP segment.
+	 */
+	private static final byte[] XMP_IDENTIFIER = "http://ns.adobe.com/xap/1.0/\0".getBytes(Charset.forName("US-ASCII"));
+
+	/**
+	 * The TIFF tag of the orientation.
+	 */
+	private static final int TAG_ORIENTATION = 0x0112;
+	/**
+	 * The TIFF tag of the date.
+	 */
+	private static final int TAG_DATE_TIME = 0x0132;
+	/**
+	 * The TIFF type ASCII.
+	 */
+	private static final int TYPE_ASCII = 2;
+	/**
+	 * The TIFF type SHORT.
+	 */
+	private static final int TYPE_SHORT = 3;
+	/**
+	 * The size of a TIFF directory entry.
+	 */
+	private static final int TIFF_ENTRY_SIZE = 12;
+	/**
+	 * The size of the value field of a TIFF directory entry.
+	 */
+	private static final int TIFF_VALUE_SIZE = 4;
+
+	/**
+	 * The JPEG file.
+	 */
+	private final File mFile;
+
+	/**
+	 * The header bytes, followed by EOI.
+	 */
+	private final byte[] mBytes;
+
+	/**
+	 * The position of the SOS marker in the file (i.e. the size of the header).
+	 */
+	private final long mScanStart;
+
+	/**
+	 * The position of the TIFF structure of the EXIF segment in the header bytes, or -1 if there is no EXIF segment.
+	 */
+	private int mExifStart = -1;
+
+	/**
+	 * The length of the TIFF structure of the EXIF segment.
+	 */
+	private int mExifLength = 0;
+
+	/**
+	 * The XMP packet.
+	 */
+	private String mXmpXml = null;
+
+	/**
+	 * The image width, or 0 if not available.
+	 */
+	private int mImageWidth = 0;
+
+	/**
+	 * The image height, or 0 if not available.
+	 */
+	private int mImageHeight = 0;
+
+	/**
+	 * The EXIF orientation, or 0 if not available.
+	 */
+	private int mExifOrientation = 0;
+
+	/**
+	 * The EXIF date, as stored in EXIF.
+	 */
+	private String mExifDate = null;
+
+	/**
+	 * Read the header of a JPEG file.
+	 *
+	 * @param file the JPEG file.
+	 * @throws IOException thrown if the file cannot be read or is not a valid JPEG file.
+	 */
+	public JpegHeader(@NonNull final File file) throws IOException {
+		mFile = file;
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readUnsignedByte() != MARKER_PREFIX || in.readUnsignedByte() != SOI_MARKER) {
+				throw new IOException("File " + file.getName() + " is not a JPEG file");
+			}
+			header.write(MARKER_PREFIX);
+			header.write(SOI_MARKER);
+			long position = 2;
+
+			while (true) {
+				int marker = readMarker(in);
+				// The marker may be preceded by fill bytes.
+				while (marker == MARKER_PREFIX) {
+					position++;
+					marker = in.readUnsignedByte();
+				}
+				if (marker == SOS_MARKER || marker == EOI_MARKER) {
+					mScanStart = position;
+					break;
+				}
+
+				header.write(MARKER_PREFIX);
+				header.write(marker);
+				position += 2;
+				if (marker >= RST0_MARKER && marker <= RST7_MARKER || marker == TEM_MARKER) {
+					// Standalone marker without length.
+					continue;
+				}
+
+				int length = in.readUnsignedShort();
+				if (length < 2) {
+					throw new IOException("Invalid segment length in file " + file.getName());
+				}
+				byte[] segment = new byte[length - 2];
+				in.readFully(segment);
+				header.write(length >> Byte.SIZE);
+				header.write(length);
+				analyzeSegment(marker, segment, header.size());
+				header.write(segment);
+				position += length;
+			}
+		}
+		catch (EOFException e) {
+			throw new IOException("File " + file.getName() + " has no image data", e);
+		}
+		finally {
+			IoUtils.closeQuietly(false, in);
+		}
+
+		header.write(MARKER_PREFIX);
+		header.write(EOI_MARKER);
+		mBytes = header.toByteArray();
+
+		if (mExifStart >= 0) {
+			try {
+				analyzeExif();
+			}
+			catch (IOException e) {
+				Log.w(Application.TAG, "Invalid EXIF data in file " + file.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Extract the relevant data from a segment.
+	 *
+	 * @param marker         the marker of the segment.
+	 * @param segment        the segment data (after the length).
+	 * @param headerPosition the position of the segment data in the header bytes.
+	 */
+	private void analyzeSegment(final int marker, @NonNull final byte[] segment, final int headerPosition) {
+		if (marker == APP1_MARKER) {
+			if (mExifStart < 0 && startsWith(segment, EXIF_IDENTIFIER)) {
+				mExifStart = headerPosition + EXIF_IDENTIFIER.length;
+				mExifLength = segment.length - EXIF_IDENTIFIER.length;
+			}
+			else if (mXmpXml == null && startsWith(segment, XMP_IDENTIFIER)) {
+				mXmpXml = new String(segment, XMP_IDENTIFIER.length, segment.length - XMP_IDENTIFIER.length,
+						Charset.forName("UTF-8"));
+			}
+		}
+		else if (marker >= SOF0_MARKER && marker <= SOF15_MARKER && marker != DHT_MARKER && marker != JPG_MARKER
+				&& marker != DAC_MARKER && mImageWidth == 0 && segment.length >= 5) { // MAGIC_NUMBER
+			// Segment data: precision (1 byte), height (2 bytes), width (2 bytes).
+			mImageHeight = (segment[1] & MARKER_PREFIX) << Byte.SIZE | segment[2] & MARKER_PREFIX;
+			mImageWidth = (segment[3] & MARKER_PREFIX) << Byte.SIZE | segment[4] & MARKER_PREFIX; // MAGIC_NUMBER
+		}
+	}
+
+	/**
+	 * Extract orientation and date from IFD0 of the EXIF data.
+	 *
+	 * @throws IOException thrown if the EXIF data is invalid.
+	 */
+	private void analyzeExif() throws IOException {
+		TiffReader tiff = new TiffReader();
+		int ifd0Offset = tiff.readInt(4); // MAGIC_NUMBER
+		int entryCount = tiff.readShort(ifd0Offset);
+		for (int i = 0; i < entryCount; i++) {
+			int entryOffset = ifd0Offset + 2 + i * TIFF_ENTRY_SIZE;
+			int tag = tiff.readShort(entryOffset);
+			int type = tiff.readShort(entryOffset + 2);
+			int count = tiff.readInt(entryOffset + 4); // MAGIC_NUMBER
+			int valueOffset = entryOffset + 8; // MAGIC_NUMBER
+
+			if (tag == TAG_ORIENTATION && type == TYPE_SHORT) {
+				mExifOrientation = tiff.readShort(valueOffset);
+			}
+			else if (tag == TAG_DATE_TIME && type == TYPE_ASCII && count > 0) {
+				if (count > TIFF_VALUE_SIZE) {
+					valueOffset = tiff.readInt(valueOffset);
+				}
+				mExifDate = tiff.readString(valueOffset, count);
+			}
+		}
+	}
+
+	/**
+	 * Check if a byte array starts with a prefix.
+	 *
+	 * @param bytes  the byte array.
+	 * @param prefix the prefix.
+	 * @return true if the byte array starts with the prefix.
+	 */
+	private static boolean startsWith(@NonNull final byte[] bytes, @NonNull final byte[] prefix) {
+		if (bytes.length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next marker from the stream.
+	 *
+	 * @param in the stream.
+	 * @return the marker (without prefix).
+	 * @throws IOException thrown if there is no marker at the current position.
+	 */
+	private int readMarker(@NonNull final InputStream in) throws IOException {
+		int prefix = in.read();
+		if (prefix != MARKER_PREFIX) {
+			throw new IOException("Invalid JPEG segment structure in file " + mFile.getName());
+		}
+		int marker = in.read();
+		if (marker < 0) {
+			throw new EOFException();
+		}
+		return marker;
+	}
+
+	/**
+	 * Get the header as JPEG byte array, consisting of the header segments followed by EOI.
+	 *
+	 * @return the header bytes.
+	 */
+	@NonNull
+	public byte[] getBytes() {
+		return mBytes;
+	}
+
+	/**
+	 * Get the XMP packet.
+	 *
+	 * @return the XMP packet, or null if there is no XMP segment.
+	 */
+	@Nullable
+	public String getXmpXml() {
+		return mXmpXml;
+	}
+
+	/**
+	 * Get the orientation from the EXIF data.
+	 *
+	 * @return the orientation value, or 0 if not available.
+	 */
+	public int getExifOrientation() {
+		return mExifOrientation;
+	}
+
+	/**
+	 * Get the date from the EXIF data.
+	 *
+	 * @return the date in EXIF format, or null if not available.
+	 */
+	@Nullable
+	public String getExifDate() {
+		return mExifDate;
+	}
+
+	/**
+	 * Get the width of the image from the frame header.
+	 *
+	 * @return the image width, or 0 if not available.
+	 */
+	public int getImageWidth() {
+		return mImageWidth;
+	}
+
+	/**
+	 * Get the height of the image from the frame header.
+	 *
+	 * @return the image height, or 0 if not available.
+	 */
+	public int getImageHeight() {
+		return mImageHeight;
+	}
+
+	/**
+	 * Get the size of the header in the file.
+	 *
+	 * @return the position of the scan data in the file.
+	 */
+	public long getScanStart() {
+		return mScanStart;
+	}
+
+	/**
+	 * Write the JPEG file with a changed header into a target file. The scan data is copied from the original file
+	 * without passing through the Java heap.
+	 *
+	 * @param targetFile  the target file.
+	 * @param headerBytes the changed header, in the format of getBytes(), i.e. followed by EOI.
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	public void write(@NonNull final File targetFile, @NonNull final byte[] headerBytes) throws IOException {
+		int headerLength = headerBytes.length - 2;
+		if (headerLength < 2 || (headerBytes[headerLength] & MARKER_PREFIX) != MARKER_PREFIX
+				|| (headerBytes[headerLength + 1] & MARKER_PREFIX) != EOI_MARKER) {
+			throw new IOException("Invalid JPEG header");
+		}
+
+		FileInputStream in = null;
+		FileOutputStream out = null;
+		try {
+			in = new FileInputStream(mFile);
+			out = new FileOutputStream(targetFile);
+			FileChannel source = in.getChannel();
+			FileChannel target = out.getChannel();
+
+			ByteBuffer buffer = ByteBuffer.wrap(headerBytes, 0, headerLength);
+			while (buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+
+			long position = mScanStart;
+			long size = source.size();
+			while (position < size) {
+				long transferred = source.transferTo(position, size - position, target);
+				if (transferred <= 0) {
+					throw new IOException("Failed to copy image data of file " + mFile.getName());
+				}
+				position += transferred;
+			}
+			IoUtils.closeQuietly(true, out);
+		}
+		finally {
+			IoUtils.closeQuietly(false, in, out);
+		}
+	}
+
+	/**
+	 * Reader of values in the TIFF structure of the EXIF segment, taking into account its byte order.
+	 */
+	private final class TiffReader {
+		/**
+		 * Flag indicating if the byte order is little endian.
+		 */
+		private final boolean mLittleEndian;
+
+		/**
+		 * Create the reader, determining the byte order.
+		 *
+		 * @throws IOException thrown if the byte order is invalid.
+		 */
+		private TiffReader() throws IOException {
+			checkRange(0, 2);
+			if (mBytes[mExifStart] == 'I' && mBytes[mExifStart + 1] == 'I') {
+				mLittleEndian = true;
+			}
+			else if (mBytes[mExifStart] == 'M' && mBytes[mExifStart + 1] == 'M') {
+				mLittleEndian = false;
+			}
+			else {
+				throw new IOException("Invalid TIFF byte order");
+			}
+		}
+
+		/**
+		 * Read an unsigned 16 bit value.
+		 *
+		 * @param offset the offset in the TIFF structure.
+		 * @return the value.
+		 * @throws IOException thrown if the offset is out of range.
+		 */
+		private int readShort(final int offset) throws IOException {
+			checkRange(offset, 2);
+			int first = mBytes[mExifStart + offset] & MARKER_PREFIX;
+			int second = mBytes[mExifStart + offset + 1] & MARKER_PREFIX;
+			return mLittleEndian ? second << Byte.SIZE | first : first << Byte.SIZE | second;
+		}
+
+		/**
+		 * Read a 32 bit value.
+		 *
+		 * @param offset the offset in the TIFF structure.
+		 * @return the value.
+		 * @throws IOException thrown if the offset is out of range.
+		 */
+		private int readInt(final int offset) throws IOException {
+			int first = readShort(offset);
+			int second = readShort(offset + 2);
+			return mLittleEndian ? second << Short.SIZE | first : first << Short.SIZE | second;
+		}
+
+		/**
+		 * Read a null-terminated ASCII string.
+		 *
+		 * @param offset the offset in the TIFF structure.
+		 * @param count  the number of bytes, including the terminating null.
+		 * @return the string.
+		 * @throws IOException thrown if the offset is out of range.
+		 */
+		private String readString(final int offset, final int count) throws IOException {
+			checkRange(offset, count);
+			int length = 0;
+			while (length < count && mBytes[mExifStart + offset + length] != 0) {
+				length++;
+			}
+			return new String(mBytes, mExifStart + offset, length, Charset.forName("US-ASCII"));
+		}
+
+		/**
+		 * Check that a range is within the TIFF structure.
+		 *
+		 * @param offset the offset of the range.
+		 * @param length the length of the range.
+		 * @throws IOException thrown if the range is out of bounds.
+		 */
+		private void checkRange(final int offset, final int length) throws IOException {
+			if (offset < 0 || length < 0 || (long) offset + length > mExifLength) {
+				throw new IOException("Offset " + offset + " out of range");
+			}
+		}
+	}
+}
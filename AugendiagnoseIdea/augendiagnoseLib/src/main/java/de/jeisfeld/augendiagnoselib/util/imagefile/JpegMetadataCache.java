@@ -0,0 +1,182 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded in-memory cache of the metadata of jpg files, so that repeated retrieval of metadata (e.g. on each display
+ * update) does not require reading and parsing the file.
+ *
+ * <p>
+ * Entries are keyed by path and are valid only as long as modification time and size of the file are unchanged. The
+ * cache holds copies of the metadata, so that changes of the retrieved metadata do not affect the cache before they are
+ * stored.
+ */
+final class JpegMetadataCache {
+	/**
+	 * The maximum number of cached entries.
+	 */
+	private static final int MAX_ENTRIES = 500;
+
+	/**
+	 * The cached entries, in order of last access.
+	 */
+	private static final Map<String, CacheEntry> CACHE = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) { // MAGIC_NUMBER
+		/**
+		 * The default serial version UID.
+		 */
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, CacheEntry> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Hide default constructor.
+	 */
+	private JpegMetadataCache() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the cached metadata of a file, if still valid.
+	 *
+	 * @param pathname the path of the jpg file.
+	 * @return a copy of the cached metadata, or null if there is no valid cache entry.
+	 */
+	@Nullable
+	protected static JpegMetadata get(@NonNull final String pathname) {
+		File file = new File(pathname);
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		synchronized (CACHE) {
+			CacheEntry entry = CACHE.get(pathname);
+			if (entry == null) {
+				return null;
+			}
+			if (entry.mLastModified != lastModified || entry.mLength != length || lastModified == 0) {
+				CACHE.remove(pathname);
+				return null;
+			}
+			return copy(entry.mMetadata);
+		}
+	}
+
+	/**
+	 * Store the metadata of a file in the cache. The metadata must correspond to the current file contents.
+	 *
+	 * @param pathname the path of the jpg file.
+	 * @param metadata the metadata.
+	 */
+	protected static void put(@NonNull final String pathname, final JpegMetadata metadata) {
+		File file = new File(pathname);
+		put(pathname, metadata, file.lastModified(), file.length());
+	}
+
+	/**
+	 * Store the metadata of a file in the cache. Modification time and size are to be determined before reading the
+	 * metadata from the file, so that a concurrent change of the file invalidates the entry.
+	 *
+	 * @param pathname     the path of the jpg file.
+	 * @param metadata     the metadata.
+	 * @param lastModified the modification time of the file when the metadata was read.
+	 * @param length       the size of the file when the metadata was read.
+	 */
+	protected static void put(@NonNull final String pathname, @Nullable final JpegMetadata metadata,
+							  final long lastModified, final long length) {
+		if (metadata == null || lastModified == 0) {
+			invalidate(pathname);
+			return;
+		}
+		CacheEntry entry = new CacheEntry(copy(metadata), lastModified, length);
+
+		synchronized (CACHE) {
+			CACHE.put(pathname, entry);
+		}
+	}
+
+	/**
+	 * Remove the cache entry of a file.
+	 *
+	 * @param pathname the path of the file.
+	 */
+	protected static void invalidate(final String pathname) {
+		synchronized (CACHE) {
+			CACHE.remove(pathname);
+		}
+	}
+
+	/**
+	 * Create a copy of metadata.
+	 *
+	 * @param metadata the metadata.
+	 * @return the copy.
+	 */
+	@NonNull
+	protected static JpegMetadata copy(@NonNull final JpegMetadata metadata) {
+		JpegMetadata result = new JpegMetadata();
+		result.setTitle(metadata.getTitle());
+		result.setDescription(metadata.getDescription());
+		result.setSubject(metadata.getSubject());
+		result.setComment(metadata.getComment());
+		result.setPerson(metadata.getPerson());
+		result.setXCenter(metadata.getXCenter());
+		result.setYCenter(metadata.getYCenter());
+		result.setOverlayScaleFactor(metadata.getOverlayScaleFactor());
+		result.setXPosition(metadata.getXPosition());
+		result.setYPosition(metadata.getYPosition());
+		result.setZoomFactor(metadata.getZoomFactor());
+		result.setOrganizeDate(metadata.getOrganizeDate() == null ? null : new Date(metadata.getOrganizeDate().getTime()));
+		result.setRightLeft(metadata.getRightLeft());
+		result.setBrightness(metadata.getBrightness());
+		result.setContrast(metadata.getContrast());
+		result.setSaturation(metadata.getSaturation());
+		result.setColorTemperature(metadata.getColorTemperature());
+		result.setPupilSize(metadata.getPupilSize());
+		result.setPupilXOffset(metadata.getPupilXOffset());
+		result.setPupilYOffset(metadata.getPupilYOffset());
+		result.setOverlayColor(metadata.getOverlayColor());
+		result.setFlags(metadata.getFlags());
+		result.setOrientation(metadata.getOrientation());
+		return result;
+	}
+
+	/**
+	 * A cache entry.
+	 */
+	private static final class CacheEntry {
+		/**
+		 * The cached metadata.
+		 */
+		private final JpegMetadata mMetadata;
+		/**
+		 * The modification time of the file when the metadata was cached.
+		 */
+		private final long mLastModified;
+		/**
+		 * The size of the file when the metadata was cached.
+		 */
+		private final long mLength;
+
+		/**
+		 * Constructor for the cache entry.
+		 *
+		 * @param metadata     the metadata.
+		 * @param lastModified the modification time of the file.
+		 * @param length       the size of the file.
+		 */
+		private CacheEntry(final JpegMetadata metadata, final long lastModified, final long length) {
+			mMetadata = metadata;
+			mLastModified = lastModified;
+			mLength = length;
+		}
+	}
+}
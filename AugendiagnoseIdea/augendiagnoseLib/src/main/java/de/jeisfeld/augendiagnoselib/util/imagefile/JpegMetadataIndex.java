@@ -0,0 +1,1017 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.apache.commons.imaging.util.IoUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.jeisfeld.augendiagnoselib.Application;
+
+/**
+ * Persistent local index of the metadata of jpg files, so that metadata based features do not require opening every
+ * photo, and so that a restart of the application does not require parsing all photos again.
+ *
+ * <p>
+ * For each jpg file, the index stores the parsed metadata, size and modification time of the file, the image
+ * dimensions, the EXIF orientation and the path of a thumbnail file (if available). Entries are valid only as long as
+ * modification time and size of the file are unchanged. Therefore, refreshing the index parses only new or changed
+ * files.
+ *
+ * <p>
+ * The index is stored in the private files directory of the app as a snapshot file plus a journal of the changes since
+ * the snapshot. It is loaded in the background, and then fills the JpegMetadataSearchIndex. Until then, lookups find
+ * no entries, so that callers parse the files, and changes are applied only after loading. Changes are appended to
+ * the journal in the background, and the journal is merged into a new snapshot once it has grown beyond a fraction of
+ * the index size. Changes which are not yet written when the app is terminated are lost, so that the affected files
+ * are just parsed again.
+ */
+public final class JpegMetadataIndex {
+	/**
+	 * The tag for logging.
+	 */
+	private static final String TAG = Application.TAG + ".JMI";
+
+	/**
+	 * The name of the snapshot file.
+	 */
+	private static final String INDEX_FILE_NAME = "metadata-index.dat";
+
+	/**
+	 * The name of the journal file.
+	 */
+	private static final String JOURNAL_FILE_NAME = "metadata-index.journal";
+
+	/**
+	 * Identifier at the start of index files.
+	 */
+	private static final int FILE_MAGIC = 0x4A4D4958; // MAGIC_NUMBER
+
+	/**
+	 * The version of the file format. To be increased on incompatible changes, so that old files are ignored.
+	 */
+	private static final int FILE_VERSION = 1;
+
+	/**
+	 * Record type for storing an entry.
+	 */
+	private static final byte RECORD_PUT = 1;
+
+	/**
+	 * Record type for removing an entry.
+	 */
+	private static final byte RECORD_REMOVE = 2;
+
+	/**
+	 * The minimum number of journal records before the journal is merged into the snapshot.
+	 */
+	private static final int MIN_COMPACTION_RECORDS = 1000;
+
+	/**
+	 * The journal is merged into the snapshot if it has more records than the number of entries divided by this value.
+	 */
+	private static final int COMPACTION_DIVISOR = 4;
+
+	/**
+	 * The buffer size for reading and writing index files.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * The charset of strings in index files.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The entries of the index, by absolute path.
+	 */
+	private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+	/**
+	 * The changes not yet written to the journal, by absolute path. A null value indicates removal.
+	 */
+	private static final Map<String, Entry> PENDING_CHANGES = new LinkedHashMap<>();
+
+	/**
+	 * The changes made before the index has been loaded, by absolute path. A null value indicates removal. They are
+	 * applied once loading is complete.
+	 */
+	private static final Map<String, Entry> DEFERRED_CHANGES = new LinkedHashMap<>();
+
+	/**
+	 * The executor writing the index files.
+	 */
+	private static final ExecutorService WRITER =
+			Executors.newSingleThreadExecutor(new IndexThreadFactory("Writer"));
+
+	/**
+	 * The executor refreshing the index.
+	 */
+	private static final ExecutorService REFRESHER =
+			Executors.newSingleThreadExecutor(new IndexThreadFactory("Refresh"));
+
+	/**
+	 * The lock for loading the index from the files. Loading reads the files without locking ENTRIES.
+	 */
+	private static final Object LOAD_LOCK = new Object();
+
+	/**
+	 * Flag indicating if the index has been loaded from the files.
+	 */
+	private static volatile boolean mLoaded = false;
+
+	/**
+	 * Flag indicating if loading of the index in the background has been triggered.
+	 */
+	private static final AtomicBoolean LOAD_TRIGGERED = new AtomicBoolean(false);
+
+	/**
+	 * Flag indicating if writing of pending changes is scheduled.
+	 */
+	private static boolean mWriteScheduled = false;
+
+	/**
+	 * The number of records in the journal.
+	 */
+	private static int mJournalRecords = 0;
+
+	/**
+	 * Hide default constructor.
+	 */
+	private JpegMetadataIndex() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Get the index entry of a file, if still valid.
+	 *
+	 * @param pathname the path of the jpg file.
+	 * @return the entry, or null if the file is not indexed or has changed since indexing, or if the index is not yet
+	 * loaded.
+	 */
+	@Nullable
+	public static Entry get(@NonNull final String pathname) {
+		if (!mLoaded) {
+			// Do not wait for the index - the caller reads the file instead.
+			loadInBackground();
+			return null;
+		}
+
+		File file = new File(pathname);
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		Entry entry;
+		synchronized (ENTRIES) {
+			entry = ENTRIES.get(file.getAbsolutePath());
+		}
+		if (entry == null || entry.mLastModified != lastModified || entry.mLength != length || lastModified == 0) {
+			return null;
+		}
+		return entry;
+	}
+
+	/**
+	 * Parse a file and store the result in the index. Only the file header is read.
+	 *
+	 * @param file the jpg file.
+	 * @return the new entry.
+	 * @throws IOException thrown if the file cannot be read or is no JPEG file.
+	 */
+	@NonNull
+	public static Entry update(@NonNull final File file) throws IOException {
+		// Modification time and size are determined before reading, so that a concurrent change invalidates the entry.
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		JpegHeader header = new JpegHeader(file);
+		JpegMetadata metadata = JpegMetadataUtil.getMetadata(header);
+
+		Entry entry = new Entry(metadata, lastModified, length, header.getImageWidth(), header.getImageHeight(),
+				header.getExifOrientation(), null);
+		put(file.getAbsolutePath(), entry);
+		return entry;
+	}
+
+	/**
+	 * Update the metadata of an indexed file after the metadata has been stored in the file. As the image data is
+	 * unchanged, dimensions and thumbnail are retained.
+	 *
+	 * @param pathname the path of the jpg file.
+	 * @param metadata the metadata stored in the file.
+	 */
+	protected static void putMetadata(@NonNull final String pathname, @Nullable final JpegMetadata metadata) {
+		File file = new File(pathname);
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		synchronized (ENTRIES) {
+			Entry previousEntry = getCurrentEntry(key);
+			if (previousEntry == null || metadata == null || lastModified == 0) {
+				// dimensions are unknown - the file is parsed again on next refresh.
+				remove(key);
+			}
+			else {
+				int orientation = metadata.getOrientation() == null ? previousEntry.mOrientation : metadata.getOrientation();
+				put(key, new Entry(JpegMetadataCache.copy(metadata), lastModified, length, previousEntry.mWidth,
+						previousEntry.mHeight, orientation, previousEntry.mThumbnailPath));
+			}
+		}
+	}
+
+	/**
+	 * Set the path of the thumbnail file of an indexed file.
+	 *
+	 * @param pathname      the path of the jpg file.
+	 * @param thumbnailPath the path of the thumbnail file.
+	 */
+	public static void setThumbnailPath(@NonNull final String pathname, @Nullable final String thumbnailPath) {
+		String key = new File(pathname).getAbsolutePath();
+		synchronized (ENTRIES) {
+			Entry entry = getCurrentEntry(key);
+			if (entry != null) {
+				put(key, new Entry(entry.mMetadata, entry.mLastModified, entry.mLength, entry.mWidth, entry.mHeight,
+						entry.mOrientation, thumbnailPath));
+			}
+		}
+	}
+
+	/**
+	 * Remove the index entry of a file. To be called if the file is moved, renamed or deleted.
+	 *
+	 * @param pathname the path of the file.
+	 */
+	public static void invalidate(@NonNull final String pathname) {
+		synchronized (ENTRIES) {
+			remove(new File(pathname).getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Refresh the index for all jpg files in a folder and its subfolders in the background.
+	 *
+	 * @param folder the folder.
+	 */
+	public static void refreshInBackground(@NonNull final File folder) {
+		REFRESHER.execute(new Runnable() {
+			@Override
+			public void run() {
+				refresh(folder);
+			}
+		});
+	}
+
+	/**
+	 * Refresh the index for all jpg files in a folder and its subfolders. Only new and changed files are parsed, and
+	 * entries of files which do not exist any more are removed.
+	 *
+	 * @param folder the folder.
+	 */
+	public static void refresh(@NonNull final File folder) {
+		long startTime = System.currentTimeMillis();
+		load();
+		Set<String> existingPaths = new HashSet<>();
+		int parsedCount = refreshFolder(folder.getAbsoluteFile(), existingPaths);
+
+		String prefix = folder.getAbsolutePath() + File.separator;
+		synchronized (ENTRIES) {
+			List<String> removedPaths = new ArrayList<>();
+			for (String path : ENTRIES.keySet()) {
+				if (path.startsWith(prefix) && !existingPaths.contains(path)) {
+					removedPaths.add(path);
+				}
+			}
+			for (String path : removedPaths) {
+				remove(path);
+			}
+		}
+		Log.i(TAG, "Refreshed metadata index of " + folder + ": " + existingPaths.size() + " files, " + parsedCount
+				+ " parsed, in " + (System.currentTimeMillis() - startTime) + " ms");
+	}
+
+	/**
+	 * Refresh the index for all jpg files in a folder and its subfolders.
+	 *
+	 * @param folder        the folder.
+	 * @param existingPaths the set to which the paths of the found jpg files are added.
+	 * @return the number of parsed files.
+	 */
+	private static int refreshFolder(@NonNull final File folder, @NonNull final Set<String> existingPaths) {
+		File[] files = folder.listFiles();
+		if (files == null) {
+			return 0;
+		}
+
+		int parsedCount = 0;
+		for (File file : files) {
+			if (file.isDirectory()) {
+				parsedCount += refreshFolder(file, existingPaths);
+			}
+			else if (file.getName().toUpperCase(Locale.ENGLISH).endsWith(".JPG")) {
+				String path = file.getAbsolutePath();
+				existingPaths.add(path);
+				if (get(path) == null) {
+					try {
+						update(file);
+						parsedCount++;
+					}
+					catch (IOException e) {
+						Log.w(TAG, "Failed to index file " + path + ": " + e.getMessage());
+						invalidate(path);
+					}
+				}
+			}
+		}
+		return parsedCount;
+	}
+
+	/**
+	 * Get the current entry of a file, including changes not yet applied because the index is still loading. Must be
+	 * called within synchronization on ENTRIES.
+	 *
+	 * @param key the absolute path of the file.
+	 * @return the entry, or null if not available.
+	 */
+	@Nullable
+	private static Entry getCurrentEntry(@NonNull final String key) {
+		return mLoaded ? ENTRIES.get(key) : DEFERRED_CHANGES.get(key);
+	}
+
+	/**
+	 * Store an entry. If the index is not yet loaded, the change is applied after loading.
+	 *
+	 * @param key   the absolute path of the file.
+	 * @param entry the entry.
+	 */
+	private static void put(@NonNull final String key, @NonNull final Entry entry) {
+		synchronized (ENTRIES) {
+			if (mLoaded) {
+				ENTRIES.put(key, entry);
+				PENDING_CHANGES.put(key, entry);
+				scheduleWrite();
+			}
+			else {
+				DEFERRED_CHANGES.put(key, entry);
+				loadInBackground();
+			}
+			JpegMetadataSearchIndex.update(key, entry.mMetadata);
+		}
+	}
+
+	/**
+	 * Remove an entry. If the index is not yet loaded, the change is applied after loading. Must be called within
+	 * synchronization on ENTRIES.
+	 *
+	 * @param key the absolute path of the file.
+	 */
+	private static void remove(@NonNull final String key) {
+		if (!mLoaded) {
+			DEFERRED_CHANGES.put(key, null);
+			loadInBackground();
+			JpegMetadataSearchIndex.remove(key);
+		}
+		else if (ENTRIES.remove(key) != null) {
+			PENDING_CHANGES.put(key, null);
+			scheduleWrite();
+			JpegMetadataSearchIndex.remove(key);
+		}
+	}
+
+	/**
+	 * Trigger writing of the pending changes, if not yet done. Must be called within synchronization on ENTRIES.
+	 */
+	private static void scheduleWrite() {
+		if (mWriteScheduled) {
+			return;
+		}
+		mWriteScheduled = true;
+		WRITER.execute(new Runnable() {
+			@Override
+			public void run() {
+				writePendingChanges();
+			}
+		});
+	}
+
+	/**
+	 * Write the pending changes to the journal, or write a new snapshot if the journal has become too big.
+	 */
+	private static void writePendingChanges() {
+		Map<String, Entry> changes;
+		Map<String, Entry> snapshot = null;
+		synchronized (ENTRIES) {
+			changes = new LinkedHashMap<>(PENDING_CHANGES);
+			PENDING_CHANGES.clear();
+			mWriteScheduled = false;
+			mJournalRecords += changes.size();
+			if (mJournalRecords > Math.max(MIN_COMPACTION_RECORDS, ENTRIES.size() / COMPACTION_DIVISOR)) {
+				snapshot = new HashMap<>(ENTRIES);
+				mJournalRecords = 0;
+			}
+		}
+
+		File dataDir = Application.getAppContext().getFilesDir();
+		File indexFile = new File(dataDir, INDEX_FILE_NAME);
+		File journalFile = new File(dataDir, JOURNAL_FILE_NAME);
+
+		if (snapshot != null) {
+			try {
+				File tempFile = new File(dataDir, INDEX_FILE_NAME + ".temp");
+				writeRecords(tempFile, snapshot, false);
+				if (!tempFile.renameTo(indexFile)) {
+					throw new IOException("Failed to rename " + tempFile + " to " + indexFile);
+				}
+				if (journalFile.exists() && !journalFile.delete()) {
+					throw new IOException("Failed to delete " + journalFile);
+				}
+				return;
+			}
+			catch (IOException e) {
+				Log.e(TAG, "Failed to write metadata index", e);
+			}
+		}
+
+		try {
+			writeRecords(journalFile, changes, journalFile.length() > 0);
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Failed to write metadata index journal", e);
+		}
+	}
+
+	/**
+	 * Load the index from the snapshot and the journal, if not yet done. Must not be called within synchronization on
+	 * ENTRIES.
+	 */
+	protected static void load() {
+		if (mLoaded) {
+			return;
+		}
+		synchronized (LOAD_LOCK) {
+			if (mLoaded) {
+				return;
+			}
+			File dataDir = Application.getAppContext().getFilesDir();
+			Map<String, Entry> entries = new HashMap<>();
+			readRecords(new File(dataDir, INDEX_FILE_NAME), entries, false);
+			int journalRecords = readRecords(new File(dataDir, JOURNAL_FILE_NAME), entries, true);
+
+			synchronized (ENTRIES) {
+				// Changes before loading are deferred, so ENTRIES is still empty.
+				ENTRIES.putAll(entries);
+				mJournalRecords = journalRecords;
+				for (Map.Entry<String, Entry> entry : ENTRIES.entrySet()) {
+					JpegMetadataSearchIndex.update(entry.getKey(), entry.getValue().mMetadata);
+				}
+				mLoaded = true;
+
+				for (Map.Entry<String, Entry> change : DEFERRED_CHANGES.entrySet()) {
+					if (change.getValue() == null) {
+						remove(change.getKey());
+					}
+					else {
+						put(change.getKey(), change.getValue());
+					}
+				}
+				DEFERRED_CHANGES.clear();
+			}
+		}
+	}
+
+	/**
+	 * Load the index from the files in the background, if not yet done.
+	 */
+	public static void loadInBackground() {
+		if (!mLoaded && LOAD_TRIGGERED.compareAndSet(false, true)) {
+			REFRESHER.execute(new Runnable() {
+				@Override
+				public void run() {
+					load();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Write records into an index file.
+	 *
+	 * @param file    the file.
+	 * @param records the records. A null entry indicates removal.
+	 * @param append  flag indicating if the records should be appended to the existing file.
+	 * @throws IOException thrown if the file cannot be written.
+	 */
+	private static void writeRecords(@NonNull final File file, @NonNull final Map<String, Entry> records,
+									 final boolean append) throws IOException {
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append), BUFFER_SIZE));
+			if (!append) {
+				out.writeInt(FILE_MAGIC);
+				out.writeInt(FILE_VERSION);
+			}
+			for (Map.Entry<String, Entry> record : records.entrySet()) {
+				if (record.getValue() == null) {
+					out.writeByte(RECORD_REMOVE);
+					writeString(out, record.getKey());
+				}
+				else {
+					out.writeByte(RECORD_PUT);
+					writeString(out, record.getKey());
+					record.getValue().write(out);
+				}
+			}
+			IoUtils.closeQuietly(true, out);
+		}
+		finally {
+			IoUtils.closeQuietly(false, out);
+		}
+	}
+
+	/**
+	 * Read the records of an index file into a map. Reading stops at the first truncated or invalid record. If
+	 * requested, the file is truncated after the last complete record, so that records appended later can be read
+	 * again. Thus, a write interrupted by termination of the app loses only the last changes.
+	 *
+	 * @param file     the file.
+	 * @param entries  the map into which the records are read.
+	 * @param truncate flag indicating if invalid records at the end of the file should be removed.
+	 * @return the number of records read.
+	 */
+	private static int readRecords(@NonNull final File file, @NonNull final Map<String, Entry> entries,
+								   final boolean truncate) {
+		if (!file.exists()) {
+			return 0;
+		}
+
+		int count = 0;
+		long validLength = 0;
+		IndexInputStream in = null;
+		try {
+			in = new IndexInputStream(file);
+			if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+				Log.w(TAG, "Ignoring metadata index file " + file + " of other version");
+			}
+			else {
+				validLength = in.getPosition();
+				while (in.getRemainingLength() > 0) {
+					byte recordType = in.readByte();
+					String key = readString(in);
+					if (recordType == RECORD_PUT) {
+						entries.put(key, Entry.read(in));
+					}
+					else if (recordType == RECORD_REMOVE) {
+						entries.remove(key);
+					}
+					else {
+						throw new IOException("Invalid record type " + recordType);
+					}
+					validLength = in.getPosition();
+					count++;
+				}
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			Log.w(TAG, "Failed to read metadata index file " + file + " after " + count + " records", e);
+		}
+		finally {
+			if (in != null) {
+				try {
+					in.close();
+				}
+				catch (Exception e) {
+					// ignore exception
+				}
+			}
+		}
+
+		if (truncate && validLength < file.length()) {
+			truncateFile(file, validLength);
+		}
+		return count;
+	}
+
+	/**
+	 * Truncate a file. If this fails, the file is deleted.
+	 *
+	 * @param file   the file.
+	 * @param length the new length of the file.
+	 */
+	private static void truncateFile(@NonNull final File file, final long length) {
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			randomAccessFile.setLength(length);
+		}
+		catch (IOException e) {
+			Log.e(TAG, "Failed to truncate metadata index file " + file, e);
+			if (!file.delete()) {
+				Log.e(TAG, "Failed to delete metadata index file " + file);
+			}
+		}
+		finally {
+			if (randomAccessFile != null) {
+				try {
+					randomAccessFile.close();
+				}
+				catch (Exception e) {
+					// ignore exception
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write a string which may be null.
+	 *
+	 * @param out   the output stream.
+	 * @param value the string.
+	 * @throws IOException thrown in case of write errors.
+	 */
+	private static void writeString(@NonNull final DataOutputStream out, @Nullable final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		}
+		else {
+			byte[] bytes = value.getBytes(UTF8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	/**
+	 * Read a string which may be null.
+	 *
+	 * @param in the input stream.
+	 * @return the string.
+	 * @throws IOException thrown in case of read errors, or if the string does not fit into the file.
+	 */
+	@Nullable
+	private static String readString(@NonNull final IndexInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		if (length > in.getRemainingLength()) {
+			throw new EOFException("Invalid string length " + length);
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Write a Float which may be null.
+	 *
+	 * @param out   the output stream.
+	 * @param value the value.
+	 * @throws IOException thrown in case of write errors.
+	 */
+	private static void writeFloat(@NonNull final DataOutputStream out, @Nullable final Float value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeFloat(value);
+		}
+	}
+
+	/**
+	 * Read a Float which may be null.
+	 *
+	 * @param in the input stream.
+	 * @return the value.
+	 * @throws IOException thrown in case of read errors.
+	 */
+	@Nullable
+	private static Float readFloat(@NonNull final DataInputStream in) throws IOException {
+		return in.readBoolean() ? Float.valueOf(in.readFloat()) : null;
+	}
+
+	/**
+	 * An entry of the index.
+	 */
+	public static final class Entry {
+		/**
+		 * The metadata of the file.
+		 */
+		@NonNull
+		private final JpegMetadata mMetadata;
+		/**
+		 * The modification time of the file when it was indexed.
+		 */
+		private final long mLastModified;
+		/**
+		 * The size of the file when it was indexed.
+		 */
+		private final long mLength;
+		/**
+		 * The width of the image (before rotation), or 0 if unknown.
+		 */
+		private final int mWidth;
+		/**
+		 * The height of the image (before rotation), or 0 if unknown.
+		 */
+		private final int mHeight;
+		/**
+		 * The EXIF orientation value, or 0 if not available.
+		 */
+		private final int mOrientation;
+		/**
+		 * The path of the thumbnail file, or null if not available.
+		 */
+		@Nullable
+		private final String mThumbnailPath;
+
+		/**
+		 * Constructor for the entry.
+		 *
+		 * @param metadata      the metadata of the file.
+		 * @param lastModified  the modification time of the file.
+		 * @param length        the size of the file.
+		 * @param width         the width of the image.
+		 * @param height        the height of the image.
+		 * @param orientation   the EXIF orientation value.
+		 * @param thumbnailPath the path of the thumbnail file.
+		 */
+		private Entry(@NonNull final JpegMetadata metadata, final long lastModified, final long length, // SUPPRESS_CHECKSTYLE
+					  final int width, final int height, final int orientation, @Nullable final String thumbnailPath) {
+			mMetadata = metadata;
+			mLastModified = lastModified;
+			mLength = length;
+			mWidth = width;
+			mHeight = height;
+			mOrientation = orientation;
+			mThumbnailPath = thumbnailPath;
+		}
+
+		/**
+		 * Get a copy of the metadata of the file.
+		 *
+		 * @return the metadata.
+		 */
+		@NonNull
+		public JpegMetadata getMetadata() {
+			return JpegMetadataCache.copy(mMetadata);
+		}
+
+		// JAVADOC:OFF
+		public long getLastModified() {
+			return mLastModified;
+		}
+
+		public long getLength() {
+			return mLength;
+		}
+
+		public int getWidth() {
+			return mWidth;
+		}
+
+		public int getHeight() {
+			return mHeight;
+		}
+
+		public int getOrientation() {
+			return mOrientation;
+		}
+
+		@Nullable
+		public String getThumbnailPath() {
+			return mThumbnailPath;
+		}
+
+		// JAVADOC:ON
+
+		/**
+		 * Write the entry to an index file.
+		 *
+		 * @param out the output stream.
+		 * @throws IOException thrown in case of write errors.
+		 */
+		private void write(@NonNull final DataOutputStream out) throws IOException {
+			out.writeLong(mLastModified);
+			out.writeLong(mLength);
+			out.writeInt(mWidth);
+			out.writeInt(mHeight);
+			out.writeInt(mOrientation);
+			writeString(out, mThumbnailPath);
+
+			writeString(out, mMetadata.getTitle());
+			writeString(out, mMetadata.getDescription());
+			writeString(out, mMetadata.getSubject());
+			writeString(out, mMetadata.getComment());
+			writeString(out, mMetadata.getPerson());
+			writeFloat(out, mMetadata.getXCenter());
+			writeFloat(out, mMetadata.getYCenter());
+			writeFloat(out, mMetadata.getOverlayScaleFactor());
+			writeFloat(out, mMetadata.getXPosition());
+			writeFloat(out, mMetadata.getYPosition());
+			writeFloat(out, mMetadata.getZoomFactor());
+			out.writeLong(mMetadata.getOrganizeDate() == null ? Long.MIN_VALUE : mMetadata.getOrganizeDate().getTime());
+			writeString(out, mMetadata.getRightLeftString());
+			writeFloat(out, mMetadata.getBrightness());
+			writeFloat(out, mMetadata.getContrast());
+			writeFloat(out, mMetadata.getSaturation());
+			writeFloat(out, mMetadata.getColorTemperature());
+			writeFloat(out, mMetadata.getPupilSize());
+			writeFloat(out, mMetadata.getPupilXOffset());
+			writeFloat(out, mMetadata.getPupilYOffset());
+			out.writeBoolean(mMetadata.getOverlayColor() != null);
+			if (mMetadata.getOverlayColor() != null) {
+				out.writeInt(mMetadata.getOverlayColor());
+			}
+			out.writeInt(mMetadata.getFlags());
+			out.writeBoolean(mMetadata.getOrientation() != null);
+			if (mMetadata.getOrientation() != null) {
+				out.writeShort(mMetadata.getOrientation());
+			}
+		}
+
+		/**
+		 * Read an entry from an index file.
+		 *
+		 * @param in the input stream.
+		 * @return the entry.
+		 * @throws IOException thrown in case of read errors.
+		 */
+		@NonNull
+		private static Entry read(@NonNull final IndexInputStream in) throws IOException {
+			long lastModified = in.readLong();
+			long length = in.readLong();
+			int width = in.readInt();
+			int height = in.readInt();
+			int orientation = in.readInt();
+			String thumbnailPath = readString(in);
+
+			JpegMetadata metadata = new JpegMetadata();
+			metadata.setTitle(readString(in));
+			metadata.setDescription(readString(in));
+			metadata.setSubject(readString(in));
+			metadata.setComment(readString(in));
+			metadata.setPerson(readString(in));
+			metadata.setXCenter(readFloat(in));
+			metadata.setYCenter(readFloat(in));
+			metadata.setOverlayScaleFactor(readFloat(in));
+			metadata.setXPosition(readFloat(in));
+			metadata.setYPosition(readFloat(in));
+			metadata.setZoomFactor(readFloat(in));
+			long organizeDate = in.readLong();
+			metadata.setOrganizeDate(organizeDate == Long.MIN_VALUE ? null : new Date(organizeDate));
+			metadata.setRightLeft(readString(in));
+			metadata.setBrightness(readFloat(in));
+			metadata.setContrast(readFloat(in));
+			metadata.setSaturation(readFloat(in));
+			metadata.setColorTemperature(readFloat(in));
+			metadata.setPupilSize(readFloat(in));
+			metadata.setPupilXOffset(readFloat(in));
+			metadata.setPupilYOffset(readFloat(in));
+			metadata.setOverlayColor(in.readBoolean() ? Integer.valueOf(in.readInt()) : null);
+			metadata.setFlags(in.readInt());
+			metadata.setOrientation(in.readBoolean() ? Short.valueOf(in.readShort()) : null);
+
+			return new Entry(metadata, lastModified, length, width, height, orientation, thumbnailPath);
+		}
+	}
+
+	/**
+	 * Input stream for index files, keeping track of the position in the file.
+	 */
+	private static final class IndexInputStream extends DataInputStream {
+		/**
+		 * The length of the file.
+		 */
+		private final long mFileLength;
+
+		/**
+		 * Constructor for the input stream.
+		 *
+		 * @param file the index file.
+		 * @throws IOException thrown if the file cannot be opened.
+		 */
+		private IndexInputStream(@NonNull final File file) throws IOException {
+			super(new CountingInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)));
+			mFileLength = file.length();
+		}
+
+		/**
+		 * Get the number of bytes read so far.
+		 *
+		 * @return the position in the file.
+		 */
+		private long getPosition() {
+			return ((CountingInputStream) in).mPosition;
+		}
+
+		/**
+		 * Get the number of bytes not yet read.
+		 *
+		 * @return the remaining length of the file.
+		 */
+		private long getRemainingLength() {
+			return mFileLength - getPosition();
+		}
+	}
+
+	/**
+	 * Input stream counting the bytes read.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		/**
+		 * The number of bytes read.
+		 */
+		private long mPosition = 0;
+
+		/**
+		 * Constructor for the input stream.
+		 *
+		 * @param in the underlying input stream.
+		 */
+		private CountingInputStream(@NonNull final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int result = super.read();
+			if (result >= 0) {
+				mPosition++;
+			}
+			return result;
+		}
+
+		@Override
+		public int read(@NonNull final byte[] b, final int off, final int len) throws IOException {
+			int result = super.read(b, off, len);
+			if (result > 0) {
+				mPosition += result;
+			}
+			return result;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			long result = super.skip(n);
+			mPosition += result;
+			return result;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	/**
+	 * Factory for the daemon threads of the index.
+	 */
+	private static final class IndexThreadFactory implements ThreadFactory {
+		/**
+		 * The name of the threads.
+		 */
+		private final String mName;
+
+		/**
+		 * Constructor for the factory.
+		 *
+		 * @param name the name suffix of the threads.
+		 */
+		private IndexThreadFactory(final String name) {
+			mName = "JpegMetadataIndex-" + name;
+		}
+
+		@NonNull
+		@Override
+		public Thread newThread(@NonNull final Runnable runnable) {
+			Thread thread = new Thread(runnable, mName);
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		}
+	}
+}
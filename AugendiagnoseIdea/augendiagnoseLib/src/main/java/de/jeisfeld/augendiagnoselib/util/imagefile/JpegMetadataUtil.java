@@ -18,19 +18,13 @@ import org.apache.commons.imaging.formats.tiff.TiffField;
 import org.apache.commons.imaging.formats.tiff.TiffImageMetadata;
 import org.apache.commons.imaging.formats.tiff.constants.ExifTagConstants;
 import org.apache.commons.imaging.formats.tiff.constants.MicrosoftTagConstants;
-import org.apache.commons.imaging.formats.tiff.constants.TiffDirectoryType;
 import org.apache.commons.imaging.formats.tiff.constants.TiffTagConstants;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfo;
-import org.apache.commons.imaging.formats.tiff.taginfos.TagInfoShort;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputDirectory;
 import org.apache.commons.imaging.formats.tiff.write.TiffOutputSet;
-import org.apache.commons.imaging.util.IoUtils;
 
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.List;
 
 import de.jeisfeld.augendiagnoselib.Application;
@@ -87,63 +81,19 @@ public final class JpegMetadataUtil {
 	 * @throws IOException        thrown in case of other errors while reading metadata.
 	 */
 	public static String getExifDate(@NonNull final File imageFile) throws ImageReadException, IOException {
-		final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-		TiffImageMetadata tiffImageMetadata;
-		if (metadata instanceof JpegImageMetadata) {
-			tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-		}
-		else if (metadata instanceof TiffImageMetadata) {
-			tiffImageMetadata = (TiffImageMetadata) metadata;
-		}
-		else {
-			return null;
-		}
-
-		TiffField dateTime = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_DATE_TIME);
-		if (dateTime == null) {
-			return null;
-		}
-		else {
-			return dateTime.getStringValue();
-		}
+		return new JpegHeader(imageFile).getExifDate();
 	}
 
 	/**
 	 * Retrieve the orientation of a file from the EXIF data. Required, as built-in ExifInterface is not always
-	 * reliable.
+	 * reliable. Only the file header is read.
 	 *
 	 * @param imageFile the image file.
 	 * @return the orientation value.
 	 */
 	protected static int getExifOrientation(@NonNull final File imageFile) {
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
-			TiffImageMetadata tiffImageMetadata;
-
-			if (metadata instanceof JpegImageMetadata) {
-				tiffImageMetadata = ((JpegImageMetadata) metadata).getExif();
-			}
-			else if (metadata instanceof TiffImageMetadata) {
-				tiffImageMetadata = (TiffImageMetadata) metadata;
-			}
-			else {
-				return ExifInterface.ORIENTATION_UNDEFINED;
-			}
-
-			TiffField field = tiffImageMetadata.findField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-			if (field != null) {
-				return field.getIntValue();
-			}
-			else {
-				TagInfo tagInfo = new TagInfoShort("Orientation", 274, 1, TiffDirectoryType.TIFF_DIRECTORY_IFD0); // MAGIC_NUMBER
-				field = tiffImageMetadata.findField(tagInfo);
-				if (field != null) {
-					return field.getIntValue();
-				}
-				else {
-					return ExifInterface.ORIENTATION_UNDEFINED;
-				}
-			}
+			return new JpegHeader(imageFile).getExifOrientation();
 		}
 		catch (Exception e) {
 			return ExifInterface.ORIENTATION_UNDEFINED;
@@ -196,12 +146,22 @@ public final class JpegMetadataUtil {
 	 */
 	@NonNull
 	public static JpegMetadata getMetadata(@NonNull final String jpegImageFileName) throws ImageReadException, IOException {
-		checkJpeg(jpegImageFileName);
+		// Read the file header only once - this also validates that the file is a JPEG file.
+		return getMetadata(new JpegHeader(new File(jpegImageFileName)));
+	}
+
+	/**
+	 * Retrieve the relevant metadata of an image file from its already read header.
+	 *
+	 * @param header the header of the file for which metadata should be retrieved.
+	 * @return the metadata of the file.
+	 */
+	@NonNull
+	protected static JpegMetadata getMetadata(@NonNull final JpegHeader header) {
 		JpegMetadata result = new JpegMetadata();
-		final File imageFile = new File(jpegImageFileName);
 
 		// Retrieve XMP data
-		String xmpString = Imaging.getXmpXml(imageFile);
+		String xmpString = header.getXmpXml();
 		XmpHandler parser = new XmpHandler(xmpString);
 
 		// Standard fields are pre-filled with custom data
@@ -228,7 +188,7 @@ public final class JpegMetadataUtil {
 		result.setPupilXOffset(parser.getJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET));
 		result.setPupilYOffset(parser.getJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET));
 		result.setFlags(parser.getJeInt(XmpHandler.ITEM_FLAGS));
-		result.setOrientation((short) getExifOrientation(imageFile));
+		result.setOrientation((short) header.getExifOrientation());
 
 		// For standard fields, use custom data only if there is no other data.
 		if (result.getDescription() == null) {
@@ -249,7 +209,7 @@ public final class JpegMetadataUtil {
 
 		// Retrieve EXIF data
 		try {
-			final IImageMetadata metadata = Imaging.getMetadata(imageFile);
+			final IImageMetadata metadata = Imaging.getMetadata(header.getBytes());
 
 			TiffImageMetadata tiffImageMetadata;
 			if (metadata instanceof JpegImageMetadata) {
@@ -310,7 +270,8 @@ public final class JpegMetadataUtil {
 	}
 
 	/**
-	 * Change metadata of the image (EXIF and XMP as far as applicable).
+	 * Change metadata of the image (EXIF and XMP as far as applicable). Only the header of the file is processed in
+	 * memory, and the file is rewritten in a single pass.
 	 *
 	 * @param jpegImageFileName the file for which metadata should be changed.
 	 * @param metadata          the new metadata.
@@ -323,191 +284,162 @@ public final class JpegMetadataUtil {
 			ImageReadException, ImageWriteException, XMPException {
 		if (changeJpegAllowed()) {
 			checkJpeg(jpegImageFileName);
-			changeXmpMetadata(jpegImageFileName, metadata);
+			File jpegImageFile = new File(jpegImageFileName);
+			JpegHeader header = new JpegHeader(jpegImageFile);
+
+			byte[] headerBytes = changeXmpMetadata(header.getBytes(), metadata);
 
 			if (changeExifAllowed()) {
 				try {
-					changeExifMetadata(jpegImageFileName, metadata);
+					headerBytes = changeExifMetadata(headerBytes, metadata);
 				}
 				catch (Exception e) {
 					throw new ExifStorageException(e);
 				}
 			}
+
+			File tempFile = FileUtil.getTempFile(jpegImageFile);
+			verifyTempFile(tempFile);
+
+			int retryCount = 0;
+			do {
+				header.write(tempFile, headerBytes);
+				retryCount++;
+			}
+			while (tempFile.length() == 0 && retryCount < 2);
+
+			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
+				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
+						+ jpegImageFileName);
+			}
 		}
 	}
 
 	/**
 	 * Change the EXIF metadata.
 	 *
-	 * @param jpegImageFileName the file for which metadata should be changed.
-	 * @param metadata          the new metadata
+	 * @param headerBytes the JPEG header.
+	 * @param metadata    the new metadata
+	 * @return the changed JPEG header.
 	 * @throws ImageReadException  thrown if the metadata cannot be read.
 	 * @throws ImageWriteException thrown if the metadata cannot be written.
 	 * @throws IOException         thrown in case of other errors while reading metadata.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeExifMetadata(@NonNull final String jpegImageFileName, @NonNull final JpegMetadata metadata)
+	@NonNull
+	private static byte[] changeExifMetadata(@NonNull final byte[] headerBytes, @NonNull final JpegMetadata metadata)
 			throws IOException, ImageReadException, ImageWriteException {
-		File jpegImageFile = new File(jpegImageFileName);
-		File tempFile = FileUtil.getTempFile(jpegImageFile);
-
-		verifyTempFile(tempFile);
-
-		OutputStream os = null;
-		try {
-			TiffOutputSet outputSet = null;
+		TiffOutputSet outputSet = null;
 
-			// note that metadata might be null if no metadata is found.
-			final IImageMetadata imageMetadata = Imaging.getMetadata(jpegImageFile);
-			final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
-			if (jpegMetadata != null) {
-				// note that exif might be null if no Exif metadata is found.
-				final TiffImageMetadata exif = jpegMetadata.getExif();
+		// note that metadata might be null if no metadata is found.
+		final IImageMetadata imageMetadata = Imaging.getMetadata(headerBytes);
+		final JpegImageMetadata jpegMetadata = (JpegImageMetadata) imageMetadata;
+		if (jpegMetadata != null) {
+			// note that exif might be null if no Exif metadata is found.
+			final TiffImageMetadata exif = jpegMetadata.getExif();
 
-				if (exif != null) {
-					outputSet = exif.getOutputSet();
-				}
-			}
-
-			if (outputSet == null) {
-				outputSet = new TiffOutputSet();
+			if (exif != null) {
+				outputSet = exif.getOutputSet();
 			}
+		}
 
-			final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
-			final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
+		if (outputSet == null) {
+			outputSet = new TiffOutputSet();
+		}
 
-			if (metadata.getTitle() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
+		final TiffOutputDirectory rootDirectory = outputSet.getOrCreateRootDirectory();
+		final TiffOutputDirectory exifDirectory = outputSet.getOrCreateExifDirectory();
 
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
-			}
+		if (metadata.getTitle() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPTITLE);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPTITLE, metadata.getTitle());
 
-			if (metadata.getComment() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
-				exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
-				exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
-			}
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_IMAGE_DESCRIPTION, metadata.getTitle());
+		}
 
-			if (metadata.getSubject() != null) {
-				rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
-				rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
-			}
+		if (metadata.getComment() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPCOMMENT, metadata.getComment());
+			exifDirectory.removeField(ExifTagConstants.EXIF_TAG_USER_COMMENT);
+			exifDirectory.add(ExifTagConstants.EXIF_TAG_USER_COMMENT, metadata.getComment());
+		}
 
-			if (metadata.getOrientation() != null) {
-				rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
-				rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
-			}
+		if (metadata.getSubject() != null) {
+			rootDirectory.removeField(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT);
+			rootDirectory.add(MicrosoftTagConstants.EXIF_TAG_XPSUBJECT, metadata.getSubject());
+		}
 
-			int retryCount = 0;
-			do {
-				try {
-					os = new FileOutputStream(tempFile);
-					os = new BufferedOutputStream(os);
-					new ExifRewriter().updateExifMetadataLossless(jpegImageFile, os, outputSet);
-				}
-				catch (Exception e) {
-					Log.w(Application.TAG, "Error storing EXIF data lossless - try lossy approach");
-					os = new FileOutputStream(tempFile);
-					os = new BufferedOutputStream(os);
-					new ExifRewriter().updateExifMetadataLossy(jpegImageFile, os, outputSet);
-				}
-				IoUtils.closeQuietly(true, os);
-				retryCount++;
-			}
-			while (tempFile.length() == 0 && retryCount < 2);
+		if (metadata.getOrientation() != null) {
+			rootDirectory.removeField(TiffTagConstants.TIFF_TAG_ORIENTATION);
+			rootDirectory.add(TiffTagConstants.TIFF_TAG_ORIENTATION, metadata.getOrientation());
+		}
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
-						+ jpegImageFileName);
-			}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		try {
+			new ExifRewriter().updateExifMetadataLossless(headerBytes, os, outputSet);
 		}
-		finally {
-			IoUtils.closeQuietly(false, os);
+		catch (Exception e) {
+			Log.w(Application.TAG, "Error storing EXIF data lossless - try lossy approach");
+			os = new ByteArrayOutputStream();
+			new ExifRewriter().updateExifMetadataLossy(headerBytes, os, outputSet);
 		}
-
+		return os.toByteArray();
 	}
 
 	/**
 	 * Change the XMP metadata.
 	 *
-	 * @param jpegImageFileName the file for which metadata should be changed.
-	 * @param metadata          the new metadata.
+	 * @param headerBytes the JPEG header.
+	 * @param metadata    the new metadata.
+	 * @return the changed JPEG header.
 	 * @throws ImageReadException  thrown if the metadata cannot be read.
 	 * @throws ImageWriteException thrown if the metadata cannot be written.
 	 * @throws IOException         thrown in case of other errors while reading metadata.
 	 * @throws XMPException        thrown in case of issues with XML handling.
 	 */
-	@SuppressWarnings("resource")
-	private static void changeXmpMetadata(@NonNull final String jpegImageFileName, @NonNull final JpegMetadata metadata)
-			throws IOException,
-			ImageReadException, ImageWriteException, XMPException {
-		File jpegImageFile = new File(jpegImageFileName);
-		File tempFile = FileUtil.getTempFile(jpegImageFile);
-
-		verifyTempFile(tempFile);
-
-		OutputStream os = null;
-		try {
-			final String xmpString = Imaging.getXmpXml(jpegImageFile);
-
-			XmpHandler parser = new XmpHandler(xmpString);
-
-			if (changeExifAllowed()) {
-				// Change standard fields only if EXIF allowed
-				parser.setDcTitle(metadata.getTitle());
-				parser.setDcDescription(metadata.getDescription());
-				parser.setDcSubject(metadata.getSubject());
-				parser.setUserComment(metadata.getComment());
-				parser.setMicrosoftPerson(metadata.getPerson());
-			}
-
-			parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
-			parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
-			parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
-			parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
-			parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
-
-			parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
-			parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
-			parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
-			parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
-			parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
-			parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
-			parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
-			parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
-			parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
-			parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
-			parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
-			parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
-			parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
-			parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
-
-			int retryCount = 0;
-			do {
-				os = new FileOutputStream(tempFile);
-				os = new BufferedOutputStream(os);
-
-				new JpegXmpRewriter().updateXmpXml(jpegImageFile, os, parser.getXmpString());
+	@NonNull
+	private static byte[] changeXmpMetadata(@NonNull final byte[] headerBytes, @NonNull final JpegMetadata metadata)
+			throws IOException, ImageReadException, ImageWriteException, XMPException {
+		final String xmpString = Imaging.getXmpXml(headerBytes);
 
-				IoUtils.closeQuietly(true, os);
-				retryCount++;
-			}
-			while (tempFile.length() == 0 && retryCount < 2);
+		XmpHandler parser = new XmpHandler(xmpString);
 
-			if (!FileUtil.moveFile(tempFile, jpegImageFile)) {
-				throw new IOException("Failed to rename file " + tempFile.getAbsolutePath() + " to "
-						+ jpegImageFileName);
-			}
-		}
-		finally {
-			IoUtils.closeQuietly(false, os);
-		}
+		if (changeExifAllowed()) {
+			// Change standard fields only if EXIF allowed
+			parser.setDcTitle(metadata.getTitle());
+			parser.setDcDescription(metadata.getDescription());
+			parser.setDcSubject(metadata.getSubject());
+			parser.setUserComment(metadata.getComment());
+			parser.setMicrosoftPerson(metadata.getPerson());
+		}
+
+		parser.setJeItem(XmpHandler.ITEM_TITLE, metadata.getTitle());
+		parser.setJeItem(XmpHandler.ITEM_DESCRIPTION, metadata.getDescription());
+		parser.setJeItem(XmpHandler.ITEM_SUBJECT, metadata.getSubject());
+		parser.setJeItem(XmpHandler.ITEM_COMMENT, metadata.getComment());
+		parser.setJeItem(XmpHandler.ITEM_PERSON, metadata.getPerson());
+
+		parser.setJeItem(XmpHandler.ITEM_X_CENTER, metadata.getXCenterString());
+		parser.setJeItem(XmpHandler.ITEM_Y_CENTER, metadata.getYCenterString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_SCALE_FACTOR, metadata.getOverlayScaleFactorString());
+		parser.setJeItem(XmpHandler.ITEM_X_POSITION, metadata.getXPositionString());
+		parser.setJeItem(XmpHandler.ITEM_Y_POSITION, metadata.getYPositionString());
+		parser.setJeItem(XmpHandler.ITEM_ZOOM_FACTOR, metadata.getZoomFactorString());
+		parser.setJeDate(XmpHandler.ITEM_ORGANIZE_DATE, metadata.getOrganizeDate());
+		parser.setJeItem(XmpHandler.ITEM_RIGHT_LEFT, metadata.getRightLeftString());
+		parser.setJeItem(XmpHandler.ITEM_BRIGHTNESS, metadata.getBrightnessString());
+		parser.setJeItem(XmpHandler.ITEM_CONTRAST, metadata.getContrastString());
+		parser.setJeItem(XmpHandler.ITEM_SATURATION, metadata.getSaturationString());
+		parser.setJeItem(XmpHandler.ITEM_COLOR_TEMPERATURE, metadata.getColorTemperatureString());
+		parser.setJeItem(XmpHandler.ITEM_OVERLAY_COLOR, metadata.getOverlayColorString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_SIZE, metadata.getPupilSizeString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_X_OFFSET, metadata.getPupilXOffsetString());
+		parser.setJeItem(XmpHandler.ITEM_PUPIL_Y_OFFSET, metadata.getPupilYOffsetString());
+		parser.setJeInt(XmpHandler.ITEM_FLAGS, metadata.getFlags());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		new JpegXmpRewriter().updateXmpXml(headerBytes, os, parser.getXmpString());
+		return os.toByteArray();
 	}
 
 	/**
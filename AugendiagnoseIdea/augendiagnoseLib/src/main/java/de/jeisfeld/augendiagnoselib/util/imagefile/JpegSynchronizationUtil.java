@@ -1,5 +1,6 @@
 package de.jeisfeld.augendiagnoselib.util.imagefile;
 
+import java.io.File;
 import java.util.HashMap;
 
 import android.os.AsyncTask;
@@ -43,14 +44,39 @@ public final class JpegSynchronizationUtil {
 
 	/**
 	 * This method handles a request to retrieve metadata for a file. If there is no running async task to update
-	 * metadata for this file, then the data is taken directly from the file. Otherwise, it is taken from the last
-	 * metadata to be stored for this file.
+	 * metadata for this file, then the data is taken from the metadata cache or the persistent metadata index, or
+	 * directly from the file if the file has changed since caching. Otherwise, it is taken from the last metadata to be
+	 * stored for this file.
 	 *
 	 * @param pathname the path of the jpg file.
 	 * @return null for non-JPEG files. The metadata from the file if readable. Otherwise empty metadata.
 	 */
 	public static JpegMetadata getJpegMetadata(@NonNull final String pathname) {
 		JpegMetadata cachedMetadata = null;
+		boolean isSaving;
+
+		synchronized (JpegSynchronizationUtil.class) {
+			isSaving = QUEUED_SAVE_REQUESTS.containsKey(pathname) || RUNNING_SAVE_REQUESTS.containsKey(pathname);
+			if (!isSaving) {
+				cachedMetadata = JpegMetadataCache.get(pathname);
+			}
+		}
+		if (!isSaving && cachedMetadata == null) {
+			// The index is accessed outside the lock, as it may be busy loading.
+			JpegMetadataIndex.Entry indexEntry = JpegMetadataIndex.get(pathname);
+			if (indexEntry != null) {
+				JpegMetadata metadata = indexEntry.getMetadata();
+				synchronized (JpegSynchronizationUtil.class) {
+					if (!QUEUED_SAVE_REQUESTS.containsKey(pathname) && !RUNNING_SAVE_REQUESTS.containsKey(pathname)) {
+						cachedMetadata = metadata;
+						JpegMetadataCache.put(pathname, metadata, indexEntry.getLastModified(), indexEntry.getLength());
+					}
+				}
+			}
+		}
+		if (cachedMetadata != null) {
+			return cachedMetadata;
+		}
 
 		try {
 			JpegMetadataUtil.checkJpeg(pathname);
@@ -75,7 +101,14 @@ public final class JpegSynchronizationUtil {
 		}
 		else {
 			try {
-				return JpegMetadataUtil.getMetadata(pathname);
+				JpegMetadataIndex.Entry indexEntry = JpegMetadataIndex.update(new File(pathname));
+				JpegMetadata metadata = indexEntry.getMetadata();
+				synchronized (JpegSynchronizationUtil.class) {
+					if (!QUEUED_SAVE_REQUESTS.containsKey(pathname) && !RUNNING_SAVE_REQUESTS.containsKey(pathname)) {
+						JpegMetadataCache.put(pathname, metadata, indexEntry.getLastModified(), indexEntry.getLength());
+					}
+				}
+				return metadata;
 			}
 			catch (Exception e) {
 				Log.e(TAG, "Failed to retrieve metadata for file " + pathname, e);
@@ -86,7 +119,8 @@ public final class JpegSynchronizationUtil {
 
 	/**
 	 * This method handles a request to update metadata on a file. If no such request on the file is in process, then an
-	 * async task is started to update the metadata. Otherwise, it is put on the queue.
+	 * async task is started to update the metadata. Otherwise, it is put on the queue. The search index is updated
+	 * immediately.
 	 *
 	 * @param pathname the path of the jpg file.
 	 * @param metadata the metadata.
@@ -100,6 +134,8 @@ public final class JpegSynchronizationUtil {
 			return;
 		}
 
+		JpegMetadataSearchIndex.update(pathname, metadata);
+
 		synchronized (JpegSynchronizationUtil.class) {
 			if (RUNNING_SAVE_REQUESTS.containsKey(pathname)) {
 				QUEUED_SAVE_REQUESTS.put(pathname, metadata);
@@ -110,14 +146,35 @@ public final class JpegSynchronizationUtil {
 		}
 	}
 
+	/**
+	 * Remove the cached metadata of a file. To be called if the file is moved, renamed or deleted.
+	 *
+	 * @param pathname the path of the file.
+	 */
+	public static void invalidateCachedMetadata(@NonNull final String pathname) {
+		JpegMetadataCache.invalidate(pathname);
+		JpegMetadataIndex.invalidate(pathname);
+	}
+
 	/**
 	 * Do cleanup from the last JpegSaverTask and trigger the next task on the same file, if existing.
 	 *
 	 * @param pathname The path of the jpg file.
+	 * @param success  Flag indicating if the last JpegSaverTask was successful.
 	 */
-	private static void triggerNextFromQueue(final String pathname) {
+	private static void triggerNextFromQueue(final String pathname, final boolean success) {
 		synchronized (JpegSynchronizationUtil.class) {
-			RUNNING_SAVE_REQUESTS.remove(pathname);
+			JpegMetadata savedMetadata = RUNNING_SAVE_REQUESTS.remove(pathname);
+			if (success) {
+				// write-through: the file now contains the saved metadata.
+				JpegMetadataCache.put(pathname, savedMetadata);
+				JpegMetadataIndex.putMetadata(pathname, savedMetadata);
+			}
+			else {
+				// the file may contain anything now - ensure that it is read again.
+				JpegMetadataCache.invalidate(pathname);
+				JpegMetadataIndex.invalidate(pathname);
+			}
 			if (QUEUED_SAVE_REQUESTS.containsKey(pathname)) {
 				Log.i(TAG, "Executing queued store request for file " + pathname);
 				JpegMetadata newMetadata = QUEUED_SAVE_REQUESTS.get(pathname);
@@ -208,7 +265,7 @@ public final class JpegSynchronizationUtil {
 			else {
 				Log.d(TAG, "Successfully saved file " + mPathname);
 			}
-			triggerNextFromQueue(mPathname);
+			triggerNextFromQueue(mPathname, e == null);
 		}
 	}
 }
@@ -0,0 +1,117 @@
+package de.jeisfeld.augendiagnoselib.util.imagefile;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Mesh deforming an overlay according to pupil size and position, rendered via Canvas.drawBitmapMesh. The same mesh is
+ * used in the desktop app, so that overlays are consistent across platforms.
+ *
+ * <p>
+ * The vertices of a regular grid of meshSize x meshSize cells over the overlay are moved radially within the iris.
+ * Only the vertices are calculated exactly; in between, the deformation is linear.
+ */
+public final class OverlayMesh {
+	/**
+	 * The number of mesh cells per row and column.
+	 */
+	private final int mMeshSize;
+
+	/**
+	 * The positions of the mesh vertices in the deformed overlay, as x, y pairs, row by row.
+	 */
+	private final float[] mVertices;
+
+	/**
+	 * Create the mesh, calculating the deformed vertex positions.
+	 *
+	 * @param overlaySize   The size of the overlay (in pixels).
+	 * @param meshSize      The number of mesh cells per row and column.
+	 * @param circleRatio   The relative radius of the iris on the overlay.
+	 * @param origPupilSize The pupil size (relative to iris) in the original overlay.
+	 * @param destPupilSize The pupil size (relative to iris) in the deformed overlay.
+	 * @param pupilOffsetX  The x offset of the pupil center, relative to the iris size.
+	 * @param pupilOffsetY  The y offset of the pupil center, relative to the iris size.
+	 */
+	public OverlayMesh(final int overlaySize, final int meshSize, // SUPPRESS_CHECKSTYLE Too many parameters
+			final float circleRatio, final float origPupilSize, final float destPupilSize,
+			@Nullable final Float pupilOffsetX, @Nullable final Float pupilOffsetY) {
+		mMeshSize = meshSize;
+		mVertices = new float[2 * (meshSize + 1) * (meshSize + 1)];
+
+		int overlayHalfSize = overlaySize / 2;
+		float irisRadius = overlayHalfSize * circleRatio;
+
+		// the center of enlargement
+		float targetCenterX = overlayHalfSize;
+		float targetCenterY = overlayHalfSize;
+		if (pupilOffsetX != null) {
+			targetCenterX += 2 * irisRadius * pupilOffsetX / (1 - destPupilSize);
+		}
+		if (pupilOffsetY != null) {
+			targetCenterY += 2 * irisRadius * pupilOffsetY / (1 - destPupilSize);
+		}
+
+		// Constants used for linear transformation of the iris part of the overlay.
+		float linTransB = (destPupilSize - origPupilSize) / (1 - origPupilSize);
+		float linTransM = (1 - destPupilSize) / (irisRadius * (1 - origPupilSize));
+		float absOrigPupilSize = origPupilSize * irisRadius;
+
+		int vertsIndex = 0;
+		for (int y = 0; y <= meshSize; y++) {
+			for (int x = 0; x <= meshSize; x++) {
+				// The positions of the original mesh vertices in pixels relative to the center
+				float xPos = (float) x * overlaySize / meshSize - overlayHalfSize;
+				float yPos = (float) y * overlaySize / meshSize - overlayHalfSize;
+				float centerDist = (float) Math.sqrt(xPos * xPos + yPos * yPos);
+
+				if (centerDist >= irisRadius || origPupilSize == 0) {
+					// outside the iris, or non-deformable overlay, take original position
+					mVertices[vertsIndex++] = overlayHalfSize + xPos;
+					mVertices[vertsIndex++] = overlayHalfSize + yPos;
+				}
+				else if (centerDist == 0) {
+					mVertices[vertsIndex++] = targetCenterX;
+					mVertices[vertsIndex++] = targetCenterY;
+				}
+				else {
+					// original direction
+					float xDirection = xPos / centerDist;
+					float yDirection = yPos / centerDist;
+
+					// corresponding iris boundary point
+					float xBound = overlayHalfSize + xDirection * irisRadius;
+					float yBound = overlayHalfSize + yDirection * irisRadius;
+
+					float radialPosition = linTransM * centerDist + linTransB;
+					if (centerDist < absOrigPupilSize) {
+						radialPosition -= linTransB * Math.pow(1 - centerDist / absOrigPupilSize, 1.5f); // MAGIC_NUMBER
+					}
+
+					mVertices[vertsIndex++] = targetCenterX + (xBound - targetCenterX) * radialPosition;
+					mVertices[vertsIndex++] = targetCenterY + (yBound - targetCenterY) * radialPosition;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieve the number of mesh cells per row and column.
+	 *
+	 * @return the mesh size.
+	 */
+	public int getMeshSize() {
+		return mMeshSize;
+	}
+
+	/**
+	 * Retrieve the positions of the mesh vertices in the deformed overlay, as x, y pairs, row by row (as required by
+	 * Canvas.drawBitmapMesh).
+	 *
+	 * @return the vertices.
+	 */
+	@NonNull
+	public float[] getVertices() {
+		return mVertices;
+	}
+}
@@ -1,13 +1,18 @@
 package de.jeisfeld.augendiagnoselib.util.imagefile;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import android.graphics.Bitmap;
 import android.graphics.Color;
@@ -68,6 +73,38 @@ public final class PupilAndIrisDetector {
 	 * The maximum black quota expected outside the pupil.
 	 */
 	private static final float MAX_BLACK_QUOTA = 0.3f;
+	/**
+	 * The quantile parameters for which circle statistics are calculated.
+	 */
+	private static final float[] QUANTILE_PARAMETERS = {MAX_BLACK_QUOTA, MIN_BLACK_QUOTA, 1 - MIN_WHITE_QUOTA, 1 - MIN_WHITE_QUOTA2};
+	/**
+	 * Index of the quantile MAX_BLACK_QUOTA.
+	 */
+	private static final int QUANTILE_MAX_BLACK = 0;
+	/**
+	 * Index of the quantile MIN_BLACK_QUOTA.
+	 */
+	private static final int QUANTILE_MIN_BLACK = 1;
+	/**
+	 * Index of the quantile 1 - MIN_WHITE_QUOTA.
+	 */
+	private static final int QUANTILE_MIN_WHITE = 2;
+	/**
+	 * Index of the quantile 1 - MIN_WHITE_QUOTA2.
+	 */
+	private static final int QUANTILE_MIN_WHITE2 = 3;
+	/**
+	 * The quantile indices, sorted by ascending quantile parameter.
+	 */
+	private static final int[] QUANTILE_ORDER = {QUANTILE_MAX_BLACK, QUANTILE_MIN_WHITE2, QUANTILE_MIN_BLACK, QUANTILE_MIN_WHITE};
+	/**
+	 * The minimum number of points in a circle for which quantiles are determined by counting rather than by sorting.
+	 */
+	private static final int MIN_POINTS_FOR_COUNTING = 64;
+	/**
+	 * The number of possible brightness values of a pixel.
+	 */
+	private static final int BRIGHTNESS_LEVELS = 3 * 255 + 1; // MAGIC_NUMBER
 	/**
 	 * The vertical range where iris boundary points should be searched for.
 	 */
@@ -98,17 +135,13 @@ public final class PupilAndIrisDetector {
 	private static final float IRIS_BOUNDARY_MIN_BOUNDARY_POINTS = 10;
 
 	/**
-	 * The files which are currently processed by this class. The value is used for previous file names in case of renaming.
-	 */
-	private static final Map<String, Set<String>> FILES_IN_PROCESS = new HashMap<>();
-	/**
-	 * The files which are currently processed by this class. The value contains the current file name in case of renaming.
+	 * The number of threads used for the parallel initial search.
 	 */
-	private static final Map<String, String> FILES_IN_PROCESS2 = new HashMap<>();
+	private static final int SEARCH_THREAD_COUNT = Runtime.getRuntime().availableProcessors();
 	/**
-	 * The queue of iris detection threads.
+	 * The executor used for the parallel initial search.
 	 */
-	private static final List<Thread> THREAD_QUEUE = new ArrayList<>();
+	private static final ExecutorService SEARCH_EXECUTOR = Executors.newFixedThreadPool(SEARCH_THREAD_COUNT);
 
 	/**
 	 * The number of points on the boundaries of circles of sizes 0 - 2000.
@@ -217,9 +250,26 @@ public final class PupilAndIrisDetector {
 			12492, 12640};
 
 	/**
-	 * The image to be analyzed.
+	 * The start indices of the circles of sizes 0 - 2001 when storing all circle points in one array.
 	 */
-	private Bitmap mImage;
+	private static final int[] RING_OFFSETS = new int[CIRCLE_SIZES.length + 1];
+
+	static {
+		for (int i = 0; i < CIRCLE_SIZES.length; i++) {
+			RING_OFFSETS[i + 1] = RING_OFFSETS[i] + CIRCLE_SIZES[i];
+		}
+	}
+
+	/**
+	 * The image to be analyzed, in the sizes used by the detection phases.
+	 */
+	private ImagePyramid mPyramid;
+
+	/**
+	 * The timing and quality figures of the detection.
+	 */
+	private IrisDetectionMetrics.Detection mMetrics =
+			new IrisDetectionMetrics.Detection(Arrays.copyOfRange(PUPIL_SEARCH_RESOLUTIONS, 1, PUPIL_SEARCH_RESOLUTIONS.length));
 
 	/**
 	 * The horizontal center of the pupil (in the interval [0,1]).
@@ -275,18 +325,28 @@ public final class PupilAndIrisDetector {
 		return mIrisRadius;
 	}
 
+	/**
+	 * Flag indicating if the initial search for the pupil center should be distributed over all processors.
+	 */
+	private boolean mIsParallel;
+
 	/**
 	 * Create a detector for a certain image.
 	 *
-	 * @param image The image to be analyzed.
+	 * @param pyramid  The image to be analyzed.
+	 * @param parallel Flag indicating if the initial search should be done in parallel. The result is the same as for the serial search.
 	 */
-	private PupilAndIrisDetector(final Bitmap image) {
-		mImage = image;
+	private PupilAndIrisDetector(final ImagePyramid pyramid, final boolean parallel) {
+		mPyramid = pyramid;
+		mIsParallel = parallel;
+		pyramid.build(PUPIL_SEARCH_RESOLUTIONS);
 		determineInitialParameterValues();
+
+		ImagePyramid.Level base = pyramid.getBase();
 		for (int i = 1; i < PUPIL_SEARCH_RESOLUTIONS.length; i++) {
 			int resolution = PUPIL_SEARCH_RESOLUTIONS[i];
 			refinePupilPosition(resolution);
-			if (resolution >= image.getWidth() && resolution >= image.getHeight()) {
+			if (resolution >= base.getWidth() && resolution >= base.getHeight()) {
 				break;
 			}
 		}
@@ -321,113 +381,79 @@ public final class PupilAndIrisDetector {
 			return;
 		}
 
-		Thread workingThread = new Thread() {
-			@Override
-			public void run() {
-				try {
-					// Retrieve image path - in case the file has moved.
-					String newImagePath = FILES_IN_PROCESS2.get(imagePath);
-					JpegMetadata origMetadata2 = JpegSynchronizationUtil.getJpegMetadata(newImagePath);
-					if (origMetadata2 != null
-							&& (!origMetadata2.hasOverlayPosition() || origMetadata2.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY))) {
-						Log.v(Application.TAG, "Start finding iris for " + newImagePath);
-						long timestamp = System.currentTimeMillis();
-						PupilAndIrisDetector detector = new PupilAndIrisDetector(ImageUtil.getImageBitmap(newImagePath, 0));
-						Log.v(Application.TAG, "Finished finding iris for " + newImagePath + ". Duration: "
-								+ ((System.currentTimeMillis() - timestamp) / 1000.0)); // MAGIC_NUMBER
-						TrackingUtil.sendTiming(Category.TIME_BACKGROUND, "Iris detection", null, System.currentTimeMillis() - timestamp);
-						// Retrieve image path - in case the file has moved.
-						newImagePath = FILES_IN_PROCESS2.get(imagePath);
-						JpegMetadata metadata = JpegSynchronizationUtil.getJpegMetadata(newImagePath);
-						// re-check if position has been set manually.
-						if (metadata != null
-								&& (!metadata.hasOverlayPosition() || metadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY))) {
-							detector.updateMetadata(metadata);
-							JpegSynchronizationUtil.storeJpegMetadata(newImagePath, metadata);
-						}
+		IrisDetectionScheduler.schedule(imagePath);
+	}
 
-						PreferenceUtil.incrementCounter(R.string.key_statistics_countirisdetectionsuccess);
-						TrackingUtil.sendEvent(Category.EVENT_USER, "Iris detection", "Success");
-					}
+	/**
+	 * Determine the iris position for a scheduled detection and store it in the metadata.
+	 *
+	 * @param task The detection task.
+	 */
+	protected static void determineAndStoreIrisPosition(final IrisDetectionScheduler.DetectionTask task) {
+		try {
+			// Retrieve image path - in case the file has moved.
+			String imagePath = task.getImagePath();
+			JpegMetadata origMetadata = JpegSynchronizationUtil.getJpegMetadata(imagePath);
+			if (origMetadata != null
+					&& (!origMetadata.hasOverlayPosition() || origMetadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY))) {
+				Log.v(Application.TAG, "Start finding iris for " + imagePath);
+				long timestamp = System.currentTimeMillis();
+				long startNanos = System.nanoTime();
+				ImagePyramid pyramid = loadImage(imagePath);
+				long loadNanos = System.nanoTime() - startNanos;
+				PupilAndIrisDetector detector = new PupilAndIrisDetector(pyramid, IrisDetectionScheduler.isSingleDetection());
+				detector.mMetrics.setImage(new File(imagePath).getName(), pyramid.getBase().getWidth(), pyramid.getBase().getHeight(),
+						loadNanos);
+				detector.mMetrics.setTotal(System.nanoTime() - startNanos);
+				IrisDetectionMetrics.add(detector.mMetrics);
+				Log.v(Application.TAG, "Finished finding iris for " + imagePath + ". Duration: "
+						+ ((System.currentTimeMillis() - timestamp) / 1000.0)); // MAGIC_NUMBER
+				TrackingUtil.sendTiming(Category.TIME_BACKGROUND, "Iris detection", null, System.currentTimeMillis() - timestamp);
+				if (task.isCancelled()) {
+					return;
 				}
-				catch (Throwable e) {
-					Log.e(Application.TAG, "Failed to find iris and pupil position for file " + imagePath, e);
-					int errorCounter = PreferenceUtil.incrementCounter(R.string.key_statistics_countirisdetectionfailed);
-					TrackingUtil.sendEvent(Category.EVENT_USER, "Iris detection", "Failed");
-					int successCounter = PreferenceUtil.getSharedPreferenceInt(R.string.key_statistics_countirisdetectionsuccess, 0);
-					if (errorCounter > 2 && errorCounter > successCounter) {
-						// If Iris detection typically fails, then switch it off.
-						PreferenceUtil.setSharedPreferenceBoolean(R.string.key_automatic_iris_detection, false);
-					}
+				// Retrieve image path - in case the file has moved.
+				imagePath = task.getImagePath();
+				JpegMetadata metadata = JpegSynchronizationUtil.getJpegMetadata(imagePath);
+				// re-check if position has been set manually.
+				if (metadata != null
+						&& (!metadata.hasOverlayPosition() || metadata.hasFlag(JpegMetadata.FLAG_OVERLAY_SET_BY_CAMERA_ACTIVITY))) {
+					detector.updateMetadata(metadata);
+					JpegSynchronizationUtil.storeJpegMetadata(imagePath, metadata);
 				}
-				finally {
-					synchronized (FILES_IN_PROCESS) {
-						String newImagePath = FILES_IN_PROCESS2.get(imagePath);
-						Set<String> oldPaths = FILES_IN_PROCESS.get(newImagePath);
-						if (oldPaths != null) {
-							for (String oldPath : oldPaths) {
-								FILES_IN_PROCESS2.remove(oldPath);
-							}
-						}
-						FILES_IN_PROCESS.remove(newImagePath);
-						FILES_IN_PROCESS2.remove(newImagePath);
-					}
-
-					synchronized (THREAD_QUEUE) {
-						THREAD_QUEUE.remove(Thread.currentThread());
 
-						if (THREAD_QUEUE.size() > 0) {
-							THREAD_QUEUE.get(0).start();
-						}
-					}
-				}
-			}
-		};
-
-		synchronized (FILES_IN_PROCESS) {
-			if (FILES_IN_PROCESS2.keySet().contains(imagePath)) {
-				return;
-			}
-			else {
-				FILES_IN_PROCESS.put(imagePath, new HashSet<String>());
-				FILES_IN_PROCESS2.put(imagePath, imagePath);
+				PreferenceUtil.incrementCounter(R.string.key_statistics_countirisdetectionsuccess);
+				TrackingUtil.sendEvent(Category.EVENT_USER, "Iris detection", "Success");
 			}
 		}
-
-		synchronized (THREAD_QUEUE) {
-			THREAD_QUEUE.add(workingThread);
-
-			if (THREAD_QUEUE.size() == 1) {
-				workingThread.start();
+		catch (Throwable e) {
+			Log.e(Application.TAG, "Failed to find iris and pupil position for file " + task.getImagePath(), e);
+			int errorCounter = PreferenceUtil.incrementCounter(R.string.key_statistics_countirisdetectionfailed);
+			TrackingUtil.sendEvent(Category.EVENT_USER, "Iris detection", "Failed");
+			int successCounter = PreferenceUtil.getSharedPreferenceInt(R.string.key_statistics_countirisdetectionsuccess, 0);
+			if (errorCounter > 2 && errorCounter > successCounter) {
+				// If Iris detection typically fails, then switch it off.
+				PreferenceUtil.setSharedPreferenceBoolean(R.string.key_automatic_iris_detection, false);
 			}
 		}
 	}
 
 	/**
-	 * Inform about the move of a file during determination of iris position, so that the result may be applied to the moved file.
+	 * Load an image for detection. The image is decoded with the largest sample size which keeps it at least as large as
+	 * the highest search resolution, so that the full resolution bitmap is never held in memory.
 	 *
-	 * @param oldFileName The old file name.
-	 * @param newFileName the new file name.
+	 * @param imagePath The path of the image.
+	 * @return The image pyramid.
+	 * @throws IOException thrown if the image cannot be decoded.
 	 */
-	public static void notifyFileRename(final String oldFileName, final String newFileName) {
-		if (!FILES_IN_PROCESS.containsKey(oldFileName)) {
-			return;
-		}
-
-		synchronized (FILES_IN_PROCESS) {
-			Set<String> oldPaths = FILES_IN_PROCESS.get(oldFileName);
-			if (oldPaths != null) {
-				for (String oldPath : oldPaths) {
-					FILES_IN_PROCESS2.put(oldPath, newFileName);
-				}
-				FILES_IN_PROCESS2.put(oldFileName, newFileName);
-				FILES_IN_PROCESS2.put(newFileName, newFileName);
-
-				oldPaths.add(oldFileName);
-				FILES_IN_PROCESS.remove(oldFileName);
-				FILES_IN_PROCESS.put(newFileName, oldPaths);
-			}
+	private static ImagePyramid loadImage(final String imagePath) throws IOException {
+		Bitmap bitmap = ImageUtil.getSampledImageBitmap(imagePath, PUPIL_SEARCH_RESOLUTIONS[PUPIL_SEARCH_RESOLUTIONS.length - 1]);
+		if (bitmap == null) {
+			throw new IOException("Cannot decode image " + imagePath);
 		}
+		ImagePyramid pyramid = ImagePyramid.fromBitmap(bitmap);
+		bitmap.recycle();
+		return pyramid;
 	}
 
 	/**
@@ -454,29 +480,31 @@ public final class PupilAndIrisDetector {
 	 * Find initial values of pupil center and pupil and iris radius.
 	 */
 	private void determineInitialParameterValues() {
-		Bitmap image = ImageUtil.resizeBitmap(mImage, PUPIL_SEARCH_RESOLUTIONS[0], false);
-		List<PupilCenterInfo> pupilCenterInfoList = new ArrayList<>();
+		long startNanos = System.nanoTime();
+		ImagePyramid.Level image = mPyramid.getLevel(PUPIL_SEARCH_RESOLUTIONS[0]);
 
-		int[] pixels = new int[image.getWidth() * image.getHeight()];
-		image.getPixels(pixels, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+		int minX = image.getWidth() / 4; // MAGIC_NUMBER
+		int maxX = image.getWidth() * 3 / 4; // MAGIC_NUMBER
+		int minY = image.getHeight() / 4; // MAGIC_NUMBER
+		int maxY = image.getHeight() * 3 / 4; // MAGIC_NUMBER
 
-		for (int x = image.getWidth() / 4; x < image.getWidth() * 3 / 4; x++) { // MAGIC_NUMBER
-			for (int y = image.getHeight() / 4; y < image.getHeight() * 3 / 4; y++) { // MAGIC_NUMBER
-				PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, pixels, x, y, PupilCenterInfo.Phase.INITIAL);
-				pupilCenterInfo.collectCircleInfo(Integer.MAX_VALUE);
-				pupilCenterInfoList.add(pupilCenterInfo);
-			}
-		}
-
-		float maxLeapValue = Float.MIN_VALUE;
 		PupilCenterInfo bestPupilCenter = null;
-		for (PupilCenterInfo pupilCenterInfo : pupilCenterInfoList) {
-			pupilCenterInfo.calculateStatistics(0);
-			if (pupilCenterInfo.mLeapValue > maxLeapValue) {
-				maxLeapValue = pupilCenterInfo.mLeapValue;
-				bestPupilCenter = pupilCenterInfo;
+		boolean isParallel = mIsParallel && SEARCH_THREAD_COUNT > 1;
+		if (isParallel) {
+			try {
+				bestPupilCenter = searchPupilCenterInParallel(image, minX, maxX, minY, maxY);
+			}
+			catch (InterruptedException | ExecutionException e) {
+				Log.w(Application.TAG, "Parallel search for pupil center failed - falling back to serial search", e);
+				isParallel = false;
+				bestPupilCenter = searchPupilCenter(image, minX, maxX, minY, maxY);
 			}
 		}
+		else {
+			bestPupilCenter = searchPupilCenter(image, minX, maxX, minY, maxY);
+		}
+		mMetrics.setInitialScan(System.nanoTime() - startNanos, Math.max(maxX - minX, 0) * Math.max(maxY - minY, 0), isParallel);
+
 		if (bestPupilCenter != null) {
 			mPupilXCenter = (float) bestPupilCenter.mXCenter / image.getWidth();
 			mPupilYCenter = (float) bestPupilCenter.mYCenter / image.getHeight();
@@ -487,13 +515,84 @@ public final class PupilAndIrisDetector {
 		}
 	}
 
+	/**
+	 * Search the best pupil center within a rectangle of candidates in the current thread.
+	 *
+	 * @param image  The image.
+	 * @param minX   The minimum x coordinate.
+	 * @param maxX   The maximum x coordinate (exclusive).
+	 * @param minY   The minimum y coordinate.
+	 * @param maxY   The maximum y coordinate (exclusive).
+	 * @return The best pupil center, or null if there is no candidate with a positive leap value.
+	 */
+	private static PupilCenterInfo searchPupilCenter(final ImagePyramid.Level image,
+													 final int minX, final int maxX, final int minY, final int maxY) {
+		float maxLeapValue = Float.MIN_VALUE;
+		PupilCenterInfo bestPupilCenter = null;
+
+		for (int x = minX; x < maxX; x++) {
+			for (int y = minY; y < maxY; y++) {
+				PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, x, y, PupilCenterInfo.Phase.INITIAL);
+				pupilCenterInfo.collectCircleInfo(Integer.MAX_VALUE);
+				pupilCenterInfo.calculateStatistics(0);
+				if (pupilCenterInfo.mLeapValue > maxLeapValue) {
+					maxLeapValue = pupilCenterInfo.mLeapValue;
+					bestPupilCenter = pupilCenterInfo;
+				}
+			}
+		}
+		return bestPupilCenter;
+	}
+
+	/**
+	 * Search the best pupil center within a rectangle of candidates, distributing column ranges over several threads.
+	 * The result is the same as for the serial search.
+	 *
+	 * @param image  The image.
+	 * @param minX   The minimum x coordinate.
+	 * @param maxX   The maximum x coordinate (exclusive).
+	 * @param minY   The minimum y coordinate.
+	 * @param maxY   The maximum y coordinate (exclusive).
+	 * @return The best pupil center, or null if there is no candidate with a positive leap value.
+	 * @throws InterruptedException if interrupted while waiting for the search threads.
+	 * @throws ExecutionException   if a search thread failed.
+	 */
+	private static PupilCenterInfo searchPupilCenterInParallel(final ImagePyramid.Level image,
+															   final int minX, final int maxX, final int minY, final int maxY)
+			throws InterruptedException, ExecutionException {
+		int columnsPerTask = Math.max(1, (maxX - minX + 2 * SEARCH_THREAD_COUNT - 1) / (2 * SEARCH_THREAD_COUNT));
+		List<Future<PupilCenterInfo>> futures = new ArrayList<>();
+
+		for (int x = minX; x < maxX; x += columnsPerTask) {
+			final int taskMinX = x;
+			final int taskMaxX = Math.min(x + columnsPerTask, maxX);
+			futures.add(SEARCH_EXECUTOR.submit(new Callable<PupilCenterInfo>() {
+				@Override
+				public PupilCenterInfo call() {
+					return searchPupilCenter(image, taskMinX, taskMaxX, minY, maxY);
+				}
+			}));
+		}
+
+		// Reduce in column order, so that in case of equal leap values the candidate found first in serial search wins.
+		PupilCenterInfo bestPupilCenter = null;
+		for (Future<PupilCenterInfo> future : futures) {
+			PupilCenterInfo pupilCenterInfo = future.get();
+			if (pupilCenterInfo != null && (bestPupilCenter == null || pupilCenterInfo.mLeapValue > bestPupilCenter.mLeapValue)) {
+				bestPupilCenter = pupilCenterInfo;
+			}
+		}
+		return bestPupilCenter;
+	}
+
 	/**
 	 * Refine the pupil position based on the previously found position and a higher resolution.
 	 *
 	 * @param resolution The resolution.
 	 */
 	private void refinePupilPosition(final int resolution) {
-		Bitmap image = ImageUtil.resizeBitmap(mImage, resolution, false);
+		long startNanos = System.nanoTime();
+		ImagePyramid.Level image = mPyramid.getLevel(resolution);
 		List<PupilCenterInfo> pupilCenterInfoList = new ArrayList<>();
 
 		int pupilXCenter = Math.round(mPupilXCenter * image.getWidth());
@@ -501,13 +600,13 @@ public final class PupilAndIrisDetector {
 		int pupilRadius = Math.round(mPupilRadius * Math.max(image.getWidth(), image.getHeight()));
 
 		boolean isStable = false;
-		int[] pixels = new int[image.getWidth() * image.getHeight()];
-		image.getPixels(pixels, 0, image.getWidth(), 0, 0, image.getWidth(), image.getHeight());
+		int step;
+		int candidateCount = 0;
 
-		for (int step = 0; step < MAX_REFINEMENT_STEPS && !isStable; step++) {
+		for (step = 0; step < MAX_REFINEMENT_STEPS && !isStable; step++) {
 			for (int x = pupilXCenter - 1; x <= pupilXCenter + 1; x++) {
 				for (int y = pupilYCenter - 1; y <= pupilYCenter + 1; y++) {
-					PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, pixels, x, y, PupilCenterInfo.Phase.PUPIL_REFINEMENT);
+					PupilCenterInfo pupilCenterInfo = new PupilCenterInfo(image, x, y, PupilCenterInfo.Phase.PUPIL_REFINEMENT);
 					pupilCenterInfo.collectCircleInfo((int) (pupilRadius + MAX_REFINEMENT_STEPS + MAX_LEAP_WIDTH * resolution));
 					pupilCenterInfoList.add(pupilCenterInfo);
 				}
@@ -515,6 +614,7 @@ public final class PupilAndIrisDetector {
 
 			float maxLeapValue = Float.MIN_VALUE;
 			PupilCenterInfo bestPupilCenter = null;
+			candidateCount += pupilCenterInfoList.size();
 			for (PupilCenterInfo pupilCenterInfo : pupilCenterInfoList) {
 				pupilCenterInfo.calculateStatistics(pupilRadius);
 				if (pupilCenterInfo.mLeapValue > maxLeapValue) {
@@ -536,22 +636,26 @@ public final class PupilAndIrisDetector {
 		mPupilXCenter = (float) pupilXCenter / image.getWidth();
 		mPupilYCenter = (float) pupilYCenter / image.getHeight();
 		mPupilRadius = (float) pupilRadius / Math.max(image.getWidth(), image.getHeight());
+		mMetrics.setRefinement(resolution, System.nanoTime() - startNanos, candidateCount, step, isStable);
 	}
 
 	/**
 	 * Refine the iris position based on the previously found position.
 	 */
 	private void refineIrisPosition() {
-		IrisBoundary irisBoundary = new IrisBoundary(mImage,
-				(int) (mImage.getWidth() * mIrisXCenter),
-				(int) (mImage.getHeight() * mIrisYCenter),
-				(int) (Math.max(mImage.getWidth(), mImage.getHeight()) * mIrisRadius));
+		long startNanos = System.nanoTime();
+		ImagePyramid.Level image = mPyramid.getBase();
+		IrisBoundary irisBoundary = new IrisBoundary(image,
+				(int) (image.getWidth() * mIrisXCenter),
+				(int) (image.getHeight() * mIrisYCenter),
+				(int) (Math.max(image.getWidth(), image.getHeight()) * mIrisRadius));
 
 		irisBoundary.analyzeBoundary();
+		mMetrics.setIrisBoundary(System.nanoTime() - startNanos, irisBoundary.mLeftPoints.size());
 
-		mIrisXCenter = (float) irisBoundary.mXCenter / mImage.getWidth();
-		mIrisYCenter = (float) irisBoundary.mYCenter / mImage.getHeight();
-		mIrisRadius = (float) irisBoundary.mRadius / Math.max(mImage.getWidth(), mImage.getHeight());
+		mIrisXCenter = (float) irisBoundary.mXCenter / image.getWidth();
+		mIrisYCenter = (float) irisBoundary.mYCenter / image.getHeight();
+		mIrisRadius = (float) irisBoundary.mRadius / Math.max(image.getWidth(), image.getHeight());
 	}
 
 	/**
@@ -577,7 +681,7 @@ public final class PupilAndIrisDetector {
 		/**
 		 * The image.
 		 */
-		private Bitmap mImage;
+		private ImagePyramid.Level mImage;
 		/**
 		 * The image pixels.
 		 */
@@ -601,16 +705,15 @@ public final class PupilAndIrisDetector {
 		 * Create a PupilCenterInfo with certain coordinates.
 		 *
 		 * @param image  the image.
-		 * @param pixels the image pixels.
 		 * @param xCoord The x coordinate.
 		 * @param yCoord The y coordinate.
 		 * @param phase  The phase in which the info is used.
 		 */
-		private PupilCenterInfo(final Bitmap image, final int[] pixels, final int xCoord, final int yCoord, final Phase phase) {
+		private PupilCenterInfo(final ImagePyramid.Level image, final int xCoord, final int yCoord, final Phase phase) {
 			mXCenter = xCoord;
 			mYCenter = yCoord;
 			mImage = image;
-			mPixels = pixels;
+			mPixels = image.getPixels();
 			mPhase = phase;
 		}
 
@@ -625,16 +728,22 @@ public final class PupilAndIrisDetector {
 					Math.min(mImage.getWidth() - 1 - mXCenter, mXCenter),
 					Math.min(mImage.getHeight() - 1 - mYCenter, mYCenter));
 			int maxRadius = Math.min(maxRelevantRadius, maxPossibleRadius);
-			long maxRadius2 = (maxRadius + 1) * (maxRadius + 1);
-			for (int x = mXCenter - maxRadius; x <= mXCenter + maxRadius; x++) {
-				for (int y = mYCenter - maxRadius; y <= mYCenter + maxRadius; y++) {
-					long d2 = (x - mXCenter) * (x - mXCenter) + (y - mYCenter) * (y - mYCenter);
-					if (d2 <= maxRadius2) {
-						int d = (int) Math.round(Math.sqrt(d2));
-						int brightness = getBrightness(mPixels[y * width + x]);
-						// short brightness = getBrightness(mImage.getPixel(x, y));
-						addInfo(d, brightness);
-					}
+			if (maxRadius < 0) {
+				return;
+			}
+
+			CircleOffsetTable table = CircleOffsetTable.getTable(maxRadius);
+			int[] xOffsets = table.mXOffsets;
+			int[] yOffsets = table.mYOffsets;
+			int centerIndex = mYCenter * width + mXCenter;
+			int pointCount = table.getPointCount(maxRadius);
+
+			for (int radius = 0; radius <= maxRadius + 1 && RING_OFFSETS[radius] < pointCount; radius++) {
+				CircleInfo circleInfo = new CircleInfo(radius);
+				mCircleInfos.put(radius, circleInfo);
+				int end = Math.min(RING_OFFSETS[radius + 1], pointCount);
+				for (int i = RING_OFFSETS[radius]; i < end; i++) {
+					circleInfo.addBrightness(getBrightness(mPixels[centerIndex + yOffsets[i] * width + xOffsets[i]]));
 				}
 			}
 		}
@@ -652,21 +761,6 @@ public final class PupilAndIrisDetector {
 			return sum - min;
 		}
 
-		/**
-		 * Add pixel info for another pixel.
-		 *
-		 * @param distance   The distance of the pixel.
-		 * @param brightness The brightness of the pixel.
-		 */
-		private void addInfo(final int distance, final int brightness) {
-			CircleInfo circleInfo = mCircleInfos.get(distance);
-			if (circleInfo == null) {
-				circleInfo = new CircleInfo(distance);
-				mCircleInfos.put(distance, circleInfo);
-			}
-			circleInfo.addBrightness(brightness);
-		}
-
 		/**
 		 * Do statistical calculations after all brightnesses are available.
 		 *
@@ -690,7 +784,7 @@ public final class PupilAndIrisDetector {
 			float[] innerDarkness = new float[mCircleInfos.size()];
 
 			for (int i = minRadius; i <= maxRadius; i++) {
-				float currentQuantile = mCircleInfos.get(i).getQuantile(MIN_BLACK_QUOTA);
+				float currentQuantile = mCircleInfos.get(i).getQuantile(QUANTILE_MIN_BLACK);
 				innerQuantileSum += currentQuantile * i;
 				innerDarkness[i] = i == 0 ? 0 : 2 * innerQuantileSum / (i * (i + 1));
 			}
@@ -711,13 +805,13 @@ public final class PupilAndIrisDetector {
 							Math.min(i / 2, (mCircleInfos.size() - 1 - i) / 2));
 					for (int j = 1; j <= maxLeapDistance; j++) {
 						float diff = mPhase == Phase.INITIAL
-								? (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(MAX_BLACK_QUOTA, i + j, i + j + maxLeapDistance, false))
+								? (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(QUANTILE_MAX_BLACK, i + j, i + j + maxLeapDistance, false))
 								/ (ASSUMED_PUPIL_BRIGHTNESS
-								+ getMinMaxQuantile(MIN_BLACK_QUOTA, i - j - Math.min(maxLeapDistance, Math.max(j, 2)), i - j, true))
+								+ getMinMaxQuantile(QUANTILE_MIN_BLACK, i - j - Math.min(maxLeapDistance, Math.max(j, 2)), i - j, true))
 								- 1
-								: (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(MAX_BLACK_QUOTA, i + j, i + j + maxLeapDistance, false))
+								: (ASSUMED_PUPIL_BRIGHTNESS + getMinMaxQuantile(QUANTILE_MAX_BLACK, i + j, i + j + maxLeapDistance, false))
 								/ (ASSUMED_PUPIL_BRIGHTNESS
-								+ getMinMaxQuantile(MIN_BLACK_QUOTA, i - Math.min(maxLeapDistance, Math.max(j, 2)), i, true))
+								+ getMinMaxQuantile(QUANTILE_MIN_BLACK, i - Math.min(maxLeapDistance, Math.max(j, 2)), i, true))
 								- 1;
 						if (diff > MIN_LEAP_DIFF) {
 							// prefer big jumps in small radius difference.
@@ -745,10 +839,10 @@ public final class PupilAndIrisDetector {
 							Math.min(i, mCircleInfos.size() - 1 - i));
 					for (int j = 1; j <= maxLeapDistance; j++) {
 						irisQuantileSum +=
-								(mCircleInfos.get(i + j).getQuantile(1 - MIN_WHITE_QUOTA)
-										- mCircleInfos.get(i - j).getQuantile(1 - MIN_WHITE_QUOTA)
-										+ mCircleInfos.get(i + j).getQuantile(1 - MIN_WHITE_QUOTA2)
-										- mCircleInfos.get(i - j).getQuantile(1 - MIN_WHITE_QUOTA2))
+								(mCircleInfos.get(i + j).getQuantile(QUANTILE_MIN_WHITE)
+										- mCircleInfos.get(i - j).getQuantile(QUANTILE_MIN_WHITE)
+										+ mCircleInfos.get(i + j).getQuantile(QUANTILE_MIN_WHITE2)
+										- mCircleInfos.get(i - j).getQuantile(QUANTILE_MIN_WHITE2))
 										/ (2 * Math.sqrt(j));
 						if (irisQuantileSum > 0) {
 							// prefer big jumps in small radius difference.
@@ -809,16 +903,16 @@ public final class PupilAndIrisDetector {
 		/**
 		 * Get the minimum p-quantile for a certain set of radii.
 		 *
-		 * @param p          The quantile parameter.
-		 * @param fromRadius The start radius.
-		 * @param toRadius   The end radius.
-		 * @param max        if true, the maximum is returned, otherwise the minimum.
+		 * @param quantileIndex The index of the quantile parameter.
+		 * @param fromRadius    The start radius.
+		 * @param toRadius      The end radius.
+		 * @param max           if true, the maximum is returned, otherwise the minimum.
 		 * @return The minimum quantile.
 		 */
-		private float getMinMaxQuantile(final float p, final int fromRadius, final int toRadius, final boolean max) {
+		private float getMinMaxQuantile(final int quantileIndex, final int fromRadius, final int toRadius, final boolean max) {
 			float result = max ? Float.MIN_VALUE : Float.MAX_VALUE;
 			for (int radius = fromRadius; radius <= toRadius; radius++) {
-				float newValue = mCircleInfos.get(radius).getQuantile(p);
+				float newValue = mCircleInfos.get(radius).getQuantile(quantileIndex);
 				if ((!max && newValue < result) || (max && newValue > result)) {
 					result = newValue;
 				}
@@ -849,6 +943,16 @@ public final class PupilAndIrisDetector {
 	 * Class for storing information about a circle of points.
 	 */
 	private static final class CircleInfo {
+		/**
+		 * Histograms used for counting the brightnesses of a circle, one per thread. Kept empty between calculations.
+		 */
+		private static final ThreadLocal<int[]> HISTOGRAM = new ThreadLocal<int[]>() {
+			@Override
+			protected int[] initialValue() {
+				return new int[BRIGHTNESS_LEVELS];
+			}
+		};
+
 		/**
 		 * Create a pixelInfo with certain coordinates.
 		 *
@@ -872,6 +976,10 @@ public final class PupilAndIrisDetector {
 		 * The current index on the brightness array.
 		 */
 		private int mCurrentIndex;
+		/**
+		 * The quantiles of the brightnesses, by quantile index.
+		 */
+		private int[] mQuantiles = new int[QUANTILE_PARAMETERS.length];
 		/**
 		 * The brightness leap at this radius used for pupil identification.
 		 */
@@ -891,20 +999,169 @@ public final class PupilAndIrisDetector {
 		}
 
 		/**
-		 * Do statistical calculations after all brightnesses are available. Here, only sorting is required.
+		 * Do statistical calculations after all brightnesses are available. Here, the quantiles are determined.
 		 */
 		private void calculateStatistics() {
+			if (mBrightnesses.length < MIN_POINTS_FOR_COUNTING) {
+				calculateQuantilesBySorting();
+			}
+			else {
+				calculateQuantilesByCounting();
+			}
+		}
+
+		/**
+		 * Determine the quantiles by sorting the brightnesses.
+		 */
+		private void calculateQuantilesBySorting() {
 			Arrays.sort(mBrightnesses);
+			for (int q = 0; q < QUANTILE_PARAMETERS.length; q++) {
+				mQuantiles[q] = mBrightnesses[(int) (mBrightnesses.length * QUANTILE_PARAMETERS[q])];
+			}
 		}
 
 		/**
-		 * Get the p-quantile of the brightnesses. Prerequisite: calculateStatistics must have been run before.
+		 * Determine the quantiles via a histogram of the brightnesses, in time linear in the number of points.
+		 */
+		private void calculateQuantilesByCounting() {
+			int[] histogram = HISTOGRAM.get();
+			int minBrightness = BRIGHTNESS_LEVELS - 1;
+			int maxBrightness = 0;
+
+			// Points not filled (in incomplete circles) count as black.
+			for (int brightness : mBrightnesses) {
+				histogram[brightness]++;
+				if (brightness < minBrightness) {
+					minBrightness = brightness;
+				}
+				if (brightness > maxBrightness) {
+					maxBrightness = brightness;
+				}
+			}
+
+			// The p-quantile is the smallest brightness for which more than (int) (size * p) points are not brighter.
+			int brightness = minBrightness;
+			int cumulatedCount = histogram[minBrightness];
+			for (int quantileIndex : QUANTILE_ORDER) {
+				int rank = (int) (mBrightnesses.length * QUANTILE_PARAMETERS[quantileIndex]);
+				while (cumulatedCount <= rank) {
+					cumulatedCount += histogram[++brightness];
+				}
+				mQuantiles[quantileIndex] = brightness;
+			}
+
+			Arrays.fill(histogram, minBrightness, maxBrightness + 1, 0);
+		}
+
+		/**
+		 * Get a quantile of the brightnesses. Prerequisite: calculateStatistics must have been run before.
+		 *
+		 * @param quantileIndex the index of the quantile parameter.
+		 * @return the quantile of the brightnesses (not considering equality).
+		 */
+		private int getQuantile(final int quantileIndex) {
+			return mQuantiles[quantileIndex];
+		}
+	}
+
+	/**
+	 * The offsets of the points around a center, ordered by the circle (rounded distance) they belong to. Within a
+	 * circle, points are ordered by distance, and points on the axes come last among points of equal distance. Hence the
+	 * points within the square of half width r and within distance r + 1 are a prefix of the table.
+	 */
+	private static final class CircleOffsetTable {
+		/**
+		 * The cached table, shared by all detectors.
+		 */
+		private static volatile CircleOffsetTable mCachedTable;
+
+		/**
+		 * The maximum radius supported by this table.
+		 */
+		private int mMaxRadius;
+		/**
+		 * The x offsets of the points.
+		 */
+		private int[] mXOffsets;
+		/**
+		 * The y offsets of the points.
+		 */
+		private int[] mYOffsets;
+		/**
+		 * The number of points of circle r which lie within the square of half width r - 1 and within distance r.
+		 */
+		private int[] mPartialCircleSizes;
+
+		/**
+		 * Create a table containing all points of the circles up to radius maxRadius + 1.
+		 *
+		 * @param maxRadius The maximum radius supported by the table.
+		 */
+		private CircleOffsetTable(final int maxRadius) {
+			mMaxRadius = maxRadius;
+			int outerRadius = maxRadius + 1;
+			int pointCount = RING_OFFSETS[outerRadius + 1];
+
+			// Sort keys: distance, then axis flag, then the coordinates.
+			long[] keys = new long[pointCount];
+			int index = 0;
+			for (int x = -outerRadius; x <= outerRadius; x++) {
+				for (int y = -outerRadius; y <= outerRadius; y++) {
+					long d2 = x * x + y * y;
+					if (Math.round(Math.sqrt(d2)) <= outerRadius) {
+						long distanceKey = 2 * d2 + (x == 0 || y == 0 ? 1 : 0);
+						keys[index++] = distanceKey << 32 | (x + outerRadius) << 16 | (y + outerRadius); // MAGIC_NUMBER
+					}
+				}
+			}
+			Arrays.sort(keys);
+
+			mXOffsets = new int[pointCount];
+			mYOffsets = new int[pointCount];
+			mPartialCircleSizes = new int[outerRadius + 1];
+			int radius = 0;
+			for (int i = 0; i < pointCount; i++) {
+				while (i >= RING_OFFSETS[radius + 1]) {
+					radius++;
+				}
+				int x = (int) (keys[i] >> 16 & 0xFFFF) - outerRadius; // MAGIC_NUMBER
+				int y = (int) (keys[i] & 0xFFFF) - outerRadius; // MAGIC_NUMBER
+				mXOffsets[i] = x;
+				mYOffsets[i] = y;
+				if (x * x + y * y <= radius * radius && Math.abs(x) < radius && Math.abs(y) < radius) {
+					mPartialCircleSizes[radius]++;
+				}
+			}
+		}
+
+		/**
+		 * Get a table supporting a certain radius.
+		 *
+		 * @param maxRadius The maximum radius needed.
+		 * @return The table.
+		 */
+		private static CircleOffsetTable getTable(final int maxRadius) {
+			CircleOffsetTable table = mCachedTable;
+			if (table == null || table.mMaxRadius < maxRadius) {
+				synchronized (CircleOffsetTable.class) {
+					table = mCachedTable;
+					if (table == null || table.mMaxRadius < maxRadius) {
+						table = new CircleOffsetTable(maxRadius);
+						mCachedTable = table;
+					}
+				}
+			}
+			return table;
+		}
+
+		/**
+		 * Get the number of points within the square of half width maxRadius and within distance maxRadius + 1.
 		 *
-		 * @param p the quantile parameter.
-		 * @return the p-quantile of the brightnesses (not considering equality).
+		 * @param maxRadius The radius.
+		 * @return The number of points.
 		 */
-		private int getQuantile(final float p) {
-			return mBrightnesses[(int) (mBrightnesses.length * p)];
+		private int getPointCount(final int maxRadius) {
+			return RING_OFFSETS[maxRadius + 1] + mPartialCircleSizes[maxRadius + 1];
 		}
 	}
 
@@ -915,7 +1172,11 @@ public final class PupilAndIrisDetector {
 		/**
 		 * The image.
 		 */
-		private Bitmap mImage;
+		private ImagePyramid.Level mImage;
+		/**
+		 * The image pixels.
+		 */
+		private int[] mPixels;
 
 		/**
 		 * The x coordinate of the center.
@@ -947,8 +1208,9 @@ public final class PupilAndIrisDetector {
 		 * @param yCenter the initial y coordinate of the center.
 		 * @param radius  the initial iris radius.
 		 */
-		private IrisBoundary(final Bitmap image, final int xCenter, final int yCenter, final int radius) {
+		private IrisBoundary(final ImagePyramid.Level image, final int xCenter, final int yCenter, final int radius) {
 			mImage = image;
+			mPixels = image.getPixels();
 			mXCenter = xCenter;
 			mYCenter = yCenter;
 			mRadius = radius;
@@ -997,6 +1259,7 @@ public final class PupilAndIrisDetector {
 			if (Math.abs(yDiff) > IRIS_BOUNDARY_SEARCH_RANGE * mRadius) {
 				return false;
 			}
+			int rowOffset = yCoord * mImage.getWidth();
 
 			int expectedXDistance = (int) Math.round(Math.sqrt(mRadius * mRadius - yDiff * yDiff));
 
@@ -1005,7 +1268,7 @@ public final class PupilAndIrisDetector {
 			int leftBoundary = Math.max(mXCenter - expectedXDistance - xDistanceRange, 0);
 			int rightBoundary = Math.min(mXCenter - expectedXDistance + xDistanceRange, mImage.getWidth() - 1);
 			for (int x = leftBoundary; x <= rightBoundary; x++) {
-				brightnessSum += getBrightness(mImage.getPixel(x, yCoord));
+				brightnessSum += getBrightness(mPixels[rowOffset + x]);
 			}
 			float avgBrightness = brightnessSum / (2 * xDistanceRange + 1);
 
@@ -1014,12 +1277,12 @@ public final class PupilAndIrisDetector {
 			int rightCounter = 0;
 			while (leftBoundary < rightBoundary) {
 				if (rightCounter > leftCounter) {
-					if (getBrightness(mImage.getPixel(leftBoundary++, yCoord)) < avgBrightness) {
+					if (getBrightness(mPixels[rowOffset + leftBoundary++]) < avgBrightness) {
 						leftCounter++;
 					}
 				}
 				else {
-					if (getBrightness(mImage.getPixel(rightBoundary--, yCoord)) > avgBrightness) {
+					if (getBrightness(mPixels[rowOffset + rightBoundary--]) > avgBrightness) {
 						rightCounter++;
 					}
 				}
@@ -1033,7 +1296,7 @@ public final class PupilAndIrisDetector {
 			int leftBoundary2 = Math.max(mXCenter + expectedXDistance - xDistanceRange, 0);
 			int rightBoundary2 = Math.min(mXCenter + expectedXDistance + xDistanceRange, mImage.getWidth() - 1);
 			for (int x = leftBoundary2; x <= rightBoundary2; x++) {
-				brightnessSum2 += getBrightness(mImage.getPixel(x, yCoord));
+				brightnessSum2 += getBrightness(mPixels[rowOffset + x]);
 			}
 			float avgBrightness2 = brightnessSum2 / (2 * xDistanceRange + 1);
 
@@ -1042,12 +1305,12 @@ public final class PupilAndIrisDetector {
 			int rightCounter2 = 0;
 			while (leftBoundary2 < rightBoundary2) {
 				if (leftCounter2 > rightCounter2) {
-					if (getBrightness(mImage.getPixel(rightBoundary2--, yCoord)) < avgBrightness2) {
+					if (getBrightness(mPixels[rowOffset + rightBoundary2--]) < avgBrightness2) {
 						rightCounter2++;
 					}
 				}
 				else {
-					if (getBrightness(mImage.getPixel(leftBoundary2++, yCoord)) > avgBrightness2) {
+					if (getBrightness(mPixels[rowOffset + leftBoundary2++]) > avgBrightness2) {
 						leftCounter2++;
 					}
 				}